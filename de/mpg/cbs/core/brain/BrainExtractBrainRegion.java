@@ -60,6 +60,8 @@ public class BrainExtractBrainRegion {
 	
 	public final void setResolutions(float x, float y, float z) { rx=x; ry=y; rz=z; }
 	public final void setResolutions(float[] res) { rx=res[0]; ry=res[1]; rz=res[2]; }
+	
+	public final void setNumberOfThreads(int val) { ParallelProcessing.setNumberOfThreads(val); }
 
 	public final void setComponents(int c) { nc=c; }
 	
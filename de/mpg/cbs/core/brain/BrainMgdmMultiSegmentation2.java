@@ -118,6 +118,8 @@ public class BrainMgdmMultiSegmentation2 {
 	public final void setResolutions(float x, float y, float z) { rx=x; ry=y; rz=z; }
 	public final void setResolutions(float[] res) { rx=res[0]; ry=res[1]; rz=res[2]; }
 	
+	public final void setNumberOfThreads(int val) { ParallelProcessing.setNumberOfThreads(val); }
+	
 	public final void setOrientations(int or, int x, int y, int z) { orient=or; orx=x; ory=y; orz=z; }
 	public final void setOrientations(int[] ori) { orient=ori[0]; orx=ori[1]; ory=ori[2]; orz=ori[3]; }
 	
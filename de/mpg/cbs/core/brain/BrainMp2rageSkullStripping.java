@@ -40,6 +40,8 @@ public class BrainMp2rageSkullStripping {
 	
 	public final void setResolutions(float x, float y, float z) { rx=x; ry=y; rz=z; }
 	public final void setResolutions(float[] res) { rx=res[0]; ry=res[1]; rz=res[2]; }
+	
+	public final void setNumberOfThreads(int val) { ParallelProcessing.setNumberOfThreads(val); }
 
 	public final void setSkipZeroValues(boolean val) { skip0Param = val; }
 	public final void setTopologyLUTdirectory(String val) { lutdir = val; }
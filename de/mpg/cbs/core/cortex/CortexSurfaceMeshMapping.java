@@ -57,6 +57,8 @@ public class CortexSurfaceMeshMapping {
 	
 	public final void setResolutions(float x, float y, float z) { rx=x; ry=y; rz=z; }
 	public final void setResolutions(float[] res) { rx=res[0]; ry=res[1]; rz=res[2]; }
+	
+	public final void setNumberOfThreads(int val) { ParallelProcessing.setNumberOfThreads(val); }
 
 	public final void setOriginalSurfacePoints(float[] val) { origSurfacePoints = val; }
 	public final void setOriginalSurfaceTriangles(int[] val) { origSurfaceTriangles = val; }
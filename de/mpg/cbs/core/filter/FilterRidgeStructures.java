@@ -3,6 +3,7 @@ package de.mpg.cbs.core.filter;
 import java.net.URL;
 
 import de.mpg.cbs.utilities.Numerics;
+import de.mpg.cbs.utilities.ParallelProcessing;
 import org.apache.commons.math3.util.FastMath;
 
 
@@ -37,6 +38,8 @@ public class FilterRidgeStructures {
 	public final void setResolutions(float x, float y, float z) { rx=x; ry=y; rz=z; }
 	public final void setResolutions(float[] res) { rx=res[0]; ry=res[1]; rz=res[2]; }
 	
+	public final void setNumberOfThreads(int val) { ParallelProcessing.setNumberOfThreads(val); }
+	
 	//set JIST definitions
 	//to be used for JIST definitions, generic info / help
 	public final String getPackage() { return "CBS Tools"; }
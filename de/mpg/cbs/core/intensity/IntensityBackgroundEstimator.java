@@ -40,6 +40,8 @@ public class IntensityBackgroundEstimator {
 	public final void setDimensions(int x, int y, int z) { nx=x; ny=y; nz=z; nxyz=nx*ny*nz; }
 	public final void setDimensions(int[] dim) { nx=dim[0]; ny=dim[1]; nz=dim[2]; nxyz=nx*ny*nz; }
 	
+	public final void setNumberOfThreads(int val) { ParallelProcessing.setNumberOfThreads(val); }
+	
 	public final String getPackage() { return "CBS Tools"; }
 	public final String getCategory() { return "Intensity"; } 
 	public final String getLabel() { return "Background Estimator"; }
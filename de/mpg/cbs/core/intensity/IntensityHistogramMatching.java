@@ -52,6 +52,8 @@ public class IntensityHistogramMatching {
 	public final void setResolutions(float x, float y, float z) { rsx=x; rsy=y; rsz=z; rtx=x; rty=y; rtz=z; }
 	public final void setResolutions(float[] res) { rsx=res[0]; rsy=res[1]; rsz=res[2]; rtx=res[0]; rty=res[1]; rtz=res[2]; }
 	
+	public final void setNumberOfThreads(int val) { ParallelProcessing.setNumberOfThreads(val); }
+	
 	public final void setImageDimensions(int x, int y, int z) { nsx=x; nsy=y; nsz=z; nsxyz=nsx*nsy*nsz; }
 	public final void setImageDimensions(int[] dim) { nsx=dim[0]; nsy=dim[1]; nsz=dim[2]; nsxyz=nsx*nsy*nsz; }
 	public final void setImageResolutions(float x, float y, float z) { rsx=x; rsy=y; rsz=z; }
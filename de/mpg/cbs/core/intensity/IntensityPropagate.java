@@ -36,6 +36,8 @@ public class IntensityPropagate {
 	public final void setResolutions(float x, float y, float z) { rx=x; ry=y; rz=z; }
 	public final void setResolutions(float[] res) { rx=res[0]; ry=res[1]; rz=res[2]; }
 	
+	public final void setNumberOfThreads(int val) { ParallelProcessing.setNumberOfThreads(val); }
+	
 	//set JIST definitions
 	//to be used for JIST definitions, generic info / help
 	public final String getPackage() { return "CBS Tools"; }
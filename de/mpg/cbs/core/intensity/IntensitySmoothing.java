@@ -40,6 +40,8 @@ public class IntensitySmoothing {
 	
 	public final void setResolutions(float x, float y, float z) { rx=x; ry=y; rz=z; }
 	public final void setResolutions(float[] res) { rx=res[0]; ry=res[1]; rz=res[2]; }
+	
+	public final void setNumberOfThreads(int val) { ParallelProcessing.setNumberOfThreads(val); }
 
 	public final String getPackage() { return "CBS Tools"; }
 	public final String getCategory() { return "Intensity"; } 
@@ -1,5 +1,7 @@
 package de.mpg.cbs.core.laminar;
 
+import java.util.Arrays;
+
 import de.mpg.cbs.utilities.*;
 import de.mpg.cbs.structures.*;
 import de.mpg.cbs.libraries.*;
@@ -12,13 +14,13 @@ import de.mpg.cbs.methods.*;
 public class LaminarProfileSampling {
 
 	private float[] layersImage;
-	private float[] intensityImage;
+	private float[][] intensityImages;
 	private byte[] maskImage=null;
 		
 	private int nx, ny, nz, nt, nxyz;
 	private float rx, ry, rz;
 
-	private float[] mappedImage;
+	private float[][] mappedImages;
 	private byte[] mappedmaskImage;
 	
 	// global variables
@@ -28,7 +30,8 @@ public class LaminarProfileSampling {
 
 	// create inputs
 	public final void setProfileSurfaceImage(float[] val) { layersImage = val; }
-	public final void setIntensityImage(float[] val) { intensityImage = val; }
+	public final void setIntensityImage(float[] val) { intensityImages = new float[][]{val}; }
+	public final void setIntensityImages(float[][] val) { intensityImages = val; }
 	public final void setCortexMask(byte[] val) { maskImage = val; }
 	
 	public final void setDimensions(int x, int y, int z, int t) { nx=x; ny=y; nz=z; nt=t; nxyz=nx*ny*nz; }
@@ -36,6 +39,8 @@ public class LaminarProfileSampling {
 	
 	public final void setResolutions(float x, float y, float z) { rx=x; ry=y; rz=z; }
 	public final void setResolutions(float[] res) { rx=res[0]; ry=res[1]; rz=res[2]; }
+	
+	public final void setNumberOfThreads(int val) { ParallelProcessing.setNumberOfThreads(val); }
 
 	// to be used for JIST definitions, generic info / help
 	public final String getPackage() { return "CBS Tools"; }
@@ -51,24 +56,26 @@ public class LaminarProfileSampling {
 	public final String getVersion() { return "3.1.0"; };
 			
 	// create outputs
-	public final float[] getProfileMappedIntensityImage() { return mappedImage; }
+	public final float[] getProfileMappedIntensityImage() { return mappedImages[0]; }
+	public final float[][] getProfileMappedIntensityImages() { return mappedImages; }
 	public final byte[] getProfile4Dmask() { return mappedmaskImage; }
 	
 	public void execute(){
 		
-		int nlayers = nt-1;
+		final int nlayers = nt-1;
 		
-		float[][] layers = new float[nlayers+1][nxyz];
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) for (int l=0;l<=nlayers;l++) {
-			int xyz = x+nx*y+nx*ny*z;
-			layers[l][xyz] = layersImage[xyz+nxyz*l];
+		// the layer surfaces are stored one after the other
+		final float[][] layers = new float[nlayers+1][];
+		for (int l=0;l<=nlayers;l++) {
+			layers[l] = Arrays.copyOfRange(layersImage, nxyz*l, nxyz*(l+1));
 		}
 		layersImage = null;
 		
-		float[] intensity = intensityImage;
+		final float[][] intensity = intensityImages;
+		final int nimg = intensity.length;
 		
 		// create a mask for all the regions outside of the area where layer 1 is > 0 and layer 2 is < 0
-		boolean[] ctxmask = new boolean[nxyz];
+		final boolean[] ctxmask = new boolean[nxyz];
 		if (maskImage!=null) {
 			for (int xyz=0;xyz<nxyz;xyz++) {
 				ctxmask[xyz] = (maskImage[xyz]>0);
@@ -79,44 +86,43 @@ public class LaminarProfileSampling {
 			}
 		}
 				
-		// main algorithm
-		CorticalProfile profile = new CorticalProfile(nlayers, nx, ny, nz, rx, ry, rz);
+		// main algorithm: the profiles are sampled directly into the 4D outputs,
+		// all the intensity images along the same trajectory
+		final float maskval = 1e13f;
+		mappedImages = new float[nimg][nxyz*(nlayers+1)];
+		mappedmaskImage = new byte[nxyz*(nlayers+1)];
+		final float[][] mapping = mappedImages;
+		final byte[] mappingmask = mappedmaskImage;
 		
-		float maskval = 1e13f;
-		float[][][][] mapping = new float[nx][ny][nz][nlayers+1];
-		byte[][][][] mappingmask = new byte[nx][ny][nz][nlayers+1];
-		for (int x=0; x<nx; x++) for (int y=0; y<ny; y++) for (int z = 0; z<nz; z++) {
-			int xyz = x + nx*y + nx*ny*z;
-			if (ctxmask[xyz]) {
-				profile.computeTrajectory(layers, x, y, z);
+		ParallelProcessing.forEachSlab(nz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int zmin, int zmax) {
+				// one profile per thread
+				CorticalProfile profile = new CorticalProfile(nlayers, nx, ny, nz, rx, ry, rz);
 				
-				for (int l=0;l<=nlayers;l++) {
-					// interpolate the contrast
-					mapping[x][y][z][l] = ImageInterpolation.linearInterpolation(intensity, ctxmask, maskval, 
-																					profile.getPt(l)[X], profile.getPt(l)[Y], profile.getPt(l)[Z], 
-																					nx, ny, nz);
-					if (mapping[x][y][z][l]==maskval) {
-						mappingmask[x][y][z][l] = (byte)0;
-						mapping[x][y][z][l] = 0.0f;
-					} else {
-						mappingmask[x][y][z][l] = (byte)1;
+				for (int z=zmin; z<zmax; z++) for (int y=0; y<ny; y++) for (int x=0; x<nx; x++) {
+					int xyz = x + nx*y + nx*ny*z;
+					if (ctxmask[xyz]) {
+						profile.computeTrajectory(layers, x, y, z);
+						
+						for (int l=0;l<=nlayers;l++) {
+							float[] pt = profile.getPt(l);
+							for (int i=0;i<nimg;i++) {
+								// interpolate the contrast
+								float val = ImageInterpolation.linearInterpolation(intensity[i], ctxmask, maskval, 
+																					pt[X], pt[Y], pt[Z], nx, ny, nz);
+								if (val==maskval) {
+									if (i==0) mappingmask[xyz+nxyz*l] = (byte)0;
+									mapping[i][xyz+nxyz*l] = 0.0f;
+								} else {
+									if (i==0) mappingmask[xyz+nxyz*l] = (byte)1;
+									mapping[i][xyz+nxyz*l] = val;
+								}
+							}
+						}
 					}
 				}
 			}
-		}
-		
-		// output
-		mappedImage = new float[nx*ny*nz*(nlayers+1)];
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) for (int l=0;l<=nlayers;l++) {
-			int xyz = x+nx*y+nx*ny*z;
-			mappedImage[xyz+nxyz*l] = mapping[x][y][z][l];
-		}
-		
-		mappedmaskImage = new byte[nx*ny*nz*(nlayers+1)];
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) for (int l=0;l<=nlayers;l++) {
-			int xyz = x+nx*y+nx*ny*z;
-			mappedmaskImage[xyz+nxyz*l] = mappingmask[x][y][z][l];
-		}
+		});
 	}
 
 
@@ -72,6 +72,8 @@ public class SegmentationSureSeg {
 	public final void setResolutions(float x, float y, float z) { rx=x; ry=y; rz=z; }
 	public final void setResolutions(float[] res) { rx=res[0]; ry=res[1]; rz=res[2]; }
 	
+	public final void setNumberOfThreads(int val) { ParallelProcessing.setNumberOfThreads(val); }
+	
 	public final void setImageMask(byte[] val) { maskImage = val; }
 	
 	public final void setLabel4DProbabilities(float[] val) { probaImage = val; maxProba = false; }
@@ -155,8 +157,7 @@ public class SegmentationSureSeg {
 		// two input options: a max proba + labels or a set of probabilities (incl. background or not)
 		byte nlabels = -1;
 		int[] objlb = null;
-		float[][] maxproba = null;
-		byte[][] maxlabel = null;
+		TopKProbabilities maxproba = null;
 		
 		if (maxProba) {
 			BasicInfo.displayMessage("build from max labeling and max probability...\n");
@@ -182,18 +183,18 @@ public class SegmentationSureSeg {
 			MgdmRepresentation mgdm = new MgdmRepresentation(labelImage, boundary, nx,ny,nz, rx,ry,rz, lbs, nlabels, nbestParam-1, false, 9.0f);
 			
 			//MaxProbaRepresentation maxprep = new MaxProbaRepresentation(nbestParam, nlabels, nx,ny,nz);
-			maxproba = new float[nlabels][nxyz];
-			maxlabel = mgdm.getLabels();
+			maxproba = new TopKProbabilities(nxyz, nbestParam);
+			byte[][] maxlabel = mgdm.getLabels();
 			float[] distproba = new float[nbestParam];
 			for (int xyz=0;xyz<nxyz;xyz++) {
-				maxproba[0][xyz] = boundary[xyz];
+				maxproba.set(xyz, 0, maxlabel[0][xyz], boundary[xyz]);
 				distproba[nbestParam-1] = 0.0f;
 				for (int b=0;b<nbestParam-1;b++) {
 					distproba[b] = 1.0f/(1.0f+mgdm.getFunctions()[b][xyz]);
 					distproba[nbestParam-1] += distproba[b];
 				}
 				for (int b=0;b<nbestParam-1;b++) {
-					maxproba[b+1][xyz] = Numerics.min( boundary[xyz], (1.0f-boundary[xyz])*(distproba[b]/distproba[nbestParam-1]) );
+					maxproba.set(xyz, b+1, maxlabel[b+1][xyz], Numerics.min( boundary[xyz], (1.0f-boundary[xyz])*(distproba[b]/distproba[nbestParam-1]) ));
 				}
 			}			
 		} else {
@@ -224,8 +225,7 @@ public class SegmentationSureSeg {
 			if (includeBgParam) maxprep.buildFromCompleteProbabilities(probaImage);
 			else maxprep.buildFromCompetingProbabilitiesAndBackground(probaImage);
 			//else maxprep.buildFromCompetingProbabilitiesAndConstantBackground(probaImage,0.5f);
-			maxproba = maxprep.getMaxProba();
-			maxlabel = maxprep.getMaxLabel();
+			maxproba = maxprep.getTopProbabilities();
 			
 			if (!includeBgParam) nlabels++;
 			
@@ -264,7 +264,7 @@ public class SegmentationSureSeg {
 		// main algorithm
 		
 		StatisticalUncertaintyReduction sur = new StatisticalUncertaintyReduction(image, noise, maskImage, scaling, nimg, nx, ny, nz,  nbestParam);
-		sur.setBestProbabilities(maxproba, maxlabel, objlb);
+		sur.setBestProbabilities(maxproba, objlb);
 		//if (computeNoiseParam) sur.estimateMeanImageNoise();
 		//if (computeNoiseParam) sur.estimateMedianImageNoise();
 		if (computeNoiseParam) {
@@ -279,13 +279,14 @@ public class SegmentationSureSeg {
 		BasicInfo.displayMessage("generating outputs...\n");
 		
 		// map to 1D arrays
+		TopKProbabilities best = sur.getTopProbabilities();
 		segmentImage = new int[nxyz];
 		for (int xyz=0;xyz<nxyz;xyz++) {
-			if (sur.getLabels()[0][xyz]>=0) {
-				if (!includeBgParam && objlb[sur.getLabels()[0][xyz]]==nlabels) {
+			if (best.getLabel(xyz,0)>=0) {
+				if (!includeBgParam && objlb[best.getLabel(xyz,0)]==nlabels) {
 					segmentImage[xyz] = 0;
 				} else {
-					segmentImage[xyz] = objlb[sur.getLabels()[0][xyz]];
+					segmentImage[xyz] = objlb[best.getLabel(xyz,0)];
 				}
 			} else {
 				segmentImage[xyz] = 0;
@@ -294,8 +295,8 @@ public class SegmentationSureSeg {
 		maxprobaImage = new float[nxyz*nbestParam];
 		maxidImage = new byte[nxyz*nbestParam];
 		for (int l=0;l<nbestParam;l++) for (int xyz=0;xyz<nxyz;xyz++) {
-			maxprobaImage[xyz+nxyz*l] = sur.getProbabilities()[l][xyz];
-			maxidImage[xyz+nxyz*l] = sur.getLabels()[l][xyz];
+			maxprobaImage[xyz+nxyz*l] = best.getProbability(xyz,l);
+			maxidImage[xyz+nxyz*l] = best.getLabel(xyz,l);
 		}
 	
 		// for debug
@@ -59,6 +59,7 @@ public class JistBrainExtractBrainRegion extends ProcessingAlgorithm {
 	private ParamVolume probaBackgroundImage;
 		
 	private BrainExtractBrainRegion algorithm;
+	private ParamInteger	threadsParam;
 	
 	protected void createInputParameters(ParamCollection inputParams) {
 		
@@ -89,6 +90,8 @@ public class JistBrainExtractBrainRegion extends ProcessingAlgorithm {
 		inputParams.add(densityParam = new ParamBoolean("Estimate tissue densities", false));
 		inputParams.add(scalingParam = new ParamFloat("Partial voluming distance (voxels)", 0.0f, 10.0f, 1.0f));
 		
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new BrainExtractBrainRegion();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -163,6 +166,8 @@ public class JistBrainExtractBrainRegion extends ProcessingAlgorithm {
 		algorithm.setEstimateTissueDensities(densityParam.getValue().booleanValue());
 		algorithm.setPartialVolumingDistance(scalingParam.getValue().floatValue());
 		
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 		
 		Interface.setUByteImage3D(algorithm.getInsideWMmask(), dims, segInsideImage, segName+algorithm.getInsideName(), header);
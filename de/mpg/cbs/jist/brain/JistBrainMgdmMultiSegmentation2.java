@@ -79,6 +79,7 @@ public class JistBrainMgdmMultiSegmentation2 extends ProcessingAlgorithm {
 	private ParamVolume labelImage;
 	
 	private BrainMgdmMultiSegmentation2 algorithm;
+	private ParamInteger	threadsParam;
 	
 	protected void createInputParameters(ParamCollection inputParams) {
 		
@@ -138,6 +139,8 @@ public class JistBrainMgdmMultiSegmentation2 extends ProcessingAlgorithm {
 		
 		inputParams.add(mainParams);
 		
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new BrainMgdmMultiSegmentation2();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -217,6 +220,8 @@ public class JistBrainMgdmMultiSegmentation2 extends ProcessingAlgorithm {
 		
 		algorithm.setNormalizeQuantitativeMaps(normalizeQuantitative.getValue().booleanValue());
 		
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 		
 		// outputs
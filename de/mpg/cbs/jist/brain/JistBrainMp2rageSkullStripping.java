@@ -7,6 +7,7 @@ import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamBoolean;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamCollection;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamOption;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamVolume;
+import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamInteger;
 import edu.jhu.ece.iacl.jist.structures.image.ImageData;
 import edu.jhu.ece.iacl.jist.structures.image.ImageDataUByte;
 import edu.jhu.ece.iacl.jist.structures.image.ImageDataFloat;
@@ -47,6 +48,7 @@ public class JistBrainMp2rageSkullStripping extends ProcessingAlgorithm {
 	private ParamVolume inv2maskImage;
 	
 	private BrainMp2rageSkullStripping algorithm;
+	private ParamInteger	threadsParam;
 	
 	protected void createInputParameters(ParamCollection inputParams) {
 		inputParams.add(inv2Image = new ParamVolume("Second inversion (Inv2) Image"));
@@ -61,6 +63,8 @@ public class JistBrainMp2rageSkullStripping extends ProcessingAlgorithm {
 		*/
 		inputParams.add(skip0Param = new ParamBoolean("Skip zero values", false));
 
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new BrainMp2rageSkullStripping();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -118,6 +122,8 @@ public class JistBrainMp2rageSkullStripping extends ProcessingAlgorithm {
 		
 		algorithm.setSkipZeroValues(skip0Param.getValue().booleanValue());
 
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 		
 		Interface.setUByteImage3D(algorithm.getBrainMaskImage(), dims, brainmaskImage, inv2name+"_stripmask", header);
@@ -1,5 +1,7 @@
 package de.mpg.cbs.jist.cortex;
 
+import java.util.Arrays;
+
 import edu.jhu.ece.iacl.jist.pipeline.AlgorithmRuntimeException;
 import edu.jhu.ece.iacl.jist.pipeline.CalculationMonitor;
 import edu.jhu.ece.iacl.jist.pipeline.ProcessingAlgorithm;
@@ -165,39 +167,42 @@ public class JistCortexSmoothData extends ProcessingAlgorithm {
 		
 		System.out.println("smoothing loop");
 		
-		// for debug
+		// list the cortical points (no need to compute outside the cortex)
 		int pts=0;
 		for (int x=0;x<nx-1;x++) for (int y=0;y<ny-1;y++) for (int z=0;z<nz-1;z++) {
 			xyz = x+nx*y+nx*ny*z;
 			if (msk[xyz]) pts++;
 		}
+		int[] points = new int[pts];
+		float[][] smoothed = new float[pts][];
 		int npt = 0;
-		int iter = 0;
-		long looptime = System.currentTimeMillis();
 		for (int x=0;x<nx-1;x++) for (int y=0;y<ny-1;y++) for (int z=0;z<nz-1;z++) {
 			xyz = x+nx*y+nx*ny*z;
-			
 			if (msk[xyz]) {
-				// no need to compute outside the cortex
+				points[npt] = xyz;
+				smoothed[npt] = sdata[x][y][z];
 				npt++;
-				if (npt%(pts/100)==0) {
-					iter++;
-					long newtime = System.currentTimeMillis();
-					Interface.displayMessage("iter "+iter+", t="+(newtime-looptime)+", "+npt+" pts\n");
-					System.out.println("iter "+iter+", t="+(newtime-looptime)+", "+npt+" pts\n");
-					looptime = newtime;
-				}
-				
-				// minimal marching distance from voxel
-				//sdata[x][y][z] = regionSmoothing.smoothFromPoint( xyz);
-				regionSmoothing.dilateFromPoint(sdata[x][y][z], xyz);
-			
 			} else {
 				for (int d=0;d<nd;d++) {
 					sdata[x][y][z][d] = 0.0f;
 				}
 			}
-				
+		}
+		// minimal marching distance from voxels, by batches of 1% of the points
+		int batch = Numerics.max(1, pts/100);
+		int iter = 0;
+		long looptime = System.currentTimeMillis();
+		for (int start=0;start<pts;start+=batch) {
+			int nb = Numerics.min(batch, pts-start);
+			int[] batchpts = Arrays.copyOfRange(points, start, start+nb);
+			float[][] batchdata = Arrays.copyOfRange(smoothed, start, start+nb);
+			regionSmoothing.dilateFromPoints(batchdata, batchpts, nb);
+			
+			iter++;
+			long newtime = System.currentTimeMillis();
+			Interface.displayMessage("iter "+iter+", t="+(newtime-looptime)+", "+(start+nb)+" pts\n");
+			System.out.println("iter "+iter+", t="+(newtime-looptime)+", "+(start+nb)+" pts\n");
+			looptime = newtime;
 		}
 		data = null;
 		
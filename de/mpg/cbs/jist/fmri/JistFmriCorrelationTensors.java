@@ -53,6 +53,7 @@ public class JistFmriCorrelationTensors extends ProcessingAlgorithm {
 	private static final String[] corrTypes = {"positive","negative","shifted","absolute","raw"}; 
 	
 	private ParamBoolean renormParam;
+	private ParamInteger threadsParam;
 	
 	private static final byte X=0;
 	private static final byte Y=1;
@@ -88,6 +89,7 @@ public class JistFmriCorrelationTensors extends ProcessingAlgorithm {
 		inputParams.add(extentParam = new ParamFloat("Neighborhood distance (mm)", 0.0f, 30.0f, 2.0f));
 		inputParams.add(corrParam = new ParamOption("Correlation type", corrTypes));
 		inputParams.add(renormParam = new ParamBoolean("Normalize correlations", true));
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
 		
 		inputParams.setPackage("CBS Tools");
 		inputParams.setCategory("fMRI");
@@ -120,10 +122,12 @@ public class JistFmriCorrelationTensors extends ProcessingAlgorithm {
 	protected void execute(CalculationMonitor monitor){
 		
 		ImageDataFloat	dataImg = new ImageDataFloat(dataImage.getImageData());
-		int nx = dataImg.getRows();
-		int ny = dataImg.getCols();
-		int nz = dataImg.getSlices();
-		int nt = dataImg.getComponents();
+		final int nx = dataImg.getRows();
+		final int ny = dataImg.getCols();
+		final int nz = dataImg.getSlices();
+		final int nt = dataImg.getComponents();
+		final int nxy = nx*ny;
+		final int nxyz = nx*ny*nz;
 		float rx = dataImg.getHeader().getDimResolutions()[0];
 		float ry = dataImg.getHeader().getDimResolutions()[1];
 		float rz = dataImg.getHeader().getDimResolutions()[2];
@@ -131,212 +135,247 @@ public class JistFmriCorrelationTensors extends ProcessingAlgorithm {
 		String dataName = dataImg.getName();
 		ImageHeader dataHeader = dataImg.getHeader();
 		
-		float[][][][] data = dataImg.toArray4d();
+		final float[][][][] data = dataImg.toArray4d();
 		dataImg.dispose();
 		dataImage.dispose();
 		
 		System.out.println("fmri data loaded");
 
-		byte corrtype;
-		if (corrParam.getValue().equals("absolute")) corrtype = ABS;
-		else if (corrParam.getValue().equals("positive")) corrtype = POS;
-		else if (corrParam.getValue().equals("negative")) corrtype = NEG;
-		else if (corrParam.getValue().equals("shifted")) corrtype = SFT;
-		else corrtype = RAW; 
+		ParallelProcessing.setNumberOfThreads(threadsParam.getValue().intValue());
+		
+		byte type;
+		if (corrParam.getValue().equals("absolute")) type = ABS;
+		else if (corrParam.getValue().equals("positive")) type = POS;
+		else if (corrParam.getValue().equals("negative")) type = NEG;
+		else if (corrParam.getValue().equals("shifted")) type = SFT;
+		else type = RAW; 
+		final byte corrtype = type;
 				
-		// center and norm
-		float[][][] center = new float[nx][ny][nz];
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			double mean = 0.0;
-			for (int t=0;t<nt;t++) mean += data[x][y][z][t];
-			center[x][y][z] = (float)(mean/nt);
-		}
-		float[][][] norm = new float[nx][ny][nz];
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			for (int t=0;t<nt;t++) data[x][y][z][t] -= center[x][y][z];
-			double var = 0.0;
-			for (int t=0;t<nt;t++) var += data[x][y][z][t]*data[x][y][z][t];
-			norm[x][y][z] = (float)FastMath.sqrt(var/(nt-1.0));
-		}
+		// center and norm: the centered time series are stored contiguously, one block per slice
+		final float[] center = new float[nxyz];
+		final float[] norm = new float[nxyz];
+		final float[][] series = new float[nz][];
+		ParallelProcessing.forEachSlab(nz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int zmin, int zmax) {
+				for (int z=zmin;z<zmax;z++) {
+					series[z] = new float[nxy*nt];
+					for (int y=0;y<ny;y++) for (int x=0;x<nx;x++) {
+						int xyz = x+nx*y+nxy*z;
+						float[] ts = data[x][y][z];
+						double mean = 0.0;
+						for (int t=0;t<nt;t++) mean += ts[t];
+						center[xyz] = (float)(mean/nt);
+						
+						int offset = (x+nx*y)*nt;
+						double var = 0.0;
+						for (int t=0;t<nt;t++) {
+							float val = ts[t] - center[xyz];
+							series[z][offset+t] = val;
+							var += val*val;
+						}
+						norm[xyz] = (float)FastMath.sqrt(var/(nt-1.0));
+						// release the input as we go
+						data[x][y][z] = null;
+					}
+				}
+			}
+		});
 		// mask from zero norm
-		boolean[][][] mask = new boolean[nx][ny][nz];
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			mask[x][y][z] = (norm[x][y][z]>0);
+		final boolean[] mask = new boolean[nxyz];
+		for (int xyz=0;xyz<nxyz;xyz++) {
+			mask[xyz] = (norm[xyz]>0);
 		}
 		
 		// set the correlation distance step
-		int d = (int)extentParam.getValue().floatValue();
-		if (!ngbParam.getValue().equals("debug")) d = 1;
+		int dist = (int)extentParam.getValue().floatValue();
+		if (!ngbParam.getValue().equals("debug")) dist = 1;
+		final int d = dist;
 		System.out.println("neighborhood distance: "+d);
 		
+		// index the masked voxels inside the boundary
+		final int[] id = new int[nxyz];
+		int nvox = 0;
+		for (int xyz=0;xyz<nxyz;xyz++) id[xyz] = -1;
+		for (int z=d;z<nz-d;z++) for (int y=d;y<ny-d;y++) for (int x=d;x<nx-d;x++) {
+			int xyz = x+nx*y+nxy*z;
+			if (mask[xyz]) id[xyz] = nvox++;
+		}
+		final int[] voxel = new int[nvox];
+		for (int xyz=0;xyz<nxyz;xyz++) if (id[xyz]>-1) voxel[id[xyz]] = xyz;
+		
+		// neighbor offsets and opposite directions
+		final int[] offset = new int[26];
+		final int[] opposite = new int[26];
+		for (int n=0;n<26;n++) {
+			offset[n] = Ngb.x[n]+nx*Ngb.y[n]+nxy*Ngb.z[n];
+			for (int m=0;m<26;m++) if (Ngb.x[m]==-Ngb.x[n] && Ngb.y[m]==-Ngb.y[n] && Ngb.z[m]==-Ngb.z[n]) opposite[n] = m;
+		}
+		
 		// how to deal with artefactual correlations in different directions??
-		int[] ncorr = new int[26];
-		for (int x=d;x<nx-d;x++) for (int y=d;y<ny-d;y++) for (int z=d;z<nz-d;z++) if (mask[x][y][z]){
-			for (int n=0;n<26;n++) {
-				if (mask[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]]) ncorr[n]++;
+		// correlations with each neighbor: each pair product is computed once and used in both directions
+		final double[][] correlation = new double[26][nvox];
+		ParallelProcessing.forEach(nvox, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int i=start;i<end;i++) {
+					int xyz = voxel[i];
+					for (int n=0;n<26;n++) {
+						int ngb = xyz+offset[n];
+						if (mask[ngb] && (n<opposite[n] || id[ngb]==-1)) {
+							double corr = 0.0;
+							float[] sxyz = series[xyz/nxy];
+							float[] sngb = series[ngb/nxy];
+							int oxyz = (xyz%nxy)*nt;
+							int ongb = (ngb%nxy)*nt;
+							for (int t=0;t<nt;t++) corr += sxyz[oxyz+t]*sngb[ongb+t];
+							
+							correlation[n][i] = correlationType(corr/(nt*norm[xyz]*norm[ngb]), corrtype);
+							if (id[ngb]>-1) correlation[opposite[n]][id[ngb]] = correlationType(corr/(nt*norm[ngb]*norm[xyz]), corrtype);
+						}
+					}
+				}
 			}
-		}
-		double[][] correlation = new double[26][];
-		for (int n=0;n<26;n++) correlation[n] = new double[ncorr[n]];
-			
-		int[] cid = new int[26];
-		for (int x=d;x<nx-d;x++) for (int y=d;y<ny-d;y++) for (int z=d;z<nz-d;z++) if (mask[x][y][z]){
-			for (int n=0;n<26;n++) {
-				if (mask[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]]) {
-					double corr = 0.0;
-					for (int t=0;t<nt;t++) corr += data[x][y][z][t]*data[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]][t];
-					corr /= nt*norm[x][y][z]*norm[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]];
+		});
+		
+		// one histogram per direction, with bins found directly
+		final float[] coffset = new float[26];
+		final float[] cmin = new float[26];
+		final float[] cmax = new float[26];
+		final byte[][][] histo = new byte[2000][2000][26];
+		ParallelProcessing.forEach(26, 26, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int nmin, int nmax) {
+				for (int n=nmin;n<nmax;n++) {
+					float min = 1e9f;
+					float max = -1e9f;
+					for (int i=0;i<voxel.length;i++) if (mask[voxel[i]+offset[n]]) {
+						if (correlation[n][i] > max) max = (float)correlation[n][i];
+						if (correlation[n][i] < min) min = (float)correlation[n][i];
+					}
+					Histogram hist = new Histogram(min, max, 2000);
+					for (int i=0;i<voxel.length;i++) if (mask[voxel[i]+offset[n]]) hist.addValue(correlation[n][i]);
 					
-					if (corrtype==ABS) corr = Numerics.abs(corr);
-					else if (corrtype==POS) corr = Numerics.max(corr,0.0);
-					else if (corrtype==NEG) corr = -Numerics.min(corr,0.0);
-					else if (corrtype==SFT) corr = 0.5*(1.0+corr);
+					cmin[n] = hist.min();
+					cmax[n] = hist.max();
+					coffset[n] = hist.argmax();
 					
-					correlation[n][cid[n]] = corr; 
-					cid[n]++;
+					byte[][] tmp = hist.plotLogHistogram();
+					for (int i=0;i<2000;i++) for (int j=0;j<2000;j++) histo[i][j][n] = tmp[i][j];
 				}
 			}
-		}
-		float[] coffset = new float[26];
-		float[] cmin = new float[26];
-		float[] cmax = new float[26];
-		for (int n=0;n<26;n++) {
-			Histogram hist = new Histogram(correlation[n], 2000, ncorr[n]);
-			cmin[n] = hist.min();
-			cmax[n] = hist.max();
-			coffset[n] = hist.argmax();
-			System.out.println("offset ("+n+"): "+coffset[n]);
-		}
-		byte[][][] histo = new byte[2000][2000][26];
-		for (int n=0;n<26;n++) {
-			Histogram hist = new Histogram(correlation[n], 2000, ncorr[n]);
-			byte[][] tmp = hist.plotLogHistogram();
-			for (int i=0;i<2000;i++) for (int j=0;j<2000;j++) histo[i][j][n] = tmp[i][j];
-		}
+		});
+		for (int n=0;n<26;n++) System.out.println("offset ("+n+"): "+coffset[n]);
 
 		if (renormParam.getValue().booleanValue()) {
 			// re-normalize
-			for (int n=0;n<26;n++) cid[n] = 0;
-			for (int x=d;x<nx-d;x++) for (int y=d;y<ny-d;y++) for (int z=d;z<nz-d;z++) if (mask[x][y][z]){
-				for (int n=0;n<26;n++) {
-					if (mask[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]]) {
-						if (correlation[n][cid[n]]>coffset[n]) correlation[n][cid[n]] = (correlation[n][cid[n]]-coffset[n])/(cmax[n]-coffset[n]);
-						else correlation[n][cid[n]] = (correlation[n][cid[n]]-coffset[n])/(coffset[n]-cmin[n]);
-						cid[n]++;
+			ParallelProcessing.forEach(nvox, new ParallelProcessing.RangeTask() {
+				public void process(int chunk, int start, int end) {
+					for (int i=start;i<end;i++) {
+						for (int n=0;n<26;n++) {
+							if (mask[voxel[i]+offset[n]]) {
+								if (correlation[n][i]>coffset[n]) correlation[n][i] = (correlation[n][i]-coffset[n])/(cmax[n]-coffset[n]);
+								else correlation[n][i] = (correlation[n][i]-coffset[n])/(coffset[n]-cmin[n]);
+							}
+						}
 					}
 				}
-			}
+			});
 		}
 		
-		float[][][][] tensor = new float[nx][ny][nz][6];
-		if (ngbParam.getValue().equals("26C_neighbors")) {
-			for (int n=0;n<26;n++) cid[n] = 0;
-			for (int x=d;x<nx-d;x++) for (int y=d;y<ny-d;y++) for (int z=d;z<nz-d;z++) if (mask[x][y][z]){
-			//for (int x=1;x<nx-1;x++) for (int y=1;y<ny-1;y++) for (int z=1;z<nz-1;z++) if (mask[x][y][z]) {
-				// for now, skip all voxels on the boundary
-				boolean boundary=false;
-				double[] tens = new double[6];
-				for (int n=0;n<26;n++) {
-					if (mask[x+d*Ngb.x[n]][y+d*Ngb.y[n]][z+d*Ngb.z[n]]) {
-						double corr = correlation[n][cid[n]]*correlation[n][cid[n]];
-						cid[n]++;
-						
-						float[] v = Ngb.directionVector(n);
-						tens[XX]	+= corr*v[X]*v[X];
-						tens[XY]	+= corr*v[X]*v[Y];
-						tens[XZ]	+= corr*v[X]*v[Z];
-						tens[YY]	+= corr*v[Y]*v[Y];
-						tens[YZ]	+= corr*v[Y]*v[Z];
-						tens[ZZ]+= corr*v[Z]*v[Z];
-					} else {
-						boundary=true;
-					}
-				}
-				if (!boundary) {
-					tensor[x][y][z][XX] = (float)(tens[XX]/26.0);
-					tensor[x][y][z][XY] = (float)(tens[XY]/26.0);
-					tensor[x][y][z][XZ] = (float)(tens[XZ]/26.0);
-					tensor[x][y][z][YY] = (float)(tens[YY]/26.0);
-					tensor[x][y][z][YZ] = (float)(tens[YZ]/26.0);
-					tensor[x][y][z][ZZ] = (float)(tens[ZZ]/26.0);
-				}
-			}
-		} else if (ngbParam.getValue().equals("debug")) {
-			for (int n=0;n<26;n++) cid[n] = 0;
-			for (int x=d;x<nx-d;x++) for (int y=d;y<ny-d;y++) for (int z=d;z<nz-d;z++) if (mask[x][y][z]){
-			//for (int x=1;x<nx-1;x++) for (int y=1;y<ny-1;y++) for (int z=1;z<nz-1;z++) if (mask[x][y][z]) {
-				// for now, skip all voxels on the boundary
-				boolean boundary=false;
-				double[] tens = new double[6];
-				for (int n=0;n<6;n++) {
-					if (mask[x+d*Ngb.x[n]][y+d*Ngb.y[n]][z+d*Ngb.z[n]]) {
-						double corr = correlation[n][cid[n]]*correlation[n][cid[n]];
-						cid[n]++;
-						
-						// debug
-						float[] v = new float[3];
-						float vn = 0.0f;
-						v[X] = Ngb.x[n];
-						v[Y] = Ngb.y[n];
-						v[Z] = Ngb.z[n];
-						vn = (float)FastMath.sqrt(v[X]*v[X]+v[Y]*v[Y]+v[Z]*v[Z]);
-						v[X] /= vn;
-						v[Y] /= vn;
-						v[Z] /= vn;
-						
-						tens[n] = corr;
-					} else {
-						boundary=true;
+		final float[][][][] tensor = new float[nx][ny][nz][6];
+		if (ngbParam.getValue().equals("26C_neighbors") || ngbParam.getValue().equals("debug")) {
+			final boolean debug = ngbParam.getValue().equals("debug");
+			final int nngb = debug ? 6 : 26;
+			ParallelProcessing.forEach(nvox, new ParallelProcessing.RangeTask() {
+				public void process(int chunk, int start, int end) {
+					for (int i=start;i<end;i++) {
+						int xyz = voxel[i];
+						int x = xyz%nx;
+						int y = (xyz/nx)%ny;
+						int z = xyz/nxy;
+						// for now, skip all voxels on the boundary
+						boolean boundary=false;
+						double[] tens = new double[6];
+						for (int n=0;n<nngb;n++) {
+							// the correlations are computed with the direct neighbors only
+							if (mask[xyz+d*offset[n]] && mask[xyz+offset[n]]) {
+								double corr = correlation[n][i]*correlation[n][i];
+								
+								if (debug) {
+									tens[n] = corr;
+								} else {
+									float[] v = Ngb.directionVector(n);
+									tens[XX]	+= corr*v[X]*v[X];
+									tens[XY]	+= corr*v[X]*v[Y];
+									tens[XZ]	+= corr*v[X]*v[Z];
+									tens[YY]	+= corr*v[Y]*v[Y];
+									tens[YZ]	+= corr*v[Y]*v[Z];
+									tens[ZZ]	+= corr*v[Z]*v[Z];
+								}
+							} else {
+								boundary=true;
+							}
+						}
+						if (!boundary) {
+							double scale = debug ? 1.0 : 26.0;
+							tensor[x][y][z][XX] = (float)(tens[XX]/scale);
+							tensor[x][y][z][XY] = (float)(tens[XY]/scale);
+							tensor[x][y][z][XZ] = (float)(tens[XZ]/scale);
+							tensor[x][y][z][YY] = (float)(tens[YY]/scale);
+							tensor[x][y][z][YZ] = (float)(tens[YZ]/scale);
+							tensor[x][y][z][ZZ] = (float)(tens[ZZ]/scale);
+						}
 					}
 				}
-				if (!boundary) {
-					tensor[x][y][z][XX] = (float)(tens[XX]);
-					tensor[x][y][z][XY] = (float)(tens[XY]);
-					tensor[x][y][z][XZ] = (float)(tens[XZ]);
-					tensor[x][y][z][YY] = (float)(tens[YY]);
-					tensor[x][y][z][YZ] = (float)(tens[YZ]);
-					tensor[x][y][z][ZZ] = (float)(tens[ZZ]);
-				}
-			}
+			});
 		} else if (ngbParam.getValue().equals("distance_based")) {
-			float maxdist = extentParam.getValue().floatValue()/Numerics.min(rx,ry,rz);
-			int dmax = Numerics.floor(maxdist);
+			final float maxdist = extentParam.getValue().floatValue()/Numerics.min(rx,ry,rz);
+			final int dmax = Numerics.floor(maxdist);
 			
-			for (int x=dmax;x<nx-dmax;x++) for (int y=dmax;y<ny-dmax;y++) for (int z=dmax;z<nz-dmax;z++) if (mask[x][y][z]) {
-				// for now, skip all voxels on the boundary
-				boolean boundary=false;
-				double[] tens = new double[6];
-				double nsample=0.0;
-				for (int i=-dmax;i<=dmax;i++) for (int j=-dmax;j<=dmax;j++) for (int l=-dmax;l<=dmax;l++) if (!boundary) {
-					if (mask[x+i][y+j][z+l]) {
-						double dist = FastMath.sqrt(i*i+j*j+l*l);
-						if (dist<=maxdist) {
-							double corr = 0.0;
-							for (int t=0;t<nt;t++) corr += data[x][y][z][t]*data[x+i][y+j][z+l][t];
-							corr/= nt*norm[x][y][z]*norm[x+i][y+j][z+l];
-							double[] v = new double[]{i/dist,j/dist,l/dist};
-							tens[XX]	+= corr*v[X]*v[X];
-							tens[XY]	+= corr*v[X]*v[Y];
-							tens[XZ]	+= corr*v[X]*v[Z];
-							tens[YY]	+= corr*v[Y]*v[Y];
-							tens[YZ]	+= corr*v[Y]*v[Z];
-							tens[ZZ]	+= corr*v[Z]*v[Z];
-							nsample++;
+			ParallelProcessing.forEach(Numerics.max(0,nz-2*dmax), new ParallelProcessing.RangeTask() {
+				public void process(int chunk, int zmin, int zmax) {
+					for (int z=dmax+zmin;z<dmax+zmax;z++) for (int y=dmax;y<ny-dmax;y++) for (int x=dmax;x<nx-dmax;x++) {
+						int xyz = x+nx*y+nxy*z;
+						if (!mask[xyz]) continue;
+						// for now, skip all voxels on the boundary
+						boolean boundary=false;
+						double[] tens = new double[6];
+						double nsample=0.0;
+						for (int i=-dmax;i<=dmax;i++) for (int j=-dmax;j<=dmax;j++) for (int l=-dmax;l<=dmax;l++) if (!boundary) {
+							int ngb = xyz+i+nx*j+nxy*l;
+							if (mask[ngb]) {
+								double dist = FastMath.sqrt(i*i+j*j+l*l);
+								if (dist<=maxdist) {
+									double corr = 0.0;
+									float[] sxyz = series[z];
+									float[] sngb = series[z+l];
+									int oxyz = (x+nx*y)*nt;
+									int ongb = (x+i+nx*(y+j))*nt;
+									for (int t=0;t<nt;t++) corr += sxyz[oxyz+t]*sngb[ongb+t];
+									corr/= nt*norm[xyz]*norm[ngb];
+									double[] v = new double[]{i/dist,j/dist,l/dist};
+									tens[XX]	+= corr*v[X]*v[X];
+									tens[XY]	+= corr*v[X]*v[Y];
+									tens[XZ]	+= corr*v[X]*v[Z];
+									tens[YY]	+= corr*v[Y]*v[Y];
+									tens[YZ]	+= corr*v[Y]*v[Z];
+									tens[ZZ]	+= corr*v[Z]*v[Z];
+									nsample++;
+								}
+							} else {
+								// only if a boundary, not if beyond max distance!
+								boundary=true;
+							}
+						}
+						if (!boundary) {
+							tensor[x][y][z][XX] = (float)(tens[XX]/nsample);
+							tensor[x][y][z][XY] = (float)(tens[XY]/nsample);
+							tensor[x][y][z][XZ] = (float)(tens[XZ]/nsample);
+							tensor[x][y][z][YY] = (float)(tens[YY]/nsample);
+							tensor[x][y][z][YZ] = (float)(tens[YZ]/nsample);
+							tensor[x][y][z][ZZ] = (float)(tens[ZZ]/nsample);
 						}
-					} else {
-						// only if a boundary, not if beyond max distance!
-						boundary=true;
 					}
 				}
-				if (!boundary) {
-					tensor[x][y][z][XX] = (float)(tens[XX]/nsample);
-					tensor[x][y][z][XY] = (float)(tens[XY]/nsample);
-					tensor[x][y][z][XZ] = (float)(tens[XZ]/nsample);
-					tensor[x][y][z][YY] = (float)(tens[YY]/nsample);
-					tensor[x][y][z][YZ] = (float)(tens[YZ]/nsample);
-					tensor[x][y][z][ZZ] = (float)(tens[ZZ]/nsample);
-				}
-			}		
+			});
 		}
 		
 		System.out.println("output..");
@@ -352,14 +391,27 @@ public class JistFmriCorrelationTensors extends ProcessingAlgorithm {
 		histImg.setName(dataName + "_hist");
 		histImage.setValue(histImg);
 		
-		ImageDataFloat meanImg = new ImageDataFloat(center);		
+		float[][][] buffer = new float[nx][ny][nz];
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) buffer[x][y][z] = center[x+nx*y+nxy*z];
+		ImageDataFloat meanImg = new ImageDataFloat(buffer);		
 		meanImg.setHeader(dataHeader);
 		meanImg.setName(dataName + "_mean");
 		meanImage.setValue(meanImg);
-		ImageDataFloat normImg = new ImageDataFloat(norm);		
+		
+		buffer = new float[nx][ny][nz];
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) buffer[x][y][z] = norm[x+nx*y+nxy*z];
+		ImageDataFloat normImg = new ImageDataFloat(buffer);		
 		normImg.setHeader(dataHeader);
 		normImg.setName(dataName + "_norm");
 		normImage.setValue(normImg);
 	}
 
+	private static final double correlationType(double corr, byte corrtype) {
+		if (corrtype==ABS) return Numerics.abs(corr);
+		else if (corrtype==POS) return Numerics.max(corr,0.0);
+		else if (corrtype==NEG) return -Numerics.min(corr,0.0);
+		else if (corrtype==SFT) return 0.5*(1.0+corr);
+		else return corr;
+	}
+
 }
@@ -1,5 +1,7 @@
 package de.mpg.cbs.jist.fmri;
 
+import java.util.Arrays;
+
 import edu.jhu.ece.iacl.jist.pipeline.AlgorithmRuntimeException;
 import edu.jhu.ece.iacl.jist.pipeline.CalculationMonitor;
 import edu.jhu.ece.iacl.jist.pipeline.ProcessingAlgorithm;
@@ -344,33 +346,34 @@ public class JistFmriCorticalSmoothing extends ProcessingAlgorithm {
 			//xyz = x+nx*y+nx*ny*z;
 			if (msk[x][y][z]) pts++;
 		}
+		int[] points = new int[pts];
 		int npt = 0;
+		for (int x=0;x<nax-1;x+=substep) for (int y=0;y<nay-1;y+=substep) for (int z=0;z<naz-1;z+=substep) {
+			// no need to compute outside the cortex
+			if (msk[x][y][z]) {
+				points[npt] = x+nax*y+nax*nay*z;
+				npt++;
+			}
+		}
+		// smooth by batches of 1% of the points in parallel, then store the results in order
+		boolean volumetric = typeParam.getValue().equals("volumetric");
+		int batch = Numerics.max(1, npt/100);
+		float[][] smoothedBatch = new float[batch][nfd];
 		int iter = 0;
 		long looptime = System.currentTimeMillis();
-		float[] smoothed = new float[nfd];
 		int xp,yp,zp;
 		double alpha,beta,gamma;
 		float weight;
-		for (int x=0;x<nax-1;x+=substep) for (int y=0;y<nay-1;y+=substep) for (int z=0;z<naz-1;z+=substep) {
-			//xyz = x+nx*y+nx*ny*z;
+		for (int start=0;start<npt;start+=batch) {
+			int nb = Numerics.min(batch, npt-start);
+			int[] batchpts = Arrays.copyOfRange(points, start, start+nb);
+			regionSmoothing.dilateFromPoints(smoothedBatch, batchpts, nb, volumetric);
 			
-			if (msk[x][y][z]) {
-				// no need to compute outside the cortex
-				npt++;
-				if (npt%(pts/100)==0) {
-					iter++;
-					long newtime = System.currentTimeMillis();
-					Interface.displayMessage("iter "+iter+", t="+(newtime-looptime)+", "+npt+" pts\n");
-					looptime = newtime;
-				}
-				
-				// minimal marching distance from voxel
-				//sdata[x][y][z] = regionSmoothing.smoothFromPoint( xyz);
-				if (typeParam.getValue().equals("volumetric")) {
-					regionSmoothing.dilateVolumetrically(smoothed, x, y, z);
-				} else {
-					regionSmoothing.dilateFromPoint(smoothed, x, y, z);
-				}
+			for (int i=0;i<nb;i++) {
+				int z = batchpts[i]/(nax*nay);
+				int y = (batchpts[i]-z*nax*nay)/nax;
+				int x = batchpts[i]-z*nax*nay-y*nax;
+				float[] smoothed = smoothedBatch[i];
 				
 				if (spaceParam.getValue().equals("anatomical") || 
 					spaceParam.getValue().equals("subsampled_anatomical") || 
@@ -409,7 +412,11 @@ public class JistFmriCorticalSmoothing extends ProcessingAlgorithm {
 					for (int n=0;n<nfd;n++) sdata[xp+1][yp+1][zp+1][n] += weight*smoothed[n];
 					sden[xp+1][yp+1][zp+1] += weight;
 				}
-			}	
+			}
+			iter++;
+			long newtime = System.currentTimeMillis();
+			Interface.displayMessage("iter "+iter+", t="+(newtime-looptime)+", "+(start+nb)+" pts\n");
+			looptime = newtime;
 		}
 		data = null;
 		mapping = null;
@@ -8,6 +8,7 @@ import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamCollection;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamFloat;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamOption;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamVolume;
+import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamInteger;
 import edu.jhu.ece.iacl.jist.structures.image.ImageHeader;
 import edu.jhu.ece.iacl.jist.structures.image.VoxelType;
 
@@ -46,6 +47,7 @@ public class JistIntensityBackgroundEstimator extends ProcessingAlgorithm {
 	private		static final byte	EXP = 2;
 	
 	private ParamBoolean	skip0Param;
+	private ParamInteger	threadsParam;
 	
 	protected void createInputParameters(ParamCollection inputParams) {
 		inputParams.add(inputImage = new ParamVolume("Input Image"));
@@ -57,6 +59,8 @@ public class JistIntensityBackgroundEstimator extends ProcessingAlgorithm {
 		inputParams.add(ratioParam = new ParamFloat("Robust min, max thresholding", 0.0f, 1.0f, 0.0f));
 		inputParams.add(skip0Param = new ParamBoolean("Skip zero values", true));
 		
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new IntensityBackgroundEstimator();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -100,6 +104,8 @@ public class JistIntensityBackgroundEstimator extends ProcessingAlgorithm {
 		algorithm.setBackgroundDistribution(distribParam.getValue());
 		algorithm.setSkipZeroValues(skip0Param.getValue());
 		
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 
 		Interface.setFloatImage3D(algorithm.getMaskedImage(), dims, maskedImage, name+"_masked", header);
@@ -8,6 +8,7 @@ import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamCollection;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamFloat;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamOption;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamVolume;
+import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamInteger;
 import edu.jhu.ece.iacl.jist.structures.image.ImageHeader;
 import edu.jhu.ece.iacl.jist.structures.image.VoxelType;
 
@@ -38,6 +39,7 @@ public class JistIntensitySmoothing extends ProcessingAlgorithm {
 	// parameters
 	private		static final String[]	methods = IntensitySmoothing.methods;
 	private		String		method = "gaussian";
+	private ParamInteger	threadsParam;
 	
 	protected void createInputParameters(ParamCollection inputParams) {
 		inputParams.add(inputImage = new ParamVolume("Input Image"));
@@ -50,6 +52,8 @@ public class JistIntensitySmoothing extends ProcessingAlgorithm {
 		inputParams.add(scaleParam = new ParamFloat("Smoothing scale (mm)", 0.0f, 100.0f, 1.0f));
 		inputParams.add(skip0Param = new ParamBoolean("Skip zero values", true));
 		
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new IntensitySmoothing();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -96,6 +100,8 @@ public class JistIntensitySmoothing extends ProcessingAlgorithm {
 		algorithm.setSmoothingMethod(methodParam.getValue());
 		algorithm.setSkipZeroValues(skip0Param.getValue());
 		
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 
 		Interface.setFloatImage3D(algorithm.getSmoothedImage(), dims, smoothedImage, name+"_smoothed", header);
@@ -39,6 +39,7 @@ public class JistIntensityTVDenoising extends ProcessingAlgorithm {
 	private ParamInteger binParam;
 	private ParamBoolean adjustParam;
 	private ParamOption histParam;
+	private ParamOption solverParam;
 	
 	private ParamVolume denoiseImage;
 	private ParamVolume edgeImage;
@@ -52,6 +53,9 @@ public class JistIntensityTVDenoising extends ProcessingAlgorithm {
 	private		static final String[]	histTypes = {"Full_histogram", "KIThreshold","ExpnormKI","NonnegKI"};
 	private		String		histType = "Full_histogram";
 	
+	private		static final String[]	solverTypes = {"Chambolle","Chambolle-Pock"};
+	private		String		solverType = "Chambolle";
+	
 	protected void createInputParameters(ParamCollection inputParams) {
 		inputParams.add(inputImage = new ParamVolume("Input Image"));
 		
@@ -64,6 +68,8 @@ public class JistIntensityTVDenoising extends ProcessingAlgorithm {
 		
 		inputParams.add(ratioParam = new ParamFloat("Scaling ratio", 0.0f, 1.0f, 0.05f));
 		inputParams.add(adjustParam = new ParamBoolean("Two-level denoising", false));
+		inputParams.add(solverParam = new ParamOption("TV solver", solverTypes));
+		solverParam.setValue(solverType);
 		
 		inputParams.setPackage("CBS Tools");
 		inputParams.setCategory("Intensity.devel");
@@ -162,6 +168,7 @@ public class JistIntensityTVDenoising extends ProcessingAlgorithm {
 		
 		// apply to TV algorithm
 		TotalVariation algo = new TotalVariation(image,mask,nx,ny,nz, ratioParam.getValue().floatValue(), 0.125f, 0.0001f, 100);
+		algo.setPrimalDual(solverParam.getValue().equals("Chambolle-Pock"));
 		
 		algo.denoiseImage(stdev, adjustParam.getValue().booleanValue());
 		
@@ -48,12 +48,15 @@ public class JistLaminarProfileMeshing extends ProcessingAlgorithm {
 	private ParamSurfaceCollection 	sampledSurfaces;
 	
 	private LaminarProfileMeshing algorithm;
+	private ParamInteger	threadsParam;
 	
 	protected void createInputParameters(ParamCollection inputParams) {
 		
 		inputParams.add(inputSurface=new ParamSurface("Input Surface"));
 		inputParams.add(layersImage = new ParamVolume("Profile Surface Image (4D)"));
 		
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new LaminarProfileMeshing();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -99,6 +102,8 @@ public class JistLaminarProfileMeshing extends ProcessingAlgorithm {
 		algorithm.setDimensions(dims[0],dims[1],dims[2],nlayers);
 		algorithm.setResolutions(res);
 
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 
 		for (int n=0;n<nlayers;n++) {
@@ -6,6 +6,7 @@ import edu.jhu.ece.iacl.jist.pipeline.ProcessingAlgorithm;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamCollection;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamOption;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamVolume;
+import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamVolumeCollection;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamDouble;
 import edu.jhu.ece.iacl.jist.pipeline.parameter.ParamInteger;
 import edu.jhu.ece.iacl.jist.structures.image.ImageData;
@@ -38,8 +39,10 @@ public class JistLaminarProfileSampling extends ProcessingAlgorithm {
 	private ParamVolume layersImage;
 	private ParamVolume intensityImage;
 	private ParamVolume maskImage;
+	private ParamVolumeCollection extraImages;
 		
 	private ParamVolume mappedImage;
+	private ParamVolumeCollection extraMappedImages;
 	private ParamVolume mappedmaskImage;
 	
 	// global variables
@@ -48,6 +51,7 @@ public class JistLaminarProfileSampling extends ProcessingAlgorithm {
 	private static final byte Z = 2;
 
 	private LaminarProfileSampling algorithm;
+	private ParamInteger	threadsParam;
 		
 	protected void createInputParameters(ParamCollection inputParams) {
 		
@@ -56,9 +60,13 @@ public class JistLaminarProfileSampling extends ProcessingAlgorithm {
 		imageParams.add(intensityImage = new ParamVolume("Intensity Image",null,-1,-1,-1,-1));
 		imageParams.add(maskImage = new ParamVolume("Cortex Mask (opt)",null,-1,-1,-1,-1));
 		maskImage.setMandatory(false);
+		imageParams.add(extraImages = new ParamVolumeCollection("Additional Intensity Images (opt)"));
+		extraImages.setMandatory(false);
 		
 		inputParams.add(imageParams);
 			
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new LaminarProfileSampling();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -82,6 +90,10 @@ public class JistLaminarProfileSampling extends ProcessingAlgorithm {
 		
 		outputParams.add(mappedmaskImage = new ParamVolume("Profile 4D Mask",null,-1,-1,-1,-1));
 		
+		outputParams.add(extraMappedImages = new ParamVolumeCollection("Additional Profile-mapped Images"));
+		extraMappedImages.setMandatory(false);
+		extraMappedImages.setLoadAndSaveOnValidate(false);
+		
 		outputParams.setName("layers images");
 		outputParams.setLabel("layers images");
 	}
@@ -99,12 +111,26 @@ public class JistLaminarProfileSampling extends ProcessingAlgorithm {
 		algorithm = new LaminarProfileSampling();
 		
 		algorithm.setProfileSurfaceImage(Interface.getFloatImage4D(layersImage));
-		algorithm.setIntensityImage(Interface.getFloatImage3D(intensityImage));
+		// all the intensity images are sampled along the same profiles
+		int nextra = 0;
+		if (extraImages.getImageDataList()!=null) nextra = extraImages.getImageDataList().size();
+		float[][] intensity = new float[1+nextra][];
+		intensity[0] = Interface.getFloatImage3D(intensityImage);
+		for (int i=0;i<nextra;i++) {
+			float[][][] buffer = (new ImageDataFloat(extraImages.getImageDataList().get(i))).toArray3d();
+			intensity[1+i] = new float[dims[0]*dims[1]*dims[2]];
+			for (int x=0;x<dims[0];x++) for (int y=0;y<dims[1];y++) for (int z=0;z<dims[2];z++) {
+				intensity[1+i][x+dims[0]*y+dims[0]*dims[1]*z] = buffer[x][y][z];
+			}
+		}
+		algorithm.setIntensityImages(intensity);
 		algorithm.setCortexMask(Interface.getUByteImage3D(maskImage));
 		
 		algorithm.setDimensions(dims);
 		algorithm.setResolutions(res);
 
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 		
 		// output
@@ -113,6 +139,20 @@ public class JistLaminarProfileSampling extends ProcessingAlgorithm {
 		Interface.setFloatImage4D(algorithm.getProfileMappedIntensityImage(), dims, dims[3], mappedImage, name+"_profiles", header);
 		
 		Interface.setUByteImage4D(algorithm.getProfile4Dmask(), dims, dims[3], mappedmaskImage, name+"_4dmask", header);
+		
+		for (int i=0;i<nextra;i++) {
+			float[] mapped = algorithm.getProfileMappedIntensityImages()[1+i];
+			int nxyz = dims[0]*dims[1]*dims[2];
+			float[][][][] buffer = new float[dims[0]][dims[1]][dims[2]][dims[3]];
+			for (int x=0;x<dims[0];x++) for (int y=0;y<dims[1];y++) for (int z=0;z<dims[2];z++) for (int l=0;l<dims[3];l++) {
+				buffer[x][y][z][l] = mapped[x+dims[0]*y+dims[0]*dims[1]*z+nxyz*l];
+			}
+			ImageDataFloat bufferData = new ImageDataFloat(buffer);
+			bufferData.setHeader(header);
+			bufferData.setName(extraImages.getImageDataList().get(i).getName()+"_profiles");
+			extraMappedImages.add(bufferData);
+			extraMappedImages.writeAndFreeNow(this);
+		}
 	}
 
 
@@ -73,6 +73,7 @@ public class JistLaminarVolumetricLayering extends ProcessingAlgorithm {
 	private static final boolean debugOutput=false;
 	
 	private LaminarVolumetricLayering algorithm;
+	private ParamInteger	threadsParam;
 	
 	protected void createInputParameters(ParamCollection inputParams) {
 		
@@ -109,6 +110,8 @@ public class JistLaminarVolumetricLayering extends ProcessingAlgorithm {
 		
 		inputParams.add(mainParams);
 		
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new LaminarVolumetricLayering();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -167,6 +170,8 @@ public class JistLaminarVolumetricLayering extends ProcessingAlgorithm {
 		algorithm.setDimensions(dims);
 		algorithm.setResolutions(res);
 
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 
 		// output
@@ -45,6 +45,7 @@ public class JistSegmentationDistanceBasedProbability extends ProcessingAlgorith
 	private ParamVolume 	bgmaskImage;
 		
 	private SegmentationDistanceBasedProbability algorithm;
+	private ParamInteger	threadsParam;
 	
 	protected void createInputParameters(ParamCollection inputParams) {
 		
@@ -59,6 +60,8 @@ public class JistSegmentationDistanceBasedProbability extends ProcessingAlgorith
 		inputParams.add(mergeParam = new ParamOption("Probability merging",algorithm.mergingTypes));
 		mergeParam.setValue(algorithm.mergingType);
 		
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new SegmentationDistanceBasedProbability();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -119,6 +122,8 @@ public class JistSegmentationDistanceBasedProbability extends ProcessingAlgorith
 		algorithm.setBackgroundIncluded(bgincludedParam.getValue().booleanValue());
 		algorithm.setProbabilityMerging(mergeParam.getValue());
 				
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 		
 		// outputs
@@ -72,6 +72,7 @@ public class JistSegmentationSureSeg extends ProcessingAlgorithm {
 	private ParamVolume debugImage;
 	
 	private SegmentationSureSeg algorithm;
+	private ParamInteger	threadsParam;
 	
 	protected void createInputParameters(ParamCollection inputParams) {
 		
@@ -121,6 +122,8 @@ public class JistSegmentationSureSeg extends ProcessingAlgorithm {
 		
 		inputParams.add(mainParams);
 		
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new SegmentationSureSeg();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -199,6 +202,8 @@ public class JistSegmentationSureSeg extends ProcessingAlgorithm {
 		algorithm.setReestimateIntensityDistributions(computeDistributionParam.getValue().booleanValue());
 		algorithm.setEstimateNoise(computeNoiseParam.getValue().booleanValue());
 		
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 		
 		// outputs
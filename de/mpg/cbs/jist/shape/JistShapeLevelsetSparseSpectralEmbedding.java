@@ -45,7 +45,7 @@ public class JistShapeLevelsetSparseSpectralEmbedding extends ProcessingAlgorith
 	private ParamOption featureParam;
 	private static final String[] featureTypes = {"distance","gradient","inverse_gradient"}; 
 	private ParamOption methodParam;
-	private static final String[] methodTypes = {"full_decomposition","partial_QR","power_iteration"}; 
+	private static final String[] methodTypes = {"lanczos","partial_QR"}; 
 	
 	private ParamVolume embeddingImage;
 	//private ParamVolume matrixImage;
@@ -146,100 +146,39 @@ public class JistShapeLevelsetSparseSpectralEmbedding extends ProcessingAlgorith
 		}
 		System.out.println("data matrix size: "+datasize+" x "+datasize+" ("+datasize*datasize+")");
 				
-		// 1. build a sparse version of a gigantic matrix
-		
-		// count the connections
-		int connections=0;
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			if (Numerics.abs(input[x][y][z])<=boundary) {
-				int loc = location[x][y][z];
-				for (int n=0;n<connectivity;n++) {
-					int ngb = location[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]];
-					if (ngb>loc && ngb!=-1) {
-						connections++;
-					}
-				}
-			}
-		}
-		System.out.println("number of connections: "+connections+" ("+100.0f*(connections/(datasize*datasize))+" %)");
-		
-		// compute the values
-		double[] laplacian = new double[connections];
-		int[][] index = new int[connections][2];
-		int nc=0;
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			if (Numerics.abs(input[x][y][z])<=boundary) {
-				int loc = location[x][y][z];
-				for (int n=0;n<connectivity;n++) {
-					int ngb = location[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]];
-					if (ngb>loc && ngb!=-1) {
-						if (mode==DIST) {
-							if (n<6) laplacian[nc] = 1.0;
-							if (n<18) laplacian[nc] = INVSQRT2;
-							if (n<26) laplacian[nc] = INVSQRT3;
-						} else if (mode==GRAD) {
-							double weight = Numerics.max(1.0-Numerics.abs(input[x][y][z]-input[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]]),0.0);
-							if (n<6) laplacian[nc] = weight;
-							if (n<18) laplacian[nc] = weight*INVSQRT2;
-							if (n<26) laplacian[nc] = weight*INVSQRT3;
-						} else if (mode==INVGRAD) {
-							double weight = 1.0/Numerics.max(1e-3,Numerics.abs(input[x][y][z]-input[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]]));
-							if (n<6) laplacian[nc] = weight;
-							if (n<18) laplacian[nc] = weight*INVSQRT2;
-							if (n<26) laplacian[nc] = weight*INVSQRT3;
-						}
-						index[nc][0] = loc;
-						index[nc][1] = ngb;
-						nc++;
-					}
-				}
-			}
-		}
-
-		// L = G^-1 (D-W), D_ii = \sum_j W_ij; G_ii = 1/\phi_i
-		double[] diaglaplacian = new double[datasize];
-		for (int c=0;c<connections;c++) {
-			diaglaplacian[index[c][0]] += laplacian[c];
-			diaglaplacian[index[c][1]] += laplacian[c];
-		}
-		// D-W : diaglaplacian[] - laplacian[]
-		// (both matrices have no overlap)
-		
-		// G^-1
-		double[] diagnodeweight = new double[datasize];
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			if (Numerics.abs(input[x][y][z])<=boundary) {
-				int loc = location[x][y][z];
-				diagnodeweight[loc] = input[x][y][z];
-			}
-		}
+		// 1. build the sparse graph Laplacian L = G^-1 (D-W), D_ii = \sum_j W_ij; G_ii = 1/\phi_i
+		SparseMatrix laplacian = SpectralEmbedding.levelsetLaplacian(input, location, datasize, nx, ny, nz, connectivity, mode);
+		double[] nodeweight = SpectralEmbedding.levelsetNodeWeights(input, location, datasize, nx, ny, nz);
 		
 		// 2. Get the eigenvalues
 		Matrix eigenvectors = null;
 		Matrix eigenvalues = null;
-		if (methodParam.getValue().equals("partial_QR")) {
+		if (methodParam.getValue().equals("lanczos")) {
+			double[] values = new double[dimensions];
+			double[][] vectors = SpectralEmbedding.smallestEigenvectors(laplacian, nodeweight, dimensions, values, 1000, 1e-6);
+			eigenvectors = new Matrix(datasize,dimensions);
+			eigenvalues = new Matrix(dimensions,1);
+			for (int j = 0; j < vectors.length; j++) {
+				for (int i = 0; i < datasize; i++) {
+					eigenvectors.set(i,j, vectors[j][i]);
+				}
+				eigenvalues.set(j,0, values[j]);
+			}
+		} else if (methodParam.getValue().equals("partial_QR")) {
 			// initial basis: random vector
 			Matrix basis = Matrix.random(datasize,dimensions);
 			Matrix qbasis = basis.qr().getQ();
+			double[] vec = new double[datasize];
+			double[] prod = new double[datasize];
 			int tmax = 100;
 			for (int t=0;t<tmax;t++) {
 				// power iteration
-				
 				// b' = G^-1 (D-W) b
-				// D*b
-				for (int n=0;n<datasize;n++) for (int d=0;d<dimensions;d++) {
-					basis.set(n,d, diaglaplacian[n]*qbasis.get(n,d));
-				}
-				// D*b - W*b
-				for (int c=0;c<connections;c++) for (int d=0;d<dimensions;d++) {
-					basis.set(index[nc][0],d, basis.get(index[c][0],d) - laplacian[c]*qbasis.get(index[c][1],d));
-					basis.set(index[nc][1],d, basis.get(index[c][1],d) - laplacian[c]*qbasis.get(index[c][0],d));
-				}
-				// G^1*(D-W)b
-				for (int n=0;n<datasize;n++) for (int d=0;d<dimensions;d++) {
-					basis.set(n,d, diagnodeweight[n]*basis.get(n,d));
+				for (int d=0;d<dimensions;d++) {
+					for (int n=0;n<datasize;n++) vec[n] = qbasis.get(n,d);
+					laplacian.multiply(vec, prod);
+					for (int n=0;n<datasize;n++) basis.set(n,d, nodeweight[n]*prod[n]);
 				}
-				
 				// orthogonalization
 				QRDecomposition qr = basis.qr();
 				basis = qr.getQ();
@@ -256,7 +195,7 @@ public class JistShapeLevelsetSparseSpectralEmbedding extends ProcessingAlgorith
 					eigenvalues = new Matrix(dimensions,1);
 					Matrix r = qr.getR();
 					for (int j = 0; j < dimensions; j++) {
-						eigenvalues.set(j,1, r.get(j,j));
+						eigenvalues.set(j,0, r.get(j,j));
 					}
 				} else {
 					qbasis = basis;
@@ -45,7 +45,7 @@ public class JistShapeLevelsetSpectralEmbedding extends ProcessingAlgorithm {
 	private ParamOption featureParam;
 	private static final String[] featureTypes = {"distance","gradient","inverse_gradient"}; 
 	private ParamOption methodParam;
-	private static final String[] methodTypes = {"full_decomposition","partial_QR","power_iteration"}; 
+	private static final String[] methodTypes = {"lanczos","full_decomposition","partial_QR"}; 
 	
 	private ParamVolume embeddingImage;
 	//private ParamVolume matrixImage;
@@ -146,98 +146,75 @@ public class JistShapeLevelsetSpectralEmbedding extends ProcessingAlgorithm {
 		}
 		System.out.println("data matrix size: "+datasize+" x "+datasize);
 				
-		// 1. build a gigantic matrix
-		double[][] laplacian = new double[datasize][datasize];
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			if (Numerics.abs(input[x][y][z])<=boundary) {
-				int loc = location[x][y][z];
-				for (int n=0;n<connectivity;n++) {
-					int ngb = location[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]];
-					if (ngb!=-1) {
-						if (mode==DIST) {
-							if (n<6) laplacian[loc][ngb] = 1.0;
-							if (n<18) laplacian[loc][ngb] = INVSQRT2;
-							if (n<26) laplacian[loc][ngb] = INVSQRT3;
-						} else if (mode==GRAD) {
-							double weight = Numerics.max(1.0-Numerics.abs(input[x][y][z]-input[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]]),0.0);
-							if (n<6) laplacian[loc][ngb] = weight;
-							if (n<18) laplacian[loc][ngb] = weight*INVSQRT2;
-							if (n<26) laplacian[loc][ngb] = weight*INVSQRT3;
-						} else if (mode==INVGRAD) {
-							double weight = 1.0/Numerics.max(1e-3,Numerics.abs(input[x][y][z]-input[x+Ngb.x[n]][y+Ngb.y[n]][z+Ngb.z[n]]));
-							if (n<6) laplacian[loc][ngb] = weight;
-							if (n<18) laplacian[loc][ngb] = weight*INVSQRT2;
-							if (n<26) laplacian[loc][ngb] = weight*INVSQRT3;
-						}
-					}
-				}
-			}
-		}
-		// L = G^-1 (D-W), D_ii = \sum_j W_ij; G_ii = 1/\phi_i
-		for (int n=0;n<datasize;n++) {
-			double sum = 0.0;
-			for (int m=0;m<datasize;m++) { 
-				sum += laplacian[n][m];
-				laplacian[n][m] *= -1.0;
-			}
-			laplacian[n][n] += sum;
-		}
-		// G^-1
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			if (Numerics.abs(input[x][y][z])<=boundary) {
-				int loc = location[x][y][z];
-				laplacian[loc][loc] *= input[x][y][z];
-			}
-		}
-		Matrix laplacianmatrix = new Matrix(laplacian);
+		// 1. build the sparse graph Laplacian L = G^-1 (D-W), D_ii = \sum_j W_ij; G_ii = 1/\phi_i
+		SparseMatrix laplacian = SpectralEmbedding.levelsetLaplacian(input, location, datasize, nx, ny, nz, connectivity, mode);
+		double[] nodeweight = SpectralEmbedding.levelsetNodeWeights(input, location, datasize, nx, ny, nz);
 		
 		// 2. Get the eigenvalues
 		Matrix eigenvectors = null;
 		Matrix eigenvalues = null;
-		if (methodParam.getValue().equals("full_decomposition")) {
-			EigenvalueDecomposition eigen = new EigenvalueDecomposition(laplacianmatrix);
-			
+		if (methodParam.getValue().equals("lanczos")) {
+			double[] values = new double[dimensions];
+			double[][] vectors = SpectralEmbedding.smallestEigenvectors(laplacian, nodeweight, dimensions, values, 1000, 1e-6);
 			eigenvectors = new Matrix(datasize,dimensions);
 			eigenvalues = new Matrix(dimensions,1);
-			for (int i = 0; i < datasize; i++) {
-				for (int j = 0; j < dimensions; j++) {
-					eigenvectors.set(i,j, eigen.getV().get(i,j));
+			for (int j = 0; j < vectors.length; j++) {
+				for (int i = 0; i < datasize; i++) {
+					eigenvectors.set(i,j, vectors[j][i]);
 				}
+				eigenvalues.set(j,0, values[j]);
 			}
-			for (int j = 0; j < dimensions; j++) {
-				eigenvalues.set(j,1, eigen.getRealEigenvalues()[j]);
-			}
-		} else if (methodParam.getValue().equals("partial_QR")) {
-			// initial basis: random vector
-			Matrix basis = Matrix.random(datasize,dimensions);
-			Matrix qbasis = basis.qr().getQ();
-			int tmax = 100;
-			for (int t=0;t<tmax;t++) {
-				// power iteration
-				basis = laplacianmatrix.times(qbasis);
-				// orthogonalization
-				QRDecomposition qr = basis.qr();
-				basis = qr.getQ();
-				// difference
-				double diff = 0.0;
+		} else {
+			// dense matrix: only for small data sets
+			double[][] dense = laplacian.toArray();
+			for (int n=0;n<datasize;n++) for (int m=0;m<datasize;m++) dense[n][m] *= nodeweight[n];
+			Matrix laplacianmatrix = new Matrix(dense);
+			dense = null;
+			if (methodParam.getValue().equals("full_decomposition")) {
+				EigenvalueDecomposition eigen = new EigenvalueDecomposition(laplacianmatrix);
+				
+				eigenvectors = new Matrix(datasize,dimensions);
+				eigenvalues = new Matrix(dimensions,1);
 				for (int i = 0; i < datasize; i++) {
 					for (int j = 0; j < dimensions; j++) {
-						diff = Numerics.max(diff, Numerics.abs(basis.get(i,j) - qbasis.get(i,j)));
+						eigenvectors.set(i,j, eigen.getV().get(i,j));
 					}
 				}
-				if (diff < 1e-3 || t==tmax-1) {
-					t = tmax;
-					eigenvectors = basis;
-					eigenvalues = new Matrix(dimensions,1);
-					Matrix r = qr.getR();
-					for (int j = 0; j < dimensions; j++) {
-						eigenvalues.set(j,1, r.get(j,j));
+				for (int j = 0; j < dimensions; j++) {
+					eigenvalues.set(j,0, eigen.getRealEigenvalues()[j]);
+				}
+			} else if (methodParam.getValue().equals("partial_QR")) {
+				// initial basis: random vector
+				Matrix basis = Matrix.random(datasize,dimensions);
+				Matrix qbasis = basis.qr().getQ();
+				int tmax = 100;
+				for (int t=0;t<tmax;t++) {
+					// power iteration
+					basis = laplacianmatrix.times(qbasis);
+					// orthogonalization
+					QRDecomposition qr = basis.qr();
+					basis = qr.getQ();
+					// difference
+					double diff = 0.0;
+					for (int i = 0; i < datasize; i++) {
+						for (int j = 0; j < dimensions; j++) {
+							diff = Numerics.max(diff, Numerics.abs(basis.get(i,j) - qbasis.get(i,j)));
+						}
+					}
+					if (diff < 1e-3 || t==tmax-1) {
+						t = tmax;
+						eigenvectors = basis;
+						eigenvalues = new Matrix(dimensions,1);
+						Matrix r = qr.getR();
+						for (int j = 0; j < dimensions; j++) {
+							eigenvalues.set(j,0, r.get(j,j));
+						}
+					} else {
+						qbasis = basis;
 					}
-				} else {
-					qbasis = basis;
 				}
-			}
- 		}
+ 			}
+		}
 		// 3. Project back into image space
 		float[][][][] embedding = new float[nx][ny][nz][dimensions];
 		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
@@ -46,6 +46,7 @@ public class JistShapeSimpleSkeleton extends ProcessingAlgorithm {
 	private ParamVolume skelImage;
 	
 	private ShapeSimpleSkeleton algorithm;
+	private ParamInteger	threadsParam;
 	
 	protected void createInputParameters(ParamCollection inputParams) {
 		
@@ -55,6 +56,8 @@ public class JistShapeSimpleSkeleton extends ProcessingAlgorithm {
 		inputParams.add(boundParam = new ParamFloat("Boundary threshold (>0: inside, <0: outside)", -100.0f, 100.0f, 0.0f));
 		inputParams.add(distParam = new ParamFloat("Skeleton threshold (>0: inside, <0: outside)", -100.0f, 100.0f, 2.0f));
 		
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new ShapeSimpleSkeleton();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -101,6 +104,8 @@ public class JistShapeSimpleSkeleton extends ProcessingAlgorithm {
 		algorithm.setBoundaryThreshold(boundParam.getValue().floatValue());
 		algorithm.setSkeletonThreshold(distParam.getValue().floatValue());
 		
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 		
 		// outputs
@@ -211,18 +211,15 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 		statistics.add(stat2Param.getValue());
 		statistics.add(stat3Param.getValue());
 		
-		// pre-compute redundant measures ?
+		// all the label volumes, overlaps and distances are computed together when first needed
+		LabelStatistics labelstats = new LabelStatistics(segmentation, template, lbid, nx, ny, nz);
 		
 		// compute the statistics
 		for (int s=0; s<statistics.size(); s++) {
 			System.out.print("Statistic: "+statistics.get(s)+"\n");
 			if (statistics.get(s).equals("Voxels")) {
 				// compute the volumes
-				float[] volume = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectLabeling.SUPEQUAL,ObjectLabeling.INFEQUAL);
-					volume[n] = ObjectStatistics.volume(obj,nx,ny,nz);
-				}
+				float[] volume = labelstats.segmentationVolumes();
 				line = "Voxels"+imgtag+notag+notag;
 				for (int n=0;n<nlabels;n++) line += (delim+(int)volume[n]);
 				line +="\n";
@@ -230,11 +227,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Volume")) {
 				// compute the volumes
-				float[] volume = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectLabeling.SUPEQUAL,ObjectLabeling.INFEQUAL);
-					volume[n] = ObjectStatistics.volume(obj,nx,ny,nz);
-				}
+				float[] volume = labelstats.segmentationVolumes();
 				line = "Volume"+imgtag+notag+notag;
 				for (int n=0;n<nlabels;n++) line += (delim+volume[n]*rx*ry*rz);
 				line +="\n";
@@ -242,13 +235,9 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Volumes")) {
 				// compute the volumes
-				float[][] volumes = new float[2][nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectLabeling.SUPEQUAL,ObjectLabeling.INFEQUAL);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectLabeling.SUPEQUAL,ObjectLabeling.INFEQUAL);
-					volumes[0][n] = ObjectStatistics.volume(obj1,nx,ny,nz);
-					volumes[1][n] = ObjectStatistics.volume(obj2,nx,ny,nz);
-				}
+				float[][] volumes = new float[2][];
+				volumes[0] = labelstats.segmentationVolumes();
+				volumes[1] = labelstats.referenceVolumes();
 				line = "SegVolume"+imgtag+notag+notag;
 				for (int n=0;n<nlabels;n++) line += (delim+volumes[0][n]*rx*ry*rz);
 				line +="\n";
@@ -262,17 +251,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Dice_overlap")) {
 				// compare: requires same labels (use the reference as basis)
-				float[] dice = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-					boolean[][][] xor = ObjectGeometry.binaryOperation(obj1,obj2,ObjectExtraction.XOR,nx,ny,nz);
-					float diff = ObjectStatistics.volume(xor,nx,ny,nz);
-									
-					dice[n] = ((vol1+vol2-diff)/(vol1+vol2));
-				}
+				float[] dice = labelstats.diceOverlap();
 				line = "Dice_overlap"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+dice[n]);
 				line+=("\n");
@@ -281,17 +260,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Jaccard_overlap")) {
 				// compare: requires same labels (use the template as basis)
-				float[] jaccard = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectLabeling.SUPEQUAL,ObjectLabeling.INFEQUAL);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectLabeling.SUPEQUAL,ObjectLabeling.INFEQUAL);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-					boolean[][][] xor = ObjectGeometry.binaryOperation(obj1,obj2,ObjectLabeling.XOR,nx,ny,nz);
-					float diff = ObjectStatistics.volume(xor,nx,ny,nz);
-									
-					jaccard[n] = ((vol1+vol2-diff)/(vol1+vol2+diff));
-				}
+				float[] jaccard = labelstats.jaccardOverlap();
 				line = "Jaccard_overlap"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+jaccard[n]);
 				line+=("\n");
@@ -299,15 +268,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Volume_difference")) {
 				// compare: requires same labels (use the reference as basis)
-				float[] voldiff = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-									
-					voldiff[n] = Numerics.abs(vol1/vol2-1.0f);
-				}
+				float[] voldiff = labelstats.volumeDifference();
 				line = "Volume_difference"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+voldiff[n]);
 				line+=("\n");
@@ -315,17 +276,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("False_positives")) {
 				// compare: requires same labels (use the reference as basis)
-				float[] fpos = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-					boolean[][][] and = ObjectGeometry.binaryOperation(obj1,obj2,ObjectExtraction.AND,nx,ny,nz);
-					float diff = ObjectStatistics.volume(and,nx,ny,nz);
-									
-					fpos[n] = (vol1-diff)/vol1;
-				}
+				float[] fpos = labelstats.falsePositives();
 				line = "False_positives"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+fpos[n]);
 				line+=("\n");
@@ -334,17 +285,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("False_negatives")) {
 				// compare: requires same labels (use the reference as basis)
-				float[] fneg = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-					boolean[][][] and = ObjectGeometry.binaryOperation(obj1,obj2,ObjectExtraction.AND,nx,ny,nz);
-					float diff = ObjectStatistics.volume(and,nx,ny,nz);
-									
-					fneg[n] = (vol2-diff)/vol2;
-				}
+				float[] fneg = labelstats.falseNegatives();
 				line = "False_negatives"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+fneg[n]);
 				line+=("\n");
@@ -353,20 +294,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Dilated_Dice_overlap")) {
 				// compare: requires same labels (use the reference as basis)
-				float[] dice = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-					boolean[][][] objd1 = Morphology.dilateObject(obj1, nx,ny,nz, 1,1,1);
-					boolean[][][] and1 = ObjectGeometry.binaryOperation(objd1,obj2,ObjectExtraction.AND,nx,ny,nz);
-					boolean[][][] objd2 = Morphology.dilateObject(obj2, nx,ny,nz, 1,1,1);
-					boolean[][][] and2 = ObjectGeometry.binaryOperation(obj1,objd2,ObjectExtraction.AND,nx,ny,nz);
-					float inter = ObjectStatistics.volume(and1,nx,ny,nz) + ObjectStatistics.volume(and2,nx,ny,nz);
-									
-					dice[n] = (inter/(vol1+vol2));
-				}
+				float[] dice = labelstats.dilatedDiceOverlap();
 				line = "Dilated_Dice_overlap"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+dice[n]);
 				line+=("\n");
@@ -375,18 +303,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Dilated_false_positive")) {
 				// compare: requires same labels (use the reference as basis)
-				float[] fpos = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					obj2 = Morphology.dilateObject(obj2, nx,ny,nz, 1,1,1);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-					boolean[][][] and = ObjectGeometry.binaryOperation(obj1,obj2,ObjectExtraction.AND,nx,ny,nz);
-					float diff = ObjectStatistics.volume(and,nx,ny,nz);
-									
-					fpos[n] = (vol1-diff)/vol1;
-				}
+				float[] fpos = labelstats.dilatedFalsePositives();
 				line = "Dilated_false_positive"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+fpos[n]);
 				line+=("\n");
@@ -395,18 +312,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Dilated_false_negative")) {
 				// compare: requires same labels (use the reference as basis)
-				float[] fneg = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					obj1 = Morphology.dilateObject(obj1, nx,ny,nz, 1,1,1);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-					boolean[][][] and = ObjectGeometry.binaryOperation(obj1,obj2,ObjectExtraction.AND,nx,ny,nz);
-					float diff = ObjectStatistics.volume(and,nx,ny,nz);
-									
-					fneg[n] = (vol2-diff)/vol2;
-				}
+				float[] fneg = labelstats.dilatedFalseNegatives();
 				line = "Dilated_false_negative"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+fneg[n]);
 				line+=("\n");
@@ -415,18 +321,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Average_surface_distance")) {
 				// compare: requires same labels (use the reference as basis)
-				float[] dist = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-					if (vol1>0 && vol2>0)
-						dist[n] = ObjectStatistics.averageSurfaceDistance(obj1,obj2,rx,ry,rz,nx,ny,nz);
-					else
-						dist[n] = -1.0f;
-					//System.out.println("asd "+n+": "+dist[n]);
-				}
+				float[] dist = labelstats.averageSurfaceDistance();
 				line = "Average_surface_distance"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+dist[n]);
 				line+=("\n");
@@ -435,18 +330,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Average_surface_difference")) {
 				// compare: requires same labels (use the reference as basis)
-				float[] dist = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-					if (vol1>0 && vol2>0)
-						dist[n] = ObjectStatistics.averageSurfaceDifference(obj1,obj2,rx,ry,rz,nx,ny,nz);
-					else
-						dist[n] = -1.0f;
-					//System.out.println("asd "+n+": "+dist[n]);
-				}
+				float[] dist = labelstats.averageSurfaceDifference();
 				line = "Average_surface_difference"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+dist[n]);
 				line+=("\n");
@@ -454,18 +338,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Average_squared_surface_distance")) {
 				// compare: requires same labels (use the reference as basis)
-				float[] dist = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-					if (vol1>0 && vol2>0)
-						dist[n] = ObjectStatistics.averageSquaredSurfaceDistance(obj1,obj2,rx,ry,rz,nx,ny,nz);
-					else
-						dist[n] = -1.0f;
-					//System.out.println("assd "+n+": "+dist[n]);
-				}
+				float[] dist = labelstats.averageSquaredSurfaceDistance();
 				line = "Average_squared_surface_distance"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+dist[n]);
 				line+=("\n");
@@ -473,18 +346,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 			}
 			if (statistics.get(s).equals("Hausdorff_distance")) {
 				// compare: requires same labels (use the reference as basis)
-				float[] hausdorff = new float[nlabels];
-				for (int n=0;n<nlabels;n++) {
-					boolean[][][] obj1 = ObjectExtraction.objectFromLabelImage(segmentation,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol1 = ObjectStatistics.volume(obj1,nx,ny,nz);
-					boolean[][][] obj2 = ObjectExtraction.objectFromLabelImage(template,nx,ny,nz,lbid[n],lbid[n],ObjectExtraction.SUPEQUAL,ObjectExtraction.INFEQUAL);
-					float vol2 = ObjectStatistics.volume(obj2,nx,ny,nz);
-					if (vol1>0 && vol2>0)
-						hausdorff[n] = ObjectStatistics.hausdorffDistance(obj1,obj2,rx,ry,rz,nx,ny,nz);
-					else
-						hausdorff[n] = -1.0f;
-					//System.out.println("hd "+n+": "+hausdorff[n]);
-				}
+				float[] hausdorff = labelstats.hausdorffDistance();
 				line = "Hausdorff_distance"+imgtag+reftag+notag;
 				for (int n=0;n<nlabels;n++) line+=(delim+hausdorff[n]);
 				line+=("\n");
@@ -722,7 +584,7 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 		String filename = statsParam.getValue().getAbsolutePath()+"/volume_statistics.csv";
 		
 		// write the output to file
-		addStatisticsToFile(filename, output, lbline);
+		StatisticsSpreadsheet.appendStatistics(filename, "MIPAV Volumetric Statistics File", lbline, output);
 		
 		// make a copy in output?
 		
@@ -730,107 +592,4 @@ public class JistStatisticsSegmentation extends ProcessingAlgorithm {
 		
 		return;
 	}
-
-	private final void addStatisticsToFile(String name, ArrayList<String> output, String lbline) {
-		
-		// open the file
-		ArrayList<String> 	previous = loadStatisticsFile(name);
-		
-		// merge the output
-		appendStatistics(previous, output, lbline);
-		
-		// save the result
-		writeStatisticsFile(previous, name);
-	}
-	
-	private	final void appendStatistics(ArrayList<String> main, ArrayList<String> added, String lbline) {
-		for (int n=0;n<added.size();n++) {
-			// extract statistics type
-			String type = added.get(n).substring(0,added.get(n).indexOf(delim));
-			System.out.println(added.get(n));
-			System.out.println(type);
-			
-			// find the last line with this type
-			int last=-1;
-			for (int m=0;m<main.size();m++) {
-				if (main.get(m).indexOf(delim)>-1)
-					if (main.get(m).substring(0,main.get(m).indexOf(delim)).equals(type)) last = m;
-			}
-			if (last>-1) {
-				main.add(last+1, added.get(n));
-			} else {
-				// add a space after each different statistic as well as labels before
-				main.add(lbline);
-				main.add(added.get(n));
-				main.add(" \n");
-			}
-		}
-	}
-	
-	private final ArrayList<String> loadStatisticsFile(String name) {
-		ArrayList<String> list = new ArrayList();
-		try {
-            System.out.println("reading previous statistic file: "+name);
-            File f = new File(name);
-            FileReader fr = new FileReader(f);
-            BufferedReader br = new BufferedReader(fr);
-            String line = br.readLine();
-			
-			// Exact corresponding template for first line ?
-            if (!line.startsWith("MIPAV Volumetric Statistics File")) {
-                System.out.println("not a proper MIPAV statistics file");
-                br.close();
-                fr.close();
-                return null;
-            }
-			line = br.readLine();
-			while (line!=null) {
-				list.add(line+"\n");
-				line = br.readLine();
-				System.out.println(line);
-			}
-			br.close();
-            fr.close();
-        }
-        catch (FileNotFoundException e) {
-            System.out.println(e.getMessage());
-        }
-        catch (IOException e) {
-            System.out.println(e.getMessage());
-        } 
-		catch (OutOfMemoryError e){
-			System.out.println(e.getMessage());
-		}
-		catch (Exception e) {
-			System.out.println(e.getMessage());
-        }
-		return list;	
-	}
-
-	private final void writeStatisticsFile(ArrayList<String> list, String name) {
-		try {
-            File f = new File(name);
-            FileWriter fw = new FileWriter(f);
-            PrintWriter pw = new PrintWriter( fw );
-			pw.write("MIPAV Volumetric Statistics File\n");
-            for (int n=0;n<list.size();n++) {
-				pw.write(list.get(n));
-				System.out.print(list.get(n));
-			}
-			pw.close();
-            fw.close();
-       }
-        catch (FileNotFoundException e) {
-            System.out.println(e.getMessage());
-        }
-        catch (IOException e) {
-            System.out.println(e.getMessage());
-        } 
-		catch (OutOfMemoryError e){
-			System.out.println(e.getMessage());
-		}
-		catch (Exception e) {
-			System.out.println(e.getMessage());
-        }
-	}	
 }
@@ -624,7 +624,7 @@ public class JistStatisticsSegmentation4D extends ProcessingAlgorithm {
 		String filename = statsParam.getValue().getAbsolutePath()+"/volume_statistics.csv";
 		
 		// write the output to file
-		addStatisticsToFile(filename, output, lbline);
+		StatisticsSpreadsheet.appendStatistics(filename, "MIPAV Volumetric Statistics File", lbline, output);
 		
 		// make a copy in output?
 		
@@ -632,107 +632,4 @@ public class JistStatisticsSegmentation4D extends ProcessingAlgorithm {
 		
 		return;
 	}
-
-	private final void addStatisticsToFile(String name, ArrayList<String> output, String lbline) {
-		
-		// open the file
-		ArrayList<String> 	previous = loadStatisticsFile(name);
-		
-		// merge the output
-		appendStatistics(previous, output, lbline);
-		
-		// save the result
-		writeStatisticsFile(previous, name);
-	}
-	
-	private	final void appendStatistics(ArrayList<String> main, ArrayList<String> added, String lbline) {
-		for (int n=0;n<added.size();n++) {
-			// extract statistics type
-			String type = added.get(n).substring(0,added.get(n).indexOf(delim));
-			System.out.println(added.get(n));
-			System.out.println(type);
-			
-			// find the last line with this type
-			int last=-1;
-			for (int m=0;m<main.size();m++) {
-				if (main.get(m).indexOf(delim)>-1)
-					if (main.get(m).substring(0,main.get(m).indexOf(delim)).equals(type)) last = m;
-			}
-			if (last>-1) {
-				main.add(last+1, added.get(n));
-			} else {
-				// add a space after each different statistic as well as labels before
-				main.add(lbline);
-				main.add(added.get(n));
-				main.add(" \n");
-			}
-		}
-	}
-	
-	private final ArrayList<String> loadStatisticsFile(String name) {
-		ArrayList<String> list = new ArrayList();
-		try {
-            System.out.println("reading previous statistic file: "+name);
-            File f = new File(name);
-            FileReader fr = new FileReader(f);
-            BufferedReader br = new BufferedReader(fr);
-            String line = br.readLine();
-			
-			// Exact corresponding template for first line ?
-            if (!line.startsWith("MIPAV Volumetric Statistics File")) {
-                System.out.println("not a proper MIPAV statistics file");
-                br.close();
-                fr.close();
-                return null;
-            }
-			line = br.readLine();
-			while (line!=null) {
-				list.add(line+"\n");
-				line = br.readLine();
-				System.out.println(line);
-			}
-			br.close();
-            fr.close();
-        }
-        catch (FileNotFoundException e) {
-            System.out.println(e.getMessage());
-        }
-        catch (IOException e) {
-            System.out.println(e.getMessage());
-        } 
-		catch (OutOfMemoryError e){
-			System.out.println(e.getMessage());
-		}
-		catch (Exception e) {
-			System.out.println(e.getMessage());
-        }
-		return list;	
-	}
-
-	private final void writeStatisticsFile(ArrayList<String> list, String name) {
-		try {
-            File f = new File(name);
-            FileWriter fw = new FileWriter(f);
-            PrintWriter pw = new PrintWriter( fw );
-			pw.write("MIPAV Volumetric Statistics File\n");
-            for (int n=0;n<list.size();n++) {
-				pw.write(list.get(n));
-				System.out.print(list.get(n));
-			}
-			pw.close();
-            fw.close();
-       }
-        catch (FileNotFoundException e) {
-            System.out.println(e.getMessage());
-        }
-        catch (IOException e) {
-            System.out.println(e.getMessage());
-        } 
-		catch (OutOfMemoryError e){
-			System.out.println(e.getMessage());
-		}
-		catch (Exception e) {
-			System.out.println(e.getMessage());
-        }
-	}	
 }
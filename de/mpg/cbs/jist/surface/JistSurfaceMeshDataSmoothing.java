@@ -61,6 +61,9 @@ import edu.jhu.ece.iacl.algorithms.volume.DistanceField;
 public class JistSurfaceMeshDataSmoothing  extends ProcessingAlgorithm{
 	ParamSurface 	inputSurface;
 	ParamDouble		fwhmParam;
+	ParamOption		methodParam;
+	
+	private static final String[] methodTypes = {"iterative","heat_kernel"};
 	
 	ParamSurface 	outputSurface;
 	    
@@ -68,6 +71,8 @@ public class JistSurfaceMeshDataSmoothing  extends ProcessingAlgorithm{
 	protected void createInputParameters(ParamCollection inputParams) {
 		inputParams.add(inputSurface = new ParamSurface("Input Surface"));
 		inputParams.add(fwhmParam = new ParamDouble("FWHM", 0.0, 20.0, 5.0));
+		inputParams.add(methodParam = new ParamOption("Smoothing method", methodTypes));
+		methodParam.setDescription("Iterative averaging, or the equivalent heat kernel computed directly (faster for large FWHM)");
 		
 		inputParams.setPackage("CBS Tools");
 		inputParams.setCategory("Surfaces.devel");
@@ -103,24 +108,16 @@ public class JistSurfaceMeshDataSmoothing  extends ProcessingAlgorithm{
 		surf.buildAllTables();
 		int[][] neighbors = surf.getNeighborVertexVertexTable();
 		
-		for (int i=0; i<nbIterations; i++) {
-			Interface.displayMessage("iter "+(i+1)+"\n");
-			double[][] sdata = surf.getVertexData();
-			
-			for(int v=0; v<surf.getVertexCount(); v++) {
-			 
-				int N = neighbors[v].length;
-				for (int d=0; d<sdata[0].length; d++) {
-					for (int n=0; n<N; n++) {			
-						sdata[v][d] += surf.getVertexData(neighbors[v][n])[d];
-					}
-					sdata[v][d] /= (N+1);
-				}
-								
-				smoothsurf.setVertexData(sdata);
-			}
-			surf = smoothsurf.clone();
+		// build the averaging operator once, and smooth all the data channels together
+		SparseMatrix average = MeshDataSmoothing.averagingOperator(neighbors);
+		double[][] sdata = surf.getVertexData();
+		
+		if (methodParam.getValue().equals("heat_kernel")) {
+			sdata = MeshDataSmoothing.heatKernelSmoothing(average, sdata, nbIterations);
+		} else {
+			sdata = MeshDataSmoothing.iterativeSmoothing(average, sdata, nbIterations);
 		}
+		smoothsurf.setVertexData(sdata);
 		
 		smoothsurf.setName(surf.getName()+"_smoothdata");
 		outputSurface.setValue(smoothsurf);
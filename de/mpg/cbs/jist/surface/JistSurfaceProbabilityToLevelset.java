@@ -41,12 +41,15 @@ public class JistSurfaceProbabilityToLevelset extends ProcessingAlgorithm {
 	private ParamVolume probaImage;
 	
 	private SurfaceProbabilityToLevelset algorithm;
+	private ParamInteger	threadsParam;
 	
 	protected void createInputParameters(ParamCollection inputParams) {
 		
 		inputParams.add(probaImage = new ParamVolume("Probability Image"));
 		inputParams.add(scaleParam = new ParamDouble("Scale (mm)", 0.0f, 100.0f, 5.0f));
 			
+		inputParams.add(threadsParam = new ParamInteger("Number of threads (0: default)", 0, 1024, 0));
+		
 		algorithm = new SurfaceProbabilityToLevelset();
 		
 		inputParams.setPackage(algorithm.getPackage());
@@ -90,6 +93,8 @@ public class JistSurfaceProbabilityToLevelset extends ProcessingAlgorithm {
 		algorithm.setDimensions(dims);
 		algorithm.setResolutions(res);
 
+		algorithm.setNumberOfThreads(threadsParam.getValue().intValue());
+		
 		algorithm.execute();
 		
 		// output
@@ -11,6 +11,12 @@ import de.mpg.cbs.structures.*;
 /**
  *
  *  This class handles basic rigid registration
+ *	<p>
+ *	The registration can be run coarse-to-fine on a pyramid of smoothed and decimated images
+ *	(built once), and the cost, gradient and hessian sums are computed in parallel.
+ *	The search direction is not the exact gradient of the normalized cost, so the final transform
+ *	depends on the starting point: with coarse levels it is faster, but may differ from the
+ *	full resolution result by a fraction of a voxel.
  *
  *	@version    Feb 2011
  *	@author     Pierre-Louis Bazin
@@ -48,13 +54,18 @@ public class BasicRigidRegistration {
 	private		int			offset = 0;				// offset used in subsampling (cyclic)
 	private		float		maxdiff;
 	
+	// multi-resolution pyramid
+	private		int			levels = 1;				// number of pyramid levels (1: full resolution only)
+	private		float[][]	sourcePyramid;			// source and target at each level (0: full resolution)
+	private		float[][]	targetPyramid;
+	private		int[][]		pyramidDim;
+	private		int			level = 0;				// current level
+	private static final	int		MINDIM = 16;		// minimum image size for coarse levels
+	
 	
 	// preset computation arrays for speed up
 	private		float[] 	hessian, gradient;
 	private		float[]		trial;	
-	private		float[] 	Xi;
-    private		float[][] 	dXi;
-    private		float[]		dsource;
 		
 	// constants
 	private static final	float	PI2 = (float)(Math.PI/2.0);
@@ -84,6 +95,17 @@ public class BasicRigidRegistration {
 	public BasicRigidRegistration(float[] src_, float[] trg_, 
 									int nx_, int ny_, int nz_, float rx_, float ry_, float rz_,
 									int iter_, float diff_, int sub_) {
+		this(src_, trg_, nx_, ny_, nz_, rx_, ry_, rz_, iter_, diff_, sub_, 1);
+	}
+	
+	/**
+	 *	constructor for a coarse-to-fine registration over the given number of pyramid levels
+	 *	(each level halves the image dimensions; coarse levels smaller than 16 voxels are skipped).
+	 *	Use a single level to get the same result as the full resolution registration.
+	 */
+	public BasicRigidRegistration(float[] src_, float[] trg_, 
+									int nx_, int ny_, int nz_, float rx_, float ry_, float rz_,
+									int iter_, float diff_, int sub_, int levels_) {
 		
 		source = src_;
 		target = trg_;
@@ -99,6 +121,7 @@ public class BasicRigidRegistration {
 		itMax = iter_;
 		maxdiff = diff_;
 		subsample = sub_;
+		levels = Numerics.max(1, levels_);
 		
 		// transform
 		transformModel = new ParametricTransform("rigid", nx/2.0f,ny/2.0f,nz/2.0f, rx,ry,rz, nx, ny, nz, nx/2.0f,ny/2.0f,nz/2.0f, rx,ry,rz, nx,ny,nz);
@@ -110,9 +133,6 @@ public class BasicRigidRegistration {
 		trial = new float[Nd];
 		gradient = new float[Nd];
 		hessian = new float[Nd];
-		Xi = new float[3];
-		dXi = new float[3][Nd];
-		dsource = new float[Nd];
 			
 		for (int n=0;n<Nd;n++) transform[n] = 0.0f;
 		rotation = transformModel.computeRotation(transform);
@@ -121,6 +141,8 @@ public class BasicRigidRegistration {
 	public final void finalize() {
 		source = null;
 		target = null;
+		sourcePyramid = null;
+		targetPyramid = null;
 	}
 	
 	public final float[] getSource() { return source; }
@@ -142,23 +164,83 @@ public class BasicRigidRegistration {
 	public final void register() {    
 		boolean stop;
 		
-        // one level
-        if (debug) BasicInfo.displayMessage("registration\n");
-        lambda = INIT_LAMBDA;
-		Nturn = 0; itPlus = 0; stop = false;
-		float E0 = computeRegistrationCoefficients(transform);
-		float E;
-		float diff = 1.0f;
-		for (int n=0;n<itMax && diff>minEdiff && lambda>minLambda;n++) {
-			if (verbose) System.out.print("iteration "+n);
-			E = registerGradientDescent();
-			diff = (E-E0)/E0;
-			if (verbose) System.out.print(" -> E = "+E+" ("+diff+")\n");
-			E0 = E;
+		buildPyramid();
+		
+		// coarse to fine
+		for (level=sourcePyramid.length-1;level>=0;level--) {
+			if (debug) BasicInfo.displayMessage("registration (level "+level+")\n");
+			lambda = INIT_LAMBDA;
+			Nturn = 0; itPlus = 0; stop = false;
+			float E0 = computeRegistrationCoefficients(transform);
+			float E;
+			float diff = 1.0f;
+			for (int n=0;n<itMax && diff>minEdiff && lambda>minLambda;n++) {
+				if (verbose) System.out.print("iteration "+n);
+				E = registerGradientDescent();
+				diff = (E-E0)/E0;
+				if (verbose) System.out.print(" -> E = "+E+" ("+diff+")\n");
+				E0 = E;
+			}
 		}
+		level = 0;
 		// update the rotation coefficients
 		rotation = transformModel.computeRotation(transform);
     }
+    
+	/**
+	 *	build the image pyramid, halving the dimensions at each level
+	 *	(the transform model maps the voxel x of level l to the voxel 2^l x of level 0)
+	 */
+	private final void buildPyramid() {
+		if (sourcePyramid!=null) return;
+		
+		int nl = 1;
+		while (nl<levels && Numerics.min(nx,ny,nz)/(1<<nl)>=MINDIM) nl++;
+		
+		sourcePyramid = new float[nl][];
+		targetPyramid = new float[nl][];
+		pyramidDim = new int[nl][3];
+		sourcePyramid[0] = source;
+		targetPyramid[0] = target;
+		pyramidDim[0][X] = nx; pyramidDim[0][Y] = ny; pyramidDim[0][Z] = nz;
+		for (int l=1;l<nl;l++) {
+			int[] dim = pyramidDim[l-1];
+			pyramidDim[l][X] = (dim[X]+1)/2;
+			pyramidDim[l][Y] = (dim[Y]+1)/2;
+			pyramidDim[l][Z] = (dim[Z]+1)/2;
+			sourcePyramid[l] = halfResolution(sourcePyramid[l-1], dim[X],dim[Y],dim[Z]);
+			targetPyramid[l] = halfResolution(targetPyramid[l-1], dim[X],dim[Y],dim[Z]);
+		}
+		if (debug) BasicInfo.displayMessage("pyramid levels: "+nl+"\n");
+	}
+	
+	/**
+	 *	smooth with a [1 2 1]/4 kernel in each direction and keep the even voxels,
+	 *	so the voxel x of the result is centered on the voxel 2x of the image
+	 */
+	private static final float[] halfResolution(final float[] img, final int nx, final int ny, final int nz) {
+		final int nhx = (nx+1)/2;
+		final int nhy = (ny+1)/2;
+		final int nhz = (nz+1)/2;
+		final float[] half = new float[nhx*nhy*nhz];
+		ParallelProcessing.forEachSlab(nhz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int z=start;z<end;z++) for (int y=0;y<nhy;y++) for (int x=0;x<nhx;x++) {
+					float sum = 0.0f, den = 0.0f;
+					for (int k=-1;k<=1;k++) for (int j=-1;j<=1;j++) for (int i=-1;i<=1;i++) {
+						int xi = 2*x+i, yj = 2*y+j, zk = 2*z+k;
+						if (xi>=0 && xi<nx && yj>=0 && yj<ny && zk>=0 && zk<nz) {
+							float w = (2-i*i)*(2-j*j)*(2-k*k);
+							sum += w*img[xi + nx*yj + nx*ny*zk];
+							den += w;
+						}
+					}
+					half[x + nhx*y + nhx*nhy*z] = sum/den;
+				}
+			}
+		});
+		return half;
+	}
   
 	/**
 	 * compute the new transform using gradient descent
@@ -217,20 +299,6 @@ public class BasicRigidRegistration {
      * performs only one iteration
 	 */
     final private float computeRegistrationCoefficients(float[] trans) {
-        float xP=0,yP=0,zP=0;
-        float dPx,dPy,dPz,sourceT,trg;
-     	int				Npt;
-		float			weight;
-		float			cost,norm;
-	
-        // init the coefficients
-		cost = 0.0f;
-		norm = 0.0f;
-		for (int i=0;i<Nd;i++) {
-			hessian[i] = 0.0f;
-			gradient[i] = 0.0f;
-		}
-		
         // set up rotation parameters
         rmat = transformModel.computeRotationMatrix(trans);
 		rotation = rmat.getMatrix();
@@ -240,46 +308,13 @@ public class BasicRigidRegistration {
 		
 		if (debug) System.out.println(displayTransform(trans));	
 			
-		// main loop
-		for (int x=offset;x<nx;x+=subsample) for (int y=offset;y<ny;y+=subsample) for (int z=offset;z<nz;z+=subsample) {
-            // compute the local position
-			transformModel.imageToTemplate(Xi,x,y,z,trans,rotation,1.0f);
-				
-			// compute interpolated values
-			sourceT = ImageInterpolation.linearInterpolation(source,0.0f,Xi[0],Xi[1],Xi[2],nx,ny,nz);
-				
-			int xyz = x + y*nx + z*nx*ny;
-			trg = target[xyz];
-			
-			if (sourceT>0 && trg>0) {
-				// data terms
-				weight = imageRegistrationWeight(trg,sourceT);
-						
-				// spatial derivatives
-				dPx = ImageInterpolation.linearInterpolationXderivative(source,Xi[0],Xi[1],Xi[2],nx,ny,nz);
-				dPy = ImageInterpolation.linearInterpolationYderivative(source,Xi[0],Xi[1],Xi[2],nx,ny,nz);
-				dPz = ImageInterpolation.linearInterpolationZderivative(source,Xi[0],Xi[1],Xi[2],nx,ny,nz);
-						
-				// coordinate derivatives
-				transformModel.imageToTemplateDerivatives(dXi,x,y,z,trans,rotation,dRa,dRb,dRc,1.0f);
-								
-				// assemble everything
-				for (int i=0;i<Nd;i++) {
-					dsource[i] = dPx*dXi[0][i] + dPy*dXi[1][i] + dPz*dXi[2][i];
-				}
-				cost += registrationCost(weight,trg,sourceT);
-				norm += registrationNorm(weight,trg,sourceT);
-	
-				for (int i=0;i<Nd;i++) {
-					gradient[i] += registrationCostGradient(weight,trg,sourceT,dsource,i);
-					hessian[i] += registrationCostHessian(weight,trg,sourceT,dsource,i);
-				}
-			}
-       }
+		float[] sums = registrationSums(trans, true);
+		float cost = sums[0];
+		float norm = sums[1];
 		if (cost>ZERO) {
 			for (int i=0;i<Nd;i++) {
-				gradient[i] = gradient[i]/norm;
-				hessian[i]  = hessian[i]/norm;
+				gradient[i] = sums[2+i]/norm;
+				hessian[i]  = sums[2+Nd+i]/norm;
 			}
 		} else {
 			for (int i=0;i<Nd;i++) {
@@ -301,45 +336,89 @@ public class BasicRigidRegistration {
      * performs only one iteration
 	 */
     final private float computeRegistrationEnergy(float[] trans) {
-        float weight;
-        float dPx,dPy,dPz,sourceT;
-        float			cost,norm;
-        float trg;
-		
-        // init the coefficients
-		cost = 0.0f;
-		norm = 0.0f;
-		
         // set up rotation parameters
        rmat = transformModel.computeRotationMatrix(trans);
 	   rotation = rmat.getMatrix();
 		
 	   if (debug) System.out.println(displayTransform(trans));	
 		
-		// main loop
-		for (int x=offset;x<nx;x+=subsample) for (int y=offset;y<ny;y+=subsample) for (int z=offset;z<nz;z+=subsample) {
-            // compute the local position
-			transformModel.imageToTemplate(Xi,x,y,z,trans,rotation,1.0f);
-			
-			// compute interpolated values
-			sourceT = ImageInterpolation.linearInterpolation(source,0.0f,Xi[0],Xi[1],Xi[2],nx,ny,nz);
-			
-			int xyz = x + y*nx + z*nx*ny;
-			trg = target[xyz];
-			// check if the region is zero: no calculation needed then
-			if (sourceT>0 && trg>0) {
-					
-				// data term : function of the memberships
-				weight = imageRegistrationWeight(trg,sourceT);
-				
-				cost += registrationCost(weight,trg,sourceT);
-				norm += registrationNorm(weight,trg,sourceT);
-			}
-        }
- 
-        return cost/norm;
+		float[] sums = registrationSums(trans, false);
+		
+        return sums[0]/sums[1];
     } // computeRegistrationEnergy
     
+	/**
+	 * sums of the cost and norm (and of their gradient and the hessian terms if required) over the sampled voxels
+	 * of the current level, with the current rotation; the planes are processed in parallel and their sums
+	 * added in order, so the result does not depend on the number of threads
+	 */
+    final private float[] registrationSums(final float[] trans, final boolean derivatives) {
+		final float[] src = sourcePyramid[level];
+		final float[] trg = targetPyramid[level];
+		final int lnx = pyramidDim[level][X];
+		final int lny = pyramidDim[level][Y];
+		final int lnz = pyramidDim[level][Z];
+		final float lscale = (float)(1<<level);
+		final float[][] rot = rotation;
+		final float[][] dRx = dRa, dRy = dRb, dRz = dRc;
+		
+		final int nterms = derivatives ? 2+2*Nd : 2;
+		final int nplanes = Numerics.max(0, (lnz-offset+subsample-1)/subsample);
+		final float[][] planeSums = new float[nplanes][nterms];
+		
+		ParallelProcessing.forEach(nplanes, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				float[] Xi = new float[3];
+				float[][] dXi = new float[3][Nd];
+				float[] dsource = new float[Nd];
+				for (int p=start;p<end;p++) {
+					int z = offset+p*subsample;
+					float[] sum = planeSums[p];
+					for (int x=offset;x<lnx;x+=subsample) for (int y=offset;y<lny;y+=subsample) {
+						// compute the local position
+						transformModel.imageToTemplate(Xi,x,y,z,trans,rot,lscale);
+						
+						// compute interpolated values
+						float sourceT = ImageInterpolation.linearInterpolation(src,0.0f,Xi[0],Xi[1],Xi[2],lnx,lny,lnz);
+						float target = trg[x + y*lnx + z*lnx*lny];
+						
+						// check if the region is zero: no calculation needed then
+						if (sourceT>0 && target>0) {
+							// data terms
+							float weight = imageRegistrationWeight(target,sourceT);
+							
+							sum[0] += registrationCost(weight,target,sourceT);
+							sum[1] += registrationNorm(weight,target,sourceT);
+							
+							if (derivatives) {
+								// spatial derivatives
+								float dPx = ImageInterpolation.linearInterpolationXderivative(src,Xi[0],Xi[1],Xi[2],lnx,lny,lnz);
+								float dPy = ImageInterpolation.linearInterpolationYderivative(src,Xi[0],Xi[1],Xi[2],lnx,lny,lnz);
+								float dPz = ImageInterpolation.linearInterpolationZderivative(src,Xi[0],Xi[1],Xi[2],lnx,lny,lnz);
+								
+								// coordinate derivatives
+								transformModel.imageToTemplateDerivatives(dXi,x,y,z,trans,rot,dRx,dRy,dRz,lscale);
+								
+								// assemble everything
+								for (int i=0;i<Nd;i++) {
+									dsource[i] = dPx*dXi[0][i] + dPy*dXi[1][i] + dPz*dXi[2][i];
+								}
+								for (int i=0;i<Nd;i++) {
+									sum[2+i] += registrationCostGradient(weight,target,sourceT,dsource,i);
+									sum[2+Nd+i] += registrationCostHessian(weight,target,sourceT,dsource,i);
+								}
+							}
+						}
+					}
+				}
+			}
+		});
+		float[] sums = new float[nterms];
+		for (int p=0;p<nplanes;p++) for (int n=0;n<nterms;n++) sums[n] += planeSums[p][n];
+		
+		return sums;
+	} // registrationSums
+	
 	final private float registrationCost(float w, float t, float sT) {
 		return w*t*t*sT*sT;
 		//return w*(t-sT)*(t-sT);
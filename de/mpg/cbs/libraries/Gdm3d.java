@@ -67,7 +67,7 @@ public class Gdm3d {
 	private		boolean[]		mask;				// masking regions not used in computations
 	private static	int 		nx,ny,nz;   		// images dimensions
 	private static	float 		rx,ry,rz;   		// images resolutions
-	private		BinaryHeap2D	heap;				// the heap used in fast marching
+	private		IndexedHeap		heap;				// the heap used in fast marching
 	private		CriticalPointLUT	lut;				// the LUT for critical points
 	private		boolean				checkComposed;		// check if the objects are well-composed too (different LUTs)
 	private		boolean				checkTopology;		// check if the objects are well-composed too (different LUTs)
@@ -184,7 +184,7 @@ public class Gdm3d {
 			segmentation = new byte[nx*ny*nz];	
 			mask = new boolean[nx*ny*nz];
 			// initalize the heap too so we don't have to do it multiple times
-			heap = new BinaryHeap2D(nx*ny+ny*nz+nz*nx, BinaryHeap2D.MINTREE);
+			heap = new IndexedHeap(nx*ny*nz, nx*ny+ny*nz+nz*nx, IndexedHeap.MINTREE);
 			// topology luts
 			checkTopology=true;
 			checkComposed=false;
@@ -278,7 +278,7 @@ public class Gdm3d {
 			segmentation = new byte[nx*ny*nz];	
 			mask = new boolean[nx*ny*nz];
 			// initalize the heap too so we don't have to do it multiple times
-			heap = new BinaryHeap2D(nx*ny+ny*nz+nz*nx, BinaryHeap2D.MINTREE);
+			heap = new IndexedHeap(nx*ny*nz, nx*ny+ny*nz+nz*nx, IndexedHeap.MINTREE);
 			// topology luts
 			checkTopology=true;
 			checkComposed=false;
@@ -371,7 +371,7 @@ public class Gdm3d {
 			segmentation = new byte[nx*ny*nz];	
 			mask = new boolean[nx*ny*nz];
 			// initalize the heap too so we don't have to do it multiple times
-			heap = new BinaryHeap2D(nx*ny+ny*nz+nz*nx, BinaryHeap2D.MINTREE);
+			heap = new IndexedHeap(nx*ny*nz, nx*ny+ny*nz+nz*nx, IndexedHeap.MINTREE);
 			// topology luts
 			checkTopology=true;
 			checkComposed=false;
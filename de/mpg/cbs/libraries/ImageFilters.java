@@ -48,129 +48,26 @@ public class ImageFilters {
 	*	convolution with a separable kernel (the kernel is 3x{kx,ky,kz})
 	 */
 	public static float[][][] separableConvolution(float[][][] image, int nx, int ny, int nz, float[][] kernel, int kx, int ky, int kz) {
-		float[][][] result = new float[nx][ny][nz];
-		float[][][] temp = new float[nx][ny][nz];
-		int xi,yj,zl;
-		
-		//MedicUtilPublic.displayMessage("kernel size: "+kx+"x"+ky+"x"+kz+"\n");
-		
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			result[x][y][z] = 0.0f;	
-			for (int i=-kx;i<=kx;i++) {
-				if ( (x+i>=0) && (x+i<nx) ) {
-					result[x][y][z] += image[x+i][y][z]*kernel[0][kx+i];
-				}
-			}
-		}
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			temp[x][y][z] = 0.0f;	
-			for (int i=-ky;i<=ky;i++) {
-				if ( (y+i>=0) && (y+i<ny) ) {
-					temp[x][y][z] += result[x][y+i][z]*kernel[1][ky+i];
-				}
-			}
-		}
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			result[x][y][z] = 0.0f;	
-			for (int i=-kz;i<=kz;i++) {
-				if ( (z+i>=0) && (z+i<nz) ) {
-					result[x][y][z] += temp[x][y][z+i]*kernel[2][kz+i];
-				}
-			}
-		}
-		temp = null;
-
-		return result;
+		return separableArrayConvolution(image, null, false, nx, ny, nz, kernel, kx, ky, kz);
 	}
 		
 	/**
 	*	convolution with a separable kernel (the kernel is 3x{kx,ky,kz})
 	 */
 	public static float[] separableConvolution(float[] image, int nx, int ny, int nz, float[][] kernel, int kx, int ky, int kz) {
-		float[] result = new float[nx*ny*nz];
-		float[] temp = new float[nx*ny*nz];
-		int xi,yj,zl;
-		
-		//MedicUtilPublic.displayMessage("kernel size: "+kx+"x"+ky+"x"+kz+"\n");
-		
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			result[xyz] = 0.0f;	
-			for (int i=-kx;i<=kx;i++) {
-				if ( (x+i>=0) && (x+i<nx) ) {
-					result[xyz] += image[xyz+i]*kernel[0][kx+i];
-				}
-			}
-		}
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			temp[xyz] = 0.0f;	
-			for (int i=-ky;i<=ky;i++) {
-				if ( (y+i>=0) && (y+i<ny) ) {
-					temp[xyz] += result[xyz+i*nx]*kernel[1][ky+i];
-				}
-			}
-		}
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			result[xyz] = 0.0f;	
-			for (int i=-kz;i<=kz;i++) {
-				if ( (z+i>=0) && (z+i<nz) ) {
-					result[xyz] += temp[xyz+i*nx*ny]*kernel[2][kz+i];
-				}
-			}
-		}
-		temp = null;
-
-		return result;
+		return separableFlatConvolution(image, null, false, nx, ny, nz, kernel, kx, ky, kz);
 	}
 		
 	/**
 	*	convolution with a separable kernel (the kernel is 3x{kx,ky,kz})
 	 */
 	public static float[] separableConvolution(float[] image, int nx, int ny, int nz, float[][] kernel) {
-		float[] result = new float[nx*ny*nz];
-		float[] temp = new float[nx*ny*nz];
-		int xi,yj,zl;
-		
-		//MedicUtilPublic.displayMessage("kernel size: "+kx+"x"+ky+"x"+kz+"\n");
-		
 		int kx = (kernel[X].length-1)/2;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			result[xyz] = 0.0f;	
-			for (int i=-kx;i<=kx;i++) {
-				if ( (x+i>=0) && (x+i<nx) ) {
-					result[xyz] += image[xyz+i]*kernel[0][kx+i];
-				}
-			}
-		}
 		int ky = (kernel[Y].length-1)/2;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			temp[xyz] = 0.0f;	
-			for (int i=-ky;i<=ky;i++) {
-				if ( (y+i>=0) && (y+i<ny) ) {
-					temp[xyz] += result[xyz+i*nx]*kernel[1][ky+i];
-				}
-			}
-		}
 		int kz = (kernel[Z].length-1)/2;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			result[xyz] = 0.0f;	
-			for (int i=-kz;i<=kz;i++) {
-				if ( (z+i>=0) && (z+i<nz) ) {
-					result[xyz] += temp[xyz+i*nx*ny]*kernel[2][kz+i];
-				}
-			}
-		}
-		temp = null;
-
-		return result;
+		return separableFlatConvolution(image, null, false, nx, ny, nz, kernel, kx, ky, kz);
 	}
 		
-		
 	/**
 	*	convolution with a separable kernel (the kernel is 3x{kx,ky,kz})
 	*	this method compensates for boundaries 
@@ -230,193 +127,273 @@ public class ImageFilters {
 	*	this method compensates for masked regions 
 	 */
 	public static float[] separableMaskedConvolution(float[] image, boolean[] mask, int nx, int ny, int nz, float[][] kernel) {
-		float[] result = new float[nx*ny*nz];
-		float[] temp = new float[nx*ny*nz];
-		int xi,yj,zl;
-		
-		//MedicUtilPublic.displayMessage("kernel size: "+kx+"x"+ky+"x"+kz+"\n");
 		int kx = (kernel[X].length-1)/2;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			result[xyz] = 0.0f;
-			double num = 0.0;
-			double den = 0.0;
-			
-			if (mask[xyz]){
-				for (int i=-kx;i<=kx;i++) {
-					if ( (x+i>=0) && (x+i<nx) && mask[xyz+i] ) {
-						num += image[xyz+i]*kernel[X][kx+i];
-						den += kernel[X][kx+i];
-					}
-				}
-				if (den*den>0) num /= den;
-				result[xyz] = (float)num;
-			}
-		}
+		int ky = (kernel[Y].length-1)/2;
+		int kz = (kernel[Z].length-1)/2;
+		return separableFlatConvolution(image, mask, true, nx, ny, nz, kernel, kx, ky, kz);
+	}
 		
+	/**
+	*	convolution with a separable kernel (the kernel is 3x{kx,ky,kz})
+	*	this method compensates for masked regions 
+	 */
+	public static float[][][] separableMaskedConvolution(float[][][] image, boolean[][][] mask, int nx, int ny, int nz, float[][] kernel) {
+		int kx = (kernel[X].length-1)/2;
 		int ky = (kernel[Y].length-1)/2;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			temp[xyz] = 0.0f;
-			double num = 0.0;
-			double den = 0.0;
-			
-			if (mask[xyz]){
-				for (int i=-ky;i<=ky;i++) {
-					if ( (y+i>=0) && (y+i<ny) && mask[xyz+nx*i] ) {
-						num += result[xyz+i*nx]*kernel[Y][ky+i];
-						den += kernel[Y][ky+i];
+		int kz = (kernel[Z].length-1)/2;
+		return separableArrayConvolution(image, mask, true, nx, ny, nz, kernel, kx, ky, kz);
+	}
+		
+	/**
+	*	convolution with a separable kernel (the kernel is 3x{kx,ky,kz})
+	*	this method compensates for masked regions 
+	 */
+	public static float[] separableMaskedConvolution(float[] image, boolean[] mask, int nx, int ny, int nz, float[][] kernel, int kx, int ky, int kz) {
+		return separableFlatConvolution(image, mask, false, nx, ny, nz, kernel, kx, ky, kz);
+	}
+	
+	/** size of the blocks of voxels convolved together along the y and z axes */
+	private static final int	BLOCK = 4096;
+	
+	/**
+	*	separable convolution engine for 1D image arrays (x fastest):
+	*	the x and y passes are done plane by plane in a scratch buffer, 
+	*	the z pass on whole planes, both in parallel over slabs of z planes.
+	*	The strided y and z axes are convolved over blocks of contiguous voxels,
+	*	so the result is identical to the voxel by voxel computation.
+	*	With a mask, the kernel is renormalized over the masked voxels, and if inside is set
+	*	the voxels outside the mask are set to zero
+	 */
+	private static float[] separableFlatConvolution(final float[] image, final boolean[] mask, final boolean inside,
+														final int nx, final int ny, final int nz, 
+														final float[][] kernel, final int kx, final int ky, final int kz) {
+		final int nxy = nx*ny;
+		final float[] result = new float[nx*ny*nz];
+		final float[] temp = new float[nx*ny*nz];
+		
+		// x and y passes
+		ParallelProcessing.forEachSlab(nz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				float[] plane = new float[nxy];
+				double[] num = null, den = null;
+				if (mask!=null) {
+					num = new double[Numerics.min(nx,BLOCK)];
+					den = new double[Numerics.min(nx,BLOCK)];
+				}
+				for (int z=start;z<end;z++) {
+					int offset = z*nxy;
+					for (int y=0;y<ny;y++) {
+						if (mask==null) convolveLine(image, offset+y*nx, plane, y*nx, nx, kernel[X], kx);
+						else convolveMaskedLine(image, offset+y*nx, mask, offset+y*nx, inside, plane, y*nx, nx, kernel[X], kx);
+					}
+					for (int y=0;y<ny;y++) {
+						if (mask==null) convolveBlock(plane, y*nx, temp, offset+y*nx, nx, y, ny, nx, kernel[Y], ky);
+						else convolveMaskedBlock(plane, y*nx, mask, offset+y*nx, inside, temp, offset+y*nx, nx, y, ny, nx, kernel[Y], ky, num, den);
 					}
 				}
-				if (den*den>0) num /= den;
-				temp[xyz] = (float)num;
 			}
-		}
-		
-		int kz = (kernel[Z].length-1)/2;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			result[xyz] = 0.0f;	
-			double num = 0.0;
-			double den = 0.0;
-			
-			if (mask[xyz]){
-				for (int i=-kz;i<=kz;i++) {
-					if ( (z+i>=0) && (z+i<nz) && mask[xyz+nx*ny*i] ) {
-						num += temp[xyz+i*nx*ny]*kernel[Z][kz+i];
-						den += kernel[Z][kz+i];
-					}
+		});
+		// z pass
+		ParallelProcessing.forEachSlab(nz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				double[] num = null, den = null;
+				if (mask!=null) {
+					num = new double[Numerics.min(nxy,BLOCK)];
+					den = new double[Numerics.min(nxy,BLOCK)];
+				}
+				for (int z=start;z<end;z++) {
+					int offset = z*nxy;
+					if (mask==null) convolveBlock(temp, offset, result, offset, nxy, z, nz, nxy, kernel[Z], kz);
+					else convolveMaskedBlock(temp, offset, mask, offset, inside, result, offset, nxy, z, nz, nxy, kernel[Z], kz, num, den);
 				}
-				if (den*den>0) num /= den;
-				result[xyz] = (float)num;
 			}
-		}
-		temp = null;
-
+		});
 		return result;
 	}
 		
 	/**
-	*	convolution with a separable kernel (the kernel is 3x{kx,ky,kz})
-	*	this method compensates for masked regions 
+	*	separable convolution engine for 3D image arrays (z fastest):
+	*	the x pass is done in parallel over the whole image, then the y and z passes
+	*	x slice by x slice with a scratch buffer. The x and y axes are convolved over 
+	*	whole lines of z values, so the result is identical to the voxel by voxel computation.
+	*	With a mask, the kernel is renormalized over the masked voxels, and if inside is set
+	*	the voxels outside the mask are set to zero
 	 */
-	public static float[][][] separableMaskedConvolution(float[][][] image, boolean[][][] mask, int nx, int ny, int nz, float[][] kernel) {
-		float[][][] result = new float[nx][ny][nz];
-		float[][][] temp = new float[nx][ny][nz];
-		int xi,yj,zl;
-		
-		//MedicUtilPublic.displayMessage("kernel size: "+kx+"x"+ky+"x"+kz+"\n");
-		int kx = (kernel[X].length-1)/2;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			result[x][y][z] = 0.0f;
-			double num = 0.0;
-			double den = 0.0;
-			
-			if (mask[x][y][z]){
-				for (int i=-kx;i<=kx;i++) {
-					if ( (x+i>=0) && (x+i<nx) && mask[x+i][y][z] ) {
-						num += image[x+i][y][z]*kernel[X][kx+i];
-						den += kernel[X][kx+i];
+	private static float[][][] separableArrayConvolution(final float[][][] image, final boolean[][][] mask, final boolean inside,
+														final int nx, final int ny, final int nz, 
+														final float[][] kernel, final int kx, final int ky, final int kz) {
+		final float[][][] result = new float[nx][ny][nz];
+		
+		// x pass
+		ParallelProcessing.forEach(nx, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				float[][] rows = new float[nx][];
+				boolean[][] mrows = null;
+				double[] num = null, den = null;
+				if (mask!=null) {
+					mrows = new boolean[nx][];
+					num = new double[nz];
+					den = new double[nz];
+				}
+				for (int y=0;y<ny;y++) {
+					for (int x=0;x<nx;x++) rows[x] = image[x][y];
+					if (mask!=null) for (int x=0;x<nx;x++) mrows[x] = mask[x][y];
+					for (int x=start;x<end;x++) {
+						if (mask==null) convolveRows(rows, result[x][y], nz, x, nx, kernel[X], kx);
+						else convolveMaskedRows(rows, mrows, inside, result[x][y], nz, x, nx, kernel[X], kx, num, den);
 					}
 				}
-				if (den*den>0) num /= den;
-				result[x][y][z] = (float)num;
 			}
-		}
-		
-		int ky = (kernel[Y].length-1)/2;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			temp[x][y][z] = 0.0f;
-			double num = 0.0;
-			double den = 0.0;
-			
-			if (mask[x][y][z]){
-				for (int i=-ky;i<=ky;i++) {
-					if ( (y+i>=0) && (y+i<ny) && mask[x][y+i][z] ) {
-						num += result[x][y+i][z]*kernel[Y][ky+i];
-						den += kernel[Y][ky+i];
+		});
+		// y and z passes
+		ParallelProcessing.forEach(nx, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				float[][] slice = new float[ny][nz];
+				double[] num = null, den = null;
+				if (mask!=null) {
+					num = new double[nz];
+					den = new double[nz];
+				}
+				for (int x=start;x<end;x++) {
+					for (int y=0;y<ny;y++) {
+						if (mask==null) convolveRows(result[x], slice[y], nz, y, ny, kernel[Y], ky);
+						else convolveMaskedRows(result[x], mask[x], inside, slice[y], nz, y, ny, kernel[Y], ky, num, den);
+					}
+					for (int y=0;y<ny;y++) {
+						if (mask==null) convolveLine(slice[y], 0, result[x][y], 0, nz, kernel[Z], kz);
+						else convolveMaskedLine(slice[y], 0, mask[x][y], 0, inside, result[x][y], 0, nz, kernel[Z], kz);
 					}
 				}
-				if (den*den>0) num /= den;
-				temp[x][y][z] = (float)num;
 			}
+		});
+		return result;
+	}
+	
+	/** 1D convolution of the n contiguous values of a line */
+	private static final void convolveLine(float[] in, int inoffset, float[] out, int outoffset, int n, float[] kern, int k) {
+		for (int x=0;x<n;x++) {
+			int imin = Numerics.max(-k, -x);
+			int imax = Numerics.min(k, n-1-x);
+			float sum = 0.0f;
+			for (int i=imin;i<=imax;i++) sum += in[inoffset+x+i]*kern[k+i];
+			out[outoffset+x] = sum;
 		}
-		
-		int kz = (kernel[Z].length-1)/2;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			result[x][y][z] = 0.0f;	
-			double num = 0.0;
-			double den = 0.0;
-			
-			if (mask[x][y][z]){
-				for (int i=-kz;i<=kz;i++) {
-					if ( (z+i>=0) && (z+i<nz) && mask[x][y][z+i] ) {
-						num += temp[x][y][z+i]*kernel[Z][kz+i];
-						den += kernel[Z][kz+i];
-					}
+	}
+	
+	/** 1D masked convolution of the n contiguous values of a line */
+	private static final void convolveMaskedLine(float[] in, int inoffset, boolean[] mask, int moffset, boolean inside, 
+													float[] out, int outoffset, int n, float[] kern, int k) {
+		for (int x=0;x<n;x++) {
+			if (inside && !mask[moffset+x]) {
+				out[outoffset+x] = 0.0f;
+			} else {
+				int imin = Numerics.max(-k, -x);
+				int imax = Numerics.min(k, n-1-x);
+				double num = 0.0;
+				double den = 0.0;
+				for (int i=imin;i<=imax;i++) if (mask[moffset+x+i]) {
+					num += in[inoffset+x+i]*kern[k+i];
+					den += kern[k+i];
 				}
 				if (den*den>0) num /= den;
-				result[x][y][z] = (float)num;
+				out[outoffset+x] = (float)num;
 			}
 		}
-		temp = null;
-
-		return result;
 	}
-		
-	/**
-	*	convolution with a separable kernel (the kernel is 3x{kx,ky,kz})
-	*	this method compensates for masked regions 
+	
+	/** 
+	 *	1D convolution along a strided axis (of size n and stride s) at position p,
+	 *	for a block of len contiguous voxels
 	 */
-	public static float[] separableMaskedConvolution(float[] image, boolean[] mask, int nx, int ny, int nz, float[][] kernel, int kx, int ky, int kz) {
-		float[] result = new float[nx*ny*nz];
-		float[] temp = new float[nx*ny*nz];
-		int xi,yj,zl;
-		
-		//MedicUtilPublic.displayMessage("kernel size: "+kx+"x"+ky+"x"+kz+"\n");
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			double num = 0.0;
-			double den = 0.0;
-			for (int i=-kx;i<=kx;i++) {
-				if ( (x+i>=0) && (x+i<nx) && mask[xyz+i] ) {
-					num += image[xyz+i]*kernel[X][kx+i];
-					den += kernel[X][kx+i];
-				}
+	private static final void convolveBlock(float[] in, int inoffset, float[] out, int outoffset, int len, int p, int n, int s, float[] kern, int k) {
+		int imin = Numerics.max(-k, -p);
+		int imax = Numerics.min(k, n-1-p);
+		for (int b=0;b<len;b+=BLOCK) {
+			int bmax = Numerics.min(len, b+BLOCK);
+			for (int j=b;j<bmax;j++) out[outoffset+j] = 0.0f;
+			for (int i=imin;i<=imax;i++) {
+				float w = kern[k+i];
+				int offset = inoffset+i*s;
+				for (int j=b;j<bmax;j++) out[outoffset+j] += in[offset+j]*w;
 			}
-			if (den*den>0) num /= den;
-			result[xyz] = (float)num;
 		}
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			double num = 0.0;
-			double den = 0.0;
-			for (int i=-ky;i<=ky;i++) {
-				if ( (y+i>=0) && (y+i<ny) && mask[xyz+nx*i] ) {
-					num += result[xyz+i*nx]*kernel[Y][ky+i];
-					den += kernel[Y][ky+i];
+	}
+	
+	/** 
+	 *	1D masked convolution along a strided axis (of size n and stride s) at position p,
+	 *	for a block of len contiguous voxels (num and den are scratch buffers)
+	 */
+	private static final void convolveMaskedBlock(float[] in, int inoffset, boolean[] mask, int moffset, boolean inside, 
+													float[] out, int outoffset, int len, int p, int n, int s, float[] kern, int k,
+													double[] num, double[] den) {
+		int imin = Numerics.max(-k, -p);
+		int imax = Numerics.min(k, n-1-p);
+		for (int b=0;b<len;b+=num.length) {
+			int bmax = Numerics.min(len, b+num.length);
+			for (int j=b;j<bmax;j++) {
+				num[j-b] = 0.0;
+				den[j-b] = 0.0;
+			}
+			for (int i=imin;i<=imax;i++) {
+				float w = kern[k+i];
+				int offset = inoffset+i*s;
+				int moff = moffset+i*s;
+				for (int j=b;j<bmax;j++) if (mask[moff+j]) {
+					num[j-b] += in[offset+j]*w;
+					den[j-b] += w;
 				}
 			}
-			if (den*den>0) num /= den;
-			temp[xyz] = (float)num;
-		}
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			result[xyz] = 0.0f;	
-			double num = 0.0;
-			double den = 0.0;
-			for (int i=-kz;i<=kz;i++) {
-				if ( (z+i>=0) && (z+i<nz) && mask[xyz+nx*ny*i] ) {
-					num += temp[xyz+i*nx*ny]*kernel[Z][kz+i];
-					den += kernel[Z][kz+i];
+			for (int j=b;j<bmax;j++) {
+				if (inside && !mask[moffset+j]) {
+					out[outoffset+j] = 0.0f;
+				} else {
+					double val = num[j-b];
+					if (den[j-b]*den[j-b]>0) val /= den[j-b];
+					out[outoffset+j] = (float)val;
 				}
 			}
-			if (den*den>0) num /= den;
-			result[xyz] = (float)num;
 		}
-		temp = null;
-
-		return result;
+	}
+	
+	/** 1D convolution across the rows (of size n) at position p, for the len values of each row */
+	private static final void convolveRows(float[][] rows, float[] out, int len, int p, int n, float[] kern, int k) {
+		int imin = Numerics.max(-k, -p);
+		int imax = Numerics.min(k, n-1-p);
+		for (int j=0;j<len;j++) out[j] = 0.0f;
+		for (int i=imin;i<=imax;i++) {
+			float w = kern[k+i];
+			float[] row = rows[p+i];
+			for (int j=0;j<len;j++) out[j] += row[j]*w;
+		}
+	}
+	
+	/** 1D masked convolution across the rows (of size n) at position p, for the len values of each row */
+	private static final void convolveMaskedRows(float[][] rows, boolean[][] mrows, boolean inside, float[] out, int len, int p, int n, float[] kern, int k,
+													double[] num, double[] den) {
+		int imin = Numerics.max(-k, -p);
+		int imax = Numerics.min(k, n-1-p);
+		for (int j=0;j<len;j++) {
+			num[j] = 0.0;
+			den[j] = 0.0;
+		}
+		for (int i=imin;i<=imax;i++) {
+			float w = kern[k+i];
+			float[] row = rows[p+i];
+			boolean[] mrow = mrows[p+i];
+			for (int j=0;j<len;j++) if (mrow[j]) {
+				num[j] += row[j]*w;
+				den[j] += w;
+			}
+		}
+		for (int j=0;j<len;j++) {
+			if (inside && !mrows[p][j]) {
+				out[j] = 0.0f;
+			} else {
+				double val = num[j];
+				if (den[j]*den[j]>0) val /= den[j];
+				out[j] = (float)val;
+			}
+		}
 	}
 		
 	/**
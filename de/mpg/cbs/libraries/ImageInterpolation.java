@@ -544,6 +544,51 @@ public class ImageInterpolation {
 
 		return val;
 	}
+	/**
+	 *	linear interpolation of the first nimg images at the same location, with closest value outside the images:
+	 *	the weights are computed once for all images (same results as interpolating each image separately)
+	 */
+	public static void linearClosestInterpolation(float[][] images, int nimg, float x, float y, float z, int nx, int ny, int nz, float[] val) {
+		float alpha,beta,gamma,nalpha,nbeta,ngamma;
+		int x0,y0,z0;
+
+		x0 = Numerics.bounded(Numerics.floor(x),0,nx-2);
+		y0 = Numerics.bounded(Numerics.floor(y),0,ny-2);
+		z0 = Numerics.bounded(Numerics.floor(z),0,nz-2);
+
+		alpha = Numerics.bounded(x - x0, 0.0f, 1.0f);
+		nalpha = 1.0f - alpha;
+
+		beta = Numerics.bounded(y - y0, 0.0f, 1.0f);
+		nbeta = 1.0f - beta;
+
+		gamma = Numerics.bounded(z - z0, 0.0f, 1.0f);
+		ngamma = 1.0f - gamma;
+
+		float w000 = nalpha*nbeta*ngamma;
+		float w100 = alpha*nbeta*ngamma;
+		float w010 = nalpha*beta*ngamma;
+		float w001 = nalpha*nbeta*gamma;
+		float w110 = alpha*beta*ngamma;
+		float w011 = nalpha*beta*gamma;
+		float w101 = alpha*nbeta*gamma;
+		float w111 = alpha*beta*gamma;
+
+		int xyz0 = x0 + y0*nx + z0*nx*ny;
+
+		for (int n=0;n<nimg;n++) {
+			float[] image = images[n];
+			val[n] = w000*image[xyz0]
+				+ w100*image[xyz0+1]
+				+ w010*image[xyz0+nx]
+				+ w001*image[xyz0+nx*ny]
+				+ w110*image[xyz0+1+nx]
+				+ w011*image[xyz0+nx+nx*ny]
+				+ w101*image[xyz0+1+nx*ny]
+				+ w111*image[xyz0+1+nx+nx*ny];
+		}
+		return;
+	}
 	/**
 	 *	linear interpolation, with value outside the image and mask
 	 */
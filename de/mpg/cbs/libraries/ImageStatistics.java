@@ -26,6 +26,10 @@ public class ImageStatistics {
     public static final byte Y = 1;
     public static final byte Z = 2;
     public static final byte T = 3;
+    
+    // histogram refinement for percentiles: each level adds PERCENTILE_DIGITS decimal digits of precision
+    private static final int PERCENTILE_BINS = 1000;
+    private static final int PERCENTILE_DIGITS = 3;
 
 	/**
 	 *	mean value of the image
@@ -243,154 +247,25 @@ public class ImageStatistics {
 	}
 	
 	/**
-     *    Robust maximum estimation
+     *    Robust minimum estimation
      *    @param 	ratio	float fraction in [0,1]: the minimum number of points below or equal to the minimum over the total volume
 	 *    @param 	scales	int: the number of times the scale is refined for finding the robust minimum
 	 *	  @return 			the robust minimum value	
      */
     public static final float robustMinimum(float[][][] image, float ratio, int scales, int nx, int ny, int nz ) {
-		float Imin,Imax,Rmin;
-		int Nbins = 10;
-		float[] bins = new float[Nbins];
-		float count;
-		int n;
-		
-		// ratio: global value
-		ratio = ratio*nx*ny*nz;
-		
-		// find first min, max
-		Imin = image[0][0][0];
-		Imax = image[0][0][0];
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			if (image[x][y][z]>Imax) Imax = image[x][y][z];
-			if (image[x][y][z]<Imin) Imin = image[x][y][z];
-		}
-		Rmin = Imin;
-		
-		for (int t=0;t<scales;t++) {
-			
-			Rmin = Imin;
-		
-			// compute coarse histogram
-			for (n=0;n<Nbins;n++) bins[n] = 0;
-			
-			for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-				// first one include both boundaries 
-				if (  (image[x][y][z] >= Imin )
-					&&(image[x][y][z] <= Imin + 1.0f/(float)Nbins*(Imax-Imin) ) ) bins[0]++;
-				for (n=1;n<Nbins;n++) {
-					if (  (image[x][y][z] >  Imin + (float)n/(float)Nbins*(Imax-Imin) )
-						&&(image[x][y][z] <= Imin + (float)(n+1)/(float)Nbins*(Imax-Imin) ) ) bins[n]++;	
-				}
-			}
-			/* debug
-			System.out.print("histogram: \n");
-			for (n=0;n<Nbins;n++) System.out.print(" | "+bins[n]);
-			System.out.print("\n");
-			*/
-			
-			// find the value corresponding to the ratio
-			count = 0;
-			n=0;
-			while ( (count < ratio) && (n<Nbins) ) {
-				count +=bins[n];
-				n=n+1;
-			}
-			Rmin = Imin + (float)(n-0.5f)/(float)Nbins*(Imax-Imin);
-			
-			//System.out.print("robust minimum: "+Rmin+" ("+n+", "+ratio+", "+count+")\n");
-		
-			// new boundaries
-			float I0 = Imin + (float)(n-1)/(float)Nbins*(Imax-Imin);
-			float I1 = Imin + (float)(n)/(float)Nbins*(Imax-Imin);
-			
-			Imin = I0;
-			Imax = I1;
-			
-			// new ratio
-			if (n>0) ratio = ratio - (count-bins[n-1]);		
-		}
-		
-		return Rmin;
+		float[] val = sampleValues(image, null, nx, ny, nz);
+		return histogramPercentiles(val, val.length, new double[]{ratio*nx*ny*nz}, new boolean[]{false}, scales)[0];
 	}
 
 	/**
-     *    Robust maximum estimation
+     *    Robust minimum estimation
      *    @param 	ratio	float fraction in [0,1]: the minimum number of points below or equal to the minimum over the total volume
 	 *    @param 	scales	int: the number of times the scale is refined for finding the robust minimum
 	 *	  @return 			the robust minimum value	
      */
     public static final float robustMinimum(float[][][] image, boolean[][][] mask, float ratio, int scales, int nx, int ny, int nz ) {
-		float Imin,Imax,Rmin;
-		int Nbins = 10;
-		float[] bins = new float[Nbins];
-		float count;
-		int n;
-		
-		// ratio: global value
-		ratio = ratio*nx*ny*nz;
-		
-		// find first min, max
-		Imin=0; 
-		Imax=0;
-		boolean started=false;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) if (mask[x][y][z]) {
-			if (!started) {
-				Imin = image[x][y][z];
-				Imax = image[x][y][z];
-				started = true;
-			} else {
-				if (image[x][y][z]>Imax) Imax = image[x][y][z];
-				if (image[x][y][z]<Imin) Imin = image[x][y][z];
-			}
-		}
-		Rmin = Imin;
-		
-		for (int t=0;t<scales;t++) {
-			
-			Rmin = Imin;
-		
-			// compute coarse histogram
-			for (n=0;n<Nbins;n++) bins[n] = 0;
-			
-			for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) if (mask[x][y][z]) {
-				// first one include both boundaries 
-				if (  (image[x][y][z] >= Imin )
-					&&(image[x][y][z] <= Imin + 1.0f/(float)Nbins*(Imax-Imin) ) ) bins[0]++;
-				for (n=1;n<Nbins;n++) {
-					if (  (image[x][y][z] >  Imin + (float)n/(float)Nbins*(Imax-Imin) )
-						&&(image[x][y][z] <= Imin + (float)(n+1)/(float)Nbins*(Imax-Imin) ) ) bins[n]++;	
-				}
-			}
-			/* debug
-			System.out.print("histogram: \n");
-			for (n=0;n<Nbins;n++) System.out.print(" | "+bins[n]);
-			System.out.print("\n");
-			*/
-			
-			// find the value corresponding to the ratio
-			count = 0;
-			n=0;
-			while ( (count < ratio) && (n<Nbins) ) {
-				count +=bins[n];
-				n=n+1;
-			}
-			Rmin = Imin + (float)(n-0.5f)/(float)Nbins*(Imax-Imin);
-			
-			//System.out.print("robust minimum: "+Rmin+" ("+n+", "+ratio+", "+count+")\n");
-		
-			// new boundaries
-			float I0 = Imin + (float)(n-1)/(float)Nbins*(Imax-Imin);
-			float I1 = Imin + (float)(n)/(float)Nbins*(Imax-Imin);
-			
-			Imin = I0;
-			Imax = I1;
-			
-			// new ratio
-			if (n>0) ratio = ratio - (count-bins[n-1]);		
-		}
-		
-		return Rmin;
+		float[] val = sampleValues(image, mask, nx, ny, nz);
+		return histogramPercentiles(val, val.length, new double[]{ratio*nx*ny*nz}, new boolean[]{false}, scales)[0];
 	}
 
 	/**
@@ -400,145 +275,19 @@ public class ImageStatistics {
 	 *	  @return 			the robust minimum value	
      */
     public static final float robustMinimum(float[] image, float ratio, int scales, int nx, int ny, int nz ) {
-		float Imin,Imax,Rmin;
-		int Nbins = 10;
-		float[] bins = new float[Nbins];
-		float count;
-		int n;
-		
-		// ratio: global value
-		ratio = ratio*nx*ny*nz;
-		
-		// find first min, max
-		Imin = image[0];
-		Imax = image[0];
-		for (int xyz=0;xyz<nx*ny*nz;xyz++) {
-			if (image[xyz]>Imax) Imax = image[xyz];
-			if (image[xyz]<Imin) Imin = image[xyz];
-		}
-		Rmin = Imin;
-		
-		for (int t=0;t<scales;t++) {
-			
-			Rmin = Imin;
-		
-			// compute coarse histogram
-			for (n=0;n<Nbins;n++) bins[n] = 0;
-			
-			for (int xyz=0;xyz<nx*ny*nz;xyz++) {
-				// first one include both boundaries 
-				if (  (image[xyz] >= Imin )
-					&&(image[xyz] <= Imin + 1.0f/(float)Nbins*(Imax-Imin) ) ) bins[0]++;
-				for (n=1;n<Nbins;n++) {
-					if (  (image[xyz] >  Imin + (float)n/(float)Nbins*(Imax-Imin) )
-						&&(image[xyz] <= Imin + (float)(n+1)/(float)Nbins*(Imax-Imin) ) ) bins[n]++;	
-				}
-			}
-			/* debug
-			System.out.print("histogram: \n");
-			for (n=0;n<Nbins;n++) System.out.print(" | "+bins[n]);
-			System.out.print("\n");
-			*/
-			
-			// find the value corresponding to the ratio
-			count = 0;
-			n=0;
-			while ( (count < ratio) && (n<Nbins) ) {
-				count +=bins[n];
-				n=n+1;
-			}
-			Rmin = Imin + (float)(n-0.5f)/(float)Nbins*(Imax-Imin);
-			
-			//System.out.print("robust minimum: "+Rmin+" ("+n+", "+ratio+", "+count+")\n");
-		
-			// new boundaries
-			float I0 = Imin + (float)(n-1)/(float)Nbins*(Imax-Imin);
-			float I1 = Imin + (float)(n)/(float)Nbins*(Imax-Imin);
-			
-			Imin = I0;
-			Imax = I1;
-			
-			// new ratio
-			if (n>0) ratio = ratio - (count-bins[n-1]);		
-		}
-		
-		return Rmin;
+		return histogramPercentiles(image, nx*ny*nz, new double[]{ratio*nx*ny*nz}, new boolean[]{false}, scales)[0];
 	}
 
 	/**
      *    Robust minimum estimation
      *    @param 	ratio	float fraction in [0,1]: the minimum number of points below or equal to the minimum over the total volume
 	 *    @param 	scales	int: the number of times the scale is refined for finding the robust minimum
+	 *	  @param	sub		int: subsampling factor in each dimension
 	 *	  @return 			the robust minimum value	
      */
     public static final float robustMinimum(float[] image, float ratio, int scales, int nx, int ny, int nz, int sub) {
-		float Imin,Imax,Rmin;
-		int Nbins = 10;
-		float[] bins = new float[Nbins];
-		float count;
-		int n;
-		int xyz;
-		
-		// ratio: global value
-		ratio = ratio*nx/sub*ny/sub*nz/sub;
-		
-		// find first min, max
-		Imin = image[0];
-		Imax = image[0];
-		for (int x=0;x<nx;x+=sub) for (int y=0;y<ny;y+=sub) for (int z=0;z<nz;z+=sub) {
-			xyz = x+nx*y+nx*ny*z;
-			if (image[xyz]>Imax) Imax = image[xyz];
-			if (image[xyz]<Imin) Imin = image[xyz];
-		}
-		Rmin = Imin;
-		
-		for (int t=0;t<scales;t++) {
-			
-			Rmin = Imin;
-		
-			// compute coarse histogram
-			for (n=0;n<Nbins;n++) bins[n] = 0;
-			
-			for (int x=0;x<nx;x+=sub) for (int y=0;y<ny;y+=sub) for (int z=0;z<nz;z+=sub) {
-				xyz = x+nx*y+nx*ny*z;
-			
-				// first one include both boundaries 
-				if (  (image[xyz] >= Imin )
-					&&(image[xyz] <= Imin + 1.0f/(float)Nbins*(Imax-Imin) ) ) bins[0]++;
-				for (n=1;n<Nbins;n++) {
-					if (  (image[xyz] >  Imin + (float)n/(float)Nbins*(Imax-Imin) )
-						&&(image[xyz] <= Imin + (float)(n+1)/(float)Nbins*(Imax-Imin) ) ) bins[n]++;	
-				}
-			}
-			/* debug
-			System.out.print("histogram: \n");
-			for (n=0;n<Nbins;n++) System.out.print(" | "+bins[n]);
-			System.out.print("\n");
-			*/
-			
-			// find the value corresponding to the ratio
-			count = 0;
-			n=0;
-			while ( (count < ratio) && (n<Nbins) ) {
-				count +=bins[n];
-				n=n+1;
-			}
-			Rmin = Imin + (float)(n-0.5f)/(float)Nbins*(Imax-Imin);
-			
-			//System.out.print("robust minimum: "+Rmin+" ("+n+", "+ratio+", "+count+")\n");
-		
-			// new boundaries
-			float I0 = Imin + (float)(n-1)/(float)Nbins*(Imax-Imin);
-			float I1 = Imin + (float)(n)/(float)Nbins*(Imax-Imin);
-			
-			Imin = I0;
-			Imax = I1;
-			
-			// new ratio
-			if (n>0) ratio = ratio - (count-bins[n-1]);		
-		}
-		
-		return Rmin;
+		float[] val = sampleValues(image, sub, nx, ny, nz);
+		return histogramPercentiles(val, val.length, new double[]{ratio*nx/sub*ny/sub*nz/sub}, new boolean[]{false}, scales)[0];
 	}
 
 	/**
@@ -549,69 +298,8 @@ public class ImageStatistics {
 	 *	  @return 			the robust maximum value	
      */
     public static final float robustMaximum(float[][][] image, float ratio, int scales, int nx, int ny, int nz ) {
-		float Imin,Imax,Rmax;
-		int Nbins = 10;
-		float[] bins = new float[Nbins];
-		float count;
-		int n;
-		
-		// ratio: global value
-		ratio = ratio*nx*ny*nz;
-		
-		// find first min, max
-		Imin = image[0][0][0];
-		Imax = image[0][0][0];
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			if (image[x][y][z]>Imax) Imax = image[x][y][z];
-			if (image[x][y][z]<Imin) Imin = image[x][y][z];
-		}
-		Rmax = Imax;
-		
-		for (int t=0;t<scales;t++) {
-			
-			Rmax = Imax;
-			
-			// compute coarse histogram
-			for (n=0;n<Nbins;n++) bins[n] = 0;
-			
-			for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-				// first one include both boundaries 
-				if (  (image[x][y][z] >= Imin )
-					&&(image[x][y][z] <= Imin + 1.0f/(float)Nbins*(Imax-Imin) ) ) bins[0]++;
-				for (n=1;n<Nbins;n++) {
-					if (  (image[x][y][z] >  Imin + (float)n/(float)Nbins*(Imax-Imin) )
-						&&(image[x][y][z] <= Imin + (float)(n+1)/(float)Nbins*(Imax-Imin) ) ) bins[n]++;	
-				}
-			}
-			/* debug
-			System.out.print("histogram: \n");
-			for (n=0;n<Nbins;n++) System.out.print(" | "+bins[n]);
-			System.out.print("\n");
-			*/
-			
-			// find the value corresponding to the ratio
-			count = 0;
-			n=Nbins;
-			while ( (count < ratio) && (n>0) ) {
-				n=n-1;
-				count +=bins[n];
-			}
-			Rmax = Imin + (float)(n+0.5f)/(float)Nbins*(Imax-Imin);
-			
-			//System.out.print("robust maximum: "+Rmax+" ("+n+", "+ratio+", "+count+")\n");		
-
-			// new boundaries
-			float I0 = Imin + (float)n/(float)Nbins*(Imax-Imin);
-			float I1 = Imin + (float)(n+1)/(float)Nbins*(Imax-Imin);
-			
-			Imin = I0;
-			Imax = I1;
-			
-			// new ratio
-			if (n<Nbins) ratio = ratio - (count-bins[n]);			
-		}
-		
-		return Rmax;
+		float[] val = sampleValues(image, null, nx, ny, nz);
+		return histogramPercentiles(val, val.length, new double[]{ratio*nx*ny*nz}, new boolean[]{true}, scales)[0];
 	}
 
 	/**
@@ -622,76 +310,8 @@ public class ImageStatistics {
 	 *	  @return 			the robust maximum value	
      */
     public static final float robustMaximum(float[][][] image, boolean[][][] mask, float ratio, int scales, int nx, int ny, int nz ) {
-		float Imin,Imax,Rmax;
-		int Nbins = 10;
-		float[] bins = new float[Nbins];
-		float count;
-		int n;
-		
-		// ratio: global value
-		ratio = ratio*nx*ny*nz;
-		
-		// find first min, max
-		Imin = 0;
-		Imax = 0;
-		boolean started=false;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) if (mask[x][y][z]) {
-			if (!started) {
-				Imin = image[x][y][z];
-				Imax = image[x][y][z];
-				started = true;
-			} else {
-				if (image[x][y][z]>Imax) Imax = image[x][y][z];
-				if (image[x][y][z]<Imin) Imin = image[x][y][z];
-			}
-		}
-		Rmax = Imax;
-		
-		for (int t=0;t<scales;t++) {
-			
-			Rmax = Imax;
-			
-			// compute coarse histogram
-			for (n=0;n<Nbins;n++) bins[n] = 0;
-			
-			for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) if (mask[x][y][z]) {
-				// first one include both boundaries 
-				if (  (image[x][y][z] >= Imin )
-					&&(image[x][y][z] <= Imin + 1.0f/(float)Nbins*(Imax-Imin) ) ) bins[0]++;
-				for (n=1;n<Nbins;n++) {
-					if (  (image[x][y][z] >  Imin + (float)n/(float)Nbins*(Imax-Imin) )
-						&&(image[x][y][z] <= Imin + (float)(n+1)/(float)Nbins*(Imax-Imin) ) ) bins[n]++;	
-				}
-			}
-			/* debug 
-			System.out.print("histogram: \n");
-			for (n=0;n<Nbins;n++) System.out.print(" | "+bins[n]);
-			System.out.print("\n");
-			*/
-			
-			// find the value corresponding to the ratio
-			count = 0;
-			n=Nbins;
-			while ( (count < ratio) && (n>0) ) {
-				n=n-1;
-				count +=bins[n];
-			}
-			Rmax = Imin + (float)(n+0.5f)/(float)Nbins*(Imax-Imin);
-			
-			//System.out.print("robust maximum: "+Rmax+" ("+n+", "+ratio+", "+count+")\n");		
-
-			// new boundaries
-			float I0 = Imin + (float)n/(float)Nbins*(Imax-Imin);
-			float I1 = Imin + (float)(n+1)/(float)Nbins*(Imax-Imin);
-			
-			Imin = I0;
-			Imax = I1;
-			
-			// new ratio
-			if (n<Nbins) ratio = ratio - (count-bins[n]);			
-		}
-		
-		return Rmax;
+		float[] val = sampleValues(image, mask, nx, ny, nz);
+		return histogramPercentiles(val, val.length, new double[]{ratio*nx*ny*nz}, new boolean[]{true}, scales)[0];
 	}
 
 	/**
@@ -702,147 +322,201 @@ public class ImageStatistics {
 	 *	  @return 			the robust maximum value	
      */
     public static final float robustMaximum(float[] image, float ratio, int scales, int nx, int ny, int nz ) {
-		float Imin,Imax,Rmax;
-		int Nbins = 10;
-		float[] bins = new float[Nbins];
-		float count;
-		int n;
-		
-		// ratio: global value
-		ratio = ratio*nx*ny*nz;
-		
-		// find first min, max
-		Imin = image[0];
-		Imax = image[0];
-		for (int xyz=0;xyz<nx*ny*nz;xyz++) {
-			if (image[xyz]>Imax) Imax = image[xyz];
-			if (image[xyz]<Imin) Imin = image[xyz];
-		}
-		Rmax = Imax;
-		
-		for (int t=0;t<scales;t++) {
-			
-			Rmax = Imax;
-			
-			// compute coarse histogram
-			for (n=0;n<Nbins;n++) bins[n] = 0;
-			
-			for (int xyz=0;xyz<nx*ny*nz;xyz++) {
-				// first one include both boundaries 
-				if (  (image[xyz] >= Imin )
-					&&(image[xyz] <= Imin + 1.0f/(float)Nbins*(Imax-Imin) ) ) bins[0]++;
-				for (n=1;n<Nbins;n++) {
-					if (  (image[xyz] >  Imin + (float)n/(float)Nbins*(Imax-Imin) )
-						&&(image[xyz] <= Imin + (float)(n+1)/(float)Nbins*(Imax-Imin) ) ) bins[n]++;	
-				}
-			}
-			/* debug
-			System.out.print("histogram: \n");
-			for (n=0;n<Nbins;n++) System.out.print(" | "+bins[n]);
-			System.out.print("\n");
-			*/
-			
-			// find the value corresponding to the ratio
-			count = 0;
-			n=Nbins;
-			while ( (count < ratio) && (n>0) ) {
-				n=n-1;
-				count +=bins[n];
-			}
-			Rmax = Imin + (float)(n+0.5f)/(float)Nbins*(Imax-Imin);
-			
-			//System.out.print("robust maximum: "+Rmax+" ("+n+", "+ratio+", "+count+")\n");		
-
-			// new boundaries
-			float I0 = Imin + (float)n/(float)Nbins*(Imax-Imin);
-			float I1 = Imin + (float)(n+1)/(float)Nbins*(Imax-Imin);
-			
-			Imin = I0;
-			Imax = I1;
-			
-			// new ratio
-			if (n<Nbins) ratio = ratio - (count-bins[n]);			
-		}
-		
-		return Rmax;
+		return histogramPercentiles(image, nx*ny*nz, new double[]{ratio*nx*ny*nz}, new boolean[]{true}, scales)[0];
 	}
 
 	/**
      *    Robust maximum estimation
      *    @param 	ratio	float fraction in [0,1]: the minimum number of points above or equal to the maximum over the total volume
 	 *    @param 	scales	int: the number of times the scale is refined for finding the robust maximum
-	 *	  @param	nx,ny,nz	image dimensions
-	 *	  @param	sub			subsampling factor for speed
+	 *	  @param	sub		int: subsampling factor in each dimension
 	 *	  @return 			the robust maximum value	
      */
     public static final float robustMaximum(float[] image, float ratio, int scales, int nx, int ny, int nz, int sub) {
-		float Imin,Imax,Rmax;
-		int Nbins = 10;
-		float[] bins = new float[Nbins];
-		float count;
-		int n;
-		int xyz;
-		
-		// ratio: global value
-		ratio = ratio*nx/sub*ny/sub*nz/sub;
+		float[] val = sampleValues(image, sub, nx, ny, nz);
+		return histogramPercentiles(val, val.length, new double[]{ratio*nx/sub*ny/sub*nz/sub}, new boolean[]{true}, scales)[0];
+	}
+
+	/**
+     *    Robust minimum and maximum estimation, computed together
+     *    @param 	ratio	float fraction in [0,1]: the minimum number of points below the minimum or above the maximum
+	 *    @param 	scales	int: the number of times the scale is refined (precision of (max-min)/10^scales or finer)
+	 *	  @return 			the robust {minimum, maximum} values	
+     */
+    public static final float[] robustRange(float[] image, float ratio, int scales, int nx, int ny, int nz ) {
+		double rank = ratio*nx*ny*nz;
+		return histogramPercentiles(image, nx*ny*nz, new double[]{rank, rank}, new boolean[]{false, true}, scales);
+	}
+
+	/**
+     *    Robust minimum and maximum estimation, computed together on a subsampled image
+     *    @param 	ratio	float fraction in [0,1]: the minimum number of points below the minimum or above the maximum
+	 *    @param 	scales	int: the number of times the scale is refined (precision of (max-min)/10^scales or finer)
+	 *	  @param	sub		int: subsampling factor in each dimension
+	 *	  @return 			the robust {minimum, maximum} values	
+     */
+    public static final float[] robustRange(float[] image, float ratio, int scales, int nx, int ny, int nz, int sub) {
+		float[] val = sampleValues(image, sub, nx, ny, nz);
+		double rank = ratio*nx/sub*ny/sub*nz/sub;
+		return histogramPercentiles(val, val.length, new double[]{rank, rank}, new boolean[]{false, true}, scales);
+	}
+
+	/**
+     *    Robust percentiles of the image, all computed together
+     *    @param	mask	the voxels to use (or null for all)
+     *    @param 	ratios	float fractions in [0,1]: the number of points below or equal to each percentile over the masked volume
+	 *    @param 	scales	int: the number of times the scale is refined (precision of (max-min)/10^scales or finer)
+	 *	  @return 			the percentile values	
+     */
+    public static final float[] robustPercentiles(float[] image, boolean[] mask, float[] ratios, int scales, int nx, int ny, int nz ) {
+		float[] val = image;
+		int nval = nx*ny*nz;
+		if (mask!=null) {
+			nval = 0;
+			for (int xyz=0;xyz<nx*ny*nz;xyz++) if (mask[xyz]) nval++;
+			val = new float[nval];
+			int n=0;
+			for (int xyz=0;xyz<nx*ny*nz;xyz++) if (mask[xyz]) val[n++] = image[xyz];
+		}
+		double[] ranks = new double[ratios.length];
+		boolean[] top = new boolean[ratios.length];
+		for (int p=0;p<ratios.length;p++) ranks[p] = ratios[p]*nval;
+		return histogramPercentiles(val, nval, ranks, top, scales);
+	}
+
+	private static final float[] sampleValues(float[][][] image, boolean[][][] mask, int nx, int ny, int nz) {
+		int nval = 0;
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) if (mask==null || mask[x][y][z]) nval++;
+		float[] val = new float[nval];
+		int n=0;
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) if (mask==null || mask[x][y][z]) val[n++] = image[x][y][z];
+		return val;
+	}
+
+	private static final float[] sampleValues(float[] image, int sub, int nx, int ny, int nz) {
+		float[] val = new float[((nx+sub-1)/sub)*((ny+sub-1)/sub)*((nz+sub-1)/sub)];
+		int n=0;
+		for (int x=0;x<nx;x+=sub) for (int y=0;y<ny;y+=sub) for (int z=0;z<nz;z+=sub) val[n++] = image[x+nx*y+nx*ny*z];
+		return val;
+	}
+
+	/**
+     *    Percentiles of the values, from the ranks of the percentiles counted from the minimum, or from the maximum if top[p] is true.
+     *	  Each pass computes a histogram of PERCENTILE_BINS bins in the current interval of each percentile
+     *	  (with direct bin indexing), which is then refined to the bin containing the requested rank.
+     *	  All percentiles are computed in the same passes, in parallel.
+     *	  The percentile is the value of the given rank in the sorted values, up to the final bin width
+     *	  of (max-min)/PERCENTILE_BINS^levels, with levels = scales/PERCENTILE_DIGITS rounded up.
+     */
+    private static final float[] histogramPercentiles(final float[] val, final int nval, double[] ranks, boolean[] top, int scales) {
+		final int Nbins = PERCENTILE_BINS;
+		final int np = ranks.length;
+		float[] result = new float[np];
+		if (nval==0) return result;
 		
 		// find first min, max
-		Imin = image[0];
-		Imax = image[0];
-		for (int x=0;x<nx;x+=sub) for (int y=0;y<ny;y+=sub) for (int z=0;z<nz;z+=sub) {
-			xyz = x+nx*y+nx*ny*z;
-			if (image[xyz]>Imax) Imax = image[xyz];
-			if (image[xyz]<Imin) Imin = image[xyz];
-		}
-		Rmax = Imax;
-		
-		for (int t=0;t<scales;t++) {
-			
-			Rmax = Imax;
-			
-			// compute coarse histogram
-			for (n=0;n<Nbins;n++) bins[n] = 0;
-			
-			for (int x=0;x<nx;x+=sub) for (int y=0;y<ny;y+=sub) for (int z=0;z<nz;z+=sub) {
-				xyz = x+nx*y+nx*ny*z;
-				
-				// first one include both boundaries 
-				if (  (image[xyz] >= Imin )
-					&&(image[xyz] <= Imin + 1.0f/(float)Nbins*(Imax-Imin) ) ) bins[0]++;
-				for (n=1;n<Nbins;n++) {
-					if (  (image[xyz] >  Imin + (float)n/(float)Nbins*(Imax-Imin) )
-						&&(image[xyz] <= Imin + (float)(n+1)/(float)Nbins*(Imax-Imin) ) ) bins[n]++;	
+		final int[] bounds = ParallelProcessing.ranges(nval);
+		final int nchunks = bounds.length-1;
+		final float[][] partialrange = new float[nchunks][];
+		ParallelProcessing.forEach(bounds, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				if (start>=end) return;
+				float Imin = val[start];
+				float Imax = val[start];
+				for (int n=start;n<end;n++) {
+					if (val[n]>Imax) Imax = val[n];
+					if (val[n]<Imin) Imin = val[n];
 				}
+				partialrange[chunk] = new float[]{Imin, Imax};
 			}
-			/* debug
-			System.out.print("histogram: \n");
-			for (n=0;n<Nbins;n++) System.out.print(" | "+bins[n]);
-			System.out.print("\n");
-			*/
-			
-			// find the value corresponding to the ratio
-			count = 0;
-			n=Nbins;
-			while ( (count < ratio) && (n>0) ) {
-				n=n-1;
-				count +=bins[n];
+		});
+		double Imin = val[0];
+		double Imax = val[0];
+		for (int c=0;c<nchunks;c++) if (partialrange[c]!=null) {
+			Imin = Numerics.min(Imin, partialrange[c][0]);
+			Imax = Numerics.max(Imax, partialrange[c][1]);
+		}
+		if (Imax<=Imin) {
+			for (int p=0;p<np;p++) result[p] = (float)Imin;
+			return result;
+		}
+		
+		// current interval of each percentile
+		double[] lower = new double[np];
+		double[] upper = new double[np];
+		for (int p=0;p<np;p++) {
+			lower[p] = Imin;
+			upper[p] = Imax;
+		}
+		int levels = Numerics.max(1, (scales+PERCENTILE_DIGITS-1)/PERCENTILE_DIGITS);
+		for (int t=0;t<levels;t++) {
+			// percentiles in the same interval share the same histogram
+			final int[] hist = new int[np];
+			int nh = 0;
+			final double[] hmin = new double[np];
+			final double[] hmax = new double[np];
+			for (int p=0;p<np;p++) {
+				hist[p] = -1;
+				for (int h=0;h<nh && hist[p]==-1;h++) if (hmin[h]==lower[p] && hmax[h]==upper[p]) hist[p] = h;
+				if (hist[p]==-1) {
+					hmin[nh] = lower[p];
+					hmax[nh] = upper[p];
+					hist[p] = nh;
+					nh++;
+				}
+			}
+			final int nhist = nh;
+			
+			// compute the histograms, with the counts below and above each interval in the two extra bins
+			final long[][][] partial = new long[nchunks][][];
+			ParallelProcessing.forEach(bounds, new ParallelProcessing.RangeTask() {
+				public void process(int chunk, int start, int end) {
+					long[][] bins = new long[nhist][Nbins+2];
+					double[] scale = new double[nhist];
+					for (int h=0;h<nhist;h++) scale[h] = Nbins/(hmax[h]-hmin[h]);
+					for (int n=start;n<end;n++) {
+						for (int h=0;h<nhist;h++) {
+							if (val[n]<hmin[h]) bins[h][Nbins]++;
+							else if (val[n]>hmax[h]) bins[h][Nbins+1]++;
+							else bins[h][Numerics.min(Nbins-1, (int)((val[n]-hmin[h])*scale[h]))]++;
+						}
+					}
+					partial[chunk] = bins;
+				}
+			});
+			long[][] bins = new long[nhist][Nbins+2];
+			for (int c=0;c<nchunks;c++) if (partial[c]!=null) {
+				for (int h=0;h<nhist;h++) for (int n=0;n<Nbins+2;n++) bins[h][n] += partial[c][h][n];
 			}
-			Rmax = Imin + (float)(n+0.5f)/(float)Nbins*(Imax-Imin);
-			
-			//System.out.print("robust maximum: "+Rmax+" ("+n+", "+ratio+", "+count+")\n");		
-
-			// new boundaries
-			float I0 = Imin + (float)n/(float)Nbins*(Imax-Imin);
-			float I1 = Imin + (float)(n+1)/(float)Nbins*(Imax-Imin);
-			
-			Imin = I0;
-			Imax = I1;
 			
-			// new ratio
-			if (n<Nbins) ratio = ratio - (count-bins[n]);			
+			// find the bin corresponding to the rank
+			for (int p=0;p<np;p++) {
+				long[] bin = bins[hist[p]];
+				int n;
+				if (!top[p]) {
+					double count = bin[Nbins];
+					n = 0;
+					while (n<Nbins-1 && count+bin[n]<ranks[p]) {
+						count += bin[n];
+						n++;
+					}
+				} else {
+					double count = bin[Nbins+1];
+					n = Nbins-1;
+					while (n>0 && count+bin[n]<ranks[p]) {
+						count += bin[n];
+						n--;
+					}
+				}
+				double width = (upper[p]-lower[p])/Nbins;
+				lower[p] = hmin[hist[p]] + n*width;
+				upper[p] = hmin[hist[p]] + (n+1)*width;
+			}
 		}
+		// return the center of the final bins
+		for (int p=0;p<np;p++) result[p] = (float)(0.5*(lower[p]+upper[p]));
 		
-		return Rmax;
+		return result;
 	}
 
 	/**
@@ -0,0 +1,156 @@
+package de.mpg.cbs.libraries;
+
+import java.util.*;
+
+import de.mpg.cbs.utilities.*;
+import de.mpg.cbs.structures.*;
+
+import org.apache.commons.math3.util.FastMath;
+
+/**
+ *
+ *  This class smooths data mapped on surface meshes, with a sparse averaging operator
+ *	built once from the vertex neighborhoods.
+ *	<p>
+ *	The data is smoothed either by iterated averaging of each vertex with its neighbors,
+ *	or directly with the corresponding heat kernel exp(-t(I-A)), approximated by a Chebyshev
+ *	expansion in the averaging operator A. All the data channels are smoothed together.
+ *
+ *	@version    Oct 2016
+ *	@author     Pierre-Louis Bazin
+ *
+ *
+ */
+
+public class MeshDataSmoothing {
+
+	// no data: used as a library of functions
+
+	// numerical quantities
+	private static final	double	HEAT_TOLERANCE = 1e-6;
+	private static final	double	MAXSCALE = 1e250;
+
+	private static final boolean		debug=false;
+
+	/**
+	 *	averaging operator of the mesh: each vertex is replaced by the mean
+	 *	of its value and the values of its neighbors
+	 */
+	public static SparseMatrix averagingOperator(int[][] neighbors) {
+		int nv = neighbors.length;
+		int[] start = new int[nv+1];
+		for (int v=0;v<nv;v++) start[v+1] = start[v] + neighbors[v].length+1;
+
+		int[] index = new int[start[nv]];
+		double[] value = new double[start[nv]];
+		for (int v=0;v<nv;v++) {
+			int N = neighbors[v].length;
+			index[start[v]] = v;
+			for (int n=0;n<N;n++) index[start[v]+1+n] = neighbors[v][n];
+			Arrays.sort(index, start[v], start[v+1]);
+			for (int k=start[v];k<start[v+1];k++) value[k] = 1.0/(N+1.0);
+		}
+		return new SparseMatrix(nv, nv, start, index, value);
+	}
+
+	/**
+	 *	iterated averaging of the data [vertex][channel] (the input is not modified)
+	 */
+	public static double[][] iterativeSmoothing(SparseMatrix average, double[][] data, int iterations) {
+		double[][] current = copy(data);
+		if (iterations<1) return current;
+		double[][] next = new double[data.length][data[0].length];
+		for (int i=0;i<iterations;i++) {
+			average.multiply(current, next);
+			double[][] tmp = current;
+			current = next;
+			next = tmp;
+		}
+		return current;
+	}
+
+	/**
+	 *	heat kernel smoothing exp(-time(I-A)) of the data [vertex][channel] (the input is not modified).
+	 *	For low frequencies, it is similar to the iterated averaging with iterations = time.
+	 */
+	public static double[][] heatKernelSmoothing(SparseMatrix average, double[][] data, double time) {
+		final double[] coeff = chebyshevHeatCoefficients(time, HEAT_TOLERANCE);
+		final int nv = data.length;
+		final int nd = data[0].length;
+
+		if (debug) System.out.println("Chebyshev expansion order: "+(coeff.length-1));
+
+		// T_0(A) f = f, T_1(A) f = A f, T_k+1(A) f = 2 A T_k(A) f - T_k-1(A) f
+		final double[][] result = new double[nv][nd];
+		double[][] prev = copy(data);
+		double[][] current = new double[nv][nd];
+		double[][] next = new double[nv][nd];
+		average.multiply(prev, current);
+		accumulate(result, coeff[0], prev);
+		if (coeff.length>1) accumulate(result, coeff[1], current);
+		for (int k=2;k<coeff.length;k++) {
+			average.multiply(current, next);
+			final double[][] tprev = prev;
+			final double[][] tnext = next;
+			final double ck = coeff[k];
+			ParallelProcessing.forEach(nv, new ParallelProcessing.RangeTask() {
+				public void process(int chunk, int start, int end) {
+					for (int v=start;v<end;v++) for (int d=0;d<nd;d++) {
+						tnext[v][d] = 2.0*tnext[v][d] - tprev[v][d];
+						result[v][d] += ck*tnext[v][d];
+					}
+				}
+			});
+			double[][] tmp = prev;
+			prev = current;
+			current = next;
+			next = tmp;
+		}
+		return result;
+	}
+
+	/**
+	 *	coefficients c_k of exp(-t(1-x)) = sum_k c_k T_k(x) on [-1,1], with c_0 = exp(-t)I_0(t)
+	 *	and c_k = 2 exp(-t)I_k(t), truncated when below the tolerance. The modified Bessel functions
+	 *	are computed with Miller's backward recurrence, normalized by exp(t) = I_0(t) + 2 sum_k I_k(t).
+	 */
+	public static double[] chebyshevHeatCoefficients(double time, double tolerance) {
+		if (time<=0) return new double[]{1.0};
+
+		int kmax = Numerics.ceil(time + 10.0*FastMath.sqrt(time)) + 30;
+		double[] bessel = new double[kmax+2];
+		bessel[kmax+1] = 0.0;
+		bessel[kmax] = 1e-30;
+		for (int k=kmax;k>0;k--) {
+			bessel[k-1] = bessel[k+1] + 2.0*k/time*bessel[k];
+			// rescale to avoid overflows
+			if (bessel[k-1]>MAXSCALE) {
+				for (int n=k-1;n<=kmax;n++) bessel[n] /= MAXSCALE;
+			}
+		}
+		double norm = bessel[0];
+		for (int k=1;k<=kmax;k++) norm += 2.0*bessel[k];
+
+		int order = 0;
+		while (order<kmax && 2.0*bessel[order+1]/norm>tolerance) order++;
+
+		double[] coeff = new double[order+1];
+		coeff[0] = bessel[0]/norm;
+		for (int k=1;k<=order;k++) coeff[k] = 2.0*bessel[k]/norm;
+		return coeff;
+	}
+
+	private static final double[][] copy(double[][] data) {
+		double[][] res = new double[data.length][];
+		for (int v=0;v<data.length;v++) res[v] = Arrays.copyOf(data[v], data[v].length);
+		return res;
+	}
+
+	private static final void accumulate(final double[][] result, final double coeff, final double[][] data) {
+		ParallelProcessing.forEach(data.length, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int v=start;v<end;v++) for (int d=0;d<data[v].length;d++) result[v][d] += coeff*data[v][d];
+			}
+		});
+	}
+}
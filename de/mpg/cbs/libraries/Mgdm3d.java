@@ -81,6 +81,10 @@ public class Mgdm3d {
 	private float		landmineDist = 2.5f;
 	private	float		narrowBandDist = landmineDist+1.8f;
 	
+	// re-initialization flags returned by the topology-checked updates
+	private static final	int		REINIT_LM = 1;
+	private static final	int		REINIT_OL = 2;
+	
 	// for debug and display
 	private static final boolean		debug=true;
 	private static final boolean		verbose=true;
@@ -721,8 +725,11 @@ public class Mgdm3d {
 		int[] nswap = new int[nmgdm];
 			
 		double[] forces = new double[nmgdm+1];
-		int lbmax, lbsec;
-		double curr, next;
+		
+		// parallel evolution: the narrow band is ordered by voxel index, so contiguous chunks are spatial slabs
+		// (the result is the same as with the serial evolution)
+		boolean parallel = ParallelProcessing.isParallel();
+		
 		// evolve until a landmine is closer than minDist of the boundaries
 		for (int t=0;t<iter;t++) {
 			if (debug) System.out.print("iteration "+t+"\n");
@@ -732,98 +739,37 @@ public class Mgdm3d {
 			
 			for (int lb=0;lb<nmgdm;lb++) nswap[lb] = 0;
 			
-			for (int n=0; n<narrowband.currentsize;n++) {
-				int xyz = narrowband.id[n];
-				
-				/* probably better; disabled for testing
-				// select best label somehow (use the balloon forces with highest value (e.g. coming from memberships)
-				byte olb = lastNeighborCandidate(xyz);
-				*/
-				
-				// select best label from previous initialization
-				byte olb = otherlabels[xyz];
-				
-				// evolve the MGDM functions
-				
-				// compute the forces from current levelset values, update the narrow band from it
-				/*
-				double curr, next;
-				if (olb!=EMPTY) next = levelsetForces(xyz, olb);
-				else next = levelsetForces(xyz, mgdmlabels[nmgdm-1][xyz]);
-				*/
-				if (olb!=EMPTY) forces[nmgdm] = levelsetForces(xyz, olb);
-				else forces[nmgdm] = 0.0f;
-				lbmax = nmgdm;
-				lbsec = -1;
-				for (int lb=nmgdm-1;lb>=0;lb--) {
-					if (mgdmlabels[lb][xyz]!=EMPTY) {
-						forces[lb] = levelsetForces(xyz, mgdmlabels[lb][xyz]);
-						if (forces[lb]>forces[lbmax]) {
-							lbsec = lbmax;
-							lbmax = lb;
-						} else if (lbsec==-1) {
-							lbsec = lb;
-						} else if (forces[lb]>forces[lbsec]) {
-							lbsec = lb;
-						}
-					} else forces[lb] = 0.0f;					
+			if (!parallel) {
+				for (int n=0; n<narrowband.currentsize;n++) {
+					int reinit = evolveNarrowBandPoint(narrowband, n, forces, nswap, null, landmines);
+					if ((reinit & REINIT_LM)>0) reinitLM = true;
+					if ((reinit & REINIT_OL)>0) reinitOL = true;
 				}
-				for (int lb=nmgdm-1;lb>=0;lb--) if (mgdmlabels[lb][xyz]!=EMPTY) {
-					/*curr = levelsetForces(xyz, mgdmlabels[lb][xyz]);*/
-					curr = forces[lb];
-					if (lb==lbmax) next = forces[lbsec];
-					else next = forces[lbmax];
-					
-					// update the narrow band values, not the original data
-					narrowband.functions[lb][n] += curr - next;
-					
-					/*next = curr;*/
-	
-					// change of sign ?
-					if (narrowband.functions[lb][n]<0) {
-						//if (debug) System.out.print(""+lb);
-						nswap[lb]++;
-						
-						if (lb==nmgdm-1) {
-							if (olb!=EMPTY) {
-								//if (homeomorphicLabeling(xyz, olb)) {
-								narrowband.labels[lb][n] = olb;
-								narrowband.functions[lb][n] = -narrowband.functions[lb][n];
-							} else {
-								// reset to low value
-								narrowband.functions[lb][n] = lowlevel;
-							}
-						} else if (mgdmlabels[lb+1][xyz]!=EMPTY) {
-							if (lb==0) {
-								// check for topology here (optional)
-								if (homeomorphicLabeling(xyz, mgdmlabels[lb+1][xyz])) {
-									narrowband.labels[lb+1][n] = mgdmlabels[lb][xyz];
-									narrowband.labels[lb][n] = mgdmlabels[lb+1][xyz];
-									narrowband.functions[lb][n] = -narrowband.functions[lb][n];
-									segmentation[xyz] = mgdmlabels[lb+1][xyz];
-									// check for boundary changes in the landmines : force reinitialization
-									if (landmines.get(xyz)) reinitLM = true;
-									// check for far labels getting mixed in: time to re-initialize
-									if (narrowband.labels[0][n]==otherlabels[xyz]) reinitOL = true;
-								} else {
-									// reset to low value
-									narrowband.functions[lb][n] = lowlevel;
-								}
-							} else {
-								//if (homeomorphicLabeling(xyz, mgdmlabels[lb+1][xyz])) {
-									narrowband.labels[lb+1][n] = mgdmlabels[lb][xyz];
-									narrowband.labels[lb][n] = mgdmlabels[lb+1][xyz];
-									narrowband.functions[lb][n] = -narrowband.functions[lb][n];
-								//} else {
-									// reset to low value
-									//narrowband.functions[lb][n] = lowlevel;
-								//}
-							}
-						} else {
-							// reset to low value
-							narrowband.functions[lb][n] = lowlevel;
+			} else {
+				// first pass in parallel: forces and updates that do not require a topology check
+				final int[] bounds = ParallelProcessing.ranges(narrowband.currentsize);
+				final BandChunk[] chunks = new BandChunk[bounds.length-1];
+				for (int c=0;c<chunks.length;c++) chunks[c] = new BandChunk(bounds[c], bounds[c+1], nmgdm);
+				final NarrowBand band = narrowband;
+				final BitSet mines = landmines;
+				ParallelProcessing.forEach(bounds, new ParallelProcessing.RangeTask() {
+					public void process(int c, int start, int end) {
+						double[] chunkforces = new double[nmgdm+1];
+						for (int n=start;n<end;n++) {
+							evolveNarrowBandPoint(band, n, chunkforces, chunks[c].nswap, chunks[c], mines);
 						}
 					}
+				});
+				
+				// second pass, in the same order as the serial evolution: topology-checked label swaps
+				// (the homeomorphic check looks at the neighbors' current segmentation)
+				for (BandChunk chunk : chunks) {
+					for (int lb=0;lb<nmgdm;lb++) nswap[lb] += chunk.nswap[lb];
+					for (int p=0;p<chunk.npending;p++) {
+						int reinit = commitBaseLabel(narrowband, chunk.pending[p], landmines);
+						if ((reinit & REINIT_LM)>0) reinitLM = true;
+						if ((reinit & REINIT_OL)>0) reinitOL = true;
+					}
 				}
 			}
 			if (debug) for (int lb=0;lb<nmgdm;lb++) System.out.print("changed labels ("+lb+"): "+nswap[lb]+"\n");
@@ -833,16 +779,18 @@ public class Mgdm3d {
 			
 			// once all the new values are computed, copy into original MGDM functions
 			float avgdiff = 0.0f;
-			for (int n=0; n<narrowband.currentsize;n++) {
-				int xyz = narrowband.id[n];
-				// measure the changes at the base level
-				if (mgdmlabels[0][xyz]==narrowband.labels[0][n]) avgdiff += Numerics.abs(mgdmfunctions[0][xyz]-narrowband.functions[0][n]);
-				else avgdiff += Numerics.abs(mgdmfunctions[0][xyz]+narrowband.functions[0][n]);
-				
-				for (int lb=0;lb<nmgdm;lb++) {
-					mgdmlabels[lb][xyz] = narrowband.labels[lb][n];
-					mgdmfunctions[lb][xyz] = narrowband.functions[lb][n];
-				}
+			if (!parallel) {
+				avgdiff = copyNarrowBand(narrowband, 0, narrowband.currentsize);
+			} else {
+				final int[] bounds = ParallelProcessing.ranges(narrowband.currentsize);
+				final float[] diffs = new float[bounds.length-1];
+				final NarrowBand band = narrowband;
+				ParallelProcessing.forEach(bounds, new ParallelProcessing.RangeTask() {
+					public void process(int c, int start, int end) {
+						diffs[c] = copyNarrowBand(band, start, end);
+					}
+				});
+				for (int c=0;c<diffs.length;c++) avgdiff += diffs[c];
 			}
 			if (debug) System.out.print("mean distance function change: "+(avgdiff/narrowband.currentsize)+"\n");
 	
@@ -876,6 +824,149 @@ public class Mgdm3d {
         return;
     }
     
+    /** 
+    *  	Narrow band update of a single point: when a chunk is given, the topology-checked 
+    *	change of the first label is postponed and recorded in the chunk instead
+    *	(returns the re-initialization flags otherwise)
+    */
+    private final int evolveNarrowBandPoint(NarrowBand narrowband, int n, double[] forces, int[] nswap, BandChunk chunk, BitSet landmines) {
+		int xyz = narrowband.id[n];
+		int reinit = 0;
+		
+		/* probably better; disabled for testing
+		// select best label somehow (use the balloon forces with highest value (e.g. coming from memberships)
+		byte olb = lastNeighborCandidate(xyz);
+		*/
+		
+		// select best label from previous initialization
+		byte olb = otherlabels[xyz];
+		
+		// evolve the MGDM functions
+		
+		// compute the forces from current levelset values, update the narrow band from it
+		if (olb!=EMPTY) forces[nmgdm] = levelsetForces(xyz, olb);
+		else forces[nmgdm] = 0.0f;
+		int lbmax = nmgdm;
+		int lbsec = -1;
+		for (int lb=nmgdm-1;lb>=0;lb--) {
+			if (mgdmlabels[lb][xyz]!=EMPTY) {
+				forces[lb] = levelsetForces(xyz, mgdmlabels[lb][xyz]);
+				if (forces[lb]>forces[lbmax]) {
+					lbsec = lbmax;
+					lbmax = lb;
+				} else if (lbsec==-1) {
+					lbsec = lb;
+				} else if (forces[lb]>forces[lbsec]) {
+					lbsec = lb;
+				}
+			} else forces[lb] = 0.0f;					
+		}
+		double curr, next;
+		for (int lb=nmgdm-1;lb>=0;lb--) if (mgdmlabels[lb][xyz]!=EMPTY) {
+			curr = forces[lb];
+			if (lb==lbmax) next = forces[lbsec];
+			else next = forces[lbmax];
+			
+			// update the narrow band values, not the original data
+			narrowband.functions[lb][n] += curr - next;
+			
+			// change of sign ?
+			if (narrowband.functions[lb][n]<0) {
+				nswap[lb]++;
+				
+				if (lb==nmgdm-1) {
+					if (olb!=EMPTY) {
+						narrowband.labels[lb][n] = olb;
+						narrowband.functions[lb][n] = -narrowband.functions[lb][n];
+					} else {
+						// reset to low value
+						narrowband.functions[lb][n] = lowlevel;
+					}
+				} else if (mgdmlabels[lb+1][xyz]!=EMPTY) {
+					if (lb==0) {
+						// check for topology here (optional), possibly postponed
+						if (chunk!=null) chunk.addPending(n);
+						else reinit = commitBaseLabel(narrowband, n, landmines);
+					} else {
+						narrowband.labels[lb+1][n] = mgdmlabels[lb][xyz];
+						narrowband.labels[lb][n] = mgdmlabels[lb+1][xyz];
+						narrowband.functions[lb][n] = -narrowband.functions[lb][n];
+					}
+				} else {
+					// reset to low value
+					narrowband.functions[lb][n] = lowlevel;
+				}
+			}
+		}
+		return reinit;
+	}
+	
+    /** 
+    *  	topology-checked change of the first label for a narrow band point 
+    *	(returns the re-initialization flags)
+    */
+    private final int commitBaseLabel(NarrowBand narrowband, int n, BitSet landmines) {
+		int xyz = narrowband.id[n];
+		int reinit = 0;
+		if (homeomorphicLabeling(xyz, mgdmlabels[1][xyz])) {
+			narrowband.labels[1][n] = mgdmlabels[0][xyz];
+			narrowband.labels[0][n] = mgdmlabels[1][xyz];
+			narrowband.functions[0][n] = -narrowband.functions[0][n];
+			segmentation[xyz] = mgdmlabels[1][xyz];
+			// check for boundary changes in the landmines : force reinitialization
+			if (landmines.get(xyz)) reinit |= REINIT_LM;
+			// check for far labels getting mixed in: time to re-initialize
+			if (narrowband.labels[0][n]==otherlabels[xyz]) reinit |= REINIT_OL;
+		} else {
+			// reset to low value
+			narrowband.functions[0][n] = lowlevel;
+		}
+		return reinit;
+	}
+	
+    /** 
+    *  	copy the narrow band values from start to end into the MGDM functions 
+    *	(returns the summed change of the base level)
+    */
+    private final float copyNarrowBand(NarrowBand narrowband, int start, int end) {
+		float diff = 0.0f;
+		for (int n=start; n<end;n++) {
+			int xyz = narrowband.id[n];
+			// measure the changes at the base level
+			if (mgdmlabels[0][xyz]==narrowband.labels[0][n]) diff += Numerics.abs(mgdmfunctions[0][xyz]-narrowband.functions[0][n]);
+			else diff += Numerics.abs(mgdmfunctions[0][xyz]+narrowband.functions[0][n]);
+			
+			for (int lb=0;lb<nmgdm;lb++) {
+				mgdmlabels[lb][xyz] = narrowband.labels[lb][n];
+				mgdmfunctions[lb][xyz] = narrowband.functions[lb][n];
+			}
+		}
+		return diff;
+	}
+	
+	/** a contiguous part of the narrow band, with its own swap counts and postponed label changes */
+	private static class BandChunk {
+		public int[] nswap;
+		public int[] pending;
+		public int npending;
+		
+		public BandChunk(int start, int end, int nlb) {
+			nswap = new int[nlb];
+			pending = new int[Numerics.max(16, (end-start)/16)];
+			npending = 0;
+		}
+		
+		public final void addPending(int n) {
+			if (npending>=pending.length) {
+				int[] old = pending;
+				pending = new int[2*old.length];
+				for (int p=0;p<npending;p++) pending[p] = old[p];
+			}
+			pending[npending] = n;
+			npending++;
+		}
+	}
+    
     /** method to select the nmgdm-th closest neighbor based on external information 
      *  (highly application-dependent, may not be usable in all cases) 
      */
@@ -4,6 +4,7 @@ import java.io.*;
 import java.util.*;
 
 import de.mpg.cbs.structures.*;
+import de.mpg.cbs.utilities.*;
 
 /**
  *
@@ -164,463 +165,264 @@ public class ObjectTransforms {
 	/**
 	*  compute a feature transform based on Voronoi diagrams
 	*	from: Maurer, Qi and Rghavan, PAMI 25:2, 2003
+	*	(kept for compatibility: the flat euclideanFeatureTransform() uses much less memory)
 	*/
 	public static final short[][][][] voronoiFeatureTransform(boolean[][][] obj, int nx, int ny, int nz) {
-		short[][][][]	ft = new short[nx][ny][nz][3];
-		short[][] 		gx = new short[nx][3];
-		short[][] 		gy = new short[ny][3];
-		short[][] 		gz = new short[nz][3];
+		int[]	feature = new int[nx*ny*nz];
+		float[]	sqdist = new float[nx*ny*nz];
+		euclideanFeatureTransform(flatten(obj,nx,ny,nz), nx, ny, nz, 1.0f, 1.0f, 1.0f, 0.0f, feature, sqdist);
 		
-		// initialize the ft
-		for (short z=0;z<nz;z++) {
-			for (short y=0;y<ny;y++) {
-				for (short x=0;x<nx;x++) {
-					if (obj[x][y][z]) {
-						ft[x][y][z][0] = x;
-						ft[x][y][z][1] = y;
-						ft[x][y][z][2] = z;
-					} else {
-						ft[x][y][z][0] = -1;
-						ft[x][y][z][1] = -1;
-						ft[x][y][z][2] = -1;
-					}
-				}
-				// compute Voronoi 1D
-				computePartialVoronoiDiagramX(ft, gx, y, z, nx, ny, nz);
-			}
-			for (short x=0;x<nx;x++) {
-				// compute Voronoi 2D
-				computePartialVoronoiDiagramY(ft, gy, x, z, nx, ny, nz);		
-			}
-		}
-		for (short x=0;x<nx;x++) {
-			for (short y=0;y<ny;y++) {
-				// compute Voronoi 3D
-				computePartialVoronoiDiagramZ(ft, gz, x, y, nx, ny, nz);
-			}
+		short[][][][]	ft = new short[nx][ny][nz][3];
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
+			setFeatureCoordinates(feature[x+nx*y+nx*ny*z], ft[x][y][z], nx, ny);
 		}
-		gx = null;
-		gy = null;
-		gz = null;
 		return ft;
 	}
 	
-	private static final void computePartialVoronoiDiagramX(short[][][][] ft, short[][] g, short y, short z, int nx, int ny, int nz) {
-		short[] xi = new short[3];
-		int l=-1;
-		
-		for (short i=0;i<nx;i++) {
-			xi[0] = i;
-			xi[1] = y;
-			xi[2] = z;
-			
-			if (ft[i][y][z][0]>-1) {
-				if (l<1) {
-					l++;
-					g[l][0] = ft[i][y][z][0];
-					g[l][1] = ft[i][y][z][1];
-					g[l][2] = ft[i][y][z][2];
-				} else {
-					while ( (l>=1) && removeVoronoiFeature(g[l-1],g[l],ft[i][y][z],xi,0)) l--;
-					l++;
-					g[l][0] = ft[i][y][z][0];
-					g[l][1] = ft[i][y][z][1];
-					g[l][2] = ft[i][y][z][2];
-				}
-			}
-		}
-		int ns = l;
-		if (ns==-1) { return; }
-		l=0;
-		for (short i=0;i<nx;i++) {
-			xi[0] = i;
-			xi[1] = y;
-			xi[2] = z;
-			while ( (l<ns) && ( ftDistance(xi,g[l]) > ftDistance(xi,g[l+1]) ) ) l++;
-			
-			ft[i][y][z][0] = g[l][0];
-			ft[i][y][z][1] = g[l][1];
-			ft[i][y][z][2] = g[l][2];
-		}
-		return;
-	}
-	
-	private static final void computePartialVoronoiDiagramY(short[][][][] ft, short[][] g, short x, short z, int nx, int ny, int nz) {
-		short[] xi = new short[3];
-		int l=-1;
+	/**
+	*  compute a feature transform based on Voronoi diagrams
+	*	from: Maurer, Qi and Rghavan, PAMI 25:2, 2003
+	*	(kept for compatibility: the flat euclideanFeatureTransform() uses much less memory)
+	*/
+	public static final short[][] voronoiFeatureTransform(boolean[] obj, int nx, int ny, int nz) {
+		int[]	feature = new int[nx*ny*nz];
+		float[]	sqdist = new float[nx*ny*nz];
+		euclideanFeatureTransform(obj, nx, ny, nz, 1.0f, 1.0f, 1.0f, 0.0f, feature, sqdist);
 		
-		for (short i=0;i<ny;i++) {
-			xi[0] = x;
-			xi[1] = i;
-			xi[2] = z;
-			
-			if (ft[x][i][z][0]>-1) {
-				if (l<1) {
-					l++;
-					g[l][0] = ft[x][i][z][0];
-					g[l][1] = ft[x][i][z][1];
-					g[l][2] = ft[x][i][z][2];
-				} else {
-					while ( (l>=1) && removeVoronoiFeature(g[l-1],g[l],ft[x][i][z],xi,1)) l--;
-					l++;
-					g[l][0] = ft[x][i][z][0];
-					g[l][1] = ft[x][i][z][1];
-					g[l][2] = ft[x][i][z][2];
-				}
-			}
-		}
-		int ns = l;
-		if (ns==-1) { return; }
-		l=0;
-		for (short i=0;i<ny;i++) {
-			xi[0] = x;
-			xi[1] = i;
-			xi[2] = z;
-			while ( (l<ns) && ( ftDistance(xi,g[l]) > ftDistance(xi,g[l+1]) ) ) l++;
-			
-			ft[x][i][z][0] = g[l][0];
-			ft[x][i][z][1] = g[l][1];
-			ft[x][i][z][2] = g[l][2];
+		short[][]		ft = new short[nx*ny*nz][3];
+		for (int xyz=0;xyz<nx*ny*nz;xyz++) {
+			setFeatureCoordinates(feature[xyz], ft[xyz], nx, ny);
 		}
-		return;
+		return ft;
 	}
 	
-	private static final void computePartialVoronoiDiagramZ(short[][][][] ft, short[][] g, short x, short y, int nx, int ny, int nz) {
-		short[] xi = new short[3];
-		int l=-1;
-		for (short i=0;i<nz;i++) {
-			xi[0] = x;
-			xi[1] = y;
-			xi[2] = i;
-			
-			if (ft[x][y][i][0]>-1) {
-				if (l<1) {
-					l++;
-					g[l][0] = ft[x][y][i][0];
-					g[l][1] = ft[x][y][i][1];
-					g[l][2] = ft[x][y][i][2];
-				} else {
-					while ( (l>=1) && removeVoronoiFeature(g[l-1],g[l],ft[x][y][i],xi,2)) l--;
-					l++;
-					g[l][0] = ft[x][y][i][0];
-					g[l][1] = ft[x][y][i][1];
-					g[l][2] = ft[x][y][i][2];
-				}
-			}
+	private static final void setFeatureCoordinates(int f, short[] ft, int nx, int ny) {
+		if (f>-1) {
+			ft[0] = (short)(f%nx);
+			ft[1] = (short)((f/nx)%ny);
+			ft[2] = (short)(f/(nx*ny));
+		} else {
+			ft[0] = -1;
+			ft[1] = -1;
+			ft[2] = -1;
 		}
-		int ns = l;
-		if (ns==-1) { return; }
-		l=0;
-		for (short i=0;i<nz;i++) {
-			xi[0] = x;
-			xi[1] = y;
-			xi[2] = i;
-			while ( (l<ns) && ( ftDistance(xi,g[l]) > ftDistance(xi,g[l+1]) ) ) l++;
-			
-			ft[x][y][i][0] = g[l][0];
-			ft[x][y][i][1] = g[l][1];
-			ft[x][y][i][2] = g[l][2];
-		}
-		return;
 	}
 	
 	/**
-	*  compute a feature transform based on Voronoi diagrams
-	*	from: Maurer, Qi and Rghavan, PAMI 25:2, 2003
+	*  compute the exact Euclidean feature transform of an object, for anisotropic voxel sizes (rx,ry,rz):
+	*	feature[xyz] is the index of the closest object voxel and sqdist[xyz] its squared distance,
+	*	both set to -1 if the object is empty. If maxdist>0, only the distances up to maxdist
+	*	are computed, and the voxels farther away are set to -1 as well.
+	*	<p>
+	*	The separable passes of Maurer, Qi and Rghavan, PAMI 25:2, 2003 are computed 
+	*	in parallel over the image rows, columns and slices.
 	*/
-	public static final short[][] voronoiFeatureTransform(boolean[] obj, int nx, int ny, int nz) {
-		short[][]		ft = new short[nx*ny*nz][3];
-		short[][] 		gx = new short[nx][3];
-		short[][] 		gy = new short[ny][3];
-		short[][] 		gz = new short[nz][3];
+	public static final void euclideanFeatureTransform(final boolean[] obj, final int nx, final int ny, final int nz,
+															final float rx, final float ry, final float rz, float maxdist,
+															final int[] feature, final float[] sqdist) {
+		final int nxy = nx*ny;
+		final int nmax = Numerics.max(nx,ny,nz);
+		// features beyond the band on a line can be discarded for all the following passes
+		final double band = (maxdist>0) ? (double)maxdist*(double)maxdist : Double.MAX_VALUE;
 		
-		// initialize the ft
-		for (short z=0;z<nz;z++) {
-			for (short y=0;y<ny;y++) {
-				for (short x=0;x<nx;x++) {
-					int xyz = x+nx*y+nx*ny*z;
-					if (obj[xyz]) {
-						ft[xyz][0] = x;
-						ft[xyz][1] = y;
-						ft[xyz][2] = z;
-					} else {
-						ft[xyz][0] = -1;
-						ft[xyz][1] = -1;
-						ft[xyz][2] = -1;
+		// rows and columns
+		ParallelProcessing.forEachSlab(nz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				int[] gf = new int[nmax];
+				double[] gp = new double[nmax];
+				double[] ga = new double[nmax];
+				for (int z=start;z<end;z++) {
+					for (int y=0;y<ny;y++) {
+						int offset = y*nx+z*nxy;
+						for (int xyz=offset;xyz<offset+nx;xyz++) {
+							if (obj[xyz]) {
+								feature[xyz] = xyz;
+								sqdist[xyz] = 0.0f;
+							} else {
+								feature[xyz] = -1;
+								sqdist[xyz] = -1.0f;
+							}
+						}
+						// compute Voronoi 1D
+						computePartialVoronoiDiagram(feature, sqdist, offset, 1, nx, rx, band, gf, gp, ga);
+					}
+					for (int x=0;x<nx;x++) {
+						// compute Voronoi 2D
+						computePartialVoronoiDiagram(feature, sqdist, x+z*nxy, nx, ny, ry, band, gf, gp, ga);
 					}
 				}
-				// compute Voronoi 1D
-				computePartialVoronoiDiagramX(ft, gx, y, z, nx, ny, nz);
-			}
-			for (short x=0;x<nx;x++) {
-				// compute Voronoi 2D
-				computePartialVoronoiDiagramY(ft, gy, x, z, nx, ny, nz);		
 			}
-		}
-		for (short x=0;x<nx;x++) {
-			for (short y=0;y<ny;y++) {
-				// compute Voronoi 3D
-				computePartialVoronoiDiagramZ(ft, gz, x, y, nx, ny, nz);
+		});
+		// slices
+		ParallelProcessing.forEach(nxy, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				int[] gf = new int[nmax];
+				double[] gp = new double[nmax];
+				double[] ga = new double[nmax];
+				for (int xy=start;xy<end;xy++) {
+					// compute Voronoi 3D
+					computePartialVoronoiDiagram(feature, sqdist, xy, nxy, nz, rz, band, gf, gp, ga);
+				}
 			}
-		}
-		gx = null;
-		gy = null;
-		gz = null;
-		return ft;
+		});
 	}
 	
-	private static final void computePartialVoronoiDiagramX(short[][] ft, short[][] g, short y, short z, int nx, int ny, int nz) {
-		short[] xi = new short[3];
+	/** 
+	*	one pass of the feature transform along the line of n voxels {offset + i*step},
+	*	with the lower envelope of the distances to the features kept in (gf,gp,ga)
+	*/
+	private static final void computePartialVoronoiDiagram(int[] feature, float[] sqdist, int offset, int step, int n, float res, double band,
+																int[] gf, double[] gp, double[] ga) {
 		int l=-1;
-		
-		for (short i=0;i<nx;i++) {
-			xi[0] = i;
-			xi[1] = y;
-			xi[2] = z;
-			int iyz = i+nx*y+nx*ny*z;
+		for (int i=0;i<n;i++) {
+			int idx = offset+i*step;
 			
-			if (ft[iyz][0]>-1) {
-				if (l<1) {
-					l++;
-					g[l][0] = ft[iyz][0];
-					g[l][1] = ft[iyz][1];
-					g[l][2] = ft[iyz][2];
-				} else {
-					while ( (l>=1) && removeVoronoiFeature(g[l-1],g[l],ft[iyz],xi,0)) l--;
-					l++;
-					g[l][0] = ft[iyz][0];
-					g[l][1] = ft[iyz][1];
-					g[l][2] = ft[iyz][2];
-				}
+			if (feature[idx]>-1) {
+				// distance to the line and position along the line
+				double p = sqdist[idx];
+				double a = i*res;
+				while ( (l>=1) && removeVoronoiFeature(ga[l-1],gp[l-1],ga[l],gp[l],a,p)) l--;
+				l++;
+				gf[l] = feature[idx];
+				gp[l] = p;
+				ga[l] = a;
 			}
 		}
 		int ns = l;
 		if (ns==-1) { return; }
 		l=0;
-		for (short i=0;i<nx;i++) {
-			xi[0] = i;
-			xi[1] = y;
-			xi[2] = z;
-			int iyz = i+nx*y+nx*ny*z;
+		for (int i=0;i<n;i++) {
+			int idx = offset+i*step;
+			double t = i*res;
 			
-			while ( (l<ns) && ( ftDistance(xi,g[l]) > ftDistance(xi,g[l+1]) ) ) l++;
+			while ( (l<ns) && ( gp[l]+(t-ga[l])*(t-ga[l]) > gp[l+1]+(t-ga[l+1])*(t-ga[l+1]) ) ) l++;
 			
-			ft[iyz][0] = g[l][0];
-			ft[iyz][1] = g[l][1];
-			ft[iyz][2] = g[l][2];
+			double dist = gp[l]+(t-ga[l])*(t-ga[l]);
+			if (dist<=band) {
+				feature[idx] = gf[l];
+				sqdist[idx] = (float)dist;
+			} else {
+				feature[idx] = -1;
+				sqdist[idx] = -1.0f;
+			}
 		}
 		return;
 	}
 	
-	private static final void computePartialVoronoiDiagramY(short[][] ft, short[][] g, short x, short z, int nx, int ny, int nz) {
-		short[] xi = new short[3];
-		int l=-1;
+	/** 
+	*	check whether the feature v is hidden by the features u and w on the line,
+	*	given their positions a along the line and their squared distances p to the line
+	*/
+	private static final boolean removeVoronoiFeature(double au, double pu, double av, double pv, double aw, double pw) {
 		
-		for (short i=0;i<ny;i++) {
-			xi[0] = x;
-			xi[1] = i;
-			xi[2] = z;
-			int xiz = x+nx*i+nx*ny*z;
-			
-			if (ft[xiz][0]>-1) {
-				if (l<1) {
-					l++;
-					g[l][0] = ft[xiz][0];
-					g[l][1] = ft[xiz][1];
-					g[l][2] = ft[xiz][2];
-				} else {
-					while ( (l>=1) && removeVoronoiFeature(g[l-1],g[l],ft[xiz],xi,1)) l--;
-					l++;
-					g[l][0] = ft[xiz][0];
-					g[l][1] = ft[xiz][1];
-					g[l][2] = ft[xiz][2];
-				}
-			}
-		}
-		int ns = l;
-		if (ns==-1) { return; }
-		l=0;
-		for (short i=0;i<ny;i++) {
-			xi[0] = x;
-			xi[1] = i;
-			xi[2] = z;
-			int xiz = x+nx*i+nx*ny*z;
-			
-			while ( (l<ns) && ( ftDistance(xi,g[l]) > ftDistance(xi,g[l+1]) ) ) l++;
-			
-			ft[xiz][0] = g[l][0];
-			ft[xiz][1] = g[l][1];
-			ft[xiz][2] = g[l][2];
-		}
-		return;
+		return ( (aw-au)*pv - (aw-av)*pu - (av-au)*pw - (aw-au)*(aw-av)*(av-au) > 0 );
 	}
 	
-	private static final void computePartialVoronoiDiagramZ(short[][] ft, short[][] g, short x, short y, int nx, int ny, int nz) {
-		short[] xi = new short[3];
-		int l=-1;
-		for (short i=0;i<nz;i++) {
-			xi[0] = x;
-			xi[1] = y;
-			xi[2] = i;
-			int xyi = x+nx*y+nx*ny*i;
-			
-			if (ft[xyi][0]>-1) {
-				if (l<1) {
-					l++;
-					g[l][0] = ft[xyi][0];
-					g[l][1] = ft[xyi][1];
-					g[l][2] = ft[xyi][2];
-				} else {
-					while ( (l>=1) && removeVoronoiFeature(g[l-1],g[l],ft[xyi],xi,2)) l--;
-					l++;
-					g[l][0] = ft[xyi][0];
-					g[l][1] = ft[xyi][1];
-					g[l][2] = ft[xyi][2];
-				}
-			}
-		}
-		int ns = l;
-		if (ns==-1) { return; }
-		l=0;
-		for (short i=0;i<nz;i++) {
-			xi[0] = x;
-			xi[1] = y;
-			xi[2] = i;
-			int xyi = x+nx*y+nx*ny*i;
-			
-			while ( (l<ns) && ( ftDistance(xi,g[l]) > ftDistance(xi,g[l+1]) ) ) l++;
-			
-			ft[xyi][0] = g[l][0];
-			ft[xyi][1] = g[l][1];
-			ft[xyi][2] = g[l][2];
-		}
-		return;
+	/**
+	*  squared Euclidean distance to the object, for anisotropic voxel sizes,
+	*	set to -1 if the object is empty or (when maxdist>0) for voxels farther than maxdist
+	*/
+	public static final float[] voronoiFeatureSquaredDistance(boolean[] obj, int nx, int ny, int nz, float rx, float ry, float rz, float maxdist) {
+		int[]	feature = new int[nx*ny*nz];
+		float[]	sqdist = new float[nx*ny*nz];
+		euclideanFeatureTransform(obj, nx, ny, nz, rx, ry, rz, maxdist, feature, sqdist);
+		
+		return sqdist;
 	}
 	
+	/**
+	*  squared distance to the object in voxel units, over the whole image (used by the surface distance
+	*	measures of ObjectStatistics, which need unbounded distances); callers that only need distances
+	*	near the object should use the flat version with maxdist instead
+	*/
 	public static final float[][][] voronoiFeatureSquaredDistance(boolean[][][] obj, int nx, int ny, int nz) {
-		short[][][][]	ft = voronoiFeatureTransform(obj,nx,ny,nz);
+		float[] sqdist = voronoiFeatureSquaredDistance(flatten(obj,nx,ny,nz), nx, ny, nz, 1.0f, 1.0f, 1.0f, 0.0f);
 		float[][][] dist = new float[nx][ny][nz];
 		
-		// compute the distances
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			if (ft[x][y][z][0]>-1) {
-				short[] pt = new short[]{x,y,z};
-				dist[x][y][z] = ftDistance(pt, ft[x][y][z]);
-			} else {
-				dist[x][y][z] = -1;
-			}
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
+			dist[x][y][z] = sqdist[x+nx*y+nx*ny*z];
 		}
-		ft = null;
-		
 		return dist;
 	}
 	
 	public static final float[][][] voronoiFeatureDistance(boolean[][][] obj, int nx, int ny, int nz) {
-		short[][][][]	ft = voronoiFeatureTransform(obj,nx,ny,nz);
+		float[] sqdist = voronoiFeatureSquaredDistance(flatten(obj,nx,ny,nz), nx, ny, nz, 1.0f, 1.0f, 1.0f, 0.0f);
 		float[][][] dist = new float[nx][ny][nz];
 		
 		// compute the distances
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			if (ft[x][y][z][0]>-1) {
-				short[] pt = new short[]{x,y,z};
-				dist[x][y][z] = (float)Math.sqrt(ftDistance(pt, ft[x][y][z]));
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
+			int xyz = x+nx*y+nx*ny*z;
+			if (sqdist[xyz]>-1) {
+				dist[x][y][z] = (float)Math.sqrt(sqdist[xyz]);
 			} else {
 				dist[x][y][z] = -1;
 			}
 		}
-		ft = null;
-		
 		return dist;
 	}
 	
-	private static final boolean removeVoronoiFeature(short[] u, short[] v, short[] w, short[] Rd, int d) {
+	public static final float[][][] signedDistanceFunction(boolean[][][] obj, int nx, int ny, int nz) {
+		float[] sdf = signedDistanceFunction(flatten(obj,nx,ny,nz), nx, ny, nz, 1.0f, 1.0f, 1.0f, 0.0f);
+		float[][][] dist = new float[nx][ny][nz];
 		
-		float duR = 0.0f; 
-		float dvR = 0.0f; 
-		float dwR = 0.0f; 
-		for (int i=0;i<3;i++) if (i!=d) {
-			duR += (u[i]-Rd[i])*(u[i]-Rd[i]);
-			dvR += (v[i]-Rd[i])*(v[i]-Rd[i]);
-			dwR += (w[i]-Rd[i])*(w[i]-Rd[i]);
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
+			dist[x][y][z] = sdf[x+nx*y+nx*ny*z];
 		}
-		return ( (w[d]-u[d])*dvR - (w[d]-v[d])*duR - (v[d]-u[d])*dwR - (w[d]-u[d])*(w[d]-v[d])*(v[d]-u[d]) > 0 );
+		return dist;
 	}
 	
-	private static final float ftDistance(short[] u, short[] v) {
-		
-		return (u[0]-v[0])*(u[0]-v[0])
-			  +(u[1]-v[1])*(u[1]-v[1])
-			  +(u[2]-v[2])*(u[2]-v[2]);
+	public static final float[] signedDistanceFunction(boolean[] obj, int nx, int ny, int nz) {
+		return signedDistanceFunction(obj, nx, ny, nz, 1.0f, 1.0f, 1.0f, 0.0f);
 	}
 	
-	public static final float[][][] signedDistanceFunction(boolean[][][] obj, int nx, int ny, int nz) {
-		short[][][][]	ft = voronoiFeatureTransform(obj,nx,ny,nz);
-		float[][][] dist = new float[nx][ny][nz];
+	/**
+	*  signed distance function of the object boundary, negative inside, for anisotropic voxel sizes:
+	*	the boundary is taken half a voxel (of the smallest size) away from the voxel centers.
+	*	If maxdist>0, the distances are only computed up to maxdist and clamped to +/-maxdist beyond,
+	*	otherwise voxels with no boundary (empty or full objects) are set to zero.
+	*/
+	public static final float[] signedDistanceFunction(final boolean[] obj, int nx, int ny, int nz, float rx, float ry, float rz, float maxdist) {
+		final int nxyz = nx*ny*nz;
+		final float half = 0.5f*Numerics.min(rx,ry,rz);
+		final float clamp = (maxdist>0) ? maxdist : Float.MAX_VALUE;
+		final float far = (maxdist>0) ? maxdist : 0.0f;
+		final float band = (maxdist>0) ? maxdist+half : 0.0f;
+		final int[] feature = new int[nxyz];
+		final float[] sqdist = new float[nxyz];
+		final float[] dist = new float[nxyz];
 		
-		// compute the distances
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			if (!obj[x][y][z] && ft[x][y][z][0]>-1) {
-				short[] pt = new short[]{x,y,z};
-				dist[x][y][z] = (float)Math.sqrt(ftDistance(pt, ft[x][y][z]))-0.5f;
-			} else {
-				dist[x][y][z] = 0;
+		// outside part
+		euclideanFeatureTransform(obj, nx, ny, nz, rx, ry, rz, band, feature, sqdist);
+		ParallelProcessing.forEach(nxyz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int xyz=start;xyz<end;xyz++) if (!obj[xyz]) {
+					if (feature[xyz]>-1) dist[xyz] = Numerics.min((float)Math.sqrt(sqdist[xyz])-half, clamp);
+					else dist[xyz] = far;
+				}
 			}
-		}
+		});
+		
 		// same on the other part
-		boolean[][][] bg = new boolean[nx][ny][nz];
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			bg[x][y][z] = !obj[x][y][z];
-		}
-		ft = voronoiFeatureTransform(bg,nx,ny,nz);
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			if (!bg[x][y][z] && ft[x][y][z][0]>-1) {
-				short[] pt = new short[]{x,y,z};
-				dist[x][y][z] = -(float)Math.sqrt(ftDistance(pt, ft[x][y][z]))+0.5f;
-			} else if (!bg[x][y][z]) {
-				dist[x][y][z] = 0;
+		final boolean[] bg = new boolean[nxyz];
+		for (int xyz=0;xyz<nxyz;xyz++) bg[xyz] = !obj[xyz];
+		euclideanFeatureTransform(bg, nx, ny, nz, rx, ry, rz, band, feature, sqdist);
+		ParallelProcessing.forEach(nxyz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int xyz=start;xyz<end;xyz++) if (obj[xyz]) {
+					if (feature[xyz]>-1) dist[xyz] = -Numerics.min((float)Math.sqrt(sqdist[xyz])-half, clamp);
+					else dist[xyz] = -far;
+				}
 			}
-		}
-		
-		ft = null;
-		
+		});
 		return dist;
 	}
 	
-	public static final float[] signedDistanceFunction(boolean[] obj, int nx, int ny, int nz) {
-		short[][]	ft = voronoiFeatureTransform(obj,nx,ny,nz);
-		float[] dist = new float[nx*ny*nz];
-		
-		// compute the distances
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			if (obj[xyz] && ft[xyz][0]>-1) {
-				short[] pt = new short[]{x,y,z};
-				dist[xyz] = (float)Math.sqrt(ftDistance(pt, ft[xyz]));
-			} else {
-				dist[xyz] = 0;
-			}
-		}
-		// same on the other part
-		boolean[] bg = new boolean[nx*ny*nz];
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			bg[xyz] = !obj[xyz];
+	private static final boolean[] flatten(boolean[][][] obj, int nx, int ny, int nz) {
+		boolean[] flat = new boolean[nx*ny*nz];
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
+			flat[x+nx*y+nx*ny*z] = obj[x][y][z];
 		}
-		ft = voronoiFeatureTransform(bg,nx,ny,nz);
-		for (short x=0;x<nx;x++) for (short y=0;y<ny;y++) for (short z=0;z<nz;z++) {
-			int xyz = x+nx*y+nx*ny*z;
-			
-			if (bg[xyz] && ft[xyz][0]>-1) {
-				short[] pt = new short[]{x,y,z};
-				dist[xyz] = -(float)Math.sqrt(ftDistance(pt, ft[xyz]));
-			} else {
-				dist[xyz] = 0;
-			}
-		}
-		
-		ft = null;
-		
-		return dist;
+		return flat;
 	}
 	
 }//ObjectProcessing class
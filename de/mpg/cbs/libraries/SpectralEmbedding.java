@@ -0,0 +1,279 @@
+package de.mpg.cbs.libraries;
+
+import java.util.*;
+
+import de.mpg.cbs.utilities.*;
+import de.mpg.cbs.structures.*;
+
+import org.apache.commons.math3.util.FastMath;
+
+import Jama.Matrix;
+import Jama.EigenvalueDecomposition;
+
+/**
+ *
+ *  This class computes spectral embeddings of levelset surfaces,
+ *	based on a sparse graph Laplacian of the voxels near the surface
+ *	and a thick-restart Lanczos eigensolver for its smallest eigenpairs.
+ *
+ *	@version    Oct 2016
+ *	@author     Pierre-Louis Bazin
+ *
+ *
+ */
+
+public class SpectralEmbedding {
+
+	// no data: used as a library of functions
+
+	// feature choice labeling
+	public	static	final	byte	DIST = 100;
+	public	static	final	byte	GRAD = 101;
+	public	static	final	byte	INVGRAD = 102;
+
+	// numerical quantities
+	private static final	double	INVSQRT2 = 1.0/FastMath.sqrt(2.0);
+	private static final	double	INVSQRT3 = 1.0/FastMath.sqrt(3.0);
+	private static final	double	MINWEIGHT = 1e-3;
+	private static final	double	ZERO = 1e-30;
+
+	// fixed number of chunks for dot products, so results do not depend on the number of threads
+	private static final	int		DOTCHUNKS = 64;
+
+	private static final boolean		debug=false;
+	private static final boolean		verbose=true;
+
+	/**
+	 *	graph Laplacian D-W of the voxels with location!=-1 (numbered from 0 to datasize-1),
+	 *	with edge weights W based on the levelset input:
+	 *	inverse distance (DIST), similarity (GRAD) or inverse difference (INVGRAD) of the levelset values.
+	 *	The matrix is symmetric, with at most connectivity+1 entries per row.
+	 */
+	public static SparseMatrix levelsetLaplacian(float[][][] input, int[][][] location, int datasize,
+													int nx, int ny, int nz, int connectivity, byte mode) {
+		int[] start = new int[datasize+1];
+		int[] index = new int[datasize*(connectivity+1)];
+		double[] value = new double[datasize*(connectivity+1)];
+
+		int nc=0;
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
+			int loc = location[x][y][z];
+			if (loc!=-1) {
+				start[loc] = nc;
+				int diag = nc;
+				index[nc] = loc;
+				value[nc] = 0.0;
+				nc++;
+				for (int n=0;n<connectivity;n++) {
+					int xn = x+Ngb.x[n];
+					int yn = y+Ngb.y[n];
+					int zn = z+Ngb.z[n];
+					if (xn<0 || xn>=nx || yn<0 || yn>=ny || zn<0 || zn>=nz) continue;
+					int ngb = location[xn][yn][zn];
+					if (ngb!=-1) {
+						double weight = 0.0;
+						if (mode==DIST) {
+							weight = 1.0;
+						} else if (mode==GRAD) {
+							weight = Numerics.max(1.0-Numerics.abs(input[x][y][z]-input[xn][yn][zn]),0.0);
+						} else if (mode==INVGRAD) {
+							weight = 1.0/Numerics.max(1e-3,Numerics.abs(input[x][y][z]-input[xn][yn][zn]));
+						}
+						if (n>=18) weight *= INVSQRT3;
+						else if (n>=6) weight *= INVSQRT2;
+
+						if (weight!=0.0) {
+							// insert in column order
+							int k = nc;
+							while (k>start[loc] && index[k-1]>ngb) {
+								index[k] = index[k-1];
+								value[k] = value[k-1];
+								k--;
+							}
+							if (k<=diag) diag++;
+							index[k] = ngb;
+							value[k] = -weight;
+							value[diag] += weight;
+							nc++;
+						}
+					}
+				}
+			}
+		}
+		start[datasize] = nc;
+		if (verbose) System.out.println("laplacian: "+datasize+" x "+datasize+", "+nc+" non-zero entries");
+
+		return new SparseMatrix(datasize, datasize, start, Arrays.copyOf(index, nc), Arrays.copyOf(value, nc));
+	}
+
+	/**
+	 *	node weights G^-1 for the voxels with location!=-1: the absolute levelset values,
+	 *	bounded away from zero so that G^-1 (D-W) has real, non-negative eigenvalues
+	 */
+	public static double[] levelsetNodeWeights(float[][][] input, int[][][] location, int datasize, int nx, int ny, int nz) {
+		double[] weight = new double[datasize];
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
+			int loc = location[x][y][z];
+			if (loc!=-1) weight[loc] = Numerics.max(Numerics.abs(input[x][y][z]), MINWEIGHT);
+		}
+		return weight;
+	}
+
+	/**
+	 *	smallest eigenpairs of G^-1 L, for a symmetric positive semi-definite sparse matrix L
+	 *	and positive node weights G^-1 (all ones if null), with a thick-restart Lanczos method.
+	 *	<p>
+	 *	The problem is solved on the symmetric matrix G^-1/2 L G^-1/2, with full re-orthogonalization
+	 *	of the Krylov basis (exactly repeated eigenvalues may be found only once).
+	 *	The eigenvalues are returned in increasing order in eigenvalues[nvec],
+	 *	and the (unit norm) eigenvectors as [nvec][n] arrays.
+	 */
+	public static double[][] smallestEigenvectors(SparseMatrix laplacian, double[] nodeweight, int nvec, double[] eigenvalues,
+													int maxiter, double tolerance) {
+		final int n = laplacian.getRows();
+		nvec = Numerics.min(nvec, n);
+		if (nvec<1) return new double[0][n];
+
+		// Krylov basis size, and number of Ritz vectors kept at restart
+		int m = Numerics.min(n, Numerics.max(4*nvec+32, 48));
+		int keep = Numerics.min(m-1, nvec+(m-nvec)/2);
+
+		double[] sqw = new double[n];
+		for (int i=0;i<n;i++) sqw[i] = (nodeweight!=null) ? FastMath.sqrt(nodeweight[i]) : 1.0;
+
+		double[][] V = new double[m][n];
+		double[][] H = new double[m][m];
+		double[] w = new double[n];
+		double[] tmp = new double[n];
+		Random rand = new Random(0);
+
+		for (int i=0;i<n;i++) V[0][i] = rand.nextDouble()-0.5;
+		scale(V[0], 1.0/FastMath.sqrt(dot(V[0], V[0])));
+
+		int first = 0;
+		double beta = 0.0;
+		double[] theta = null;
+		double[][] Y = null;
+		for (int iter=0;iter<maxiter;iter++) {
+			// extend the Krylov basis
+			for (int j=first;j<m;j++) {
+				applyOperator(laplacian, sqw, V[j], w, tmp);
+				for (int pass=0;pass<2;pass++) {
+					double[] h = project(w, V, j+1);
+					for (int i=0;i<=j;i++) H[i][j] += h[i];
+					subtract(w, V, h, j+1);
+				}
+				for (int i=0;i<j;i++) H[j][i] = H[i][j];
+
+				beta = FastMath.sqrt(dot(w, w));
+				if (j<m-1) {
+					if (beta>1e-12*Numerics.max(Numerics.abs(H[j][j]),1.0)) {
+						for (int i=0;i<n;i++) V[j+1][i] = w[i]/beta;
+					} else {
+						// invariant subspace: continue with a new random direction
+						if (debug) System.out.println("lanczos: invariant subspace at step "+j);
+						for (int i=0;i<n;i++) w[i] = rand.nextDouble()-0.5;
+						for (int pass=0;pass<2;pass++) subtract(w, V, project(w, V, j+1), j+1);
+						scale(w, 1.0/FastMath.sqrt(dot(w, w)));
+						for (int i=0;i<n;i++) V[j+1][i] = w[i];
+						beta = 0.0;
+					}
+				}
+			}
+			// Rayleigh-Ritz approximation (eigenvalues in increasing order)
+			EigenvalueDecomposition eig = new EigenvalueDecomposition(new Matrix(H));
+			theta = eig.getRealEigenvalues();
+			Y = eig.getV().getArray();
+
+			double norm = Numerics.max(Numerics.abs(theta[0]), Numerics.abs(theta[m-1]), ZERO);
+			double residual = 0.0;
+			for (int k=0;k<nvec;k++) residual = Numerics.max(residual, Numerics.abs(beta*Y[m-1][k]));
+			if (debug) System.out.println("lanczos iteration "+iter+": residual "+residual/norm);
+			if (residual<=tolerance*norm || m==n || iter==maxiter-1) {
+				if (verbose) System.out.println("lanczos: "+(iter+1)+" restarts, residual "+residual/norm);
+				break;
+			}
+
+			// thick restart with the smallest Ritz vectors
+			ritzVectors(V, Y, m, keep);
+			for (int i=0;i<m;i++) for (int j=0;j<m;j++) H[i][j] = 0.0;
+			for (int k=0;k<keep;k++) H[k][k] = theta[k];
+			for (int i=0;i<n;i++) V[keep][i] = w[i]/beta;
+			first = keep;
+		}
+		// final eigenvectors, mapped back to the original problem
+		ritzVectors(V, Y, m, nvec);
+		double[][] vectors = new double[nvec][];
+		for (int k=0;k<nvec;k++) {
+			vectors[k] = V[k];
+			for (int i=0;i<n;i++) vectors[k][i] *= sqw[i];
+			scale(vectors[k], 1.0/FastMath.sqrt(dot(vectors[k], vectors[k])));
+			if (eigenvalues!=null) eigenvalues[k] = theta[k];
+		}
+		return vectors;
+	}
+
+	/** out = G^-1/2 L G^-1/2 in */
+	private static final void applyOperator(SparseMatrix laplacian, double[] sqw, double[] in, double[] out, double[] tmp) {
+		for (int i=0;i<in.length;i++) tmp[i] = sqw[i]*in[i];
+		laplacian.multiply(tmp, out);
+		for (int i=0;i<in.length;i++) out[i] *= sqw[i];
+	}
+
+	/** replaces the first nb basis vectors by the Ritz vectors V Y, voxel by voxel */
+	private static final void ritzVectors(final double[][] V, final double[][] Y, final int m, final int nb) {
+		ParallelProcessing.forEach(V[0].length, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				double[] ritz = new double[nb];
+				for (int i=start;i<end;i++) {
+					for (int k=0;k<nb;k++) {
+						double sum = 0.0;
+						for (int j=0;j<m;j++) sum += V[j][i]*Y[j][k];
+						ritz[k] = sum;
+					}
+					for (int k=0;k<nb;k++) V[k][i] = ritz[k];
+				}
+			}
+		});
+	}
+
+	/** inner products of w with the first nb basis vectors */
+	private static final double[] project(final double[] w, final double[][] V, final int nb) {
+		int nchunks = Numerics.min(DOTCHUNKS, w.length);
+		final double[][] partial = new double[nchunks][nb];
+		ParallelProcessing.forEach(w.length, nchunks, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int k=0;k<nb;k++) {
+					double sum = 0.0;
+					for (int i=start;i<end;i++) sum += w[i]*V[k][i];
+					partial[chunk][k] = sum;
+				}
+			}
+		});
+		double[] h = new double[nb];
+		for (int c=0;c<nchunks;c++) for (int k=0;k<nb;k++) h[k] += partial[c][k];
+		return h;
+	}
+
+	/** w = w - sum_k h_k V_k over the first nb basis vectors */
+	private static final void subtract(final double[] w, final double[][] V, final double[] h, final int nb) {
+		ParallelProcessing.forEach(w.length, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int i=start;i<end;i++) {
+					double sum = 0.0;
+					for (int k=0;k<nb;k++) sum += h[k]*V[k][i];
+					w[i] -= sum;
+				}
+			}
+		});
+	}
+
+	private static final double dot(double[] a, double[] b) {
+		double[][] basis = {b};
+		return project(a, basis, 1)[0];
+	}
+
+	private static final void scale(double[] a, double factor) {
+		for (int i=0;i<a.length;i++) a[i] *= factor;
+	}
+}
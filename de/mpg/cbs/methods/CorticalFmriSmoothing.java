@@ -2,6 +2,7 @@ package de.mpg.cbs.methods;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import gov.nih.mipav.view.*;
 
 import gov.nih.mipav.model.structures.jama.*;
@@ -41,13 +42,28 @@ public class CorticalFmriSmoothing {
 	private static int			nfd;					// 4th dimension
 	private		float			sigma;
 	private		float			sigmasqr;
+	private		double[]		shellWeight;		// Gaussian weight of each geodesic shell
 	
 	// inner variables
-	private		BitSet		boundary;
-	private		BitSet		next;
-	private		BitSet		used;
 	private		BitSet		imgbound;
 	
+	// region growing buffers, re-used by the successive computations
+	private		ConcurrentLinkedQueue<Workspace>	workspaces = new ConcurrentLinkedQueue<Workspace>();
+	
+	private static final class Workspace {
+		VisitedSet	boundary;
+		VisitedSet	next;
+		VisitedSet	used;
+		double[]	sdata;
+		
+		Workspace(int nxyz, int nd) {
+			boundary = new VisitedSet(nxyz);
+			next = new VisitedSet(nxyz);
+			used = new VisitedSet(nxyz);
+			sdata = new double[nd];
+		}
+	}
+	
 	private static final byte X=0;
 	private static final byte Y=1;
 	private static final byte Z=2;
@@ -56,6 +72,10 @@ public class CorticalFmriSmoothing {
 	private static final byte NEAREST=10;
 	private static final byte LINEAR=20;
 	
+	private static final byte GEODESIC=1;
+	private static final byte LABELED=2;
+	private static final byte VOLUMETRIC=3;
+	
 	// for debug and display
 	private static final boolean		debug=true;
 	private static final boolean		verbose=true;
@@ -114,10 +134,10 @@ public class CorticalFmriSmoothing {
 		sigma = (fwhm_ / rax_) / (2.0f*(float)Math.sqrt(2.0f*(float)Math.log(2.0f)));
 		sigmasqr = sigma*sigma;
 		
-		boundary = new BitSet(nax*nay*naz);
-        next = new BitSet(nax*nay*naz);
-        used = new BitSet(nax*nay*naz);
-       
+		int dmax = Numerics.ceil(3.05f*sigma);
+		shellWeight = new double[dmax+1];
+		for (int d=0;d<=dmax;d++) shellWeight[d] = FastMath.exp(-0.5f*d*d/sigmasqr);
+		
         if (debug) BasicInfo.displayMessage("Cortical Region Smoothing (fwhm: "+fwhm_+"mm | sigma: "+sigma+"voxels)");		
         
 	}
@@ -143,113 +163,112 @@ public class CorticalFmriSmoothing {
 	}
 
 
+	private final Workspace acquireWorkspace() {
+		Workspace ws = workspaces.poll();
+		if (ws==null) ws = new Workspace(nax*nay*naz, nfd);
+		return ws;
+	}
+	
+	private final void releaseWorkspace(Workspace ws) {
+		workspaces.offer(ws);
+	}
+	
 	public final void dilateFromPoint(float[] smoothed, int x0, int y0, int z0) {
-		
-		float dist = 0.0f;
-        double[] sdata = new double[nfd];
-        double sumWeight = 0.0;
-        double gaussWeight = 1.0;
-        int x,y,z;
-        int xyz0 = x0+nax*y0+nax*nay*z0;
-        
-        if (!mask.get(xyz0)) return;
-        
-        boundary.clear();
-        used.clear();
-        next.clear();
-        
-        boundary.set(xyz0);
-        
-        int dmax = Numerics.ceil(3.05f*sigma);
-		for (int d=0;d<=dmax;d++) {
-			// constant ratio for each shell
-			gaussWeight = FastMath.exp(-0.5f*d*d/sigmasqr);
-			for (int xyz = boundary.nextSetBit(0); xyz >= 0; xyz = boundary.nextSetBit(xyz+1)) {
-				// retrieve coordinates
-				z = Numerics.floor(xyz/(nax*nay));
-				y = Numerics.floor((xyz-z*nax*nay)/nax);
-				x = Numerics.floor(xyz-z*nax*nay-y*nax);
-				
-				// get mapping
-				
-				// add to average
-				sumWeight += gaussWeight;
-				for (int n=0;n<nfd;n++) {
-					if (interp==LINEAR) sdata[n] += gaussWeight*ImageInterpolation.linearInterpolation(data, 0.0f, mapping[x][y][z][X],mapping[x][y][z][Y],mapping[x][y][z][Z],n, nfx,nfy,nfz,nfd);
-					else sdata[n] += gaussWeight*ImageInterpolation.nearestNeighborInterpolation(data, 0.0f, mapping[x][y][z][X],mapping[x][y][z][Y],mapping[x][y][z][Z],n, nfx,nfy,nfz,nfd);
-				}
-				// build the next ring of distances
-				for (int k = 0; k<6; k++) {
-					int xyzn = xyz + xoff[k] + yoff[k] + zoff[k];
-					if (mask.get(xyzn) && !used.get(xyzn) && !boundary.get(xyzn)) next.set(xyzn);
+		Workspace ws = acquireWorkspace();
+		growRegion(smoothed, x0, y0, z0, (byte)0, GEODESIC, ws);
+		releaseWorkspace(ws);
+	}
+	
+	public final void dilateFromPoint(float[] smoothed, int x0, int y0, int z0, byte lb) {
+		Workspace ws = acquireWorkspace();
+		growRegion(smoothed, x0, y0, z0, lb, LABELED, ws);
+		releaseWorkspace(ws);
+	}
+	
+	public final void dilateVolumetrically(float[] smoothed, int x0, int y0, int z0) {
+		Workspace ws = acquireWorkspace();
+		growRegion(smoothed, x0, y0, z0, (byte)0, VOLUMETRIC, ws);
+		releaseWorkspace(ws);
+	}
+	
+	/**
+	 *	smooth the data from a list of points (anatomical voxel indices) in parallel,
+	 *	either geodesically or volumetrically: the result for points[i] is stored in smoothed[i]
+	 */
+	public final void dilateFromPoints(final float[][] smoothed, final int[] points, int npt, final boolean volumetric) {
+		ParallelProcessing.forEach(npt, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				Workspace ws = acquireWorkspace();
+				for (int i=start;i<end;i++) {
+					int z = points[i]/(nax*nay);
+					int y = (points[i]-z*nax*nay)/nax;
+					int x = points[i]-z*nax*nay-y*nax;
+					growRegion(smoothed[i], x, y, z, (byte)0, volumetric ? VOLUMETRIC : GEODESIC, ws);
 				}
-				// add to the processed list
-				used.set(xyz);
+				releaseWorkspace(ws);
 			}
-			// replace active boundary
-			BitSet tmp = boundary;
-			boundary = next;
-			next = tmp;
-			next.clear();
-		}
-		//if (gaussWeight > 0.01) System.out.print("!");
-		
-		for (int n=0;n<nfd;n++) {
-			smoothed[n] = (float)(sdata[n]/sumWeight);
-		}
-       return;
-    }
+		});
+	}
 	
-	public final void dilateFromPoint(float[] smoothed, int x0, int y0, int z0, byte lb) {
+	/**
+	 *	grow the smoothing region from (x0,y0,z0) one geodesic shell at a time, 
+	 *	within the mask (GEODESIC), within the mask from voxels of label lb (LABELED),
+	 *	or within the image, counting only the masked voxels (VOLUMETRIC)
+	 */
+	private final void growRegion(float[] smoothed, int x0, int y0, int z0, byte lb, byte type, Workspace ws) {
 		
-		float dist = 0.0f;
-        double[] sdata = new double[nfd];
-        double sumWeight = 0.0;
-        double gaussWeight = 1.0;
-        int x,y,z;
         int xyz0 = x0+nax*y0+nax*nay*z0;
         
         if (!mask.get(xyz0)) return;
         
-        boundary.clear();
-        used.clear();
-        next.clear();
+        VisitedSet boundary = ws.boundary;
+        VisitedSet next = ws.next;
+        VisitedSet used = ws.used;
+        double[] sdata = ws.sdata;
+        double sumWeight = 0.0;
         
-        boundary.set(xyz0);
+        for (int n=0;n<nfd;n++) sdata[n] = 0.0;
+        boundary.add(xyz0);
         
-        int dmax = Numerics.ceil(3.05f*sigma);
-		for (int d=0;d<=dmax;d++) {
+		for (int d=0;d<shellWeight.length;d++) {
 			// constant ratio for each shell
-			gaussWeight = FastMath.exp(-0.5f*d*d/sigmasqr);
-			for (int xyz = boundary.nextSetBit(0); xyz >= 0; xyz = boundary.nextSetBit(xyz+1)) {
+			double gaussWeight = shellWeight[d];
+			// process the shell in increasing voxel order
+			boundary.sort();
+			for (int b=0;b<boundary.size();b++) {
+				int xyz = boundary.get(b);
 				// retrieve coordinates
-				z = Numerics.floor(xyz/(nax*nay));
-				y = Numerics.floor((xyz-z*nax*nay)/nax);
-				x = Numerics.floor(xyz-z*nax*nay-y*nax);
+				int z = xyz/(nax*nay);
+				int y = (xyz-z*nax*nay)/nax;
+				int x = xyz-z*nax*nay-y*nax;
 				
-				// get mapping
-				
-				// add to average
-				sumWeight += gaussWeight;
-				for (int n=0;n<nfd;n++) {
-					if (interp==LINEAR) sdata[n] += gaussWeight*ImageInterpolation.linearInterpolation(data, 0.0f, mapping[x][y][z][X],mapping[x][y][z][Y],mapping[x][y][z][Z],n, nfx,nfy,nfz,nfd);
-					else sdata[n] += gaussWeight*ImageInterpolation.nearestNeighborInterpolation(data, 0.0f, mapping[x][y][z][X],mapping[x][y][z][Y],mapping[x][y][z][Z],n, nfx,nfy,nfz,nfd);
+				// add to average (only inside the mask for volumetric regions)
+				if (type!=VOLUMETRIC || mask.get(xyz)) {
+					sumWeight += gaussWeight;
+					addMappedData(sdata, gaussWeight, x, y, z);
 				}
 				// build the next ring of distances
 				for (int k = 0; k<6; k++) {
 					int xyzn = xyz + xoff[k] + yoff[k] + zoff[k];
-					if (mask.get(xyzn) && !used.get(xyzn) && !boundary.get(xyzn) && labeling[x][y][z]==lb) next.set(xyzn);
+					if (used.contains(xyzn) || boundary.contains(xyzn)) continue;
+					if (type==VOLUMETRIC) {
+						if (!imgbound.get(xyzn)) next.add(xyzn);
+					} else if (mask.get(xyzn) && (type!=LABELED || labeling[x][y][z]==lb)) {
+						next.add(xyzn);
+					}
 				}
 				// add to the processed list
-				used.set(xyz);
+				used.add(xyz);
 			}
 			// replace active boundary
-			BitSet tmp = boundary;
+			VisitedSet tmp = boundary;
 			boundary = next;
 			next = tmp;
 			next.clear();
 		}
-		//if (gaussWeight > 0.01) System.out.print("!");
+		// reset the buffers for the next point
+		boundary.clear();
+		used.clear();
 		
 		for (int n=0;n<nfd;n++) {
 			smoothed[n] = (float)(sdata[n]/sumWeight);
@@ -257,64 +276,63 @@ public class CorticalFmriSmoothing {
        return;
     }
 	
-	public final void dilateVolumetrically(float[] smoothed, int x0, int y0, int z0) {
+	/**
+	 *	add the weighted functional data mapped to the anatomical voxel (x,y,z), for all time points
+	 *	(the interpolation weights are computed once for all the time points)
+	 */
+	private final void addMappedData(double[] sdata, double weight, int x, int y, int z) {
+		float mx = mapping[x][y][z][X];
+		float my = mapping[x][y][z][Y];
+		float mz = mapping[x][y][z][Z];
 		
-		float dist = 0.0f;
-        double[] sdata = new double[nfd];
-        double sumWeight = 0.0;
-        double gaussWeight = 1.0;
-        int x,y,z;
-        int xyz0 = x0+nax*y0+nax*nay*z0;
-        
-        if (!mask.get(xyz0)) return;
-        
-        boundary.clear();
-        next.clear();
-        used.clear();
-       
-        boundary.set(xyz0);
-        
-        int dmax = Numerics.ceil(3.05f*sigma);
-		for (int d=0;d<=dmax;d++) {
-			// constant ratio for each shell
-			gaussWeight = FastMath.exp(-0.5f*d*d/sigmasqr);
-			for (int xyz = boundary.nextSetBit(0); xyz >= 0; xyz = boundary.nextSetBit(xyz+1)) {
-				// retrieve coordinates
-				z = Numerics.floor(xyz/(nax*nay));
-				y = Numerics.floor((xyz-z*nax*nay)/nax);
-				x = Numerics.floor(xyz-z*nax*nay-y*nax);
-				
-				// get mapping
-				
-				// add to average only if inside the mask
-				if (mask.get(xyz)) {
-					sumWeight += gaussWeight;
-					for (int n=0;n<nfd;n++) {
-						if (interp==LINEAR) sdata[n] += gaussWeight*ImageInterpolation.linearInterpolation(data, 0.0f, mapping[x][y][z][X],mapping[x][y][z][Y],mapping[x][y][z][Z],n, nfx,nfy,nfz,nfd);
-						else sdata[n] += gaussWeight*ImageInterpolation.nearestNeighborInterpolation(data, 0.0f, mapping[x][y][z][X],mapping[x][y][z][Y],mapping[x][y][z][Z],n, nfx,nfy,nfz,nfd);
-					}
-				}
-				// build the next ring of distances
-				for (int k = 0; k<6; k++) {
-					int xyzn = xyz + xoff[k] + yoff[k] + zoff[k];
-					if (!used.get(xyzn) && !boundary.get(xyzn) && !imgbound.get(xyzn)) next.set(xyzn);
-				}
-				// add to the processed list
-				used.set(xyz);
+		if (interp==LINEAR) {
+			// outside the image: zero
+			if ( (mx<0) || (mx>nfx-2) || (my<0) || (my>nfy-2) || (mz<0) || (mz>nfz-2) ) return;
+			
+			int x0 = Numerics.floor(mx);
+			int y0 = Numerics.floor(my);
+			int z0 = Numerics.floor(mz);
+			
+			float alpha = mx - x0;
+			float nalpha = 1.0f - alpha;
+			float beta = my - y0;
+			float nbeta = 1.0f - beta;
+			float gamma = mz - z0;
+			float ngamma = 1.0f - gamma;
+			
+			float w000 = nalpha*nbeta*ngamma;
+			float w100 = alpha*nbeta*ngamma;
+			float w010 = nalpha*beta*ngamma;
+			float w001 = nalpha*nbeta*gamma;
+			float w110 = alpha*beta*ngamma;
+			float w011 = nalpha*beta*gamma;
+			float w101 = alpha*nbeta*gamma;
+			float w111 = alpha*beta*gamma;
+			
+			float[] d000 = data[x0][y0][z0];
+			float[] d100 = data[x0+1][y0][z0];
+			float[] d010 = data[x0][y0+1][z0];
+			float[] d001 = data[x0][y0][z0+1];
+			float[] d110 = data[x0+1][y0+1][z0];
+			float[] d011 = data[x0][y0+1][z0+1];
+			float[] d101 = data[x0+1][y0][z0+1];
+			float[] d111 = data[x0+1][y0+1][z0+1];
+			
+			for (int n=0;n<nfd;n++) {
+				float val = w000*d000[n] + w100*d100[n] + w010*d010[n] + w001*d001[n]
+						  + w110*d110[n] + w011*d011[n] + w101*d101[n] + w111*d111[n];
+				sdata[n] += weight*val;
+			}
+		} else {
+			// outside the image: zero
+			if ( (mx<0) || (mx>nfx-1) || (my<0) || (my>nfy-1) || (mz<0) || (mz>nfz-1) ) return;
+			
+			float[] d0 = data[Numerics.round(mx)][Numerics.round(my)][Numerics.round(mz)];
+			for (int n=0;n<nfd;n++) {
+				sdata[n] += weight*d0[n];
 			}
-			// replace active boundary
-			BitSet tmp = boundary;
-			boundary = next;
-			next = tmp;
-			next.clear();
-		}
-		//if (gaussWeight > 0.01) System.out.print("!");
-		
-		for (int n=0;n<nfd;n++) {
-			smoothed[n] = (float)(sdata[n]/sumWeight);
 		}
-       return;
-    }
+	}
 	
 	public final void volumetricSmoothing(float[] smoothed, int x0, int y0, int z0) {
 		
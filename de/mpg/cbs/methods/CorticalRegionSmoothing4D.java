@@ -2,6 +2,7 @@ package de.mpg.cbs.methods;
 
 import java.io.*;
 import java.util.*;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import gov.nih.mipav.view.*;
 
 import gov.nih.mipav.model.structures.jama.*;
@@ -35,6 +36,24 @@ public class CorticalRegionSmoothing4D {
 	private static int			nd;					// 4th dimension
 	private		float			sigma;
 	private		float			sigmasqr;
+	private		double[]		shellWeight;		// Gaussian weight of each geodesic shell
+	
+	// region growing buffers, re-used by the successive computations
+	private		ConcurrentLinkedQueue<Workspace>	workspaces = new ConcurrentLinkedQueue<Workspace>();
+	
+	private static final class Workspace {
+		VisitedSet	boundary;
+		VisitedSet	next;
+		VisitedSet	used;
+		double[]	sdata;
+		
+		Workspace(int nxyz, int nd) {
+			boundary = new VisitedSet(nxyz);
+			next = new VisitedSet(nxyz);
+			used = new VisitedSet(nxyz);
+			sdata = new double[nd];
+		}
+	}
 	
 	// for debug and display
 	private static final boolean		debug=true;
@@ -69,6 +88,10 @@ public class CorticalRegionSmoothing4D {
 		sigma = (fwhm_ / rx_) / (2.0f*(float)Math.sqrt(2.0f*(float)Math.log(2.0f)));
 		sigmasqr = sigma*sigma;
 		
+		int dmax = Numerics.ceil(3.05f*sigma);
+		shellWeight = new double[dmax+1];
+		for (int d=0;d<=dmax;d++) shellWeight[d] = Math.exp(-0.5f*d*d/sigmasqr);
+		
 		if (debug) BasicInfo.displayMessage("Cortical Region Smoothing (fwhm: "+fwhm_+"mm | sigma: "+sigma+"voxels)");		
         
 	}
@@ -88,26 +111,56 @@ public class CorticalRegionSmoothing4D {
 	}
 
 
+	private final Workspace acquireWorkspace() {
+		Workspace ws = workspaces.poll();
+		if (ws==null) ws = new Workspace(nx*ny*nz, nd);
+		return ws;
+	}
+	
+	private final void releaseWorkspace(Workspace ws) {
+		workspaces.offer(ws);
+	}
+	
 	public final void dilateFromPoint(float[] smoothed, int xyz0) {
+		Workspace ws = acquireWorkspace();
+		dilateFromPoint(smoothed, xyz0, ws);
+		releaseWorkspace(ws);
+	}
+	
+	/**
+	 *	smooth the data from a list of points in parallel: 
+	 *	the result for points[i] is stored in smoothed[i]
+	 */
+	public final void dilateFromPoints(final float[][] smoothed, final int[] points, int npt) {
+		ParallelProcessing.forEach(npt, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				Workspace ws = acquireWorkspace();
+				for (int i=start;i<end;i++) dilateFromPoint(smoothed[i], points[i], ws);
+				releaseWorkspace(ws);
+			}
+		});
+	}
+	
+	private final void dilateFromPoint(float[] smoothed, int xyz0, Workspace ws) {
 		
-		float dist = 0.0f;
-        double[] sdata = new double[nd];
-        double sumWeight = 0.0;
-        double gaussWeight = 1.0;
-        
         if (!mask[xyz0]) return;
         
-        BitSet boundary = new BitSet(nx*ny*nz);
-        BitSet next = new BitSet(nx*ny*nz);
-        BitSet used = new BitSet(nx*ny*nz);
+        VisitedSet boundary = ws.boundary;
+        VisitedSet next = ws.next;
+        VisitedSet used = ws.used;
+        double[] sdata = ws.sdata;
+        double sumWeight = 0.0;
         
-        boundary.set(xyz0);
+        for (int n=0;n<nd;n++) sdata[n] = 0.0;
+        boundary.add(xyz0);
         
-        int dmax = Numerics.ceil(3.05f*sigma);
-		for (int d=0;d<=dmax;d++) {
+		for (int d=0;d<shellWeight.length;d++) {
 			// constant ratio for each shell
-			gaussWeight = Math.exp(-0.5f*d*d/sigmasqr);
-			for (int xyz = boundary.nextSetBit(0); xyz >= 0; xyz = boundary.nextSetBit(xyz+1)) {
+			double gaussWeight = shellWeight[d];
+			// process the shell in increasing voxel order
+			boundary.sort();
+			for (int b=0;b<boundary.size();b++) {
+				int xyz = boundary.get(b);
 				// add to average
 				sumWeight += gaussWeight;
 				for (int n=0;n<nd;n++)
@@ -116,18 +169,20 @@ public class CorticalRegionSmoothing4D {
 				// build the next ring of distances
 				for (int k = 0; k<6; k++) {
 					int xyzn = xyz + xoff[k] + yoff[k] + zoff[k];
-					if (mask[xyzn] && !used.get(xyzn)) next.set(xyzn);
+					if (mask[xyzn] && !used.contains(xyzn)) next.add(xyzn);
 				}
 				// add to the processed list
-				used.set(xyz);
+				used.add(xyz);
 			}
 			// replace active boundary
-			BitSet tmp = boundary;
+			VisitedSet tmp = boundary;
 			boundary = next;
 			next = tmp;
 			next.clear();
 		}
-		//if (gaussWeight > 0.01) System.out.print("!");
+		// reset the buffers for the next point
+		boundary.clear();
+		used.clear();
 		
 		for (int n=0;n<nd;n++) {
 			smoothed[n] = (float)(sdata[n]/sumWeight);
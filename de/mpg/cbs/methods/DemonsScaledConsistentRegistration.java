@@ -96,6 +96,10 @@ public class DemonsScaledConsistentRegistration {
 	private		int				gx,gy,gz;
 	private		float[][]		igaussKernel;
 	private		int				igx,igy,igz;
+	
+	private		boolean			cacheFixedImages = true;	// precompute the fixed image terms once per scale
+	private		float[][][]		targetTerms = null;		// target values and differences on the forward grid
+	private		float[][][]		imageTerms = null;		// image values and differences on the backward grid
     
 	// computation flags
 	private 	boolean 		isWorking;
@@ -195,8 +199,18 @@ public class DemonsScaledConsistentRegistration {
 		target = null;
 		s = null; u = null; c = null;
 		is = null; iu = null; ic = null;
+		targetTerms = null; imageTerms = null;
 		System.gc();
 	}
+	
+	/** 
+	 *	whether to precompute the fixed image values and gradients once per scale (default),
+	 *	or to interpolate them at every iteration (less memory)
+	 */
+	public final void setFixedImageCaching(boolean val) {
+		cacheFixedImages = val;
+		if (!val) { targetTerms = null; imageTerms = null; }
+	}
     
    public final float[][] getCurrentTransform() {
 	   return s;
@@ -392,128 +406,7 @@ public class DemonsScaledConsistentRegistration {
      * performs only one iteration
 	 */
     final public float registerImageToTargetUpdate() {
-		float meanDiff = 0.0f;
-		for (int x=1;x<nsx-1;x++) for (int y=1;y<nsy-1;y++) for (int z=1;z<nsz-1;z++) {
-			int xyz = x+nsx*y+nsx*nsy*z;
-		
-			// compute the update field
-			float xs = s[X][xyz];
-			float ys = s[Y][xyz];
-			float zs = s[Z][xyz];
-		
-			float xsmx = s[X][xyz-1];
-			float ysmx = s[Y][xyz-1];
-			float zsmx = s[Z][xyz-1];
-	
-			float xspx = s[X][xyz+1];
-			float yspx = s[Y][xyz+1];
-			float zspx = s[Z][xyz+1];
-	
-			float xsmy = s[X][xyz-nsx];
-			float ysmy = s[Y][xyz-nsx];
-			float zsmy = s[Z][xyz-nsx];
-	
-			float xspy = s[X][xyz+nsx];
-			float yspy = s[Y][xyz+nsx];
-			float zspy = s[Z][xyz+nsx];
-	
-			float xsmz = s[X][xyz-nsx*nsy];
-			float ysmz = s[Y][xyz-nsx*nsy];
-			float zsmz = s[Z][xyz-nsx*nsy];
-	
-			float xspz = s[X][xyz+nsx*nsy];
-			float yspz = s[Y][xyz+nsx*nsy];
-			float zspz = s[Z][xyz+nsx*nsy];
-			
-			float xt = x*scale;
-			float yt = y*scale;
-			float zt = z*scale;
-			
-			float xsi = xs/scale, ysi = ys/scale, zsi = zs/scale;
-			float xsmxi = xsmx/scale, ysmxi = ysmx/scale, zsmxi = zsmx/scale;
-			float xspxi = xspx/scale, yspxi = yspx/scale, zspxi = zspx/scale;
-			float xsmyi = xsmy/scale, ysmyi = ysmy/scale, zsmyi = zsmy/scale;
-			float xspyi = xspy/scale, yspyi = yspy/scale, zspyi = zspy/scale;
-			float xsmzi = xsmz/scale, ysmzi = ysmz/scale, zsmzi = zsmz/scale;
-			float xspzi = xspz/scale, yspzi = yspz/scale, zspzi = zspz/scale;
-			
-			u[X][xyz] = 0.0f;
-			u[Y][xyz] = 0.0f;
-			u[Z][xyz] = 0.0f;
-			float den = 0.0f;
-			for (int n=0;n<nc;n++) {
-				// image differences
-				float diff = (ImageInterpolation.linearClosestInterpolation(target[n],xt,yt,zt,ntx,nty,ntz) 
-							- ImageInterpolation.linearClosestInterpolation(image[n],xs,ys,zs,nix,niy,niz));				
-				
-				// image gradient
-				float Jx, Jy, Jz;
-				if (forceType==FIXED) {
-					Jx = 0.5f/rtx*(ImageInterpolation.linearClosestInterpolation(target[n],xt+scale,yt,zt,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt-scale,yt,zt,ntx,nty,ntz));
-					Jy = 0.5f/rty*(ImageInterpolation.linearClosestInterpolation(target[n],xt,yt+scale,zt,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt,yt-scale,zt,ntx,nty,ntz));
-					Jz = 0.5f/rtz*(ImageInterpolation.linearClosestInterpolation(target[n],xt,yt,zt+scale,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt,yt,zt-scale,ntx,nty,ntz));
-				} else if (forceType==MOVING) {
-					Jx = 0.5f/rix*(ImageInterpolation.linearClosestInterpolation(image[n],xspx,yspx,zspx,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmx,ysmx,zsmx,nix,niy,niz));
-					Jy = 0.5f/riy*(ImageInterpolation.linearClosestInterpolation(image[n],xspy,yspy,zspy,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmy,ysmy,zsmy,nix,niy,niz));
-					Jz = 0.5f/riz*(ImageInterpolation.linearClosestInterpolation(image[n],xspz,yspz,zspz,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmz,ysmz,zsmz,nix,niy,niz));
-				} else {
-					Jx = 0.25f/rtx*(ImageInterpolation.linearClosestInterpolation(target[n],xt+scale,yt,zt,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt-scale,yt,zt,ntx,nty,ntz));
-					Jy = 0.25f/rty*(ImageInterpolation.linearClosestInterpolation(target[n],xt,yt+scale,zt,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt,yt-scale,zt,ntx,nty,ntz));
-					Jz = 0.25f/rtz*(ImageInterpolation.linearClosestInterpolation(target[n],xt,yt,zt+scale,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt,yt,zt-scale,ntx,nty,ntz));
-
-					Jx += 0.25f/rix*(ImageInterpolation.linearClosestInterpolation(image[n],xspx,yspx,zspx,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmx,ysmx,zsmx,nix,niy,niz));
-					Jy += 0.25f/riy*(ImageInterpolation.linearClosestInterpolation(image[n],xspy,yspy,zspy,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmy,ysmy,zsmy,nix,niy,niz));
-					Jz += 0.25f/riz*(ImageInterpolation.linearClosestInterpolation(image[n],xspz,yspz,zspz,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmz,ysmz,zsmz,nix,niy,niz));
-				}
-				
-				// inverse consistent coupling: backprojected coordinates
-				float iTx = xt - ImageInterpolation.linearClosestInterpolation(is[X],xsi,ysi,zsi,nisx,nisy,nisz);
-				float iTy = yt - ImageInterpolation.linearClosestInterpolation(is[Y],xsi,ysi,zsi,nisx,nisy,nisz);
-				float iTz = zt - ImageInterpolation.linearClosestInterpolation(is[Z],xsi,ysi,zsi,nisx,nisy,nisz);
-				
-				// erse consistent coupling: inverse transform jacobian
-				float[][] diT = new float[3][3];
-				diT[X][X] = 0.5f/rix*(ImageInterpolation.linearClosestInterpolation(is[X],xspxi,yspxi,zspxi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[X],xsmxi,ysmxi,zsmxi,nisx,nisy,nisz));
-				diT[X][Y] = 0.5f/riy*(ImageInterpolation.linearClosestInterpolation(is[X],xspyi,yspyi,zspyi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[X],xsmyi,ysmyi,zsmyi,nisx,nisy,nisz));
-				diT[X][Z] = 0.5f/riz*(ImageInterpolation.linearClosestInterpolation(is[X],xspzi,yspzi,zspzi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[X],xsmzi,ysmzi,zsmzi,nisx,nisy,nisz));
-
-				diT[Y][X] = 0.5f/rix*(ImageInterpolation.linearClosestInterpolation(is[Y],xspxi,yspxi,zspxi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Y],xsmxi,ysmxi,zsmxi,nisx,nisy,nisz));
-				diT[Y][Y] = 0.5f/riy*(ImageInterpolation.linearClosestInterpolation(is[Y],xspyi,yspyi,zspyi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Y],xsmyi,ysmyi,zsmyi,nisx,nisy,nisz));
-				diT[Y][Z] = 0.5f/riz*(ImageInterpolation.linearClosestInterpolation(is[Y],xspzi,yspzi,zspzi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Y],xsmzi,ysmzi,zsmzi,nisx,nisy,nisz));
-
-				diT[Z][X] = 0.5f/rix*(ImageInterpolation.linearClosestInterpolation(is[Z],xspxi,yspxi,zspxi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Z],xsmxi,ysmxi,zsmxi,nisx,nisy,nisz));
-				diT[Z][Y] = 0.5f/riy*(ImageInterpolation.linearClosestInterpolation(is[Z],xspyi,yspyi,zspyi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Z],xsmyi,ysmyi,zsmyi,nisx,nisy,nisz));
-				diT[Z][Z] = 0.5f/riz*(ImageInterpolation.linearClosestInterpolation(is[Z],xspzi,yspzi,zspzi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Z],xsmzi,ysmzi,zsmzi,nisx,nisy,nisz));
-
-				// putting it all together
-				float J2 = Jx*Jx+Jy*Jy+Jz*Jz;
-				
-				float diT2 = Matrix3D.determinant(diT);
-				diT2 *= diT2;				
-				
-				float sigmaI = diff*diff/sigma2;
-				
-				den += sigmaI*(1.0f+diT2) + J2;
-				
-				u[X][xyz] += diff*Jx;
-				u[Y][xyz] += diff*Jy;
-				u[Z][xyz] += diff*Jz;
-				
-				u[X][xyz] += sigmaI*( iTx*diT[X][X] + iTy*diT[X][Y] + iTz*diT[X][Z] );
-				u[Y][xyz] += sigmaI*( iTx*diT[Y][X] + iTy*diT[Y][Y] + iTz*diT[Y][Z] );
-				u[Z][xyz] += sigmaI*( iTx*diT[Z][X] + iTy*diT[Z][Y] + iTz*diT[Z][Z] );
-				
-				meanDiff += Numerics.abs(diff);
-			}
-			u[X][xyz] /= Numerics.max(ZERO,den);
-			u[Y][xyz] /= Numerics.max(ZERO,den);
-			u[Z][xyz] /= Numerics.max(ZERO,den);			
-		}
-		meanDiff /= (ntx*nty*ntz);
-		
-		if (debug) BasicInfo.displayMessage("mean intensity difference "+meanDiff+"\n");
-
-        return meanDiff;
+		return demonsUpdate(true, true);
     } // 
 
     /**
@@ -522,92 +415,7 @@ public class DemonsScaledConsistentRegistration {
      * performs only one iteration
 	 */
     final public float registerImageToTargetUpdateDecoupled() {
-		float meanDiff = 0.0f;
-		for (int x=1;x<nsx-1;x++) for (int y=1;y<nsy-1;y++) for (int z=1;z<nsz-1;z++) {
-			int xyz = x+nsx*y+nsx*nsy*z;
-		
-			// compute the update field
-			float xs = s[X][xyz];
-			float ys = s[Y][xyz];
-			float zs = s[Z][xyz];
-		
-			float xsmx = s[X][xyz-1];
-			float ysmx = s[Y][xyz-1];
-			float zsmx = s[Z][xyz-1];
-	
-			float xspx = s[X][xyz+1];
-			float yspx = s[Y][xyz+1];
-			float zspx = s[Z][xyz+1];
-	
-			float xsmy = s[X][xyz-nsx];
-			float ysmy = s[Y][xyz-nsx];
-			float zsmy = s[Z][xyz-nsx];
-	
-			float xspy = s[X][xyz+nsx];
-			float yspy = s[Y][xyz+nsx];
-			float zspy = s[Z][xyz+nsx];
-	
-			float xsmz = s[X][xyz-nsx*nsy];
-			float ysmz = s[Y][xyz-nsx*nsy];
-			float zsmz = s[Z][xyz-nsx*nsy];
-	
-			float xspz = s[X][xyz+nsx*nsy];
-			float yspz = s[Y][xyz+nsx*nsy];
-			float zspz = s[Z][xyz+nsx*nsy];
-			
-			float xt = x*scale;
-			float yt = y*scale;
-			float zt = z*scale;
-						
-			u[X][xyz] = 0.0f;
-			u[Y][xyz] = 0.0f;
-			u[Z][xyz] = 0.0f;
-			float den = 0.0f;
-			for (int n=0;n<nc;n++) {
-				// image differences
-				float diff = (ImageInterpolation.linearClosestInterpolation(target[n],xt,yt,zt,ntx,nty,ntz) 
-							- ImageInterpolation.linearClosestInterpolation(image[n],xs,ys,zs,nix,niy,niz));				
-				
-				// image gradient
-				float Jx, Jy, Jz;
-				if (forceType==FIXED) {
-					Jx = 0.5f/rtx*(ImageInterpolation.linearClosestInterpolation(target[n],xt+scale,yt,zt,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt-scale,yt,zt,ntx,nty,ntz));
-					Jy = 0.5f/rty*(ImageInterpolation.linearClosestInterpolation(target[n],xt,yt+scale,zt,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt,yt-scale,zt,ntx,nty,ntz));
-					Jz = 0.5f/rtz*(ImageInterpolation.linearClosestInterpolation(target[n],xt,yt,zt+scale,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt,yt,zt-scale,ntx,nty,ntz));
-				} else if (forceType==MOVING) {
-					Jx = 0.5f/rix*(ImageInterpolation.linearClosestInterpolation(image[n],xspx,yspx,zspx,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmx,ysmx,zsmx,nix,niy,niz));
-					Jy = 0.5f/riy*(ImageInterpolation.linearClosestInterpolation(image[n],xspy,yspy,zspy,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmy,ysmy,zsmy,nix,niy,niz));
-					Jz = 0.5f/riz*(ImageInterpolation.linearClosestInterpolation(image[n],xspz,yspz,zspz,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmz,ysmz,zsmz,nix,niy,niz));
-				} else {
-					Jx = 0.25f/rtx*(ImageInterpolation.linearClosestInterpolation(target[n],xt+scale,yt,zt,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt-scale,yt,zt,ntx,nty,ntz));
-					Jy = 0.25f/rty*(ImageInterpolation.linearClosestInterpolation(target[n],xt,yt+scale,zt,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt,yt-scale,zt,ntx,nty,ntz));
-					Jz = 0.25f/rtz*(ImageInterpolation.linearClosestInterpolation(target[n],xt,yt,zt+scale,ntx,nty,ntz) - ImageInterpolation.linearClosestInterpolation(target[n],xt,yt,zt-scale,ntx,nty,ntz));
-
-					Jx += 0.25f/rix*(ImageInterpolation.linearClosestInterpolation(image[n],xspx,yspx,zspx,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmx,ysmx,zsmx,nix,niy,niz));
-					Jy += 0.25f/riy*(ImageInterpolation.linearClosestInterpolation(image[n],xspy,yspy,zspy,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmy,ysmy,zsmy,nix,niy,niz));
-					Jz += 0.25f/riz*(ImageInterpolation.linearClosestInterpolation(image[n],xspz,yspz,zspz,nix,niy,niz)-ImageInterpolation.linearClosestInterpolation(image[n],xsmz,ysmz,zsmz,nix,niy,niz));
-				}
-				
-				// putting it all together
-				float J2 = Jx*Jx+Jy*Jy+Jz*Jz;
-				
-				den += diff*diff/sigma2 + J2;
-				
-				u[X][xyz] += diff*Jx;
-				u[Y][xyz] += diff*Jy;
-				u[Z][xyz] += diff*Jz;
-				
-				meanDiff += Numerics.abs(diff);
-			}
-			u[X][xyz] /= Numerics.max(ZERO,den);
-			u[Y][xyz] /= Numerics.max(ZERO,den);
-			u[Z][xyz] /= Numerics.max(ZERO,den);			
-		}
-		meanDiff /= (ntx*nty*ntz);
-		
-		if (debug) BasicInfo.displayMessage("mean intensity difference "+meanDiff+"\n");
-
-        return meanDiff;
+		return demonsUpdate(true, false);
     } // 
 
     /**
@@ -616,57 +424,7 @@ public class DemonsScaledConsistentRegistration {
      * performs only one iteration
 	 */
     final public float registerImageToTargetCompose() {		
-		if (regType==GAUSS_FLUID || regType==GAUSS_MIXED) {
-			//if (debug) BasicInfo.displayMessage("GAUSS_FLUID regularization \n");
-		
-			// smooth the result with a gaussian kernel
-			u[X] = ImageFilters.separableConvolution(u[X],nsx,nsy,nsz,gaussKernel,gx,gy,gz);
-			u[Y] = ImageFilters.separableConvolution(u[Y],nsx,nsy,nsz,gaussKernel,gx,gy,gz);
-			u[Z] = ImageFilters.separableConvolution(u[Z],nsx,nsy,nsz,gaussKernel,gx,gy,gz);
-		}
-		
-		// compose the transformations
-		if (fieldType==COMPOSITIVE) {
-			//if (debug) BasicInfo.displayMessage("compose with current transform \n");
-							
-			for (int x=0;x<nsx;x++) for (int y=0;y<nsy;y++) for (int z=0;z<nsz;z++) {
-				int xyz = x+nsx*y+nsx*nsy*z;
-				
-				float xu = x+u[X][xyz];
-				float yu = y+u[Y][xyz];
-				float zu = z+u[Z][xyz];
-				
-				// note: if outside, extrapolate as X+u
-				c[X][xyz] = ImageInterpolation.linearClosestInterpolation(s[X],xu,yu,zu,nsx,nsy,nsz) - x*scale;
-				c[Y][xyz] = ImageInterpolation.linearClosestInterpolation(s[Y],xu,yu,zu,nsx,nsy,nsz) - y*scale;
-				c[Z][xyz] = ImageInterpolation.linearClosestInterpolation(s[Z],xu,yu,zu,nsx,nsy,nsz) - z*scale;
-			}
-		}
-		
-		if (regType==GAUSS_DIFFUSION || regType==GAUSS_MIXED) {
-			//if (debug) BasicInfo.displayMessage("GAUSS_DIFFUSION regularization \n");
-			
-			// smooth the result with a gaussian kernel
-			c[X] = ImageFilters.separableConvolution(c[X],nsx,nsy,nsz,gaussKernel,gx,gy,gz);
-			c[Y] = ImageFilters.separableConvolution(c[Y],nsx,nsy,nsz,gaussKernel,gx,gy,gz);
-			c[Z] = ImageFilters.separableConvolution(c[Z],nsx,nsy,nsz,gaussKernel,gx,gy,gz);
-		}
-					
-		float meanC = 0.0f;
-		for (int x=0;x<nsx;x++) for (int y=0;y<nsy;y++) for (int z=0;z<nsz;z++) {
-			int xyz = x+nsx*y+nsx*nsy*z;
-			
-			s[X][xyz] = x*scale + c[X][xyz];
-			s[Y][xyz] = y*scale + c[Y][xyz];
-			s[Z][xyz] = z*scale + c[Z][xyz];
-			
-			meanC += c[X][xyz]*c[X][xyz]+c[Y][xyz]*c[Y][xyz]+c[Z][xyz]*c[Z][xyz];
-		}
-		meanC /= (nsx*nsy*nsz);
-		
-		//if (debug) BasicInfo.displayMessage("mean update size "+meanC+"\n");
-
-        return meanC;
+		return composeUpdate(true);
     } // 
     
     /**
@@ -675,128 +433,7 @@ public class DemonsScaledConsistentRegistration {
      * performs only one iteration
 	 */
     final public float registerTargetToImageUpdate() {
-		float meanDiff = 0.0f;
-		for (int x=1;x<nisx-1;x++) for (int y=1;y<nisy-1;y++) for (int z=1;z<nisz-1;z++) {
-			int xyz = x+nisx*y+nisx*nisy*z;
-		
-			// compute the update field
-			float xs = is[X][xyz];
-			float ys = is[Y][xyz];
-			float zs = is[Z][xyz];
-		
-			float xsmx = is[X][xyz-1];
-			float ysmx = is[Y][xyz-1];
-			float zsmx = is[Z][xyz-1];
-	
-			float xspx = is[X][xyz+1];
-			float yspx = is[Y][xyz+1];
-			float zspx = is[Z][xyz+1];
-	
-			float xsmy = is[X][xyz-nisx];
-			float ysmy = is[Y][xyz-nisx];
-			float zsmy = is[Z][xyz-nisx];
-	
-			float xspy = is[X][xyz+nisx];
-			float yspy = is[Y][xyz+nisx];
-			float zspy = is[Z][xyz+nisx];
-	
-			float xsmz = is[X][xyz-nisx*nisy];
-			float ysmz = is[Y][xyz-nisx*nisy];
-			float zsmz = is[Z][xyz-nisx*nisy];
-	
-			float xspz = is[X][xyz+nisx*nisy];
-			float yspz = is[Y][xyz+nisx*nisy];
-			float zspz = is[Z][xyz+nisx*nisy];
-			
-			float xsi = xs/scale, ysi = ys/scale, zsi = zs/scale;
-			float xsmxi = xsmx/scale, ysmxi = ysmx/scale, zsmxi = zsmx/scale;
-			float xspxi = xspx/scale, yspxi = yspx/scale, zspxi = zspx/scale;
-			float xsmyi = xsmy/scale, ysmyi = ysmy/scale, zsmyi = zsmy/scale;
-			float xspyi = xspy/scale, yspyi = yspy/scale, zspyi = zspy/scale;
-			float xsmzi = xsmz/scale, ysmzi = ysmz/scale, zsmzi = zsmz/scale;
-			float xspzi = xspz/scale, yspzi = yspz/scale, zspzi = zspz/scale;
-			
-			float xt = x*scale;
-			float yt = y*scale;
-			float zt = z*scale;
-			
-			iu[X][xyz] = 0.0f;
-			iu[Y][xyz] = 0.0f;
-			iu[Z][xyz] = 0.0f;
-			float den = 0.0f;
-			for (int n=0;n<nc;n++) {
-				// image differences
-				float diff = (ImageInterpolation.linearClosestInterpolation(image[n],xt,yt,zt,nix,niy,niz) 
-							- ImageInterpolation.linearClosestInterpolation(target[n],xs,ys,zs,ntx,nty,ntz));				
-				
-				// image gradient
-				float Jx, Jy, Jz;
-				if (forceType==FIXED) {
-					Jx = 0.5f/rix*(ImageInterpolation.linearClosestInterpolation(image[n],xt+scale,yt,zt,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt-scale,yt,zt,nix,niy,niz));
-					Jy = 0.5f/riy*(ImageInterpolation.linearClosestInterpolation(image[n],xt,yt+scale,zt,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt,yt-scale,zt,nix,niy,niz));
-					Jz = 0.5f/riz*(ImageInterpolation.linearClosestInterpolation(image[n],xt,yt,zt+scale,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt,yt,zt-scale,nix,niy,niz));
-				} else if (forceType==MOVING) {
-					Jx = 0.5f/rtx*(ImageInterpolation.linearClosestInterpolation(target[n],xspx,yspx,zspx,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmx,ysmx,zsmx,ntx,nty,ntz));
-					Jy = 0.5f/rty*(ImageInterpolation.linearClosestInterpolation(target[n],xspy,yspy,zspy,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmy,ysmy,zsmy,ntx,nty,ntz));
-					Jz = 0.5f/rtz*(ImageInterpolation.linearClosestInterpolation(target[n],xspz,yspz,zspz,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmz,ysmz,zsmz,ntx,nty,ntz));
-				} else {
-					Jx = 0.25f/rix*(ImageInterpolation.linearClosestInterpolation(image[n],xt+scale,yt,zt,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt-scale,yt,zt,nix,niy,niz));
-					Jy = 0.25f/riy*(ImageInterpolation.linearClosestInterpolation(image[n],xt,yt+scale,zt,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt,yt-scale,zt,nix,niy,niz));
-					Jz = 0.25f/riz*(ImageInterpolation.linearClosestInterpolation(image[n],xt,yt,zt+scale,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt,yt,zt-scale,nix,niy,niz));
-					
-					Jx += 0.25f/rtx*(ImageInterpolation.linearClosestInterpolation(target[n],xspx,yspx,zspx,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmx,ysmx,zsmx,ntx,nty,ntz));
-					Jy += 0.25f/rty*(ImageInterpolation.linearClosestInterpolation(target[n],xspy,yspy,zspy,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmy,ysmy,zsmy,ntx,nty,ntz));
-					Jz += 0.25f/rtz*(ImageInterpolation.linearClosestInterpolation(target[n],xspz,yspz,zspz,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmz,ysmz,zsmz,ntx,nty,ntz));
-				}
-			
-				// inverse consistent coupling: backprojected coordinates
-				float iTx = xt - ImageInterpolation.linearClosestInterpolation(s[X],xsi,ysi,zsi,nsx,nsy,nsz);
-				float iTy = yt - ImageInterpolation.linearClosestInterpolation(s[Y],xsi,ysi,zsi,nsx,nsy,nsz);
-				float iTz = zt - ImageInterpolation.linearClosestInterpolation(s[Z],xsi,ysi,zsi,nsx,nsy,nsz);
-				
-				// erse consistent coupling: inverse transform jacobian
-				float[][] diT = new float[3][3];
-				diT[X][X] = 0.5f/rtx*(ImageInterpolation.linearClosestInterpolation(s[X],xspxi,yspxi,zspxi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[X],xsmxi,ysmxi,zsmxi,nsx,nsy,nsz));
-				diT[X][Y] = 0.5f/rty*(ImageInterpolation.linearClosestInterpolation(s[X],xspyi,yspyi,zspyi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[X],xsmyi,ysmyi,zsmyi,nsx,nsy,nsz));
-				diT[X][Z] = 0.5f/rtz*(ImageInterpolation.linearClosestInterpolation(s[X],xspzi,yspzi,zspzi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[X],xsmzi,ysmzi,zsmzi,nsx,nsy,nsz));
-
-				diT[Y][X] = 0.5f/rtx*(ImageInterpolation.linearClosestInterpolation(s[Y],xspxi,yspxi,zspxi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Y],xsmxi,ysmxi,zsmxi,nsx,nsy,nsz));
-				diT[Y][Y] = 0.5f/rty*(ImageInterpolation.linearClosestInterpolation(s[Y],xspyi,yspyi,zspyi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Y],xsmyi,ysmyi,zsmyi,nsx,nsy,nsz));
-				diT[Y][Z] = 0.5f/rtz*(ImageInterpolation.linearClosestInterpolation(s[Y],xspzi,yspzi,zspzi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Y],xsmzi,ysmzi,zsmzi,nsx,nsy,nsz));
-
-				diT[Z][X] = 0.5f/rtx*(ImageInterpolation.linearClosestInterpolation(s[Z],xspxi,yspxi,zspxi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Z],xsmxi,ysmxi,zsmxi,nsx,nsy,nsz));
-				diT[Z][Y] = 0.5f/rty*(ImageInterpolation.linearClosestInterpolation(s[Z],xspyi,yspyi,zspyi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Z],xsmyi,ysmyi,zsmyi,nsx,nsy,nsz));
-				diT[Z][Z] = 0.5f/rtz*(ImageInterpolation.linearClosestInterpolation(s[Z],xspzi,yspzi,zspzi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Z],xsmzi,ysmzi,zsmzi,nsx,nsy,nsz));
-				
-				// putting all together
-				float J2 = Jx*Jx+Jy*Jy+Jz*Jz;
-				
-				float diT2 = Matrix3D.determinant(diT);
-				diT2 *= diT2;				
-				
-				float sigmaI = diff*diff/sigma2;
-				
-				den += sigmaI*(1.0f+diT2) + J2;
-				
-				iu[X][xyz] += diff*Jx;
-				iu[Y][xyz] += diff*Jy;
-				iu[Z][xyz] += diff*Jz;
-				
-				iu[X][xyz] += sigmaI*( iTx*diT[X][X] + iTy*diT[X][Y] + iTz*diT[X][Z] );
-				iu[Y][xyz] += sigmaI*( iTx*diT[Y][X] + iTy*diT[Y][Y] + iTz*diT[Y][Z] );
-				iu[Z][xyz] += sigmaI*( iTx*diT[Z][X] + iTy*diT[Z][Y] + iTz*diT[Z][Z] );
-				
-				meanDiff += Numerics.abs(diff);
-			}
-			iu[X][xyz] /= Numerics.max(ZERO,den);
-			iu[Y][xyz] /= Numerics.max(ZERO,den);
-			iu[Z][xyz] /= Numerics.max(ZERO,den);			
-		}
-		meanDiff /= (nix*niy*niz);
-
-		if (debug) BasicInfo.displayMessage("mean intensity difference "+meanDiff+"\n");
-
-        return meanDiff;
+		return demonsUpdate(false, true);
     } // 
 		
     /**
@@ -805,93 +442,7 @@ public class DemonsScaledConsistentRegistration {
      * performs only one iteration
 	 */
     final public float registerTargetToImageUpdateDecoupled() {
-		
-		float meanDiff = 0.0f;
-		for (int x=1;x<nisx-1;x++) for (int y=1;y<nisy-1;y++) for (int z=1;z<nisz-1;z++) {
-			int xyz = x+nisx*y+nisx*nisy*z;
-		
-			// compute the update field
-			float xs = is[X][xyz];
-			float ys = is[Y][xyz];
-			float zs = is[Z][xyz];
-		
-			float xsmx = is[X][xyz-1];
-			float ysmx = is[Y][xyz-1];
-			float zsmx = is[Z][xyz-1];
-	
-			float xspx = is[X][xyz+1];
-			float yspx = is[Y][xyz+1];
-			float zspx = is[Z][xyz+1];
-	
-			float xsmy = is[X][xyz-nisx];
-			float ysmy = is[Y][xyz-nisx];
-			float zsmy = is[Z][xyz-nisx];
-	
-			float xspy = is[X][xyz+nisx];
-			float yspy = is[Y][xyz+nisx];
-			float zspy = is[Z][xyz+nisx];
-	
-			float xsmz = is[X][xyz-nisx*nisy];
-			float ysmz = is[Y][xyz-nisx*nisy];
-			float zsmz = is[Z][xyz-nisx*nisy];
-	
-			float xspz = is[X][xyz+nisx*nisy];
-			float yspz = is[Y][xyz+nisx*nisy];
-			float zspz = is[Z][xyz+nisx*nisy];
-			
-			float xt = x*scale;
-			float yt = y*scale;
-			float zt = z*scale;
-			
-			iu[X][xyz] = 0.0f;
-			iu[Y][xyz] = 0.0f;
-			iu[Z][xyz] = 0.0f;
-			float den = 0.0f;
-			for (int n=0;n<nc;n++) {
-				// image differences
-				float diff = (ImageInterpolation.linearClosestInterpolation(image[n],xt,yt,zt,nix,niy,niz) 
-							- ImageInterpolation.linearClosestInterpolation(target[n],xs,ys,zs,ntx,nty,ntz));				
-				
-				// image gradient
-				float Jx, Jy, Jz;
-				if (forceType==FIXED) {
-					Jx = 0.5f/rix*(ImageInterpolation.linearClosestInterpolation(image[n],xt+scale,yt,zt,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt-scale,yt,zt,nix,niy,niz));
-					Jy = 0.5f/riy*(ImageInterpolation.linearClosestInterpolation(image[n],xt,yt+scale,zt,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt,yt-scale,zt,nix,niy,niz));
-					Jz = 0.5f/riz*(ImageInterpolation.linearClosestInterpolation(image[n],xt,yt,zt+scale,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt,yt,zt-scale,nix,niy,niz));
-				} else if (forceType==MOVING) {
-					Jx = 0.5f/rtx*(ImageInterpolation.linearClosestInterpolation(target[n],xspx,yspx,zspx,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmx,ysmx,zsmx,ntx,nty,ntz));
-					Jy = 0.5f/rty*(ImageInterpolation.linearClosestInterpolation(target[n],xspy,yspy,zspy,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmy,ysmy,zsmy,ntx,nty,ntz));
-					Jz = 0.5f/rtz*(ImageInterpolation.linearClosestInterpolation(target[n],xspz,yspz,zspz,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmz,ysmz,zsmz,ntx,nty,ntz));
-				} else {
-					Jx = 0.25f/rix*(ImageInterpolation.linearClosestInterpolation(image[n],xt+scale,yt,zt,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt-scale,yt,zt,nix,niy,niz));
-					Jy = 0.25f/riy*(ImageInterpolation.linearClosestInterpolation(image[n],xt,yt+scale,zt,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt,yt-scale,zt,nix,niy,niz));
-					Jz = 0.25f/riz*(ImageInterpolation.linearClosestInterpolation(image[n],xt,yt,zt+scale,nix,niy,niz) - ImageInterpolation.linearClosestInterpolation(image[n],xt,yt,zt-scale,nix,niy,niz));
-					
-					Jx += 0.25f/rtx*(ImageInterpolation.linearClosestInterpolation(target[n],xspx,yspx,zspx,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmx,ysmx,zsmx,ntx,nty,ntz));
-					Jy += 0.25f/rty*(ImageInterpolation.linearClosestInterpolation(target[n],xspy,yspy,zspy,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmy,ysmy,zsmy,ntx,nty,ntz));
-					Jz += 0.25f/rtz*(ImageInterpolation.linearClosestInterpolation(target[n],xspz,yspz,zspz,ntx,nty,ntz)-ImageInterpolation.linearClosestInterpolation(target[n],xsmz,ysmz,zsmz,ntx,nty,ntz));
-				}
-			
-				// putting all together
-				float J2 = Jx*Jx+Jy*Jy+Jz*Jz;
-				
-				den += diff*diff/sigma2 + J2;
-				
-				iu[X][xyz] += diff*Jx;
-				iu[Y][xyz] += diff*Jy;
-				iu[Z][xyz] += diff*Jz;
-				
-				meanDiff += Numerics.abs(diff);
-			}
-			iu[X][xyz] /= Numerics.max(ZERO,den);
-			iu[Y][xyz] /= Numerics.max(ZERO,den);
-			iu[Z][xyz] /= Numerics.max(ZERO,den);			
-		}
-		meanDiff /= (nix*niy*niz);
-
-		if (debug) BasicInfo.displayMessage("mean intensity difference "+meanDiff+"\n");
-
-        return meanDiff;
+		return demonsUpdate(false, false);
     } // 
 		
     /**
@@ -900,154 +451,312 @@ public class DemonsScaledConsistentRegistration {
      * performs only one iteration
 	 */
     final public float registerTargetToImageCompose() {
+		return composeUpdate(false);
+    } // 
+    
+   /**
+	 * compute the image position given the target
+	 * for a given level l
+     * performs only one iteration
+	 */
+    final public float registerImageToTargetInverseConsistent() {
+		return inverseConsistentUpdate(true);
+    } // 
+    
+    /**
+	 * compute the image position given the target
+	 * for a given level l
+     * performs only one iteration
+	 */
+    final public float registerTargetToImageInverseConsistent() {
+		return inverseConsistentUpdate(false);
+    } // 
+    
+    /**
+	 * fixed image values and central differences at the grid points of the forward (image to target)
+	 * or backward (target to image) transform: the values are in terms[0], the x,y,z differences in terms[1-3]
+	 * (only the values are computed for MOVING forces)
+	 */
+    private final float[][][] fixedImageTerms(final boolean forward) {
+		final int ngx = forward ? nsx : nisx;
+		final int ngy = forward ? nsy : nisy;
+		final int ngz = forward ? nsz : nisz;
+		final int nterms = (forceType==MOVING) ? 1 : 4;
 		
-		if (regType==GAUSS_FLUID || regType==GAUSS_MIXED) {
-			//if (debug) BasicInfo.displayMessage("GAUSS_FLUID regularization \n");
+		final float[][][] terms = new float[nterms][nc][ngx*ngy*ngz];
+		ParallelProcessing.forEachSlab(ngz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				float[][] val = new float[nterms][nc];
+				float[] tmp = new float[nc];
+				for (int z=Numerics.max(start,1);z<Numerics.min(end,ngz-1);z++) for (int y=1;y<ngy-1;y++) for (int x=1;x<ngx-1;x++) {
+					int xyz = x+ngx*y+ngx*ngy*z;
+					fixedImageTerms(forward, x, y, z, val, tmp);
+					for (int k=0;k<nterms;k++) for (int n=0;n<nc;n++) terms[k][n][xyz] = val[k][n];
+				}
+			}
+		});
+		return terms;
+	}
+	
+    /** fixed image values and central differences at one grid point */
+    private final void fixedImageTerms(boolean forward, int x, int y, int z, float[][] terms, float[] tmp) {
+		float[][] fixed = forward ? target : image;
+		int nfx = forward ? ntx : nix;
+		int nfy = forward ? nty : niy;
+		int nfz = forward ? ntz : niz;
 		
-			// smooth the result with a gaussian kernel
-			iu[X] = ImageFilters.separableConvolution(iu[X],nisx,nisy,nisz,igaussKernel,igx,igy,igz);
-			iu[Y] = ImageFilters.separableConvolution(iu[Y],nisx,nisy,nisz,igaussKernel,igx,igy,igz);
-			iu[Z] = ImageFilters.separableConvolution(iu[Z],nisx,nisy,nisz,igaussKernel,igx,igy,igz);
-		}
+		float xt = x*scale;
+		float yt = y*scale;
+		float zt = z*scale;
 		
-		// compose the transformations
-		if (fieldType==COMPOSITIVE) {
-			//if (debug) BasicInfo.displayMessage("compose with current transform \n");
-							
-			for (int x=0;x<nisx;x++) for (int y=0;y<nisy;y++) for (int z=0;z<nisz;z++) {
-				int xyz = x+nisx*y+nisx*nisy*z;
-				
-				float xu = x+iu[X][xyz];
-				float yu = y+iu[Y][xyz];
-				float zu = z+iu[Z][xyz];
-				
-				// note: if outside, extrapolate as X+u
-				ic[X][xyz] = ImageInterpolation.linearClosestInterpolation(is[X],xu,yu,zu,nisx,nisy,nisz) - x*scale;
-				ic[Y][xyz] = ImageInterpolation.linearClosestInterpolation(is[Y],xu,yu,zu,nisx,nisy,nisz) - y*scale;
-				ic[Z][xyz] = ImageInterpolation.linearClosestInterpolation(is[Z],xu,yu,zu,nisx,nisy,nisz) - z*scale;
-			}
+		ImageInterpolation.linearClosestInterpolation(fixed,nc,xt,yt,zt,nfx,nfy,nfz,terms[0]);
+		if (terms.length>1) {
+			ImageInterpolation.linearClosestInterpolation(fixed,nc,xt+scale,yt,zt,nfx,nfy,nfz,terms[X+1]);
+			ImageInterpolation.linearClosestInterpolation(fixed,nc,xt-scale,yt,zt,nfx,nfy,nfz,tmp);
+			for (int n=0;n<nc;n++) terms[X+1][n] -= tmp[n];
+			
+			ImageInterpolation.linearClosestInterpolation(fixed,nc,xt,yt+scale,zt,nfx,nfy,nfz,terms[Y+1]);
+			ImageInterpolation.linearClosestInterpolation(fixed,nc,xt,yt-scale,zt,nfx,nfy,nfz,tmp);
+			for (int n=0;n<nc;n++) terms[Y+1][n] -= tmp[n];
+			
+			ImageInterpolation.linearClosestInterpolation(fixed,nc,xt,yt,zt+scale,nfx,nfy,nfz,terms[Z+1]);
+			ImageInterpolation.linearClosestInterpolation(fixed,nc,xt,yt,zt-scale,nfx,nfy,nfz,tmp);
+			for (int n=0;n<nc;n++) terms[Z+1][n] -= tmp[n];
+		}
+	}
+	
+    /**
+	 * backprojected coordinates iT and inverse transform jacobian diT at one grid point,
+	 * from the inverse transform interpolated at the transformed point and its six neighbors;
+	 * returns the squared jacobian determinant
+	 */
+    private final float inverseCoupling(float[][] sf, float[][] isf, int xyz, int[] offset, int x, int y, int z,
+    										int nbx, int nby, int nbz, float rmx, float rmy, float rmz,
+    										float[][] inv, float[] iT, float[][] diT) {
+		// inverse transform at the transformed point (0) and its neighbors (-x,+x,-y,+y,-z,+z)
+		for (int d=0;d<7;d++) {
+			int ngb = xyz+offset[d];
+			ImageInterpolation.linearClosestInterpolation(isf,3,sf[X][ngb]/scale,sf[Y][ngb]/scale,sf[Z][ngb]/scale,nbx,nby,nbz,inv[d]);
 		}
+		iT[X] = x*scale - inv[0][X];
+		iT[Y] = y*scale - inv[0][Y];
+		iT[Z] = z*scale - inv[0][Z];
 		
-		if (regType==GAUSS_DIFFUSION || regType==GAUSS_MIXED) {
-			//if (debug) BasicInfo.displayMessage("GAUSS_DIFFUSION regularization \n");
-			
-			// smooth the result with a gaussian kernel
-			ic[X] = ImageFilters.separableConvolution(ic[X],nisx,nisy,nisz,igaussKernel,igx,igy,igz);
-			ic[Y] = ImageFilters.separableConvolution(ic[Y],nisx,nisy,nisz,igaussKernel,igx,igy,igz);
-			ic[Z] = ImageFilters.separableConvolution(ic[Z],nisx,nisy,nisz,igaussKernel,igx,igy,igz);
+		for (int i=0;i<3;i++) {
+			diT[i][X] = 0.5f/rmx*(inv[2][i]-inv[1][i]);
+			diT[i][Y] = 0.5f/rmy*(inv[4][i]-inv[3][i]);
+			diT[i][Z] = 0.5f/rmz*(inv[6][i]-inv[5][i]);
 		}
-					
-		float meanC = 0.0f;
-		for (int x=0;x<nisx;x++) for (int y=0;y<nisy;y++) for (int z=0;z<nisz;z++) {
-			int xyz = x+nisx*y+nisx*nisy*z;
-			
-			is[X][xyz] = x*scale + ic[X][xyz];
-			is[Y][xyz] = y*scale + ic[Y][xyz];
-			is[Z][xyz] = z*scale + ic[Z][xyz];
-			
-			meanC += ic[X][xyz]*ic[X][xyz]+ic[Y][xyz]*ic[Y][xyz]+ic[Z][xyz]*ic[Z][xyz];
+		float diT2 = Matrix3D.determinant(diT);
+		return diT2*diT2;
+	}
+	
+    /**
+	 * demons update of the forward (image to target) or backward (target to image) transform,
+	 * with or without inverse consistent coupling: the fixed image terms are cached once per scale
+	 * (unless disabled), the moving image and inverse transform are interpolated for all channels
+	 * or components at once, and the grid is processed in parallel over z slabs
+	 */
+    private final float demonsUpdate(final boolean forward, final boolean coupled) {
+		// transform and update of the registration direction, and inverse transform
+		final float[][] sf = forward ? s : is;
+		final float[][] uf = forward ? u : iu;
+		final float[][] isf = forward ? is : s;
+		final float[][] moving = forward ? image : target;
+		
+		final int ngx = forward ? nsx : nisx;
+		final int ngy = forward ? nsy : nisy;
+		final int ngz = forward ? nsz : nisz;
+		final int nbx = forward ? nisx : nsx;
+		final int nby = forward ? nisy : nsy;
+		final int nbz = forward ? nisz : nsz;
+		final int nmx = forward ? nix : ntx;
+		final int nmy = forward ? niy : nty;
+		final int nmz = forward ? niz : ntz;
+		final float rfx = forward ? rtx : rix;
+		final float rfy = forward ? rty : riy;
+		final float rfz = forward ? rtz : riz;
+		final float rmx = forward ? rix : rtx;
+		final float rmy = forward ? riy : rty;
+		final float rmz = forward ? riz : rtz;
+		final int nfxyz = forward ? ntx*nty*ntz : nix*niy*niz;
+		
+		// neighbor offsets: -x,+x,-y,+y,-z,+z
+		final int[] offset = {0, -1, 1, -ngx, ngx, -ngx*ngy, ngx*ngy};
+		
+		final float[][][] cache;
+		if (cacheFixedImages) {
+			if (forward && targetTerms==null) targetTerms = fixedImageTerms(true);
+			if (!forward && imageTerms==null) imageTerms = fixedImageTerms(false);
+			cache = forward ? targetTerms : imageTerms;
+		} else {
+			cache = null;
 		}
-		meanC /= (nisx*nisy*nisz);
 		
-		//if (debug) BasicInfo.displayMessage("mean update size "+meanC+"\n");
+		final float[] meanDiffZ = new float[ngz];
+		ParallelProcessing.forEachSlab(ngz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				float[][] fix = new float[(forceType==MOVING) ? 1 : 4][];
+				float[][] fixbuffer = new float[fix.length][nc];
+				float[] tmp = new float[nc];
+				float[][] mov = new float[7][nc];
+				float[][] inv = new float[7][3];
+				float[] iT = new float[3];
+				float[][] diT = new float[3][3];
+				for (int z=Numerics.max(start,1);z<Numerics.min(end,ngz-1);z++) {
+					float meanDiff = 0.0f;
+					for (int y=1;y<ngy-1;y++) for (int x=1;x<ngx-1;x++) {
+						int xyz = x+ngx*y+ngx*ngy*z;
+						
+						// fixed image values and differences
+						if (cache!=null) {
+							for (int k=0;k<fix.length;k++) {
+								for (int n=0;n<nc;n++) fixbuffer[k][n] = cache[k][n][xyz];
+							}
+						} else {
+							fixedImageTerms(forward, x, y, z, fixbuffer, tmp);
+						}
+						
+						// moving image at the transformed point (0) and its neighbors (-x,+x,-y,+y,-z,+z)
+						int nfetch = (forceType==FIXED) ? 1 : 7;
+						for (int d=0;d<nfetch;d++) {
+							int ngb = xyz+offset[d];
+							ImageInterpolation.linearClosestInterpolation(moving,nc,sf[X][ngb],sf[Y][ngb],sf[Z][ngb],nmx,nmy,nmz,mov[d]);
+						}
+						
+						// inverse consistent coupling (identical for all channels)
+						float diT2 = 0.0f;
+						if (coupled) diT2 = inverseCoupling(sf, isf, xyz, offset, x, y, z, nbx, nby, nbz, rmx, rmy, rmz, inv, iT, diT);
+						
+						float ux = 0.0f, uy = 0.0f, uz = 0.0f;
+						float den = 0.0f;
+						for (int n=0;n<nc;n++) {
+							// image differences
+							float diff = fixbuffer[0][n] - mov[0][n];
+							
+							// image gradient
+							float Jx, Jy, Jz;
+							if (forceType==FIXED) {
+								Jx = 0.5f/rfx*fixbuffer[X+1][n];
+								Jy = 0.5f/rfy*fixbuffer[Y+1][n];
+								Jz = 0.5f/rfz*fixbuffer[Z+1][n];
+							} else if (forceType==MOVING) {
+								Jx = 0.5f/rmx*(mov[2][n]-mov[1][n]);
+								Jy = 0.5f/rmy*(mov[4][n]-mov[3][n]);
+								Jz = 0.5f/rmz*(mov[6][n]-mov[5][n]);
+							} else {
+								Jx = 0.25f/rfx*fixbuffer[X+1][n];
+								Jy = 0.25f/rfy*fixbuffer[Y+1][n];
+								Jz = 0.25f/rfz*fixbuffer[Z+1][n];
+								
+								Jx += 0.25f/rmx*(mov[2][n]-mov[1][n]);
+								Jy += 0.25f/rmy*(mov[4][n]-mov[3][n]);
+								Jz += 0.25f/rmz*(mov[6][n]-mov[5][n]);
+							}
+							
+							// putting it all together
+							float J2 = Jx*Jx+Jy*Jy+Jz*Jz;
+							
+							if (coupled) {
+								float sigmaI = diff*diff/sigma2;
+								
+								den += sigmaI*(1.0f+diT2) + J2;
+								
+								ux += diff*Jx;
+								uy += diff*Jy;
+								uz += diff*Jz;
+								
+								ux += sigmaI*( iT[X]*diT[X][X] + iT[Y]*diT[X][Y] + iT[Z]*diT[X][Z] );
+								uy += sigmaI*( iT[X]*diT[Y][X] + iT[Y]*diT[Y][Y] + iT[Z]*diT[Y][Z] );
+								uz += sigmaI*( iT[X]*diT[Z][X] + iT[Y]*diT[Z][Y] + iT[Z]*diT[Z][Z] );
+							} else {
+								den += diff*diff/sigma2 + J2;
+								
+								ux += diff*Jx;
+								uy += diff*Jy;
+								uz += diff*Jz;
+							}
+							meanDiff += Numerics.abs(diff);
+						}
+						uf[X][xyz] = ux/Numerics.max(ZERO,den);
+						uf[Y][xyz] = uy/Numerics.max(ZERO,den);
+						uf[Z][xyz] = uz/Numerics.max(ZERO,den);
+					}
+					meanDiffZ[z] = meanDiff;
+				}
+			}
+		});
+		// sum in a fixed order, so the result does not depend on the number of threads
+		float meanDiff = 0.0f;
+		for (int z=0;z<ngz;z++) meanDiff += meanDiffZ[z];
+		meanDiff /= nfxyz;
+		
+		if (debug) BasicInfo.displayMessage("mean intensity difference "+meanDiff+"\n");
 
-        return meanC;
+        return meanDiff;
     } // 
     
-   /**
-	 * compute the image position given the target
-	 * for a given level l
-     * performs only one iteration
+    /**
+	 * inverse consistency update of the forward (image to target) or backward (target to image) transform,
+	 * processed in parallel over z slabs
 	 */
-    final public float registerImageToTargetInverseConsistent() {
-		float meanDiff = 0.0f;
-		for (int x=1;x<nsx-1;x++) for (int y=1;y<nsy-1;y++) for (int z=1;z<nsz-1;z++) {
-			int xyz = x+nsx*y+nsx*nsy*z;
+    private final float inverseConsistentUpdate(final boolean forward) {
+		final float[][] sf = forward ? s : is;
+		final float[][] uf = forward ? u : iu;
+		final float[][] isf = forward ? is : s;
 		
-			// compute the update field
-			float xs = s[X][xyz];
-			float ys = s[Y][xyz];
-			float zs = s[Z][xyz];
+		final int ngx = forward ? nsx : nisx;
+		final int ngy = forward ? nsy : nisy;
+		final int ngz = forward ? nsz : nisz;
+		final int nbx = forward ? nisx : nsx;
+		final int nby = forward ? nisy : nsy;
+		final int nbz = forward ? nisz : nsz;
+		final float rmx = forward ? rix : rtx;
+		final float rmy = forward ? riy : rty;
+		final float rmz = forward ? riz : rtz;
+		final int nfxyz = forward ? ntx*nty*ntz : nix*niy*niz;
 		
-			float xsmx = s[X][xyz-1];
-			float ysmx = s[Y][xyz-1];
-			float zsmx = s[Z][xyz-1];
-	
-			float xspx = s[X][xyz+1];
-			float yspx = s[Y][xyz+1];
-			float zspx = s[Z][xyz+1];
-	
-			float xsmy = s[X][xyz-nsx];
-			float ysmy = s[Y][xyz-nsx];
-			float zsmy = s[Z][xyz-nsx];
-	
-			float xspy = s[X][xyz+nsx];
-			float yspy = s[Y][xyz+nsx];
-			float zspy = s[Z][xyz+nsx];
-	
-			float xsmz = s[X][xyz-nsx*nsy];
-			float ysmz = s[Y][xyz-nsx*nsy];
-			float zsmz = s[Z][xyz-nsx*nsy];
-	
-			float xspz = s[X][xyz+nsx*nsy];
-			float yspz = s[Y][xyz+nsx*nsy];
-			float zspz = s[Z][xyz+nsx*nsy];
-			
-			float xt = x*scale;
-			float yt = y*scale;
-			float zt = z*scale;
-			
-			float xsi = xs/scale, ysi = ys/scale, zsi = zs/scale;
-			float xsmxi = xsmx/scale, ysmxi = ysmx/scale, zsmxi = zsmx/scale;
-			float xspxi = xspx/scale, yspxi = yspx/scale, zspxi = zspx/scale;
-			float xsmyi = xsmy/scale, ysmyi = ysmy/scale, zsmyi = zsmy/scale;
-			float xspyi = xspy/scale, yspyi = yspy/scale, zspyi = zspy/scale;
-			float xsmzi = xsmz/scale, ysmzi = ysmz/scale, zsmzi = zsmz/scale;
-			float xspzi = xspz/scale, yspzi = yspz/scale, zspzi = zspz/scale;
-			
-			u[X][xyz] = 0.0f;
-			u[Y][xyz] = 0.0f;
-			u[Z][xyz] = 0.0f;
-			float den = 0.0f;
-			for (int n=0;n<nc;n++) {
-				// inverse consistent coupling: backprojected coordinates
-				float iTx = xt - ImageInterpolation.linearClosestInterpolation(is[X],xsi,ysi,zsi,nisx,nisy,nisz);
-				float iTy = yt - ImageInterpolation.linearClosestInterpolation(is[Y],xsi,ysi,zsi,nisx,nisy,nisz);
-				float iTz = zt - ImageInterpolation.linearClosestInterpolation(is[Z],xsi,ysi,zsi,nisx,nisy,nisz);
-				
-				// inverse consistent coupling: inverse transform jacobian
+		// neighbor offsets: -x,+x,-y,+y,-z,+z
+		final int[] offset = {0, -1, 1, -ngx, ngx, -ngx*ngy, ngx*ngy};
+		
+		final float[] meanDiffZ = new float[ngz];
+		ParallelProcessing.forEachSlab(ngz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				float[][] inv = new float[7][3];
+				float[] iT = new float[3];
 				float[][] diT = new float[3][3];
-				diT[X][X] = 0.5f/rix*(ImageInterpolation.linearClosestInterpolation(is[X],xspxi,yspxi,zspxi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[X],xsmxi,ysmxi,zsmxi,nisx,nisy,nisz));
-				diT[X][Y] = 0.5f/riy*(ImageInterpolation.linearClosestInterpolation(is[X],xspyi,yspyi,zspyi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[X],xsmyi,ysmyi,zsmyi,nisx,nisy,nisz));
-				diT[X][Z] = 0.5f/riz*(ImageInterpolation.linearClosestInterpolation(is[X],xspzi,yspzi,zspzi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[X],xsmzi,ysmzi,zsmzi,nisx,nisy,nisz));
-
-				diT[Y][X] = 0.5f/rix*(ImageInterpolation.linearClosestInterpolation(is[Y],xspxi,yspxi,zspxi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Y],xsmxi,ysmxi,zsmxi,nisx,nisy,nisz));
-				diT[Y][Y] = 0.5f/riy*(ImageInterpolation.linearClosestInterpolation(is[Y],xspyi,yspyi,zspyi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Y],xsmyi,ysmyi,zsmyi,nisx,nisy,nisz));
-				diT[Y][Z] = 0.5f/riz*(ImageInterpolation.linearClosestInterpolation(is[Y],xspzi,yspzi,zspzi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Y],xsmzi,ysmzi,zsmzi,nisx,nisy,nisz));
-
-				diT[Z][X] = 0.5f/rix*(ImageInterpolation.linearClosestInterpolation(is[Z],xspxi,yspxi,zspxi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Z],xsmxi,ysmxi,zsmxi,nisx,nisy,nisz));
-				diT[Z][Y] = 0.5f/riy*(ImageInterpolation.linearClosestInterpolation(is[Z],xspyi,yspyi,zspyi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Z],xsmyi,ysmyi,zsmyi,nisx,nisy,nisz));
-				diT[Z][Z] = 0.5f/riz*(ImageInterpolation.linearClosestInterpolation(is[Z],xspzi,yspzi,zspzi,nisx,nisy,nisz)-ImageInterpolation.linearClosestInterpolation(is[Z],xsmzi,ysmzi,zsmzi,nisx,nisy,nisz));
-
-				// putting it all together
-				float diT2 = Matrix3D.determinant(diT);
-				diT2 *= diT2;				
-				
-				float iT2 = iTx*iTx + iTy*iTy + iTz*iTz;
-				
-				den += iT2 + diT2;
-				
-				u[X][xyz] += 0.5f*( iTx*diT[X][X] + iTy*diT[X][Y] + iTz*diT[X][Z] );
-				u[Y][xyz] += 0.5f*( iTx*diT[Y][X] + iTy*diT[Y][Y] + iTz*diT[Y][Z] );
-				u[Z][xyz] += 0.5f*( iTx*diT[Z][X] + iTy*diT[Z][Y] + iTz*diT[Z][Z] );
-				
-				meanDiff += (float)Math.sqrt(iT2);
+				for (int z=Numerics.max(start,1);z<Numerics.min(end,ngz-1);z++) {
+					float meanDiff = 0.0f;
+					for (int y=1;y<ngy-1;y++) for (int x=1;x<ngx-1;x++) {
+						int xyz = x+ngx*y+ngx*ngy*z;
+						
+						// inverse consistent coupling: backprojected coordinates and inverse transform jacobian
+						float diT2 = inverseCoupling(sf, isf, xyz, offset, x, y, z, nbx, nby, nbz, rmx, rmy, rmz, inv, iT, diT);
+						float iT2 = iT[X]*iT[X] + iT[Y]*iT[Y] + iT[Z]*iT[Z];
+						
+						// putting it all together (weighted equally for all channels)
+						float ux = 0.0f, uy = 0.0f, uz = 0.0f;
+						float den = 0.0f;
+						for (int n=0;n<nc;n++) {
+							den += iT2 + diT2;
+							
+							ux += 0.5f*( iT[X]*diT[X][X] + iT[Y]*diT[X][Y] + iT[Z]*diT[X][Z] );
+							uy += 0.5f*( iT[X]*diT[Y][X] + iT[Y]*diT[Y][Y] + iT[Z]*diT[Y][Z] );
+							uz += 0.5f*( iT[X]*diT[Z][X] + iT[Y]*diT[Z][Y] + iT[Z]*diT[Z][Z] );
+							
+							meanDiff += (float)Math.sqrt(iT2);
+						}
+						uf[X][xyz] = ux/Numerics.max(ZERO,den);
+						uf[Y][xyz] = uy/Numerics.max(ZERO,den);
+						uf[Z][xyz] = uz/Numerics.max(ZERO,den);
+					}
+					meanDiffZ[z] = meanDiff;
+				}
 			}
-			u[X][xyz] /= Numerics.max(ZERO,den);
-			u[Y][xyz] /= Numerics.max(ZERO,den);
-			u[Z][xyz] /= Numerics.max(ZERO,den);			
-		}
-		meanDiff /= (ntx*nty*ntz);
+		});
+		float meanDiff = 0.0f;
+		for (int z=0;z<ngz;z++) meanDiff += meanDiffZ[z];
+		meanDiff /= nfxyz;
 
 		if (debug) BasicInfo.displayMessage("inverse consistency: "+meanDiff+"\n");
 
@@ -1055,103 +764,89 @@ public class DemonsScaledConsistentRegistration {
     } // 
     
     /**
-	 * compute the image position given the target
-	 * for a given level l
-     * performs only one iteration
+	 * regularization and composition of the update with the forward (image to target)
+	 * or backward (target to image) transform, processed in parallel over z slabs
 	 */
-    final public float registerTargetToImageInverseConsistent() {
-		float meanDiff = 0.0f;
-		for (int x=1;x<nisx-1;x++) for (int y=1;y<nisy-1;y++) for (int z=1;z<nisz-1;z++) {
-			int xyz = x+nisx*y+nisx*nisy*z;
+    private final float composeUpdate(final boolean forward) {
+		final float[][] sf = forward ? s : is;
+		final float[][] uf = forward ? u : iu;
+		final float[][] cf = forward ? c : ic;
 		
-			// compute the update field
-			float xs = is[X][xyz];
-			float ys = is[Y][xyz];
-			float zs = is[Z][xyz];
+		final int ngx = forward ? nsx : nisx;
+		final int ngy = forward ? nsy : nisy;
+		final int ngz = forward ? nsz : nisz;
+		float[][] kernel = forward ? gaussKernel : igaussKernel;
+		int kx = forward ? gx : igx;
+		int ky = forward ? gy : igy;
+		int kz = forward ? gz : igz;
 		
-			float xsmx = is[X][xyz-1];
-			float ysmx = is[Y][xyz-1];
-			float zsmx = is[Z][xyz-1];
-	
-			float xspx = is[X][xyz+1];
-			float yspx = is[Y][xyz+1];
-			float zspx = is[Z][xyz+1];
-	
-			float xsmy = is[X][xyz-nisx];
-			float ysmy = is[Y][xyz-nisx];
-			float zsmy = is[Z][xyz-nisx];
-	
-			float xspy = is[X][xyz+nisx];
-			float yspy = is[Y][xyz+nisx];
-			float zspy = is[Z][xyz+nisx];
-	
-			float xsmz = is[X][xyz-nisx*nisy];
-			float ysmz = is[Y][xyz-nisx*nisy];
-			float zsmz = is[Z][xyz-nisx*nisy];
-	
-			float xspz = is[X][xyz+nisx*nisy];
-			float yspz = is[Y][xyz+nisx*nisy];
-			float zspz = is[Z][xyz+nisx*nisy];
-			
-			float xsi = xs/scale, ysi = ys/scale, zsi = zs/scale;
-			float xsmxi = xsmx/scale, ysmxi = ysmx/scale, zsmxi = zsmx/scale;
-			float xspxi = xspx/scale, yspxi = yspx/scale, zspxi = zspx/scale;
-			float xsmyi = xsmy/scale, ysmyi = ysmy/scale, zsmyi = zsmy/scale;
-			float xspyi = xspy/scale, yspyi = yspy/scale, zspyi = zspy/scale;
-			float xsmzi = xsmz/scale, ysmzi = ysmz/scale, zsmzi = zsmz/scale;
-			float xspzi = xspz/scale, yspzi = yspz/scale, zspzi = zspz/scale;
+		if (regType==GAUSS_FLUID || regType==GAUSS_MIXED) {
+			//if (debug) BasicInfo.displayMessage("GAUSS_FLUID regularization \n");
+		
+			// smooth the result with a gaussian kernel
+			uf[X] = ImageFilters.separableConvolution(uf[X],ngx,ngy,ngz,kernel,kx,ky,kz);
+			uf[Y] = ImageFilters.separableConvolution(uf[Y],ngx,ngy,ngz,kernel,kx,ky,kz);
+			uf[Z] = ImageFilters.separableConvolution(uf[Z],ngx,ngy,ngz,kernel,kx,ky,kz);
+		}
+		
+		// compose the transformations
+		if (fieldType==COMPOSITIVE) {
+			//if (debug) BasicInfo.displayMessage("compose with current transform \n");
 			
-			float xt = x*scale;
-			float yt = y*scale;
-			float zt = z*scale;
+			ParallelProcessing.forEachSlab(ngz, new ParallelProcessing.RangeTask() {
+				public void process(int chunk, int start, int end) {
+					float[] val = new float[3];
+					for (int z=start;z<end;z++) for (int y=0;y<ngy;y++) for (int x=0;x<ngx;x++) {
+						int xyz = x+ngx*y+ngx*ngy*z;
+						
+						float xu = x+uf[X][xyz];
+						float yu = y+uf[Y][xyz];
+						float zu = z+uf[Z][xyz];
+						
+						// note: if outside, extrapolate as X+u
+						ImageInterpolation.linearClosestInterpolation(sf,3,xu,yu,zu,ngx,ngy,ngz,val);
+						cf[X][xyz] = val[X] - x*scale;
+						cf[Y][xyz] = val[Y] - y*scale;
+						cf[Z][xyz] = val[Z] - z*scale;
+					}
+				}
+			});
+		}
+		
+		if (regType==GAUSS_DIFFUSION || regType==GAUSS_MIXED) {
+			//if (debug) BasicInfo.displayMessage("GAUSS_DIFFUSION regularization \n");
 			
-			iu[X][xyz] = 0.0f;
-			iu[Y][xyz] = 0.0f;
-			iu[Z][xyz] = 0.0f;
-			float den = 0.0f;
-			for (int n=0;n<nc;n++) {
-				// inverse consistent coupling: backprojected coordinates
-				float iTx = xt - ImageInterpolation.linearClosestInterpolation(s[X],xsi,ysi,zsi,nsx,nsy,nsz);
-				float iTy = yt - ImageInterpolation.linearClosestInterpolation(s[Y],xsi,ysi,zsi,nsx,nsy,nsz);
-				float iTz = zt - ImageInterpolation.linearClosestInterpolation(s[Z],xsi,ysi,zsi,nsx,nsy,nsz);
-				
-				// erse consistent coupling: inverse transform jacobian
-				float[][] diT = new float[3][3];
-				diT[X][X] = 0.5f/rtx*(ImageInterpolation.linearClosestInterpolation(s[X],xspxi,yspxi,zspxi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[X],xsmxi,ysmxi,zsmxi,nsx,nsy,nsz));
-				diT[X][Y] = 0.5f/rty*(ImageInterpolation.linearClosestInterpolation(s[X],xspyi,yspyi,zspyi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[X],xsmyi,ysmyi,zsmyi,nsx,nsy,nsz));
-				diT[X][Z] = 0.5f/rtz*(ImageInterpolation.linearClosestInterpolation(s[X],xspzi,yspzi,zspzi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[X],xsmzi,ysmzi,zsmzi,nsx,nsy,nsz));
-
-				diT[Y][X] = 0.5f/rtx*(ImageInterpolation.linearClosestInterpolation(s[Y],xspxi,yspxi,zspxi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Y],xsmxi,ysmxi,zsmxi,nsx,nsy,nsz));
-				diT[Y][Y] = 0.5f/rty*(ImageInterpolation.linearClosestInterpolation(s[Y],xspyi,yspyi,zspyi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Y],xsmyi,ysmyi,zsmyi,nsx,nsy,nsz));
-				diT[Y][Z] = 0.5f/rtz*(ImageInterpolation.linearClosestInterpolation(s[Y],xspzi,yspzi,zspzi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Y],xsmzi,ysmzi,zsmzi,nsx,nsy,nsz));
-
-				diT[Z][X] = 0.5f/rtx*(ImageInterpolation.linearClosestInterpolation(s[Z],xspxi,yspxi,zspxi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Z],xsmxi,ysmxi,zsmxi,nsx,nsy,nsz));
-				diT[Z][Y] = 0.5f/rty*(ImageInterpolation.linearClosestInterpolation(s[Z],xspyi,yspyi,zspyi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Z],xsmyi,ysmyi,zsmyi,nsx,nsy,nsz));
-				diT[Z][Z] = 0.5f/rtz*(ImageInterpolation.linearClosestInterpolation(s[Z],xspzi,yspzi,zspzi,nsx,nsy,nsz)-ImageInterpolation.linearClosestInterpolation(s[Z],xsmzi,ysmzi,zsmzi,nsx,nsy,nsz));
-				
-				// putting all together
-				float diT2 = Matrix3D.determinant(diT);
-				diT2 *= diT2;				
-				
-				float iT2 = iTx*iTx + iTy*iTy + iTz*iTz;
-				
-				den += iT2 + diT2;
-				
-				iu[X][xyz] += 0.5f*( iTx*diT[X][X] + iTy*diT[X][Y] + iTz*diT[X][Z] );
-				iu[Y][xyz] += 0.5f*( iTx*diT[Y][X] + iTy*diT[Y][Y] + iTz*diT[Y][Z] );
-				iu[Z][xyz] += 0.5f*( iTx*diT[Z][X] + iTy*diT[Z][Y] + iTz*diT[Z][Z] );
-				
-				meanDiff += (float)Math.sqrt(iT2);
-			}
-			iu[X][xyz] /= Numerics.max(ZERO,den);
-			iu[Y][xyz] /= Numerics.max(ZERO,den);
-			iu[Z][xyz] /= Numerics.max(ZERO,den);			
+			// smooth the result with a gaussian kernel
+			cf[X] = ImageFilters.separableConvolution(cf[X],ngx,ngy,ngz,kernel,kx,ky,kz);
+			cf[Y] = ImageFilters.separableConvolution(cf[Y],ngx,ngy,ngz,kernel,kx,ky,kz);
+			cf[Z] = ImageFilters.separableConvolution(cf[Z],ngx,ngy,ngz,kernel,kx,ky,kz);
 		}
-		meanDiff /= (nix*niy*niz);
-
-		if (debug) BasicInfo.displayMessage("inverse consistency "+meanDiff+"\n");
+		
+		final float[] meanCZ = new float[ngz];
+		ParallelProcessing.forEachSlab(ngz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int z=start;z<end;z++) {
+					float meanC = 0.0f;
+					for (int y=0;y<ngy;y++) for (int x=0;x<ngx;x++) {
+						int xyz = x+ngx*y+ngx*ngy*z;
+						
+						sf[X][xyz] = x*scale + cf[X][xyz];
+						sf[Y][xyz] = y*scale + cf[Y][xyz];
+						sf[Z][xyz] = z*scale + cf[Z][xyz];
+						
+						meanC += cf[X][xyz]*cf[X][xyz]+cf[Y][xyz]*cf[Y][xyz]+cf[Z][xyz]*cf[Z][xyz];
+					}
+					meanCZ[z] = meanC;
+				}
+			}
+		});
+		float meanC = 0.0f;
+		for (int z=0;z<ngz;z++) meanC += meanCZ[z];
+		meanC /= (ngx*ngy*ngz);
+		
+		//if (debug) BasicInfo.displayMessage("mean update size "+meanC+"\n");
 
-        return meanDiff;
+        return meanC;
     } // 
     
     /** 
@@ -70,6 +70,11 @@ public class FastAggregativeClustering {
     private static int[] yoff;
     private static int[] zoff;
 
+	// neighbor offsets, in the order of the 6-C, 18-C and 26-C links
+	private static final int[] ngbx = {-1, 1, 0, 0, 0, 0,  -1, 1,-1, 1, 0, 0, 0, 0,-1,-1, 1, 1,  -1, 1,-1,-1, 1,-1, 1, 1};
+	private static final int[] ngby = { 0, 0,-1, 1, 0, 0,  -1,-1, 1, 1,-1, 1,-1, 1, 0, 0, 0, 0,  -1,-1, 1,-1, 1, 1,-1, 1};
+	private static final int[] ngbz = { 0, 0, 0, 0,-1, 1,   0, 0, 0, 0,-1,-1, 1, 1,-1, 1,-1, 1,  -1,-1,-1, 1,-1, 1, 1, 1};
+
 	// algorithm quantities
 	private		int[]		labeling;
 	private		int[]		clustering;
@@ -78,7 +83,7 @@ public class FastAggregativeClustering {
 	
 	//private		ArrayList<Float>	degree;
 	//private		ArrayList<ArrayList<Triple>>	assoc;
-	private		Triple[][]						assoc;
+	private		AssociationGraph				assoc;
 	private		BitSet							active;
 	private		BinaryHeapPair					bintree;
 	private		float[]							cost;
@@ -91,43 +96,13 @@ public class FastAggregativeClustering {
 	
 	private		Histogram		distribution;
 	
+	// profile mean and standard deviation of each label (for correlation metrics)
+	private		float[]			profmean = null;
+	private		float[]			profdev = null;
+	
     static final boolean		debug				=	true;
 	static final boolean		verbose				=	true;
     
-	// simple id, value class
-	private static class Triple {
-		public int id;
-		public float weight;
-		public float delta;
-		public float size;
-		
-		public Triple(int id) {
-			this.id = id;
-			this.weight = 0.0f;
-			this.delta = 0.0f;
-			this.size = 1;
-		}
-		public Triple(int id, float weight) {
-			this.id = id;
-			this.weight = weight;
-			this.delta = 0.0f;
-			this.size = 1;
-		}
-		public Triple(int id, float weight, float size) {
-			this.id = id;
-			this.weight = weight;
-			this.delta = 0.0f;
-			this.size = size;
-		}
-		public Triple(int id, float weight, float delta, float size) {
-			this.id = id;
-			this.weight = weight;
-			this.delta = delta;
-			this.size = size;
-		}
-		
-	}
-	
 	/* simple variable size array */
 	private static class IntArray {
 		public int[] val;
@@ -233,6 +208,8 @@ public class FastAggregativeClustering {
 		image = null;
 		labeling = null;
 		assoc = null;
+		profmean = null;
+		profdev = null;
 		System.gc();
 	}
 	
@@ -241,153 +218,30 @@ public class FastAggregativeClustering {
 		
 		if (debug) System.out.println("-- weight initialization --");
 		
-		assoc = new Triple[2*nlb][];
-		assoc[0] = new Triple[1];
-		assoc[0][0] = new Triple(0);
+		assoc = new AssociationGraph(2*nlb, (connect+1)*(nlb+1));
+		assoc.addNode(0, 1);
+		assoc.set(0, 0, 0, 0.0f, 0.0f, 1.0f);
 		
 		latest = new int[2*nlb];
 		
-		Triple[] trp = new Triple[connect];
-		
 		if (debug) System.out.println("first pass");
 
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x + nx*y + nx*ny*z;
-			if (mask[xyz]) {
-				int nb=0;
-				// 6-C
-				if (x>0 && mask[xyz-1])	{
-					trp[nb] = new Triple(labeling[xyz-1], associationWeight(xyz,xyz-1));
-					nb++;
-				}
-				if (x<nx-1 && mask[xyz+1])	{
-					trp[nb] = new Triple(labeling[xyz+1], associationWeight(xyz,xyz+1));
-					nb++;
-				}
-				if (y>0 && mask[xyz-nx])	{
-					trp[nb] = new Triple(labeling[xyz-nx], associationWeight(xyz,xyz-nx));
-					nb++;
-				}
-				if (y<ny-1 && mask[xyz+nx])	{
-					trp[nb] = new Triple(labeling[xyz+nx], associationWeight(xyz,xyz+nx));
-					nb++;
-				}
-				if (z>0 && mask[xyz-nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz-nx*ny], associationWeight(xyz,xyz-nx*ny));
-					nb++;
-				}
-				if (z<nz-1 && mask[xyz+nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz+nx*ny], associationWeight(xyz,xyz+nx*ny));
-					nb++;
-				}
-				// 18-C
-				if (connect>6) {
-					if (x>0 && y>0 && mask[xyz-1-nx])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx], associationWeight(xyz,xyz-1-nx));
-						nb++;
-					}
-					if (x<nx-1 && y>0 && mask[xyz+1-nx])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx], associationWeight(xyz,xyz+1-nx));
-						nb++;
-					}
-					if (x>0 && y<ny-1 && mask[xyz-1+nx])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx], associationWeight(xyz,xyz-1+nx));
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && mask[xyz+1+nx])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx], associationWeight(xyz,xyz+1+nx));
-						nb++;
-					}
-					if (y>0 && z>0 && mask[xyz-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx-nx*ny], associationWeight(xyz,xyz-nx-nx*ny));
-						nb++;
-					}
-					if (y<ny-1 && z>0 && mask[xyz+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx-nx*ny], associationWeight(xyz,xyz+nx-nx*ny));
-						nb++;
-					}
-					if (y>0 && z<nz-1 && mask[xyz-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx+nx*ny], associationWeight(xyz,xyz-nx+nx*ny));
-						nb++;
-					}
-					if (y<ny-1 && z<nz-1 && mask[xyz+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx+nx*ny], associationWeight(xyz,xyz+nx+nx*ny));
-						nb++;
-					}
-					if (z>0 && x>0 && mask[xyz-nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny-1], associationWeight(xyz,xyz-nx*ny-1));
-						nb++;
-					}
-					if (z<nz-1 && x>0 && mask[xyz+nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny-1], associationWeight(xyz,xyz+nx*ny-1));
-						nb++;
-					}
-					if (z>0 && x<nx-1 && mask[xyz-nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny+1], associationWeight(xyz,xyz-nx*ny+1));
-						nb++;
-					}
-					if (z<nz-1 && x<nx-1 && mask[xyz+nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny+1], associationWeight(xyz,xyz+nx*ny+1));
-						nb++;
-					}
-				}
-				// 26-C
-				if (connect>18) {
-					if (x>0 && y>0 && z>0 && mask[xyz-1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx-nx*ny], associationWeight(xyz,xyz-1-nx-nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y>0 && z>0 && mask[xyz+1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx-nx*ny], associationWeight(xyz,xyz+1-nx-nx*ny));
-						nb++;
-					}
-					if (x>0 && y<ny-1 && z>0 && mask[xyz-1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx-nx*ny], associationWeight(xyz,xyz-1+nx-nx*ny));
-						nb++;
-					}
-					if (x>0 && y>0 && z<nz-1 && mask[xyz-1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx+nx*ny], associationWeight(xyz,xyz-1-nx+nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && z>0 && mask[xyz+1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx-nx*ny], associationWeight(xyz,xyz+1+nx-nx*ny));
-						nb++;
-					}
-					if (x>0 && y<ny-1 && z<nz-1 && mask[xyz-1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx+nx*ny], associationWeight(xyz,xyz-1+nx+nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y>0 && z<nz-1 && mask[xyz+1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx+nx*ny], associationWeight(xyz,xyz+1-nx+nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && z<nz-1 && mask[xyz+1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx+nx*ny], associationWeight(xyz,xyz+1+nx+nx*ny));
-						nb++;
-					}
-				}
-				// build the weight array
-
-				// link in 6 directions
-				Triple[] node = new Triple[nb+1];
-				node[0] = new Triple(labeling[xyz], 1.0f);
-				for (int n=0;n<nb;n++) {
-					node[n+1] = trp[n];
-				}
-				// build the degree array
-				float deg = node[0].weight/node[0].size;
-				for (int n=0;n<nb;n++) {
-					deg += trp[n].weight/trp[n].size/nb;
-				}
-				//degree.set(labeling[xyz], new Float(deg));
-				node[0].delta = deg;
-
-				// store the values
-				assoc[labeling[xyz]] = node;
-				
-				// store the latest active index for everything
-				latest[labeling[xyz]] = labeling[xyz];
-			}
+		// compute all the links in parallel
+		buildAssociationRows(false);
+		
+		for (int l=1;l<=nlb;l++) {
+			int node = l;
+			int nb = assoc.length(node)-1;
+			assoc.set(node, 0, l, 1.0f, 0.0f, 1.0f);
+			// build the degree array
+			float deg = assoc.getWeight(node, 0)/assoc.getSize(node, 0);
+			for (int n=0;n<nb;n++) {
+				deg += assoc.getWeight(node, n+1)/assoc.getSize(node, n+1)/nb;
+			}
+			assoc.setDelta(node, 0, deg);
+			
+			// store the latest active index for everything
+			latest[l] = l;
 		}
 		
 		if (debug) System.out.println("second pass");
@@ -400,17 +254,17 @@ public class FastAggregativeClustering {
 		self[0] = 0.0f;
 		other[0] = 0.0f;
 		for (int l=1;l<=nlb;l++) {
-			Triple[] node = assoc[l];
-			float di = node[0].delta;
-			for (int n=1;n<node.length;n++) {
+			int node = l;
+			float di = assoc.getDelta(node, 0);
+			for (int n=1;n<assoc.length(node);n++) {
 				//float dj = degree.get(node.get(n).id);
-				float wij = node[n].weight;
-				float wii = node[0].weight;
-				float wjj = assoc[node[n].id][0].weight;
-				float dj = assoc[node[n].id][0].delta;
-				float sij = node[n].size;
-				float si = node[0].size;
-				float sj = assoc[node[n].id][0].size;
+				float wij = assoc.getWeight(node, n);
+				float wii = assoc.getWeight(node, 0);
+				float wjj = assoc.getWeight(assoc.getId(node, n), 0);
+				float dj = assoc.getDelta(assoc.getId(node, n), 0);
+				float sij = assoc.getSize(node, n);
+				float si = assoc.getSize(node, 0);
+				float sj = assoc.getSize(assoc.getId(node, n), 0);
 				//float dval = 2.0f*node.get(n).weight/(di + dj);
 				// use the formula with self-weights?
 				// D = (wii+wjj+2node)/(di+dj) -wii/di -wjj/dj
@@ -420,7 +274,7 @@ public class FastAggregativeClustering {
 				//node.get(n).delta = 2.0f*wij/sij*(di + dj)/(si + sj);
 				
 				// best so far..
-				node[n].delta = wij/sij*(wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij);
+				assoc.setDelta(node, n, wij/sij*(wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij));
 				
 				// use the same score as the stopping criterion? slows down the process
 				//node.get(n).delta = wij/sij*(wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij)
@@ -428,7 +282,7 @@ public class FastAggregativeClustering {
 				
 				//other[0] += wij/sij;
 			}
-			cost[0] += node[0].weight/node[0].size/node[0].delta;
+			cost[0] += assoc.getWeight(node, 0)/assoc.getSize(node, 0)/assoc.getDelta(node, 0);
 			//self[0] += node.get(0).weight/node.get(0).size;
 		}
 	}
@@ -442,154 +296,30 @@ public class FastAggregativeClustering {
 		//degree = new ArrayList(nlb+1);
 		//assoc.add(0, new ArrayList<Triple>(1));
 		
-		assoc = new Triple[2*nlb][];
-		assoc[0] = new Triple[1];
-		assoc[0][0] = new Triple(0);
+		assoc = new AssociationGraph(2*nlb, (connect+1)*(nlb+1));
+		assoc.addNode(0, 1);
+		assoc.set(0, 0, 0, 0.0f, 0.0f, 1.0f);
 		
 		latest = new int[2*nlb];
 		
-		Triple[] trp = new Triple[connect];
-		
 		if (debug) System.out.println("first pass");
 
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x + nx*y + nx*ny*z;
-			if (mask[xyz]) {
-				int nb=0;
-				// 6-C
-				if (x>0 && mask[xyz-1])	{
-					trp[nb] = new Triple(labeling[xyz-1], associationWeight(xyz,xyz-1));
-					nb++;
-				}
-				if (x<nx-1 && mask[xyz+1])	{
-					trp[nb] = new Triple(labeling[xyz+1], associationWeight(xyz,xyz+1));
-					nb++;
-				}
-				if (y>0 && mask[xyz-nx])	{
-					trp[nb] = new Triple(labeling[xyz-nx], associationWeight(xyz,xyz-nx));
-					nb++;
-				}
-				if (y<ny-1 && mask[xyz+nx])	{
-					trp[nb] = new Triple(labeling[xyz+nx], associationWeight(xyz,xyz+nx));
-					nb++;
-				}
-				if (z>0 && mask[xyz-nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz-nx*ny], associationWeight(xyz,xyz-nx*ny));
-					nb++;
-				}
-				if (z<nz-1 && mask[xyz+nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz+nx*ny], associationWeight(xyz,xyz+nx*ny));
-					nb++;
-				}
-				// 18-C
-				if (connect>6) {
-					if (x>0 && y>0 && mask[xyz-1-nx])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx], associationWeight(xyz,xyz-1-nx));
-						nb++;
-					}
-					if (x<nx-1 && y>0 && mask[xyz+1-nx])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx], associationWeight(xyz,xyz+1-nx));
-						nb++;
-					}
-					if (x>0 && y<ny-1 && mask[xyz-1+nx])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx], associationWeight(xyz,xyz-1+nx));
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && mask[xyz+1+nx])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx], associationWeight(xyz,xyz+1+nx));
-						nb++;
-					}
-					if (y>0 && z>0 && mask[xyz-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx-nx*ny], associationWeight(xyz,xyz-nx-nx*ny));
-						nb++;
-					}
-					if (y<ny-1 && z>0 && mask[xyz+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx-nx*ny], associationWeight(xyz,xyz+nx-nx*ny));
-						nb++;
-					}
-					if (y>0 && z<nz-1 && mask[xyz-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx+nx*ny], associationWeight(xyz,xyz-nx+nx*ny));
-						nb++;
-					}
-					if (y<ny-1 && z<nz-1 && mask[xyz+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx+nx*ny], associationWeight(xyz,xyz+nx+nx*ny));
-						nb++;
-					}
-					if (z>0 && x>0 && mask[xyz-nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny-1], associationWeight(xyz,xyz-nx*ny-1));
-						nb++;
-					}
-					if (z<nz-1 && x>0 && mask[xyz+nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny-1], associationWeight(xyz,xyz+nx*ny-1));
-						nb++;
-					}
-					if (z>0 && x<nx-1 && mask[xyz-nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny+1], associationWeight(xyz,xyz-nx*ny+1));
-						nb++;
-					}
-					if (z<nz-1 && x<nx-1 && mask[xyz+nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny+1], associationWeight(xyz,xyz+nx*ny+1));
-						nb++;
-					}
-				}
-				// 26-C
-				if (connect>18) {
-					if (x>0 && y>0 && z>0 && mask[xyz-1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx-nx*ny], associationWeight(xyz,xyz-1-nx-nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y>0 && z>0 && mask[xyz+1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx-nx*ny], associationWeight(xyz,xyz+1-nx-nx*ny));
-						nb++;
-					}
-					if (x>0 && y<ny-1 && z>0 && mask[xyz-1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx-nx*ny], associationWeight(xyz,xyz-1+nx-nx*ny));
-						nb++;
-					}
-					if (x>0 && y>0 && z<nz-1 && mask[xyz-1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx+nx*ny], associationWeight(xyz,xyz-1-nx+nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && z>0 && mask[xyz+1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx-nx*ny], associationWeight(xyz,xyz+1+nx-nx*ny));
-						nb++;
-					}
-					if (x>0 && y<ny-1 && z<nz-1 && mask[xyz-1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx+nx*ny], associationWeight(xyz,xyz-1+nx+nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y>0 && z<nz-1 && mask[xyz+1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx+nx*ny], associationWeight(xyz,xyz+1-nx+nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && z<nz-1 && mask[xyz+1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx+nx*ny], associationWeight(xyz,xyz+1+nx+nx*ny));
-						nb++;
-					}
-				}
-				// build the weight array
-
-				// link in 6 directions
-				Triple[] node = new Triple[nb+1];
-				node[0] = new Triple(labeling[xyz], 0.0f);
-				for (int n=0;n<nb;n++) {
-					node[n+1] = trp[n];
-					//if (trp[n].weight==0) System.out.print("o");
-				}
-				// build the degree array
-				float deg = node[0].weight/node[0].size;
-				for (int n=0;n<nb;n++) {
-					deg += trp[n].weight/trp[n].size/nb;
-				}
-				//degree.set(labeling[xyz], new Float(deg));
-				node[0].delta = deg;
-
-				// store the values
-				assoc[labeling[xyz]] = node;
-				
-				// store the latest active index for everything
-				latest[labeling[xyz]] = labeling[xyz];
-			}
+		// compute all the links in parallel
+		buildAssociationRows(false);
+		
+		for (int l=1;l<=nlb;l++) {
+			int node = l;
+			int nb = assoc.length(node)-1;
+			assoc.set(node, 0, l, 0.0f, 0.0f, 1.0f);
+			// build the degree array
+			float deg = assoc.getWeight(node, 0)/assoc.getSize(node, 0);
+			for (int n=0;n<nb;n++) {
+				deg += assoc.getWeight(node, n+1)/assoc.getSize(node, n+1)/nb;
+			}
+			assoc.setDelta(node, 0, deg);
+			
+			// store the latest active index for everything
+			latest[l] = l;
 		}
 		
 		if (debug) System.out.println("second pass");
@@ -602,17 +332,17 @@ public class FastAggregativeClustering {
 		self[0] = 0.0f;
 		other[0] = 0.0f;
 		for (int l=1;l<=nlb;l++) {
-			Triple[] node = assoc[l];
-			float di = node[0].delta;
-			for (int n=1;n<node.length;n++) {
+			int node = l;
+			float di = assoc.getDelta(node, 0);
+			for (int n=1;n<assoc.length(node);n++) {
 				//float dj = degree.get(node.get(n).id);
-				float wij = node[n].weight;
-				float wii = node[0].weight;
-				float wjj = assoc[node[n].id][0].weight;
-				float dj = assoc[node[n].id][0].delta;
-				float sij = node[n].size;
-				float si = node[0].size;
-				float sj = assoc[node[n].id][0].size;
+				float wij = assoc.getWeight(node, n);
+				float wii = assoc.getWeight(node, 0);
+				float wjj = assoc.getWeight(assoc.getId(node, n), 0);
+				float dj = assoc.getDelta(assoc.getId(node, n), 0);
+				float sij = assoc.getSize(node, n);
+				float si = assoc.getSize(node, 0);
+				float sj = assoc.getSize(assoc.getId(node, n), 0);
 				//float dval = 2.0f*node.get(n).weight/(di + dj);
 				// use the formula with self-weights?
 				// D = (wii+wjj+2node)/(di+dj) -wii/di -wjj/dj
@@ -621,7 +351,7 @@ public class FastAggregativeClustering {
 				//node.get(n).delta = (wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij);
 				//node.get(n).delta = 2.0f*wij/sij*(di + dj)/(si + sj);
 				
-				node[n].delta = basis - wij;
+				assoc.setDelta(node, n, basis - wij);
 				
 				// use the same score as the stopping criterion? slows down the process
 				//node.get(n).delta = wij/sij*(wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij)
@@ -629,7 +359,7 @@ public class FastAggregativeClustering {
 				
 				//other[0] += wij/sij;
 			}
-			cost[0] += node[0].weight/node[0].size/node[0].delta;
+			cost[0] += assoc.getWeight(node, 0)/assoc.getSize(node, 0)/assoc.getDelta(node, 0);
 			//self[0] += node.get(0).weight/node.get(0).size;
 		}
 	}
@@ -639,153 +369,30 @@ public class FastAggregativeClustering {
 		
 		if (debug) System.out.println("-- weight initialization --");
 		
-		assoc = new Triple[2*nlb][];
-		assoc[0] = new Triple[1];
-		assoc[0][0] = new Triple(0);
+		assoc = new AssociationGraph(2*nlb, (connect+1)*(nlb+1));
+		assoc.addNode(0, 1);
+		assoc.set(0, 0, 0, 0.0f, 0.0f, 1.0f);
 		
 		latest = new int[2*nlb];
 		
-		Triple[] trp = new Triple[connect];
-		
 		if (debug) System.out.println("first pass");
 
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x + nx*y + nx*ny*z;
-			if (mask[xyz]) {
-				int nb=0;
-				// 6-C
-				if (x>0 && mask[xyz-1])	{
-					trp[nb] = new Triple(labeling[xyz-1], associationWeight(xyz,xyz-1));
-					nb++;
-				}
-				if (x<nx-1 && mask[xyz+1])	{
-					trp[nb] = new Triple(labeling[xyz+1], associationWeight(xyz,xyz+1));
-					nb++;
-				}
-				if (y>0 && mask[xyz-nx])	{
-					trp[nb] = new Triple(labeling[xyz-nx], associationWeight(xyz,xyz-nx));
-					nb++;
-				}
-				if (y<ny-1 && mask[xyz+nx])	{
-					trp[nb] = new Triple(labeling[xyz+nx], associationWeight(xyz,xyz+nx));
-					nb++;
-				}
-				if (z>0 && mask[xyz-nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz-nx*ny], associationWeight(xyz,xyz-nx*ny));
-					nb++;
-				}
-				if (z<nz-1 && mask[xyz+nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz+nx*ny], associationWeight(xyz,xyz+nx*ny));
-					nb++;
-				}
-				// 18-C
-				if (connect>6) {
-					if (x>0 && y>0 && mask[xyz-1-nx])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx], associationWeight(xyz,xyz-1-nx));
-						nb++;
-					}
-					if (x<nx-1 && y>0 && mask[xyz+1-nx])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx], associationWeight(xyz,xyz+1-nx));
-						nb++;
-					}
-					if (x>0 && y<ny-1 && mask[xyz-1+nx])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx], associationWeight(xyz,xyz-1+nx));
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && mask[xyz+1+nx])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx], associationWeight(xyz,xyz+1+nx));
-						nb++;
-					}
-					if (y>0 && z>0 && mask[xyz-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx-nx*ny], associationWeight(xyz,xyz-nx-nx*ny));
-						nb++;
-					}
-					if (y<ny-1 && z>0 && mask[xyz+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx-nx*ny], associationWeight(xyz,xyz+nx-nx*ny));
-						nb++;
-					}
-					if (y>0 && z<nz-1 && mask[xyz-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx+nx*ny], associationWeight(xyz,xyz-nx+nx*ny));
-						nb++;
-					}
-					if (y<ny-1 && z<nz-1 && mask[xyz+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx+nx*ny], associationWeight(xyz,xyz+nx+nx*ny));
-						nb++;
-					}
-					if (z>0 && x>0 && mask[xyz-nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny-1], associationWeight(xyz,xyz-nx*ny-1));
-						nb++;
-					}
-					if (z<nz-1 && x>0 && mask[xyz+nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny-1], associationWeight(xyz,xyz+nx*ny-1));
-						nb++;
-					}
-					if (z>0 && x<nx-1 && mask[xyz-nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny+1], associationWeight(xyz,xyz-nx*ny+1));
-						nb++;
-					}
-					if (z<nz-1 && x<nx-1 && mask[xyz+nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny+1], associationWeight(xyz,xyz+nx*ny+1));
-						nb++;
-					}
-				}
-				// 26-C
-				if (connect>18) {
-					if (x>0 && y>0 && z>0 && mask[xyz-1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx-nx*ny], associationWeight(xyz,xyz-1-nx-nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y>0 && z>0 && mask[xyz+1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx-nx*ny], associationWeight(xyz,xyz+1-nx-nx*ny));
-						nb++;
-					}
-					if (x>0 && y<ny-1 && z>0 && mask[xyz-1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx-nx*ny], associationWeight(xyz,xyz-1+nx-nx*ny));
-						nb++;
-					}
-					if (x>0 && y>0 && z<nz-1 && mask[xyz-1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx+nx*ny], associationWeight(xyz,xyz-1-nx+nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && z>0 && mask[xyz+1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx-nx*ny], associationWeight(xyz,xyz+1+nx-nx*ny));
-						nb++;
-					}
-					if (x>0 && y<ny-1 && z<nz-1 && mask[xyz-1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx+nx*ny], associationWeight(xyz,xyz-1+nx+nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y>0 && z<nz-1 && mask[xyz+1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx+nx*ny], associationWeight(xyz,xyz+1-nx+nx*ny));
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && z<nz-1 && mask[xyz+1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx+nx*ny], associationWeight(xyz,xyz+1+nx+nx*ny));
-						nb++;
-					}
-				}
-				// build the weight array
-				
-				// link in 6 directions
-				Triple[] node = new Triple[nb+1];
-				node[0] = new Triple(labeling[xyz], 1.0f);
-				for (int n=0;n<nb;n++) {
-					node[n+1] = trp[n];
-				}
-				// build the degree array
-				float deg = node[0].weight/node[0].size;
-				for (int n=0;n<nb;n++) {
-					deg += trp[n].weight/trp[n].size/nb;
-				}
-				//degree.set(labeling[xyz], new Float(deg));
-				node[0].delta = deg;
-
-				// store the values
-				assoc[labeling[xyz]] = node;
-				
-				// store the latest active index for everything
-				latest[labeling[xyz]] = labeling[xyz];
-			}
+		// compute all the links in parallel
+		buildAssociationRows(false);
+		
+		for (int l=1;l<=nlb;l++) {
+			int node = l;
+			int nb = assoc.length(node)-1;
+			assoc.set(node, 0, l, 1.0f, 0.0f, 1.0f);
+			// build the degree array
+			float deg = assoc.getWeight(node, 0)/assoc.getSize(node, 0);
+			for (int n=0;n<nb;n++) {
+				deg += assoc.getWeight(node, n+1)/assoc.getSize(node, n+1)/nb;
+			}
+			assoc.setDelta(node, 0, deg);
+			
+			// store the latest active index for everything
+			latest[l] = l;
 		}
 		
 		if (debug) System.out.println("second pass");
@@ -798,25 +405,25 @@ public class FastAggregativeClustering {
 		self[0] = 0.0f;
 		other[0] = 0.0f;
 		for (int l=1;l<=nlb;l++) {
-			Triple[] node = assoc[l];
-			float di = node[0].delta;
-			for (int n=1;n<node.length;n++) {
+			int node = l;
+			float di = assoc.getDelta(node, 0);
+			for (int n=1;n<assoc.length(node);n++) {
 				//float dj = degree.get(node.get(n).id);
-				float wij = node[n].weight;
-				float wii = node[0].weight;
-				float wjj = assoc[node[n].id][0].weight;
-				float dj = assoc[node[n].id][0].delta;
-				float sij = node[n].size;
-				float si = node[0].size;
-				float sj = assoc[node[n].id][0].size;
+				float wij = assoc.getWeight(node, n);
+				float wii = assoc.getWeight(node, 0);
+				float wjj = assoc.getWeight(assoc.getId(node, n), 0);
+				float dj = assoc.getDelta(assoc.getId(node, n), 0);
+				float sij = assoc.getSize(node, n);
+				float si = assoc.getSize(node, 0);
+				float sj = assoc.getSize(assoc.getId(node, n), 0);
 				
 				// best so far..
 				//node[n].delta = wij/sij*(wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij);
 				//node[n].delta = wij*Numerics.min(wii,wjj,wij);
 				//node[n].delta = wij*Numerics.min(wii,wjj,wij) - (1.0f-wij)*(float)Math.sqrt(wii*wjj);
-				node[n].delta = Numerics.square(wij*Numerics.min(wii,wjj,wij)) - Numerics.square(1.0f-wij)*wii*wjj;
+				assoc.setDelta(node, n, Numerics.square(wij*Numerics.min(wii,wjj,wij)) - Numerics.square(1.0f-wij)*wii*wjj);
 			}
-			cost[0] += node[0].weight/node[0].size/node[0].delta;
+			cost[0] += assoc.getWeight(node, 0)/assoc.getSize(node, 0)/assoc.getDelta(node, 0);
 		}
 	}
 	
@@ -825,146 +432,23 @@ public class FastAggregativeClustering {
 		
 		if (debug) System.out.println("-- weight initialization (normal clusters)--");
 		
-		assoc = new Triple[2*nlb][];
-		assoc[0] = new Triple[1];
-		assoc[0][0] = new Triple(0);
+		assoc = new AssociationGraph(2*nlb, (connect+1)*(nlb+1));
+		assoc.addNode(0, 1);
+		assoc.set(0, 0, 0, 0.0f, 0.0f, 1.0f);
 		
 		latest = new int[2*nlb];
 		
-		Triple[] trp = new Triple[connect];
-		
 		if (debug) System.out.println("first pass");
 
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			int xyz = x + nx*y + nx*ny*z;
-			if (mask[xyz]) {
-				int nb=0;
-				// 6-C
-				if (x>0 && mask[xyz-1])	{
-					trp[nb] = new Triple(labeling[xyz-1], 0.0f, associationWeight(xyz,xyz-1), 1.0f);
-					nb++;
-				}
-				if (x<nx-1 && mask[xyz+1])	{
-					trp[nb] = new Triple(labeling[xyz+1], 0.0f, associationWeight(xyz,xyz+1), 1.0f);
-					nb++;
-				}
-				if (y>0 && mask[xyz-nx])	{
-					trp[nb] = new Triple(labeling[xyz-nx], 0.0f, associationWeight(xyz,xyz-nx), 1.0f);
-					nb++;
-				}
-				if (y<ny-1 && mask[xyz+nx])	{
-					trp[nb] = new Triple(labeling[xyz+nx], 0.0f, associationWeight(xyz,xyz+nx), 1.0f);
-					nb++;
-				}
-				if (z>0 && mask[xyz-nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz-nx*ny], 0.0f, associationWeight(xyz,xyz-nx*ny), 1.0f);
-					nb++;
-				}
-				if (z<nz-1 && mask[xyz+nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz+nx*ny], 0.0f, associationWeight(xyz,xyz+nx*ny), 1.0f);
-					nb++;
-				}
-				// 18-C
-				if (connect>6) {
-					if (x>0 && y>0 && mask[xyz-1-nx])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx], 0.0f, associationWeight(xyz,xyz-1-nx), 1.0f);
-						nb++;
-					}
-					if (x<nx-1 && y>0 && mask[xyz+1-nx])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx], 0.0f, associationWeight(xyz,xyz+1-nx), 1.0f);
-						nb++;
-					}
-					if (x>0 && y<ny-1 && mask[xyz-1+nx])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx], 0.0f, associationWeight(xyz,xyz-1+nx), 1.0f);
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && mask[xyz+1+nx])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx], 0.0f, associationWeight(xyz,xyz+1+nx), 1.0f);
-						nb++;
-					}
-					if (y>0 && z>0 && mask[xyz-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx-nx*ny], 0.0f, associationWeight(xyz,xyz-nx-nx*ny), 1.0f);
-						nb++;
-					}
-					if (y<ny-1 && z>0 && mask[xyz+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx-nx*ny], 0.0f, associationWeight(xyz,xyz+nx-nx*ny), 1.0f);
-						nb++;
-					}
-					if (y>0 && z<nz-1 && mask[xyz-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx+nx*ny], 0.0f, associationWeight(xyz,xyz-nx+nx*ny), 1.0f);
-						nb++;
-					}
-					if (y<ny-1 && z<nz-1 && mask[xyz+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx+nx*ny], 0.0f, associationWeight(xyz,xyz+nx+nx*ny), 1.0f);
-						nb++;
-					}
-					if (z>0 && x>0 && mask[xyz-nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny-1], 0.0f, associationWeight(xyz,xyz-nx*ny-1), 1.0f);
-						nb++;
-					}
-					if (z<nz-1 && x>0 && mask[xyz+nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny-1], 0.0f, associationWeight(xyz,xyz+nx*ny-1), 1.0f);
-						nb++;
-					}
-					if (z>0 && x<nx-1 && mask[xyz-nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny+1], 0.0f, associationWeight(xyz,xyz-nx*ny+1), 1.0f);
-						nb++;
-					}
-					if (z<nz-1 && x<nx-1 && mask[xyz+nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny+1], 0.0f, associationWeight(xyz,xyz+nx*ny+1), 1.0f);
-						nb++;
-					}
-				}
-				// 26-C
-				if (connect>18) {
-					if (x>0 && y>0 && z>0 && mask[xyz-1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx-nx*ny], 0.0f, associationWeight(xyz,xyz-1-nx-nx*ny), 1.0f);
-						nb++;
-					}
-					if (x<nx-1 && y>0 && z>0 && mask[xyz+1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx-nx*ny], 0.0f, associationWeight(xyz,xyz+1-nx-nx*ny), 1.0f);
-						nb++;
-					}
-					if (x>0 && y<ny-1 && z>0 && mask[xyz-1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx-nx*ny], 0.0f, associationWeight(xyz,xyz-1+nx-nx*ny), 1.0f);
-						nb++;
-					}
-					if (x>0 && y>0 && z<nz-1 && mask[xyz-1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx+nx*ny], 0.0f, associationWeight(xyz,xyz-1-nx+nx*ny), 1.0f);
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && z>0 && mask[xyz+1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx-nx*ny], 0.0f, associationWeight(xyz,xyz+1+nx-nx*ny), 1.0f);
-						nb++;
-					}
-					if (x>0 && y<ny-1 && z<nz-1 && mask[xyz-1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx+nx*ny], 0.0f, associationWeight(xyz,xyz-1+nx+nx*ny), 1.0f);
-						nb++;
-					}
-					if (x<nx-1 && y>0 && z<nz-1 && mask[xyz+1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx+nx*ny], 0.0f, associationWeight(xyz,xyz+1-nx+nx*ny), 1.0f);
-						nb++;
-					}
-					if (x<nx-1 && y<ny-1 && z<nz-1 && mask[xyz+1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx+nx*ny], 0.0f, associationWeight(xyz,xyz+1+nx+nx*ny), 1.0f);
-						nb++;
-					}
-				}
-				// build the weight array
-
-				// link in 6 directions
-				Triple[] node = new Triple[nb+1];
-				node[0] = new Triple(labeling[xyz], image[0][xyz], 0.0f, 1.0f);
-				for (int n=0;n<nb;n++) {
-					node[n+1] = trp[n];
-				}
-				
-				// store the values
-				assoc[labeling[xyz]] = node;
-				
-				// store the latest active index for everything
-				latest[labeling[xyz]] = labeling[xyz];
-			}
+		// compute all the links in parallel
+		buildAssociationRows(true);
+		
+		for (int l=1;l<=nlb;l++) {
+			int node = l;
+			assoc.set(node, 0, l, image[0][invertlabeling[l]], 0.0f, 1.0f);
+			
+			// store the latest active index for everything
+			latest[l] = l;
 		}
 		
 		if (debug) System.out.println("second pass");
@@ -1107,16 +591,16 @@ public class FastAggregativeClustering {
 
 		for (int lb=1;lb<=nlb;lb++) {
 			//if (debug) System.out.print(".");
-			Triple[] node = assoc[lb];
+			int node = lb;
 			// only store the largest delta (the others will never be selected because it gets relabeled)
-			if (node.length>1) {
+			if (assoc.length(node)>1) {
 				int best=1;
 				//float bestscore = node.get(1).weight/node.get(1).delta/(node.get(0).delta+assoc.get(node.get(1).id).get(0).delta);
-				for (int b=2;b<node.length;b++) {
-					if (node[b].delta>node[best].delta) best = b;
+				for (int b=2;b<assoc.length(node);b++) {
+					if (assoc.getDelta(node, b)>assoc.getDelta(node, best)) best = b;
 				}
 				//if (debug) System.out.print(""+node.get(best).delta+","+l+":"+best);
-				bintree.addValue(node[best].delta, node[0].id, best);
+				bintree.addValue(assoc.getDelta(node, best), assoc.getId(node, 0), best);
 			} else {
 				if (debug) System.out.print("!");	
 			}
@@ -1155,8 +639,14 @@ public class FastAggregativeClustering {
 		long widthsearchtime = 0;
 		long looptime = System.currentTimeMillis();
 		
+		int compactsize = 2*nclusters;
 		while (bintree.isNotEmpty() && nclusters>k0 && !stop) {
 			//if (debug) System.out.print(".");
+			// discard the values of merged clusters when they accumulate
+			if (bintree.getCurrentSize()>compactsize) {
+				bintree.removeInvalidId1(active);
+				compactsize = Math.max(2*bintree.getCurrentSize(), 2*nclusters);
+			}
 			
 			// retrive the best delta
 			float 	bcost = bintree.getFirst(); 
@@ -1166,14 +656,14 @@ public class FastAggregativeClustering {
 
 			// retrieve corresponding values (if they still exist)
 			if (active.get(lbest)) {
-				Triple[] bNode = assoc[lbest];
-				int	lpair = bNode[nbest].id;
+				int bNode = lbest;
+				int	lpair = assoc.getId(bNode, nbest);
 				
 				//if (debug) System.out.print("|"+lbest+"-"+lpair);
 			
 				// update the link label? no, because the weights are now different
 				if (active.get(lpair)) {
-					Triple[] pNode = assoc[lpair];
+					int pNode = lpair;
 
 					// only count iterations when changing the labels
 					iter++;
@@ -1184,31 +674,30 @@ public class FastAggregativeClustering {
 					
 					// new values
 					//ArrayList<Triple> aNode = new ArrayList<Triple>(Numerics.max(bNode.size(),pNode.size())-1);
-					Triple[] aNode = new Triple[bNode.length+pNode.length-3];
+					int aNode = id;
+					assoc.addNode(aNode, assoc.length(bNode)+assoc.length(pNode)-3);
 					// self-weight & degree
 					// d(uv) = d(u) + d(v)
 					// w(uv,uv) = w(u,u) + w(v,v) + 2*w(uv.uv)
-					aNode[0] = new Triple(id, bNode[0].weight + pNode[0].weight + 2.0f*bNode[nbest].weight, 
-												bNode[0].delta + pNode[0].delta,  
-												bNode[0].size + pNode[0].size + 2.0f*bNode[nbest].size );
+					assoc.set(aNode, 0, id, assoc.getWeight(bNode, 0) + assoc.getWeight(pNode, 0) + 2.0f*assoc.getWeight(bNode, nbest), assoc.getDelta(bNode, 0) + assoc.getDelta(pNode, 0), assoc.getSize(bNode, 0) + assoc.getSize(pNode, 0) + 2.0f*assoc.getSize(bNode, nbest));
 					
 					// new mixing weights
 					// w(uv,x) = w(u,x) + w(v,x)
 					// must check if the links still exist, not duplicate
 					
-					newclustertime += bNode.length+pNode.length;
+					newclustertime += assoc.length(bNode)+assoc.length(pNode);
 					
 					// using latest[] allows to preserve the tree structure inside assoc, but skip steps when attributing the labels
-					for (int n=1;n<bNode.length;n++) {
+					for (int n=1;n<assoc.length(bNode);n++) {
 						//int lbn = bNode[n].id;
-						int lbn = latest[bNode[n].id];
+						int lbn = latest[assoc.getId(bNode, n)];
 						if (lbn!=lpair) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -1216,28 +705,28 @@ public class FastAggregativeClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[bNode[n].id] = lbn;
+								latest[assoc.getId(bNode, n)] = lbn;
 								//lbn = latest[lbn];
 							}
 							if (lbn!=lpair) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] += bNode[n].weight;
-								ngbSize[lbn] += bNode[n].size;
+								ngbWeight[lbn] += assoc.getWeight(bNode, n);
+								ngbSize[lbn] += assoc.getSize(bNode, n);
 							}							
 							// no need to check on all already created values!!
 						}
 					}
-					for (int n=1;n<pNode.length;n++) {
+					for (int n=1;n<assoc.length(pNode);n++) {
 						//int lbn = pNode[n].id;
-						int lbn = latest[pNode[n].id];
+						int lbn = latest[assoc.getId(pNode, n)];
 						if (lbn!=lbest) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -1245,14 +734,14 @@ public class FastAggregativeClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[pNode[n].id] = lbn;
+								latest[assoc.getId(pNode, n)] = lbn;
 								//lbn = latest[lbn];
 							}
 							if (lbn!=lbest) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] += pNode[n].weight;
-								ngbSize[lbn] += pNode[n].size;
+								ngbWeight[lbn] += assoc.getWeight(pNode, n);
+								ngbSize[lbn] += assoc.getSize(pNode, n);
 							}
 							// no need to check on all already created values!!
 						}
@@ -1261,7 +750,7 @@ public class FastAggregativeClustering {
 					int l=1;
 					for (int lbn = ngbList.nextSetBit(0); lbn >= 0; lbn = ngbList.nextSetBit(lbn+1)) {
 						// create a new one
-						aNode[l] = new Triple(lbn, ngbWeight[lbn], ngbSize[lbn]);
+						assoc.set(aNode, l, lbn, ngbWeight[lbn], 0.0f, ngbSize[lbn]);
 						l++;
 						// reset the values
 						ngbWeight[lbn] = 0.0f;
@@ -1271,11 +760,7 @@ public class FastAggregativeClustering {
 
 					// make sure we don't have extra empty values
 					//aNode.trimToSize();
-					if (l<aNode.length) {
-						Triple[] tmp = new Triple[l];
-						for (int n=0;n<l;n++) tmp[n] = aNode[n];
-						aNode = tmp;
-					}
+					assoc.setLength(aNode, l);
 					// set the new location parameters
 					ngbcluster.clear();
 					if (lbest>nlb && lpair>nlb && clusterPos[lbest].length>clusterPos[lpair].length) {
@@ -1358,28 +843,28 @@ public class FastAggregativeClustering {
 					}
 					// new deltas : no need of the u,v values anymore
 					// D(uv,x) = ( w(uv,uv) + w(x,x) + 2w(uv,x) )/( d(uv)+d(x) ) - w(uv,uv)/d(uv) - w(x,x)/d(x)
-					for (int n=1; n<aNode.length; n++) {
-						Triple[] wngb = assoc[aNode[n].id];
+					for (int n=1; n<assoc.length(aNode); n++) {
+						int wngb = assoc.getId(aNode, n);
 						// best method so far
 						// use the same criterion than for stopping? makes sense, but slows down the process
 						// geometric progression:
-						float wsize = 1.0f/(1.0f + Numerics.square( (aNode[0].size+wngb[0].size)/((connect+1.0f)*nlb)) );
+						float wsize = 1.0f/(1.0f + Numerics.square( (assoc.getSize(aNode, 0)+assoc.getSize(wngb, 0))/((connect+1.0f)*nlb)) );
 						//float wsize = 1.0f/(1.0f + Numerics.square( (aNode[0].size+wngb[0].size)/((connect+1.0f))) );
 						//float wsize = 1.0f;
-						aNode[n].delta = wsize*( Numerics.square(aNode[n].weight/aNode[n].size)
-													 *Numerics.square( ( aNode[0].weight + wngb[0].weight + 2.0f*aNode[n].weight )
-																		/( aNode[0].size + wngb[0].size + 2.0f*aNode[n].size ) )
-													 -Numerics.square(1.0f-aNode[n].weight/aNode[n].size)
-													  *aNode[0].weight/aNode[0].size
-													  *wngb[0].weight/wngb[0].size  );
+						assoc.setDelta(aNode, n, wsize*( Numerics.square(assoc.getWeight(aNode, n)/assoc.getSize(aNode, n))
+													 *Numerics.square( ( assoc.getWeight(aNode, 0) + assoc.getWeight(wngb, 0) + 2.0f*assoc.getWeight(aNode, n) )
+																		/( assoc.getSize(aNode, 0) + assoc.getSize(wngb, 0) + 2.0f*assoc.getSize(aNode, n) ) )
+													 -Numerics.square(1.0f-assoc.getWeight(aNode, n)/assoc.getSize(aNode, n))
+													  *assoc.getWeight(aNode, 0)/assoc.getSize(aNode, 0)
+													  *assoc.getWeight(wngb, 0)/assoc.getSize(wngb, 0)  ));
 						
 					}
 					
 					/// probably not needed
 					// recompute the degree? (for averaged links)
-					self[iter] = 	Numerics.square(bNode[nbest].weight/bNode[nbest].size * aNode[0].weight/aNode[0].size);
-					other[iter] = Numerics.square(1.0f-bNode[nbest].weight/bNode[nbest].size) * bNode[0].weight/bNode[0].size
-																							* pNode[0].weight/pNode[0].size;
+					self[iter] = 	Numerics.square(assoc.getWeight(bNode, nbest)/assoc.getSize(bNode, nbest) * assoc.getWeight(aNode, 0)/assoc.getSize(aNode, 0));
+					other[iter] = Numerics.square(1.0f-assoc.getWeight(bNode, nbest)/assoc.getSize(bNode, nbest)) * assoc.getWeight(bNode, 0)/assoc.getSize(bNode, 0)
+																							* assoc.getWeight(pNode, 0)/assoc.getSize(pNode, 0);
 					cost[iter] = bcost;
 
 					if (verbose) if (iter%(nlb/100)==0) {
@@ -1389,7 +874,7 @@ public class FastAggregativeClustering {
 																	+", s= "+self[iter]
 																	+", o= "+other[iter]
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length
+																	+assoc.length(bNode)+", "+assoc.length(pNode)
 																	+"| n "+newclustertime+", d "+depthsearchtime+", w "+widthsearchtime+")");
 						looptime = newtime;
 						newclustertime = 0;
@@ -1402,35 +887,34 @@ public class FastAggregativeClustering {
 																	+", s= "+self[iter]
 																	+", o= "+other[iter]
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length+")");	
+																	+assoc.length(bNode)+", "+assoc.length(pNode)+")");	
 					   first=false;
 					   if (firststop) stop = true;
 					}								
 					// add the new values to list, binary tree
-					assoc[id] = aNode;
 					active.set(id, true);
 					
-					if (aNode.length>1) {
+					if (assoc.length(aNode)>1) {
 						int best=1;
-						for (int b=2;b<aNode.length;b++) {
-							if (aNode[b].delta>aNode[best].delta) best = b;
+						for (int b=2;b<assoc.length(aNode);b++) {
+							if (assoc.getDelta(aNode, b)>assoc.getDelta(aNode, best)) best = b;
 						}
-						bintree.addValue(aNode[best].delta, id, best);
+						bintree.addValue(assoc.getDelta(aNode, best), id, best);
 
-						if (debug) if (aNode[best].delta>1) {
+						if (debug) if (assoc.getDelta(aNode, best)>1) {
 							System.out.println(nclusters+": c= "+cost[iter]+" ("
-																	+bNode[0].delta+", "
-																	+bNode[0].weight+", "
-																	+bNode[0].size+" | "
-																	+pNode[0].delta+", "
-																	+pNode[0].weight+", "
-																	+pNode[0].size+" | "
-																	+aNode[0].delta+", "
-																	+aNode[0].weight+", "
-																	+aNode[0].size+")");					   
+																	+assoc.getDelta(bNode, 0)+", "
+																	+assoc.getWeight(bNode, 0)+", "
+																	+assoc.getSize(bNode, 0)+" | "
+																	+assoc.getDelta(pNode, 0)+", "
+																	+assoc.getWeight(pNode, 0)+", "
+																	+assoc.getSize(pNode, 0)+" | "
+																	+assoc.getDelta(aNode, 0)+", "
+																	+assoc.getWeight(aNode, 0)+", "
+																	+assoc.getSize(aNode, 0)+")");					   
 							
-							for (int n=1; n<aNode.length; n++) {
-								System.out.print("<"+aNode[n].delta+", "+aNode[n].weight+", "+aNode[n].size+">");
+							for (int n=1; n<assoc.length(aNode); n++) {
+								System.out.print("<"+assoc.getDelta(aNode, n)+", "+assoc.getWeight(aNode, n)+", "+assoc.getSize(aNode, n)+">");
 							}
 							System.out.print("\n");
 						}
@@ -1438,12 +922,10 @@ public class FastAggregativeClustering {
 					}
 					
 					// replace the older values with info on what is the new label
-					assoc[lbest] = null;
-					assoc[lpair] = null;
-					assoc[lbest] = new Triple[1];
-					assoc[lpair] = new Triple[1];
-					assoc[lbest][0] = new Triple(id);
-					assoc[lpair][0] = new Triple(id);
+					assoc.setLength(lbest, 1);
+					assoc.setLength(lpair, 1);
+					assoc.set(lbest, 0, id, 0.0f, 0.0f, 1.0f);
+					assoc.set(lpair, 0, id, 0.0f, 0.0f, 1.0f);
 					
 					// de-activate the labels
 					active.set(lbest, false);
@@ -1494,16 +976,16 @@ public class FastAggregativeClustering {
 
 		for (int lb=1;lb<=nlb;lb++) {
 			//if (debug) System.out.print(".");
-			Triple[] node = assoc[lb];
+			int node = lb;
 			// only store the largest delta (the others will never be selected because it gets relabeled)
-			if (node.length>1) {
+			if (assoc.length(node)>1) {
 				int best=1;
 				//float bestscore = node.get(1).weight/node.get(1).delta/(node.get(0).delta+assoc.get(node.get(1).id).get(0).delta);
-				for (int b=2;b<node.length;b++) {
-					if (node[b].delta>node[best].delta) best = b;
+				for (int b=2;b<assoc.length(node);b++) {
+					if (assoc.getDelta(node, b)>assoc.getDelta(node, best)) best = b;
 				}
 				//if (debug) System.out.print(""+node.get(best).delta+","+l+":"+best);
-				bintree.addValue(node[best].delta, node[0].id, best);
+				bintree.addValue(assoc.getDelta(node, best), assoc.getId(node, 0), best);
 			} else {
 				if (debug) System.out.print("!");	
 			}
@@ -1546,8 +1028,14 @@ public class FastAggregativeClustering {
 		long widthsearchtime = 0;
 		long looptime = System.currentTimeMillis();
 		
+		int compactsize = 2*nclusters;
 		while (bintree.isNotEmpty() && nclusters>k0 && !stop) {
 			//if (debug) System.out.print(".");
+			// discard the values of merged clusters when they accumulate
+			if (bintree.getCurrentSize()>compactsize) {
+				bintree.removeInvalidId1(active);
+				compactsize = Math.max(2*bintree.getCurrentSize(), 2*nclusters);
+			}
 			
 			// retrive the best delta
 			float 	bcost = bintree.getFirst(); 
@@ -1557,14 +1045,14 @@ public class FastAggregativeClustering {
 
 			// retrieve corresponding values (if they still exist)
 			if (active.get(lbest)) {
-				Triple[] bNode = assoc[lbest];
-				int	lpair = bNode[nbest].id;
+				int bNode = lbest;
+				int	lpair = assoc.getId(bNode, nbest);
 				
 				//if (debug) System.out.print("|"+lbest+"-"+lpair);
 			
 				// update the link label? no, because the weights are now different
 				if (active.get(lpair)) {
-					Triple[] pNode = assoc[lpair];
+					int pNode = lpair;
 
 					// only count iterations when changing the labels
 					iter++;
@@ -1575,31 +1063,30 @@ public class FastAggregativeClustering {
 					
 					// new values
 					//ArrayList<Triple> aNode = new ArrayList<Triple>(Numerics.max(bNode.size(),pNode.size())-1);
-					Triple[] aNode = new Triple[bNode.length+pNode.length-3];
+					int aNode = id;
+					assoc.addNode(aNode, assoc.length(bNode)+assoc.length(pNode)-3);
 					// self-weight & degree
 					// d(uv) = d(u) + d(v)
 					// w(uv,uv) = w(u,u) + w(v,v) + 2*w(uv.uv)
-					aNode[0] = new Triple(id, Numerics.min(bNode[0].weight, pNode[0].weight, bNode[nbest].weight), 
-												Numerics.min(bNode[0].delta, pNode[0].delta),  
-												bNode[0].size + pNode[0].size );
+					assoc.set(aNode, 0, id, Numerics.min(assoc.getWeight(bNode, 0), assoc.getWeight(pNode, 0), assoc.getWeight(bNode, nbest)), Numerics.min(assoc.getDelta(bNode, 0), assoc.getDelta(pNode, 0)), assoc.getSize(bNode, 0) + assoc.getSize(pNode, 0));
 					
 					// new mixing weights
 					// w(uv,x) = w(u,x) + w(v,x)
 					// must check if the links still exist, not duplicate
 					
-					newclustertime += bNode.length+pNode.length;
+					newclustertime += assoc.length(bNode)+assoc.length(pNode);
 					
 					// using latest[] allows to preserve the tree structure inside assoc, but skip steps when attributing the labels
-					for (int n=1;n<bNode.length;n++) {
+					for (int n=1;n<assoc.length(bNode);n++) {
 						//int lbn = bNode[n].id;
-						int lbn = latest[bNode[n].id];
+						int lbn = latest[assoc.getId(bNode, n)];
 						if (lbn!=lpair) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -1607,7 +1094,7 @@ public class FastAggregativeClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[bNode[n].id] = lbn;
+								latest[assoc.getId(bNode, n)] = lbn;
 								//bNode[n].id = lbn;
 							}
 							if (lbn!=lpair) {
@@ -1617,22 +1104,22 @@ public class FastAggregativeClustering {
 								// max corresp. to graph-based, not noise prone
 								//ngbWeight[lbn] = Numerics.max(bNode[n].weight, ngbWeight[lbn]);
 								// min corresp. to most conservative
-								ngbWeight[lbn] = Numerics.min(bNode[n].weight, ngbWeight[lbn]);
-								ngbSize[lbn] += bNode[n].size;
+								ngbWeight[lbn] = Numerics.min(assoc.getWeight(bNode, n), ngbWeight[lbn]);
+								ngbSize[lbn] += assoc.getSize(bNode, n);
 							}							
 							// no need to check on all already created values!!
 						}
 					}
-					for (int n=1;n<pNode.length;n++) {
+					for (int n=1;n<assoc.length(pNode);n++) {
 						//int lbn = pNode[n].id;
-						int lbn = latest[pNode[n].id];
+						int lbn = latest[assoc.getId(pNode, n)];
 						if (lbn!=lbest) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -1640,7 +1127,7 @@ public class FastAggregativeClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[pNode[n].id] = lbn;
+								latest[assoc.getId(pNode, n)] = lbn;
 								//pNode[n].id = lbn;
 								
 							}
@@ -1648,8 +1135,8 @@ public class FastAggregativeClustering {
 								// add to the label
 								ngbList.set(lbn, true);
 								//ngbWeight[lbn] = Numerics.max(pNode[n].weight, ngbWeight[lbn]);
-								ngbWeight[lbn] = Numerics.min(pNode[n].weight, ngbWeight[lbn]);
-								ngbSize[lbn] += pNode[n].size;
+								ngbWeight[lbn] = Numerics.min(assoc.getWeight(pNode, n), ngbWeight[lbn]);
+								ngbSize[lbn] += assoc.getSize(pNode, n);
 							}
 							// no need to check on all already created values!!
 						}
@@ -1658,7 +1145,7 @@ public class FastAggregativeClustering {
 					int l=1;
 					for (int lbn = ngbList.nextSetBit(0); lbn >= 0; lbn = ngbList.nextSetBit(lbn+1)) {
 						// create a new one
-						aNode[l] = new Triple(lbn, ngbWeight[lbn], ngbSize[lbn]);
+						assoc.set(aNode, l, lbn, ngbWeight[lbn], 0.0f, ngbSize[lbn]);
 						l++;
 						// reset the values
 						ngbWeight[lbn] = 0.0f;
@@ -1668,11 +1155,7 @@ public class FastAggregativeClustering {
 
 					// make sure we don't have extra empty values
 					//aNode.trimToSize();
-					if (l<aNode.length) {
-						Triple[] tmp = new Triple[l];
-						for (int n=0;n<l;n++) tmp[n] = aNode[n];
-						aNode = tmp;
-					}
+					assoc.setLength(aNode, l);
 					
 					// set the new location parameters
 					ngbcluster.clear();
@@ -1756,22 +1239,22 @@ public class FastAggregativeClustering {
 					}
 					// new deltas : no need of the u,v values anymore
 					// D(uv,x) = ( w(uv,uv) + w(x,x) + 2w(uv,x) )/( d(uv)+d(x) ) - w(uv,uv)/d(uv) - w(x,x)/d(x)
-					for (int n=1; n<aNode.length; n++) {
-						Triple[] wngb = assoc[aNode[n].id];
+					for (int n=1; n<assoc.length(aNode); n++) {
+						int wngb = assoc.getId(aNode, n);
 						// best method so far
 						//aNode[n].delta = aNode[n].weight*Numerics.min(aNode[0].weight, wngb[0].weight, aNode[n].weight);
 												
 						// use the same criterion than for stopping? makes sense, but slows down the process
-						float wsize = 1.0f/(1.0f + Numerics.square( (aNode[0].size+wngb[0].size)/nlb) );
+						float wsize = 1.0f/(1.0f + Numerics.square( (assoc.getSize(aNode, 0)+assoc.getSize(wngb, 0))/nlb) );
 						//float wsize = 1.0f;
-						aNode[n].delta = wsize*( Numerics.square(aNode[n].weight *Numerics.min(aNode[0].weight, wngb[0].weight, aNode[n].weight ))
-											     -Numerics.square(1.0f-aNode[n].weight)*aNode[0].weight*wngb[0].weight );
+						assoc.setDelta(aNode, n, wsize*( Numerics.square(assoc.getWeight(aNode, n) *Numerics.min(assoc.getWeight(aNode, 0), assoc.getWeight(wngb, 0), assoc.getWeight(aNode, n) ))
+											     -Numerics.square(1.0f-assoc.getWeight(aNode, n))*assoc.getWeight(aNode, 0)*assoc.getWeight(wngb, 0) ));
 					}
 					
 					/// probably not needed
 					// recompute the degree? (for averaged links)
-					self[iter] = Numerics.square(bNode[nbest].weight * aNode[0].weight);
-					other[iter] = Numerics.square(1.0f-bNode[nbest].weight) * bNode[0].weight * pNode[0].weight;
+					self[iter] = Numerics.square(assoc.getWeight(bNode, nbest) * assoc.getWeight(aNode, 0));
+					other[iter] = Numerics.square(1.0f-assoc.getWeight(bNode, nbest)) * assoc.getWeight(bNode, 0) * assoc.getWeight(pNode, 0);
 					
 					cost[iter] = bcost;
 
@@ -1782,7 +1265,7 @@ public class FastAggregativeClustering {
 																	+", s= "+self[iter]
 																	+", o= "+other[iter]
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length
+																	+assoc.length(bNode)+", "+assoc.length(pNode)
 																	+"| n "+newclustertime+", d "+depthsearchtime+", w "+widthsearchtime+")");
 						looptime = newtime;
 						newclustertime = 0;
@@ -1796,35 +1279,34 @@ public class FastAggregativeClustering {
 																	+", s= "+self[iter]
 																	+", o= "+other[iter]
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length+")");	
+																	+assoc.length(bNode)+", "+assoc.length(pNode)+")");	
 					   first=false;
 					   if (firststop) stop = true;
 				   	}								
 					// add the new values to list, binary tree
-					assoc[id] = aNode;
 					active.set(id, true);
 					
-					if (aNode.length>1) {
+					if (assoc.length(aNode)>1) {
 						int best=1;
-						for (int b=2;b<aNode.length;b++) {
-							if (aNode[b].delta>aNode[best].delta) best = b;
+						for (int b=2;b<assoc.length(aNode);b++) {
+							if (assoc.getDelta(aNode, b)>assoc.getDelta(aNode, best)) best = b;
 						}
-						bintree.addValue(aNode[best].delta, id, best);
+						bintree.addValue(assoc.getDelta(aNode, best), id, best);
 
-						if (debug) if (aNode[best].delta>1) {
+						if (debug) if (assoc.getDelta(aNode, best)>1) {
 							System.out.println(nclusters+": c= "+cost[iter]+" ("
-																	+bNode[0].delta+", "
-																	+bNode[0].weight+", "
-																	+bNode[0].size+" | "
-																	+pNode[0].delta+", "
-																	+pNode[0].weight+", "
-																	+pNode[0].size+" | "
-																	+aNode[0].delta+", "
-																	+aNode[0].weight+", "
-																	+aNode[0].size+")");					   
+																	+assoc.getDelta(bNode, 0)+", "
+																	+assoc.getWeight(bNode, 0)+", "
+																	+assoc.getSize(bNode, 0)+" | "
+																	+assoc.getDelta(pNode, 0)+", "
+																	+assoc.getWeight(pNode, 0)+", "
+																	+assoc.getSize(pNode, 0)+" | "
+																	+assoc.getDelta(aNode, 0)+", "
+																	+assoc.getWeight(aNode, 0)+", "
+																	+assoc.getSize(aNode, 0)+")");					   
 							
-							for (int n=1; n<aNode.length; n++) {
-								System.out.print("<"+aNode[n].delta+", "+aNode[n].weight+", "+aNode[n].size+">");
+							for (int n=1; n<assoc.length(aNode); n++) {
+								System.out.print("<"+assoc.getDelta(aNode, n)+", "+assoc.getWeight(aNode, n)+", "+assoc.getSize(aNode, n)+">");
 							}
 							System.out.print("\n");
 						}
@@ -1832,12 +1314,10 @@ public class FastAggregativeClustering {
 					}
 					
 					// replace the older values with info on what is the new label
-					assoc[lbest] = null;
-					assoc[lpair] = null;
-					assoc[lbest] = new Triple[1];
-					assoc[lpair] = new Triple[1];
-					assoc[lbest][0] = new Triple(id);
-					assoc[lpair][0] = new Triple(id);
+					assoc.setLength(lbest, 1);
+					assoc.setLength(lpair, 1);
+					assoc.set(lbest, 0, id, 0.0f, 0.0f, 1.0f);
+					assoc.set(lpair, 0, id, 0.0f, 0.0f, 1.0f);
 					
 					// de-activate the labels
 					active.set(lbest, false);
@@ -1888,16 +1368,16 @@ public class FastAggregativeClustering {
 
 		for (int lb=1;lb<=nlb;lb++) {
 			//if (debug) System.out.print(".");
-			Triple[] node = assoc[lb];
+			int node = lb;
 			// only store the largest delta (the others will never be selected because it gets relabeled)
-			if (node.length>1) {
+			if (assoc.length(node)>1) {
 				int best=1;
 				//float bestscore = node.get(1).weight/node.get(1).delta/(node.get(0).delta+assoc.get(node.get(1).id).get(0).delta);
-				for (int b=2;b<node.length;b++) {
-					if (node[b].delta>node[best].delta) best = b;
+				for (int b=2;b<assoc.length(node);b++) {
+					if (assoc.getDelta(node, b)>assoc.getDelta(node, best)) best = b;
 				}
 				//if (debug) System.out.print(""+node.get(best).delta+","+l+":"+best);
-				bintree.addValue(node[best].delta, node[0].id, best);
+				bintree.addValue(assoc.getDelta(node, best), assoc.getId(node, 0), best);
 			} else {
 				if (debug) System.out.print("!");	
 			}
@@ -1937,8 +1417,14 @@ public class FastAggregativeClustering {
 		long widthsearchtime = 0;
 		long looptime = System.currentTimeMillis();
 		
+		int compactsize = 2*nclusters;
 		while (bintree.isNotEmpty() && nclusters>k0 && !stop) {
 			//if (debug) System.out.print(".");
+			// discard the values of merged clusters when they accumulate
+			if (bintree.getCurrentSize()>compactsize) {
+				bintree.removeInvalidId1(active);
+				compactsize = Math.max(2*bintree.getCurrentSize(), 2*nclusters);
+			}
 			
 			// retrive the best delta
 			float 	bcost = bintree.getFirst(); 
@@ -1948,14 +1434,14 @@ public class FastAggregativeClustering {
 
 			// retrieve corresponding values (if they still exist)
 			if (active.get(lbest)) {
-				Triple[] bNode = assoc[lbest];
-				int	lpair = bNode[nbest].id;
+				int bNode = lbest;
+				int	lpair = assoc.getId(bNode, nbest);
 				
 				//if (debug) System.out.print("|"+lbest+"-"+lpair);
 			
 				// update the link label? no, because the weights are now different
 				if (active.get(lpair)) {
-					Triple[] pNode = assoc[lpair];
+					int pNode = lpair;
 
 					// only count iterations when changing the labels
 					iter++;
@@ -1966,31 +1452,30 @@ public class FastAggregativeClustering {
 					
 					// new values
 					//ArrayList<Triple> aNode = new ArrayList<Triple>(Numerics.max(bNode.size(),pNode.size())-1);
-					Triple[] aNode = new Triple[bNode.length+pNode.length-3];
+					int aNode = id;
+					assoc.addNode(aNode, assoc.length(bNode)+assoc.length(pNode)-3);
 					// self-weight & degree
 					// d(uv) = d(u) + d(v)
 					// w(uv,uv) = w(u,u) + w(v,v) + 2*w(uv.uv)
-					aNode[0] = new Triple(id, Numerics.max(bNode[0].weight, pNode[0].weight, bNode[nbest].weight), 
-												Numerics.min(bNode[0].delta, pNode[0].delta),  
-												bNode[0].size + pNode[0].size );
+					assoc.set(aNode, 0, id, Numerics.max(assoc.getWeight(bNode, 0), assoc.getWeight(pNode, 0), assoc.getWeight(bNode, nbest)), Numerics.min(assoc.getDelta(bNode, 0), assoc.getDelta(pNode, 0)), assoc.getSize(bNode, 0) + assoc.getSize(pNode, 0));
 					
 					// new mixing weights
 					// w(uv,x) = w(u,x) + w(v,x)
 					// must check if the links still exist, not duplicate
 					
-					newclustertime += bNode.length+pNode.length;
+					newclustertime += assoc.length(bNode)+assoc.length(pNode);
 					
 					// using latest[] allows to preserve the tree structure inside assoc, but skip steps when attributing the labels
-					for (int n=1;n<bNode.length;n++) {
+					for (int n=1;n<assoc.length(bNode);n++) {
 						//int lbn = bNode[n].id;
-						int lbn = latest[bNode[n].id];
+						int lbn = latest[assoc.getId(bNode, n)];
 						if (lbn!=lpair) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -1998,28 +1483,28 @@ public class FastAggregativeClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[bNode[n].id] = lbn;
+								latest[assoc.getId(bNode, n)] = lbn;
 								//bNode[n].id = lbn;
 							}
 							if (lbn!=lpair) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] = Numerics.min(bNode[n].weight,ngbWeight[lbn]);
-								ngbSize[lbn] += bNode[n].size;
+								ngbWeight[lbn] = Numerics.min(assoc.getWeight(bNode, n),ngbWeight[lbn]);
+								ngbSize[lbn] += assoc.getSize(bNode, n);
 							}							
 							// no need to check on all already created values!!
 						}
 					}
-					for (int n=1;n<pNode.length;n++) {
+					for (int n=1;n<assoc.length(pNode);n++) {
 						//int lbn = pNode[n].id;
-						int lbn = latest[pNode[n].id];
+						int lbn = latest[assoc.getId(pNode, n)];
 						if (lbn!=lbest) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -2027,15 +1512,15 @@ public class FastAggregativeClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[pNode[n].id] = lbn;
+								latest[assoc.getId(pNode, n)] = lbn;
 								//pNode[n].id = lbn;
 								
 							}
 							if (lbn!=lbest) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] = Numerics.min(pNode[n].weight,ngbWeight[lbn]);
-								ngbSize[lbn] += pNode[n].size;
+								ngbWeight[lbn] = Numerics.min(assoc.getWeight(pNode, n),ngbWeight[lbn]);
+								ngbSize[lbn] += assoc.getSize(pNode, n);
 							}
 							// no need to check on all already created values!!
 						}
@@ -2044,7 +1529,7 @@ public class FastAggregativeClustering {
 					int l=1;
 					for (int lbn = ngbList.nextSetBit(0); lbn >= 0; lbn = ngbList.nextSetBit(lbn+1)) {
 						// create a new one
-						aNode[l] = new Triple(lbn, ngbWeight[lbn], ngbSize[lbn]);
+						assoc.set(aNode, l, lbn, ngbWeight[lbn], 0.0f, ngbSize[lbn]);
 						l++;
 						// reset the values
 						ngbWeight[lbn] = INF;
@@ -2054,11 +1539,7 @@ public class FastAggregativeClustering {
 					
 					// make sure we don't have extra empty values
 					//aNode.trimToSize();
-					if (l<aNode.length) {
-						Triple[] tmp = new Triple[l];
-						for (int n=0;n<l;n++) tmp[n] = aNode[n];
-						aNode = tmp;
-					}
+					assoc.setLength(aNode, l);
 					
 					// set the new location parameters
 					ngbcluster.clear();
@@ -2143,29 +1624,29 @@ public class FastAggregativeClustering {
 
 					// new deltas : no need of the u,v values anymore
 					// D(uv,x) = ( w(uv,uv) + w(x,x) + 2w(uv,x) )/( d(uv)+d(x) ) - w(uv,uv)/d(uv) - w(x,x)/d(x)
-					for (int n=1; n<aNode.length; n++) {
-						Triple[] wngb = assoc[aNode[n].id];
+					for (int n=1; n<assoc.length(aNode); n++) {
+						int wngb = assoc.getId(aNode, n);
 						// score : min joint weight - max( self-weight + k / size, self-weight + k / size)
-						aNode[n].delta = Numerics.min(aNode[0].weight + basis/aNode[0].size, 
-														wngb[0].weight + basis/wngb[0].size) - aNode[n].weight;
+						assoc.setDelta(aNode, n, Numerics.min(assoc.getWeight(aNode, 0) + basis/assoc.getSize(aNode, 0), 
+														assoc.getWeight(wngb, 0) + basis/assoc.getSize(wngb, 0)) - assoc.getWeight(aNode, n));
 					}
 					
 					/// probably not needed
 					// recompute the degree? (for averaged links)
-					other[iter] = bNode[nbest].weight;
-					self[iter] = Numerics.min(bNode[0].weight + basis/bNode[0].size,
-												pNode[0].weight + basis/pNode[0].size);
+					other[iter] = assoc.getWeight(bNode, nbest);
+					self[iter] = Numerics.min(assoc.getWeight(bNode, 0) + basis/assoc.getSize(bNode, 0),
+												assoc.getWeight(pNode, 0) + basis/assoc.getSize(pNode, 0));
 					
 					cost[iter] = bcost;
 
 					if (verbose) if (iter%(nlb/100)==0) {
 						long newtime = System.currentTimeMillis();
 						nstep++;
-						System.out.println("n="+nstep+", t="+(newtime-looptime)+", "+iter+" / "+nclusters+": c= "+bcost+" | "+bNode[nbest].weight
-																	+", s= "+bNode[0].weight
-																	+", o= "+pNode[0].weight
+						System.out.println("n="+nstep+", t="+(newtime-looptime)+", "+iter+" / "+nclusters+": c= "+bcost+" | "+assoc.getWeight(bNode, nbest)
+																	+", s= "+assoc.getWeight(bNode, 0)
+																	+", o= "+assoc.getWeight(pNode, 0)
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length
+																	+assoc.length(bNode)+", "+assoc.length(pNode)
 																	+"| n "+newclustertime+", d "+depthsearchtime+", w "+widthsearchtime+")");
 						looptime = newtime;
 						newclustertime = 0;
@@ -2179,20 +1660,19 @@ public class FastAggregativeClustering {
 																	+", s= "+self[iter]
 																	+", o= "+other[iter]
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length+")");	
+																	+assoc.length(bNode)+", "+assoc.length(pNode)+")");	
 					   first=false;
 					   if (firststop) stop = true;
 				   	}								
 					// add the new values to list, binary tree
-					assoc[id] = aNode;
 					active.set(id, true);
 					
-					if (aNode.length>1) {
+					if (assoc.length(aNode)>1) {
 						int best=1;
-						for (int b=2;b<aNode.length;b++) {
-							if (aNode[b].delta>aNode[best].delta) best = b;
+						for (int b=2;b<assoc.length(aNode);b++) {
+							if (assoc.getDelta(aNode, b)>assoc.getDelta(aNode, best)) best = b;
 						}
-						bintree.addValue(aNode[best].delta, id, best);
+						bintree.addValue(assoc.getDelta(aNode, best), id, best);
 						/*
 						if (debug) if (aNode[best].delta>1) {
 							System.out.println(nclusters+": c= "+cost[iter]+" ("
@@ -2215,12 +1695,10 @@ public class FastAggregativeClustering {
 					}
 					
 					// replace the older values with info on what is the new label
-					assoc[lbest] = null;
-					assoc[lpair] = null;
-					assoc[lbest] = new Triple[1];
-					assoc[lpair] = new Triple[1];
-					assoc[lbest][0] = new Triple(id);
-					assoc[lpair][0] = new Triple(id);
+					assoc.setLength(lbest, 1);
+					assoc.setLength(lpair, 1);
+					assoc.set(lbest, 0, id, 0.0f, 0.0f, 1.0f);
+					assoc.set(lpair, 0, id, 0.0f, 0.0f, 1.0f);
 					
 					// de-activate the labels
 					active.set(lbest, false);
@@ -2237,12 +1715,12 @@ public class FastAggregativeClustering {
 					// update the neighbors too, but only up to a point 
 					// (-> use both strategies to gain speed in the two extreme worst case scenarios)
 					// (both strategies = this and the track updating)
-					for (int b=1;b<aNode.length && b<maxlength;b++) {
-						if (active.get(aNode[b].id)) {
-							widthsearchtime += assoc[aNode[b].id].length;
-							for (int c=1;c<assoc[aNode[b].id].length && c<maxlength;c++) {
-								if (latest[assoc[aNode[b].id][c].id]==lbest || latest[assoc[aNode[b].id][c].id]==lpair)
-									latest[assoc[aNode[b].id][c].id] = id;
+					for (int b=1;b<assoc.length(aNode) && b<maxlength;b++) {
+						if (active.get(assoc.getId(aNode, b))) {
+							widthsearchtime += assoc.length(assoc.getId(aNode, b));
+							for (int c=1;c<assoc.length(assoc.getId(aNode, b)) && c<maxlength;c++) {
+								if (latest[assoc.getId(assoc.getId(aNode, b), c)]==lbest || latest[assoc.getId(assoc.getId(aNode, b), c)]==lpair)
+									latest[assoc.getId(assoc.getId(aNode, b), c)] = id;
 								//if (assoc[aNode[b].id][c].id==lbest || assoc[aNode[b].id][c].id==lpair)
 								//	assoc[aNode[b].id][c].id = id;
 							}
@@ -2269,16 +1747,16 @@ public class FastAggregativeClustering {
 
 		for (int lb=1;lb<=nlb;lb++) {
 			//if (debug) System.out.print(".");
-			Triple[] node = assoc[lb];
+			int node = lb;
 			// only store the largest delta (the others will never be selected because it gets relabeled)
-			if (node.length>1) {
+			if (assoc.length(node)>1) {
 				int best=1;
 				//float bestscore = node.get(1).weight/node.get(1).delta/(node.get(0).delta+assoc.get(node.get(1).id).get(0).delta);
-				for (int b=2;b<node.length;b++) {
-					if (node[b].delta>node[best].delta) best = b;
+				for (int b=2;b<assoc.length(node);b++) {
+					if (assoc.getDelta(node, b)>assoc.getDelta(node, best)) best = b;
 				}
 				//if (debug) System.out.print(""+node.get(best).delta+","+l+":"+best);
-				bintree.addValue(node[best].delta, node[0].id, best);
+				bintree.addValue(assoc.getDelta(node, best), assoc.getId(node, 0), best);
 			} else {
 				if (debug) System.out.print("!");	
 			}
@@ -2318,8 +1796,14 @@ public class FastAggregativeClustering {
 		long widthsearchtime = 0;
 		long looptime = System.currentTimeMillis();
 		
+		int compactsize = 2*nclusters;
 		while (bintree.isNotEmpty() && nclusters>k0 && !stop) {
 			//if (debug) System.out.print(".");
+			// discard the values of merged clusters when they accumulate
+			if (bintree.getCurrentSize()>compactsize) {
+				bintree.removeInvalidId1(active);
+				compactsize = Math.max(2*bintree.getCurrentSize(), 2*nclusters);
+			}
 			
 			// retrive the best delta
 			float 	bcost = bintree.getFirst(); 
@@ -2329,14 +1813,14 @@ public class FastAggregativeClustering {
 
 			// retrieve corresponding values (if they still exist)
 			if (active.get(lbest)) {
-				Triple[] bNode = assoc[lbest];
-				int	lpair = bNode[nbest].id;
+				int bNode = lbest;
+				int	lpair = assoc.getId(bNode, nbest);
 				
 				//if (debug) System.out.print("|"+lbest+"-"+lpair);
 			
 				// update the link label? no, because the weights are now different
 				if (active.get(lpair)) {
-					Triple[] pNode = assoc[lpair];
+					int pNode = lpair;
 
 					// only count iterations when changing the labels
 					iter++;
@@ -2347,35 +1831,34 @@ public class FastAggregativeClustering {
 					
 					// new values
 					//ArrayList<Triple> aNode = new ArrayList<Triple>(Numerics.max(bNode.size(),pNode.size())-1);
-					Triple[] aNode = new Triple[bNode.length+pNode.length-3];
+					int aNode = id;
+					assoc.addNode(aNode, assoc.length(bNode)+assoc.length(pNode)-3);
 					// mean, variance, size: compute from data??
 					
 					// sum(uv) = sum(u) + sum(v)
 					// sq2(uv) = sq2(u) + sq2(v) + 1/n(uv) [n(u)/n(v)*m(v) - n(v)/n(u)*m(u)]^2
 					// n(uv) = n(u) + n(v)
-					aNode[0] = new Triple(id, bNode[0].weight + pNode[0].weight, 
-												bNode[0].delta + pNode[0].delta 
-												+ Numerics.square(bNode[0].weight/bNode[0].size-pNode[0].weight/pNode[0].size)
-													*bNode[0].size*pNode[0].size/(bNode[0].size+pNode[0].size),  
-												bNode[0].size + pNode[0].size );
+					assoc.set(aNode, 0, id, assoc.getWeight(bNode, 0) + assoc.getWeight(pNode, 0), assoc.getDelta(bNode, 0) + assoc.getDelta(pNode, 0) 
+												+ Numerics.square(assoc.getWeight(bNode, 0)/assoc.getSize(bNode, 0)-assoc.getWeight(pNode, 0)/assoc.getSize(pNode, 0))
+													*assoc.getSize(bNode, 0)*assoc.getSize(pNode, 0)/(assoc.getSize(bNode, 0)+assoc.getSize(pNode, 0)), assoc.getSize(bNode, 0) + assoc.getSize(pNode, 0));
 					
 					// new mixing weights
 					// w(uv,x) = w(u,x) + w(v,x)
 					// must check if the links still exist, not duplicate
 					
-					newclustertime += bNode.length+pNode.length;
+					newclustertime += assoc.length(bNode)+assoc.length(pNode);
 					
 					// using latest[] allows to preserve the tree structure inside assoc, but skip steps when attributing the labels
-					for (int n=1;n<bNode.length;n++) {
+					for (int n=1;n<assoc.length(bNode);n++) {
 						//int lbn = bNode[n].id;
-						int lbn = latest[bNode[n].id];
+						int lbn = latest[assoc.getId(bNode, n)];
 						if (lbn!=lpair) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -2383,28 +1866,28 @@ public class FastAggregativeClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[bNode[n].id] = lbn;
+								latest[assoc.getId(bNode, n)] = lbn;
 								//lbn = latest[lbn];
 							}
 							if (lbn!=lpair) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] += bNode[n].weight;
-								ngbSize[lbn] += bNode[n].size;
+								ngbWeight[lbn] += assoc.getWeight(bNode, n);
+								ngbSize[lbn] += assoc.getSize(bNode, n);
 							}							
 							// no need to check on all already created values!!
 						}
 					}
-					for (int n=1;n<pNode.length;n++) {
+					for (int n=1;n<assoc.length(pNode);n++) {
 						//int lbn = pNode[n].id;
-						int lbn = latest[pNode[n].id];
+						int lbn = latest[assoc.getId(pNode, n)];
 						if (lbn!=lbest) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -2412,14 +1895,14 @@ public class FastAggregativeClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[pNode[n].id] = lbn;
+								latest[assoc.getId(pNode, n)] = lbn;
 								//lbn = latest[lbn];
 							}
 							if (lbn!=lbest) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] += pNode[n].weight;
-								ngbSize[lbn] += pNode[n].size;
+								ngbWeight[lbn] += assoc.getWeight(pNode, n);
+								ngbSize[lbn] += assoc.getSize(pNode, n);
 							}
 							// no need to check on all already created values!!
 						}
@@ -2428,7 +1911,7 @@ public class FastAggregativeClustering {
 					int l=1;
 					for (int lbn = ngbList.nextSetBit(0); lbn >= 0; lbn = ngbList.nextSetBit(lbn+1)) {
 						// create a new one
-						aNode[l] = new Triple(lbn, ngbWeight[lbn], ngbSize[lbn]);
+						assoc.set(aNode, l, lbn, ngbWeight[lbn], 0.0f, ngbSize[lbn]);
 						l++;
 						// reset the values
 						ngbWeight[lbn] = 0.0f;
@@ -2438,11 +1921,7 @@ public class FastAggregativeClustering {
 
 					// make sure we don't have extra empty values
 					//aNode.trimToSize();
-					if (l<aNode.length) {
-						Triple[] tmp = new Triple[l];
-						for (int n=0;n<l;n++) tmp[n] = aNode[n];
-						aNode = tmp;
-					}
+					assoc.setLength(aNode, l);
 					// set the new location parameters
 					ngbcluster.clear();
 					if (lbest>nlb && lpair>nlb && clusterPos[lbest].length>clusterPos[lpair].length) {
@@ -2525,26 +2004,26 @@ public class FastAggregativeClustering {
 					}
 					// new deltas : no need of the u,v values anymore
 					// D(uv,x) = ( w(uv,uv) + w(x,x) + 2w(uv,x) )/( d(uv)+d(x) ) - w(uv,uv)/d(uv) - w(x,x)/d(x)
-					for (int n=1; n<aNode.length; n++) {
-						Triple[] wngb = assoc[aNode[n].id];
+					for (int n=1; n<assoc.length(aNode); n++) {
+						int wngb = assoc.getId(aNode, n);
 						// estimate the variance with prior
-						var1 = (aNode[0].delta + basis*imgscale*imgscale)/(aNode[0].size+basis-1.0);
-						var2 = (wngb[0].delta + basis*imgscale*imgscale)/(wngb[0].size+basis-1.0);
+						var1 = (assoc.getDelta(aNode, 0) + basis*imgscale*imgscale)/(assoc.getSize(aNode, 0)+basis-1.0);
+						var2 = (assoc.getDelta(wngb, 0) + basis*imgscale*imgscale)/(assoc.getSize(wngb, 0)+basis-1.0);
 						
 						// build the t-test for each possible pairing
-						float tval = tTest(aNode[0].weight/aNode[0].size, wngb[0].weight/wngb[0].size,
-										var1, var2, Numerics.max(aNode[0].size,2), Numerics.max(wngb[0].size,2));
+						float tval = tTest(assoc.getWeight(aNode, 0)/assoc.getSize(aNode, 0), assoc.getWeight(wngb, 0)/assoc.getSize(wngb, 0),
+										var1, var2, Numerics.max(assoc.getSize(aNode, 0),2), Numerics.max(assoc.getSize(wngb, 0),2));
 						
 						// geometric progression:
-						float wsize = 1.0f/(1.0f + Numerics.square( (aNode[0].size+wngb[0].size)/((connect+1.0f)*nlb)) );
+						float wsize = 1.0f/(1.0f + Numerics.square( (assoc.getSize(aNode, 0)+assoc.getSize(wngb, 0))/((connect+1.0f)*nlb)) );
 						
 						// Bonferroni correction ?
 						//float threshold = pvalue/(aNode[0].size+wngb[0].size-1.0f);
 						
 						// Sidak correction ?
-						float threshold = 1.0f - (float)FastMath.pow(1.0f-pvalue, 1.0f/(aNode[0].size+wngb[0].size-1.0f));
+						float threshold = 1.0f - (float)FastMath.pow(1.0f-pvalue, 1.0f/(assoc.getSize(aNode, 0)+assoc.getSize(wngb, 0)-1.0f));
 						
-						aNode[n].delta = wsize*(tval-threshold);
+						assoc.setDelta(aNode, n, wsize*(tval-threshold));
 						
 					}
 					
@@ -2558,12 +2037,12 @@ public class FastAggregativeClustering {
 						long newtime = System.currentTimeMillis();
 						nstep++;
 						System.out.println("n="+nstep+", t="+(newtime-looptime)+", "+iter+" / "+nclusters+": c= "+bcost+" | "
-																	+", m= "+aNode[0].weight/aNode[0].size
-																	+", s= "+Math.sqrt(aNode[0].delta/aNode[0].size)
-																	+", s0= "+Math.sqrt((aNode[0].delta + basis*imgscale*imgscale)/(aNode[0].size+basis))
-																	+", n= "+aNode[0].size
+																	+", m= "+assoc.getWeight(aNode, 0)/assoc.getSize(aNode, 0)
+																	+", s= "+Math.sqrt(assoc.getDelta(aNode, 0)/assoc.getSize(aNode, 0))
+																	+", s0= "+Math.sqrt((assoc.getDelta(aNode, 0) + basis*imgscale*imgscale)/(assoc.getSize(aNode, 0)+basis))
+																	+", n= "+assoc.getSize(aNode, 0)
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length
+																	+assoc.length(bNode)+", "+assoc.length(pNode)
 																	+"| n "+newclustertime+", d "+depthsearchtime+", w "+widthsearchtime+")");
 						looptime = newtime;
 						newclustertime = 0;
@@ -2573,25 +2052,24 @@ public class FastAggregativeClustering {
 					// not a correct stopping criterion								
 					if (verbose) if (bcost<0 && first) {
 					   System.out.println(iter+" / "+nclusters+": c= "+bcost
-																	+", m= "+aNode[0].weight/aNode[0].size
-																	+", s= "+Math.sqrt(aNode[0].delta/aNode[0].size)
-																	+", s0= "+Math.sqrt((aNode[0].delta + basis*imgscale*imgscale)/(aNode[0].size+basis))
-																	+", n= "+aNode[0].size
+																	+", m= "+assoc.getWeight(aNode, 0)/assoc.getSize(aNode, 0)
+																	+", s= "+Math.sqrt(assoc.getDelta(aNode, 0)/assoc.getSize(aNode, 0))
+																	+", s0= "+Math.sqrt((assoc.getDelta(aNode, 0) + basis*imgscale*imgscale)/(assoc.getSize(aNode, 0)+basis))
+																	+", n= "+assoc.getSize(aNode, 0)
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length+")");	
+																	+assoc.length(bNode)+", "+assoc.length(pNode)+")");	
 					   first=false;
 					   if (firststop) stop = true;
 					}								
 					// add the new values to list, binary tree
-					assoc[id] = aNode;
 					active.set(id, true);
 					
-					if (aNode.length>1) {
+					if (assoc.length(aNode)>1) {
 						int best=1;
-						for (int b=2;b<aNode.length;b++) {
-							if (aNode[b].delta>aNode[best].delta) best = b;
+						for (int b=2;b<assoc.length(aNode);b++) {
+							if (assoc.getDelta(aNode, b)>assoc.getDelta(aNode, best)) best = b;
 						}
-						bintree.addValue(aNode[best].delta, id, best);
+						bintree.addValue(assoc.getDelta(aNode, best), id, best);
 						/*
 						if (debug) if (aNode[best].delta>1) {
 							System.out.println(nclusters+": c= "+cost[iter]+" ("
@@ -2614,16 +2092,12 @@ public class FastAggregativeClustering {
 					}
 					
 					// replace the older values with info on what is the new label
-					assoc[lbest] = null;
-					assoc[lpair] = null;
-					assoc[lbest] = new Triple[1];
-					assoc[lpair] = new Triple[1];
+					assoc.setLength(lbest, 1);
+					assoc.setLength(lpair, 1);
 					//assoc[lbest][0] = new Triple(id);
 					//assoc[lpair][0] = new Triple(id);
-					assoc[lbest][0] = bNode[0];
-					assoc[lpair][0] = pNode[0];
-					assoc[lbest][0].id = id;
-					assoc[lpair][0].id = id;
+					assoc.setId(lbest, 0, id);
+					assoc.setId(lpair, 0, id);
 					
 					// de-activate the labels
 					active.set(lbest, false);
@@ -2656,16 +2130,16 @@ public class FastAggregativeClustering {
 
 		for (int lb=1;lb<=nlb;lb++) {
 			//if (debug) System.out.print(".");
-			Triple[] node = assoc[lb];
+			int node = lb;
 			// only store the largest delta (the others will never be selected because it gets relabeled)
-			if (node.length>1) {
+			if (assoc.length(node)>1) {
 				int best=1;
 				//float bestscore = node.get(1).weight/node.get(1).delta/(node.get(0).delta+assoc.get(node.get(1).id).get(0).delta);
-				for (int b=2;b<node.length;b++) {
-					if (node[b].delta>node[best].delta) best = b;
+				for (int b=2;b<assoc.length(node);b++) {
+					if (assoc.getDelta(node, b)>assoc.getDelta(node, best)) best = b;
 				}
 				//if (debug) System.out.print(""+node.get(best).delta+","+l+":"+best);
-				bintree.addValue(node[best].delta, node[0].id, best);
+				bintree.addValue(assoc.getDelta(node, best), assoc.getId(node, 0), best);
 			} else {
 				if (debug) System.out.print("!");	
 			}
@@ -2705,8 +2179,14 @@ public class FastAggregativeClustering {
 		long widthsearchtime = 0;
 		long looptime = System.currentTimeMillis();
 		
+		int compactsize = 2*nclusters;
 		while (bintree.isNotEmpty() && nclusters>k0 && !stop) {
 			//if (debug) System.out.print(".");
+			// discard the values of merged clusters when they accumulate
+			if (bintree.getCurrentSize()>compactsize) {
+				bintree.removeInvalidId1(active);
+				compactsize = Math.max(2*bintree.getCurrentSize(), 2*nclusters);
+			}
 			
 			// retrive the best delta
 			float 	bcost = bintree.getFirst(); 
@@ -2716,14 +2196,14 @@ public class FastAggregativeClustering {
 
 			// retrieve corresponding values (if they still exist)
 			if (active.get(lbest)) {
-				Triple[] bNode = assoc[lbest];
-				int	lpair = bNode[nbest].id;
+				int bNode = lbest;
+				int	lpair = assoc.getId(bNode, nbest);
 				
 				//if (debug) System.out.print("|"+lbest+"-"+lpair);
 			
 				// update the link label? no, because the weights are now different
 				if (active.get(lpair)) {
-					Triple[] pNode = assoc[lpair];
+					int pNode = lpair;
 
 					// only count iterations when changing the labels
 					iter++;
@@ -2734,35 +2214,34 @@ public class FastAggregativeClustering {
 					
 					// new values
 					//ArrayList<Triple> aNode = new ArrayList<Triple>(Numerics.max(bNode.size(),pNode.size())-1);
-					Triple[] aNode = new Triple[bNode.length+pNode.length-3];
+					int aNode = id;
+					assoc.addNode(aNode, assoc.length(bNode)+assoc.length(pNode)-3);
 					// mean, variance, size: compute from data??
 					
 					// sum(uv) = sum(u) + sum(v)
 					// sq2(uv) = sq2(u) + sq2(v) + 1/n(uv) [n(u)/n(v)*m(v) - n(v)/n(u)*m(u)]^2
 					// n(uv) = n(u) + n(v)
-					aNode[0] = new Triple(id, bNode[0].weight + pNode[0].weight, 
-												bNode[0].delta + pNode[0].delta 
-												+ Numerics.square(bNode[0].weight/bNode[0].size-pNode[0].weight/pNode[0].size)
-													*bNode[0].size*pNode[0].size/(bNode[0].size+pNode[0].size),  
-												bNode[0].size + pNode[0].size );
+					assoc.set(aNode, 0, id, assoc.getWeight(bNode, 0) + assoc.getWeight(pNode, 0), assoc.getDelta(bNode, 0) + assoc.getDelta(pNode, 0) 
+												+ Numerics.square(assoc.getWeight(bNode, 0)/assoc.getSize(bNode, 0)-assoc.getWeight(pNode, 0)/assoc.getSize(pNode, 0))
+													*assoc.getSize(bNode, 0)*assoc.getSize(pNode, 0)/(assoc.getSize(bNode, 0)+assoc.getSize(pNode, 0)), assoc.getSize(bNode, 0) + assoc.getSize(pNode, 0));
 					
 					// new mixing weights
 					// w(uv,x) = w(u,x) + w(v,x)
 					// must check if the links still exist, not duplicate
 					
-					newclustertime += bNode.length+pNode.length;
+					newclustertime += assoc.length(bNode)+assoc.length(pNode);
 					
 					// using latest[] allows to preserve the tree structure inside assoc, but skip steps when attributing the labels
-					for (int n=1;n<bNode.length;n++) {
+					for (int n=1;n<assoc.length(bNode);n++) {
 						//int lbn = bNode[n].id;
-						int lbn = latest[bNode[n].id];
+						int lbn = latest[assoc.getId(bNode, n)];
 						if (lbn!=lpair) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -2770,28 +2249,28 @@ public class FastAggregativeClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[bNode[n].id] = lbn;
+								latest[assoc.getId(bNode, n)] = lbn;
 								//lbn = latest[lbn];
 							}
 							if (lbn!=lpair) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] += bNode[n].weight;
-								ngbSize[lbn] += bNode[n].size;
+								ngbWeight[lbn] += assoc.getWeight(bNode, n);
+								ngbSize[lbn] += assoc.getSize(bNode, n);
 							}							
 							// no need to check on all already created values!!
 						}
 					}
-					for (int n=1;n<pNode.length;n++) {
+					for (int n=1;n<assoc.length(pNode);n++) {
 						//int lbn = pNode[n].id;
-						int lbn = latest[pNode[n].id];
+						int lbn = latest[assoc.getId(pNode, n)];
 						if (lbn!=lbest) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -2799,14 +2278,14 @@ public class FastAggregativeClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[pNode[n].id] = lbn;
+								latest[assoc.getId(pNode, n)] = lbn;
 								//lbn = latest[lbn];
 							}
 							if (lbn!=lbest) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] += pNode[n].weight;
-								ngbSize[lbn] += pNode[n].size;
+								ngbWeight[lbn] += assoc.getWeight(pNode, n);
+								ngbSize[lbn] += assoc.getSize(pNode, n);
 							}
 							// no need to check on all already created values!!
 						}
@@ -2815,7 +2294,7 @@ public class FastAggregativeClustering {
 					int l=1;
 					for (int lbn = ngbList.nextSetBit(0); lbn >= 0; lbn = ngbList.nextSetBit(lbn+1)) {
 						// create a new one
-						aNode[l] = new Triple(lbn, ngbWeight[lbn], ngbSize[lbn]);
+						assoc.set(aNode, l, lbn, ngbWeight[lbn], 0.0f, ngbSize[lbn]);
 						l++;
 						// reset the values
 						ngbWeight[lbn] = 0.0f;
@@ -2825,11 +2304,7 @@ public class FastAggregativeClustering {
 
 					// make sure we don't have extra empty values
 					//aNode.trimToSize();
-					if (l<aNode.length) {
-						Triple[] tmp = new Triple[l];
-						for (int n=0;n<l;n++) tmp[n] = aNode[n];
-						aNode = tmp;
-					}
+					assoc.setLength(aNode, l);
 					// set the new location parameters
 					ngbcluster.clear();
 					if (lbest>nlb && lpair>nlb && clusterPos[lbest].length>clusterPos[lpair].length) {
@@ -2912,36 +2387,36 @@ public class FastAggregativeClustering {
 					}
 					// new deltas : no need of the u,v values anymore
 					// D(uv,x) = ( w(uv,uv) + w(x,x) + 2w(uv,x) )/( d(uv)+d(x) ) - w(uv,uv)/d(uv) - w(x,x)/d(x)
-					for (int n=1; n<aNode.length; n++) {
-						Triple[] wngb = assoc[aNode[n].id];
+					for (int n=1; n<assoc.length(aNode); n++) {
+						int wngb = assoc.getId(aNode, n);
 						// estimate the variance with prior
-						var1 = (aNode[0].delta + basis*imgscale*imgscale)/(aNode[0].size+basis-1.0);
-						var2 = (wngb[0].delta + basis*imgscale*imgscale)/(wngb[0].size+basis-1.0);
+						var1 = (assoc.getDelta(aNode, 0) + basis*imgscale*imgscale)/(assoc.getSize(aNode, 0)+basis-1.0);
+						var2 = (assoc.getDelta(wngb, 0) + basis*imgscale*imgscale)/(assoc.getSize(wngb, 0)+basis-1.0);
 						
 						if (mode==KULLBACKLEIBLER) {
-							var12 = (wngb[0].delta + aNode[0].delta
-									+ (wngb[0].size/aNode[0].size*aNode[0].weight*aNode[0].weight
-									+ aNode[0].size/wngb[0].size*wngb[0].weight*wngb[0].weight
-									- 2.0*aNode[0].weight*wngb[0].weight)/(aNode[0].size+wngb[0].size)
-									+ basis*imgscale*imgscale)/(aNode[0].size+wngb[0].size+basis-1.0);
+							var12 = (assoc.getDelta(wngb, 0) + assoc.getDelta(aNode, 0)
+									+ (assoc.getSize(wngb, 0)/assoc.getSize(aNode, 0)*assoc.getWeight(aNode, 0)*assoc.getWeight(aNode, 0)
+									+ assoc.getSize(aNode, 0)/assoc.getSize(wngb, 0)*assoc.getWeight(wngb, 0)*assoc.getWeight(wngb, 0)
+									- 2.0*assoc.getWeight(aNode, 0)*assoc.getWeight(wngb, 0))/(assoc.getSize(aNode, 0)+assoc.getSize(wngb, 0))
+									+ basis*imgscale*imgscale)/(assoc.getSize(aNode, 0)+assoc.getSize(wngb, 0)+basis-1.0);
 						}
 						
 						// build the divergence metric
-						float metric = (float)distributionMetric(aNode[0].weight/aNode[0].size, wngb[0].weight/wngb[0].size, 
-																	var1, var2, var12, Numerics.max(aNode[0].size,2), Numerics.max(wngb[0].size,2));
+						float metric = (float)distributionMetric(assoc.getWeight(aNode, 0)/assoc.getSize(aNode, 0), assoc.getWeight(wngb, 0)/assoc.getSize(wngb, 0), 
+																	var1, var2, var12, Numerics.max(assoc.getSize(aNode, 0),2), Numerics.max(assoc.getSize(wngb, 0),2));
 						
 						// geometric progression:
-						float wsize = 1.0f/(1.0f + Numerics.square( (aNode[0].size+wngb[0].size)/((connect+1.0f)*nlb)) );
+						float wsize = 1.0f/(1.0f + Numerics.square( (assoc.getSize(aNode, 0)+assoc.getSize(wngb, 0))/((connect+1.0f)*nlb)) );
 						
 						
-						float threshold = distributionThreshold(aNode[0].size, wngb[0].size);
+						float threshold = distributionThreshold(assoc.getSize(aNode, 0), assoc.getSize(wngb, 0));
 						// Bonferroni correction ?
 						//float threshold = pvalue/(aNode[0].size+wngb[0].size-1.0f);
 						
 						// Sidak correction ?
 						//float threshold = 1.0f - (float)FastMath.pow(1.0f-pvalue, 1.0f/(aNode[0].size+wngb[0].size-1.0f));
 						
-						aNode[n].delta = wsize*(metric-threshold);
+						assoc.setDelta(aNode, n, wsize*(metric-threshold));
 						
 					}
 					
@@ -2955,12 +2430,12 @@ public class FastAggregativeClustering {
 						long newtime = System.currentTimeMillis();
 						nstep++;
 						System.out.println("n="+nstep+", t="+(newtime-looptime)+", "+iter+" / "+nclusters+": c= "+bcost+" | "
-																	+", m= "+aNode[0].weight/aNode[0].size
-																	+", s= "+Math.sqrt(aNode[0].delta/aNode[0].size)
-																	+", s0= "+Math.sqrt((aNode[0].delta + basis*imgscale*imgscale)/(aNode[0].size+basis))
-																	+", n= "+aNode[0].size
+																	+", m= "+assoc.getWeight(aNode, 0)/assoc.getSize(aNode, 0)
+																	+", s= "+Math.sqrt(assoc.getDelta(aNode, 0)/assoc.getSize(aNode, 0))
+																	+", s0= "+Math.sqrt((assoc.getDelta(aNode, 0) + basis*imgscale*imgscale)/(assoc.getSize(aNode, 0)+basis))
+																	+", n= "+assoc.getSize(aNode, 0)
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length
+																	+assoc.length(bNode)+", "+assoc.length(pNode)
 																	+"| n "+newclustertime+", d "+depthsearchtime+", w "+widthsearchtime+")");
 						looptime = newtime;
 						newclustertime = 0;
@@ -2970,25 +2445,24 @@ public class FastAggregativeClustering {
 					// not a correct stopping criterion								
 					if (verbose) if (bcost<0 && first) {
 					   System.out.println(iter+" / "+nclusters+": c= "+bcost
-																	+", m= "+aNode[0].weight/aNode[0].size
-																	+", s= "+Math.sqrt(aNode[0].delta/aNode[0].size)
-																	+", s0= "+Math.sqrt((aNode[0].delta + basis*imgscale*imgscale)/(aNode[0].size+basis))
-																	+", n= "+aNode[0].size
+																	+", m= "+assoc.getWeight(aNode, 0)/assoc.getSize(aNode, 0)
+																	+", s= "+Math.sqrt(assoc.getDelta(aNode, 0)/assoc.getSize(aNode, 0))
+																	+", s0= "+Math.sqrt((assoc.getDelta(aNode, 0) + basis*imgscale*imgscale)/(assoc.getSize(aNode, 0)+basis))
+																	+", n= "+assoc.getSize(aNode, 0)
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length+")");	
+																	+assoc.length(bNode)+", "+assoc.length(pNode)+")");	
 					   first=false;
 					   if (firststop) stop = true;
 					}								
 					// add the new values to list, binary tree
-					assoc[id] = aNode;
 					active.set(id, true);
 					
-					if (aNode.length>1) {
+					if (assoc.length(aNode)>1) {
 						int best=1;
-						for (int b=2;b<aNode.length;b++) {
-							if (aNode[b].delta>aNode[best].delta) best = b;
+						for (int b=2;b<assoc.length(aNode);b++) {
+							if (assoc.getDelta(aNode, b)>assoc.getDelta(aNode, best)) best = b;
 						}
-						bintree.addValue(aNode[best].delta, id, best);
+						bintree.addValue(assoc.getDelta(aNode, best), id, best);
 						/*
 						if (debug) if (aNode[best].delta>1) {
 							System.out.println(nclusters+": c= "+cost[iter]+" ("
@@ -3011,16 +2485,12 @@ public class FastAggregativeClustering {
 					}
 					
 					// replace the older values with info on what is the new label
-					assoc[lbest] = null;
-					assoc[lpair] = null;
-					assoc[lbest] = new Triple[1];
-					assoc[lpair] = new Triple[1];
+					assoc.setLength(lbest, 1);
+					assoc.setLength(lpair, 1);
 					//assoc[lbest][0] = new Triple(id);
 					//assoc[lpair][0] = new Triple(id);
-					assoc[lbest][0] = bNode[0];
-					assoc[lpair][0] = pNode[0];
-					assoc[lbest][0].id = id;
-					assoc[lpair][0].id = id;
+					assoc.setId(lbest, 0, id);
+					assoc.setId(lpair, 0, id);
 					
 					// de-activate the labels
 					active.set(lbest, false);
@@ -3110,7 +2580,7 @@ public class FastAggregativeClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -3128,7 +2598,7 @@ public class FastAggregativeClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -3213,7 +2683,7 @@ public class FastAggregativeClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -3257,7 +2727,7 @@ public class FastAggregativeClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -3292,7 +2762,7 @@ public class FastAggregativeClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -3350,7 +2820,7 @@ public class FastAggregativeClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -3409,11 +2879,11 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
-				while (assoc[lb][0].id>0 && assoc[lb][0].id!=lb 
-						&& !active.get(lb) && assoc[lb][0].id<2*nlb-maxlb) {
-					lb = assoc[lb][0].id;
+				while (assoc.getId(lb, 0)>0 && assoc.getId(lb, 0)!=lb 
+						&& !active.get(lb) && assoc.getId(lb, 0)<2*nlb-maxlb) {
+					lb = assoc.getId(lb, 0);
 				}
-				tmp[xyz] = assoc[lb][0].delta;
+				tmp[xyz] = assoc.getDelta(lb, 0);
 			}
 		}
 		return tmp;
@@ -3426,11 +2896,11 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
-				while (assoc[lb][0].id>0 && assoc[lb][0].id!=lb 
-						&& !active.get(lb) && assoc[lb][0].id<2*nlb-maxlb) {
-					lb = assoc[lb][0].id;
+				while (assoc.getId(lb, 0)>0 && assoc.getId(lb, 0)!=lb 
+						&& !active.get(lb) && assoc.getId(lb, 0)<2*nlb-maxlb) {
+					lb = assoc.getId(lb, 0);
 				}
-				tmp[xyz] = assoc[lb][0].weight;
+				tmp[xyz] = assoc.getWeight(lb, 0);
 			}
 		}
 		return tmp;
@@ -3442,7 +2912,7 @@ public class FastAggregativeClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -3457,7 +2927,7 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = latest[labeling[xyz]];
-				tmp[xyz] = assoc[lb][0].weight/assoc[lb][0].size;
+				tmp[xyz] = assoc.getWeight(lb, 0)/assoc.getSize(lb, 0);
 			}
 		}
 		return tmp;
@@ -3470,11 +2940,11 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
-				while (assoc[lb][0].id>0 && assoc[lb][0].id!=lb 
-						&& !active.get(lb) && assoc[lb][0].id<2*nlb-maxlb) {
-					lb = assoc[lb][0].id;
+				while (assoc.getId(lb, 0)>0 && assoc.getId(lb, 0)!=lb 
+						&& !active.get(lb) && assoc.getId(lb, 0)<2*nlb-maxlb) {
+					lb = assoc.getId(lb, 0);
 				}
-				tmp[x][y][z] = assoc[lb][0].weight/assoc[lb][0].size;
+				tmp[x][y][z] = assoc.getWeight(lb, 0)/assoc.getSize(lb, 0);
 			}
 		}
 		return tmp;
@@ -3487,7 +2957,7 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = (int)clusters[x][y][z];
-				tmp[x][y][z] = assoc[lb][0].weight/assoc[lb][0].size;
+				tmp[x][y][z] = assoc.getWeight(lb, 0)/assoc.getSize(lb, 0);
 			}
 		}
 		return tmp;
@@ -3500,7 +2970,7 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = (int)clusters[xyz];
-				tmp[xyz] = assoc[lb][0].weight/assoc[lb][0].size;
+				tmp[xyz] = assoc.getWeight(lb, 0)/assoc.getSize(lb, 0);
 			}
 		}
 		return tmp;
@@ -3513,7 +2983,7 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = (int)clusters[xyz];
-				tmp[xyz] = assoc[lb][0].delta/assoc[lb][0].size;
+				tmp[xyz] = assoc.getDelta(lb, 0)/assoc.getSize(lb, 0);
 			}
 		}
 		return tmp;
@@ -3526,11 +2996,11 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
-				while (assoc[lb][0].id>0 && assoc[lb][0].id!=lb 
-						&& !active.get(lb) && assoc[lb][0].id<2*nlb-maxlb) {
-					lb = assoc[lb][0].id;
+				while (assoc.getId(lb, 0)>0 && assoc.getId(lb, 0)!=lb 
+						&& !active.get(lb) && assoc.getId(lb, 0)<2*nlb-maxlb) {
+					lb = assoc.getId(lb, 0);
 				}
-				tmp[xyz] = assoc[lb][0].size;
+				tmp[xyz] = assoc.getSize(lb, 0);
 			}
 		}
 		return tmp;
@@ -3543,13 +3013,13 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
-				while (assoc[lb][0].id>0 && assoc[lb][0].id!=lb 
-						&& !active.get(lb) && assoc[lb][0].id<2*nlb-maxlb) {
-					lb = assoc[lb][0].id;
+				while (assoc.getId(lb, 0)>0 && assoc.getId(lb, 0)!=lb 
+						&& !active.get(lb) && assoc.getId(lb, 0)<2*nlb-maxlb) {
+					lb = assoc.getId(lb, 0);
 				}
 				float w = 1e9f;
-				for (int l=1;l<assoc[lb].length;l++) {
-					w = Numerics.min(w, assoc[lb][l].weight/assoc[lb][l].size);
+				for (int l=1;l<assoc.length(lb);l++) {
+					w = Numerics.min(w, assoc.getWeight(lb, l)/assoc.getSize(lb, l));
 				}
 				if (w==1e9f) w = 0.0f;
 				tmp[xyz] = w;
@@ -3566,15 +3036,15 @@ public class FastAggregativeClustering {
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
 				
-				while (assoc[lb][0].id>0 && assoc[lb][0].id!=lb 
-						&& !active.get(lb) && assoc[lb][0].id<2*nlb-maxlb) {
-					lb = assoc[lb][0].id;
+				while (assoc.getId(lb, 0)>0 && assoc.getId(lb, 0)!=lb 
+						&& !active.get(lb) && assoc.getId(lb, 0)<2*nlb-maxlb) {
+					lb = assoc.getId(lb, 0);
 				}
 				
 				//lb = latest[labeling[xyz]];
 				float w = 1e9f;
-				for (int l=1;l<assoc[lb].length;l++) {
-					w = Numerics.min(w, assoc[lb][l].weight/assoc[lb][l].size);
+				for (int l=1;l<assoc.length(lb);l++) {
+					w = Numerics.min(w, assoc.getWeight(lb, l)/assoc.getSize(lb, l));
 				}
 				if (w==1e9f) w = 0.0f;
 				tmp[x][y][z] = w;
@@ -3597,8 +3067,8 @@ public class FastAggregativeClustering {
 				}
 				*/
 				float w = 1e9f;
-				for (int l=1;l<assoc[lb].length;l++) {
-					w = Numerics.min(w, assoc[lb][l].weight/assoc[lb][l].size);
+				for (int l=1;l<assoc.length(lb);l++) {
+					w = Numerics.min(w, assoc.getWeight(lb, l)/assoc.getSize(lb, l));
 				}
 				if (w==1e9f) w = 0.0f;
 				tmp[x][y][z] = w;
@@ -3614,8 +3084,8 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
-				for (int l=1;l<assoc[lb].length;l++) {
-					tmp[x][y][z][l-1] = assoc[lb][l].weight/assoc[lb][l].size;
+				for (int l=1;l<assoc.length(lb);l++) {
+					tmp[x][y][z][l-1] = assoc.getWeight(lb, l)/assoc.getSize(lb, l);
 				}
 			}
 		}
@@ -3629,8 +3099,8 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
-				for (int l=1;l<assoc[lb].length;l++) {
-					tmp[l-1][xyz] = assoc[lb][l].weight/assoc[lb][l].size;
+				for (int l=1;l<assoc.length(lb);l++) {
+					tmp[l-1][xyz] = assoc.getWeight(lb, l)/assoc.getSize(lb, l);
 				}
 			}
 		}
@@ -3645,8 +3115,8 @@ public class FastAggregativeClustering {
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
 				float w = -1e9f;
-				for (int l=1;l<assoc[lb].length;l++) {
-					w = Numerics.max(w, assoc[lb][l].delta);
+				for (int l=1;l<assoc.length(lb);l++) {
+					w = Numerics.max(w, assoc.getDelta(lb, l));
 				}
 				if (w==-1e9f) w = 0.0f;
 				tmp[xyz] = w;
@@ -3661,13 +3131,13 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
-				while (assoc[lb][0].id>0 && assoc[lb][0].id!=lb 
-						&& !active.get(lb) && assoc[lb][0].id<2*nlb-maxlb) {
-					lb = assoc[lb][0].id;
+				while (assoc.getId(lb, 0)>0 && assoc.getId(lb, 0)!=lb 
+						&& !active.get(lb) && assoc.getId(lb, 0)<2*nlb-maxlb) {
+					lb = assoc.getId(lb, 0);
 				}
 				float w = -1e9f;
-				for (int l=1;l<assoc[lb].length;l++) {
-					w = Numerics.max(w, assoc[lb][l].weight/assoc[lb][l].size);
+				for (int l=1;l<assoc.length(lb);l++) {
+					w = Numerics.max(w, assoc.getWeight(lb, l)/assoc.getSize(lb, l));
 				}
 				tmp[xyz] = w;
 			}
@@ -3682,13 +3152,13 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
-				while (assoc[lb][0].id>0 && assoc[lb][0].id!=lb 
-						&& !active.get(lb) && assoc[lb][0].id<2*nlb-maxlb) {
-					lb = assoc[lb][0].id;
+				while (assoc.getId(lb, 0)>0 && assoc.getId(lb, 0)!=lb 
+						&& !active.get(lb) && assoc.getId(lb, 0)<2*nlb-maxlb) {
+					lb = assoc.getId(lb, 0);
 				}
 				float d = 1e9f;
-				for (int l=1;l<assoc[lb].length;l++) {
-					d = Numerics.min(d, assoc[lb][l].delta);
+				for (int l=1;l<assoc.length(lb);l++) {
+					d = Numerics.min(d, assoc.getDelta(lb, l));
 				}
 				tmp[xyz] = d;
 			}
@@ -3702,13 +3172,13 @@ public class FastAggregativeClustering {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int lb = labeling[xyz];
-				while (assoc[lb][0].id>0 && assoc[lb][0].id!=lb 
-						&& !active.get(lb) && assoc[lb][0].id<2*nlb-maxlb) {
-					lb = assoc[lb][0].id;
+				while (assoc.getId(lb, 0)>0 && assoc.getId(lb, 0)!=lb 
+						&& !active.get(lb) && assoc.getId(lb, 0)<2*nlb-maxlb) {
+					lb = assoc.getId(lb, 0);
 				}
 				float d = -1e9f;
-				for (int l=1;l<assoc[lb].length;l++) {
-					d = Numerics.max(d, assoc[lb][l].delta);
+				for (int l=1;l<assoc.length(lb);l++) {
+					d = Numerics.max(d, assoc.getDelta(lb, l));
 				}
 				tmp[xyz] = d;
 			}
@@ -3746,6 +3216,81 @@ public class FastAggregativeClustering {
 	}
 		
 	// computes the association parameter for the image
+	/**
+	 *	create the rows of all the voxels in the association graph, with the association
+	 *	weights to their neighbors (stored as deltas if weightAsDelta is set). The rows are 
+	 *	reserved in label order, then filled in parallel; the first entry is left to the caller.
+	 */
+	private final void buildAssociationRows(final boolean weightAsDelta) {
+		final int nngb = (connect>18) ? 26 : (connect>6) ? 18 : 6;
+		
+		if (mode==PROFILES_CORR || mode==PROFILES_ANGL || mode==PROFILES_CDIST || mode==PROFILES_CGDIST) 
+			computeProfileStatistics();
+		
+		for (int l=1;l<=nlb;l++) {
+			int xyz = invertlabeling[l];
+			int x = xyz%nx;
+			int y = (xyz/nx)%ny;
+			int z = xyz/(nx*ny);
+			int nb=0;
+			for (int k=0;k<nngb;k++) if (neighborIndex(x,y,z,k)>-1) nb++;
+			assoc.addNode(l, nb+1);
+		}
+		ParallelProcessing.forEach(nlb, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int l=start+1;l<=end;l++) {
+					int xyz = invertlabeling[l];
+					int x = xyz%nx;
+					int y = (xyz/nx)%ny;
+					int z = xyz/(nx*ny);
+					int nb=0;
+					for (int k=0;k<nngb;k++) {
+						int ngb = neighborIndex(x,y,z,k);
+						if (ngb>-1) {
+							if (weightAsDelta) assoc.set(l, nb+1, labeling[ngb], 0.0f, associationWeight(xyz,ngb), 1.0f);
+							else assoc.set(l, nb+1, labeling[ngb], associationWeight(xyz,ngb), 0.0f, 1.0f);
+							nb++;
+						}
+					}
+				}
+			}
+		});
+	}
+	
+	/** index of the k-th neighbor of (x,y,z), or -1 if outside of the image or the mask */
+	private final int neighborIndex(int x, int y, int z, int k) {
+		int xn = x+ngbx[k];
+		int yn = y+ngby[k];
+		int zn = z+ngbz[k];
+		if (xn<0 || xn>=nx || yn<0 || yn>=ny || zn<0 || zn>=nz) return -1;
+		int ngb = xn + nx*yn + nx*ny*zn;
+		if (!mask[ngb]) return -1;
+		return ngb;
+	}
+	
+	/** 
+	 *	compute the mean and standard deviation of the profiles of all labels once,
+	 *	rather than for each pair in the correlation weights
+	 */
+	private final void computeProfileStatistics() {
+		profmean = new float[nlb+1];
+		profdev = new float[nlb+1];
+		ParallelProcessing.forEach(nlb, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int l=start+1;l<=end;l++) {
+					int id = invertlabeling[l];
+					float m = 0.0f;
+					for (int t=0;t<image.length;t++) m += image[t][id];
+					m /= image.length;
+					float v = 0.0f;
+					for (int t=0;t<image.length;t++) v += (image[t][id]-m)*(image[t][id]-m);
+					profmean[l] = m;
+					profdev[l] = (float)Math.sqrt(v/(image.length-1.0f));
+				}
+			}
+		});
+	}
+	
 	private final float associationWeight(int id1, int id2) {
 		if (mode==PROFILES_DIST) return profileDistanceWeight(id1, id2);
 		if (mode==PROFILES_GDIST) return profileGaussianDistanceWeight(id1, id2);
@@ -3808,92 +3353,24 @@ public class FastAggregativeClustering {
 		return (float)Math.exp( -0.5*dist/(imgscale*imgscale) );
 	}
 	private final float correlationWeight(int id1, int id2) {
-		float corr = 0.0f;
-		float m1 = 0.0f, m2 = 0.0f;
-		float v1 = 0.0f, v2 = 0.0f;
-		for (int t=0;t<image.length;t++) {
-			m1 += image[t][id1];
-			m2 += image[t][id2];
-		}
-		m1 /= image.length;
-		m2 /= image.length;
-		for (int t=0;t<image.length;t++) {
-			v1 += (image[t][id1]-m1)*(image[t][id1]-m1);
-			v2 += (image[t][id2]-m2)*(image[t][id2]-m2);
-		}
-		v1 = (float)Math.sqrt(v1/(image.length-1.0f));
-		v2 = (float)Math.sqrt(v2/(image.length-1.0f));
-		for (int t=0;t<image.length;t++) {
-			corr += (image[t][id1]-m1)*(image[t][id2]-m2)/(v1*v2);
-		}
+		float corr = profileCorrelation(id1, id2);
 		return Numerics.bounded( (corr/image.length-basis)/(1.0f-basis), 0.0f, 1.0f);
 	}
 	
 	private final float correlationAngleWeight(int id1, int id2) {
-		float corr = 0.0f;
-		float m1 = 0.0f, m2 = 0.0f;
-		float v1 = 0.0f, v2 = 0.0f;
-		for (int t=0;t<image.length;t++) {
-			m1 += image[t][id1];
-			m2 += image[t][id2];
-		}
-		m1 /= image.length;
-		m2 /= image.length;
-		for (int t=0;t<image.length;t++) {
-			v1 += (image[t][id1]-m1)*(image[t][id1]-m1);
-			v2 += (image[t][id2]-m2)*(image[t][id2]-m2);
-		}
-		v1 = (float)Math.sqrt(v1/(image.length-1.0f));
-		v2 = (float)Math.sqrt(v2/(image.length-1.0f));
-		for (int t=0;t<image.length;t++) {
-			corr += (image[t][id1]-m1)*(image[t][id2]-m2)/(v1*v2);
-		}
+		float corr = profileCorrelation(id1, id2);
 		// score = (sin^-1(corr) - theta_0)/(90-theta_0) bounded in [0,1]
 		return (float)Numerics.max( (Math.asin(Numerics.bounded(corr/image.length,0.0,1.0)) - PI2*basis)/(PI2 - PI2*basis), 0.0);
 	}
 	
 	private final float correlationDistanceWeight(int id1, int id2) {
-		float corr = 0.0f;
-		float m1 = 0.0f, m2 = 0.0f;
-		float v1 = 0.0f, v2 = 0.0f;
-		for (int t=0;t<image.length;t++) {
-			m1 += image[t][id1];
-			m2 += image[t][id2];
-		}
-		m1 /= image.length;
-		m2 /= image.length;
-		for (int t=0;t<image.length;t++) {
-			v1 += (image[t][id1]-m1)*(image[t][id1]-m1);
-			v2 += (image[t][id2]-m2)*(image[t][id2]-m2);
-		}
-		v1 = (float)Math.sqrt(v1/(image.length-1.0f));
-		v2 = (float)Math.sqrt(v2/(image.length-1.0f));
-		for (int t=0;t<image.length;t++) {
-			corr += (image[t][id1]-m1)*(image[t][id2]-m2)/(v1*v2);
-		}
+		float corr = profileCorrelation(id1, id2);
 		// score = (sin^-1(corr) - theta_0)/(90-theta_0) bounded in [0,1]
 		return (float)(1.0/(1.0 + Numerics.square(Math.acos(Numerics.bounded(corr/image.length,0.0,1.0))/imgscale) ) );
 	}
 	
 	private final float correlationGaussianDistanceWeight(int id1, int id2) {
-		float corr = 0.0f;
-		float m1 = 0.0f, m2 = 0.0f;
-		float v1 = 0.0f, v2 = 0.0f;
-		for (int t=0;t<image.length;t++) {
-			m1 += image[t][id1];
-			m2 += image[t][id2];
-		}
-		m1 /= image.length;
-		m2 /= image.length;
-		for (int t=0;t<image.length;t++) {
-			v1 += (image[t][id1]-m1)*(image[t][id1]-m1);
-			v2 += (image[t][id2]-m2)*(image[t][id2]-m2);
-		}
-		v1 = (float)Math.sqrt(v1/(image.length-1.0f));
-		v2 = (float)Math.sqrt(v2/(image.length-1.0f));
-		for (int t=0;t<image.length;t++) {
-			corr += (image[t][id1]-m1)*(image[t][id2]-m2)/(v1*v2);
-		}
+		float corr = profileCorrelation(id1, id2);
 		// score = (sin^-1(corr) - theta_0)/(90-theta_0) bounded in [0,1]
 		return (float)Math.exp( -0.5*Numerics.square(Math.acos(Numerics.bounded(corr/image.length,0.0,1.0))/imgscale) );
 	}
@@ -3946,21 +3423,29 @@ public class FastAggregativeClustering {
 	}
 	
 	private final float profileCorrelation(int id1, int id2) {
-		float corr = 0.0f;
-		float m1 = 0.0f, m2 = 0.0f;
-		float v1 = 0.0f, v2 = 0.0f;
-		for (int t=0;t<image.length;t++) {
-			m1 += image[t][id1];
-			m2 += image[t][id2];
+		float m1, m2, v1, v2;
+		if (profmean!=null && labeling[id1]>0 && labeling[id2]>0) {
+			m1 = profmean[labeling[id1]];
+			m2 = profmean[labeling[id2]];
+			v1 = profdev[labeling[id1]];
+			v2 = profdev[labeling[id2]];
+		} else {
+			m1 = 0.0f; m2 = 0.0f;
+			v1 = 0.0f; v2 = 0.0f;
+			for (int t=0;t<image.length;t++) {
+				m1 += image[t][id1];
+				m2 += image[t][id2];
+			}
+			m1 /= image.length;
+			m2 /= image.length;
+			for (int t=0;t<image.length;t++) {
+				v1 += (image[t][id1]-m1)*(image[t][id1]-m1);
+				v2 += (image[t][id2]-m2)*(image[t][id2]-m2);
+			}
+			v1 = (float)Math.sqrt(v1/(image.length-1.0f));
+			v2 = (float)Math.sqrt(v2/(image.length-1.0f));
 		}
-		m1 /= image.length;
-		m2 /= image.length;
-		for (int t=0;t<image.length;t++) {
-			v1 += (image[t][id1]-m1)*(image[t][id1]-m1);
-			v2 += (image[t][id2]-m2)*(image[t][id2]-m2);
-		}
-		v1 = (float)Math.sqrt(v1/(image.length-1.0f));
-		v2 = (float)Math.sqrt(v2/(image.length-1.0f));
+		float corr = 0.0f;
 		for (int t=0;t<image.length;t++) {
 			corr += (image[t][id1]-m1)*(image[t][id2]-m2)/(v1*v2);
 		}
@@ -66,7 +66,7 @@ public class FastAggregativeGraphClustering {
 	
 	//private		ArrayList<Float>	degree;
 	//private		ArrayList<ArrayList<Triple>>	assoc;
-	private		Triple[][]						assoc;
+	private		AssociationGraph				assoc;
 	private		BitSet							active;
 	private		BinaryHeapPair					bintree;
 	private		float[]							cost;
@@ -82,40 +82,6 @@ public class FastAggregativeGraphClustering {
     static final boolean		debug				=	true;
 	static final boolean		verbose				=	true;
     
-	// simple id, value class
-	private static class Triple {
-		public int id;
-		public float weight;
-		public float delta;
-		public float size;
-		
-		public Triple(int id) {
-			this.id = id;
-			this.weight = 0.0f;
-			this.delta = 0.0f;
-			this.size = 1;
-		}
-		public Triple(int id, float weight) {
-			this.id = id;
-			this.weight = weight;
-			this.delta = 0.0f;
-			this.size = 1;
-		}
-		public Triple(int id, float weight, float size) {
-			this.id = id;
-			this.weight = weight;
-			this.delta = 0.0f;
-			this.size = size;
-		}
-		public Triple(int id, float weight, float delta, float size) {
-			this.id = id;
-			this.weight = weight;
-			this.delta = delta;
-			this.size = size;
-		}
-		
-	}
-	
 	/* simple variable size array */
 	private static class IntArray {
 		public int[] val;
@@ -223,149 +189,143 @@ public class FastAggregativeGraphClustering {
 		
 		if (debug) System.out.println("-- weight initialization --");
 		
-		assoc = new Triple[2*nlb][];
-		assoc[0] = new Triple[1];
-		assoc[0][0] = new Triple(0);
+		assoc = new AssociationGraph(2*nlb, (connect+1)*(nlb+1));
+		assoc.addNode(0, 1);
+		assoc.set(0, 0, 0, 0.0f, 0.0f, 1.0f);
 		
 		latest = new int[2*nlb];
 		
-		Triple[] trp = new Triple[connect];
-		
 		if (debug) System.out.println("first pass");
 
 		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int nb=0;
+				assoc.addNode(labeling[xyz], connect+1);
 				// 6-C
 				if (x>0 && mask[xyz-1])	{
-					trp[nb] = new Triple(labeling[xyz-1], associationWeight(xyz,xyz-1));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz-1], associationWeight(xyz,xyz-1), 0.0f, 1.0f);
 					nb++;
 				}
 				if (x<nx-1 && mask[xyz+1])	{
-					trp[nb] = new Triple(labeling[xyz+1], associationWeight(xyz,xyz+1));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz+1], associationWeight(xyz,xyz+1), 0.0f, 1.0f);
 					nb++;
 				}
 				if (y>0 && mask[xyz-nx])	{
-					trp[nb] = new Triple(labeling[xyz-nx], associationWeight(xyz,xyz-nx));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz-nx], associationWeight(xyz,xyz-nx), 0.0f, 1.0f);
 					nb++;
 				}
 				if (y<ny-1 && mask[xyz+nx])	{
-					trp[nb] = new Triple(labeling[xyz+nx], associationWeight(xyz,xyz+nx));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz+nx], associationWeight(xyz,xyz+nx), 0.0f, 1.0f);
 					nb++;
 				}
 				if (z>0 && mask[xyz-nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz-nx*ny], associationWeight(xyz,xyz-nx*ny));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz-nx*ny], associationWeight(xyz,xyz-nx*ny), 0.0f, 1.0f);
 					nb++;
 				}
 				if (z<nz-1 && mask[xyz+nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz+nx*ny], associationWeight(xyz,xyz+nx*ny));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz+nx*ny], associationWeight(xyz,xyz+nx*ny), 0.0f, 1.0f);
 					nb++;
 				}
 				// 18-C
 				if (connect>6) {
 					if (x>0 && y>0 && mask[xyz-1-nx])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx], associationWeight(xyz,xyz-1-nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1-nx], associationWeight(xyz,xyz-1-nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y>0 && mask[xyz+1-nx])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx], associationWeight(xyz,xyz+1-nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1-nx], associationWeight(xyz,xyz+1-nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y<ny-1 && mask[xyz-1+nx])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx], associationWeight(xyz,xyz-1+nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1+nx], associationWeight(xyz,xyz-1+nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y<ny-1 && mask[xyz+1+nx])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx], associationWeight(xyz,xyz+1+nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1+nx], associationWeight(xyz,xyz+1+nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y>0 && z>0 && mask[xyz-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx-nx*ny], associationWeight(xyz,xyz-nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx-nx*ny], associationWeight(xyz,xyz-nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y<ny-1 && z>0 && mask[xyz+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx-nx*ny], associationWeight(xyz,xyz+nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx-nx*ny], associationWeight(xyz,xyz+nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y>0 && z<nz-1 && mask[xyz-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx+nx*ny], associationWeight(xyz,xyz-nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx+nx*ny], associationWeight(xyz,xyz-nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y<ny-1 && z<nz-1 && mask[xyz+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx+nx*ny], associationWeight(xyz,xyz+nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx+nx*ny], associationWeight(xyz,xyz+nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z>0 && x>0 && mask[xyz-nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny-1], associationWeight(xyz,xyz-nx*ny-1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx*ny-1], associationWeight(xyz,xyz-nx*ny-1), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z<nz-1 && x>0 && mask[xyz+nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny-1], associationWeight(xyz,xyz+nx*ny-1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx*ny-1], associationWeight(xyz,xyz+nx*ny-1), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z>0 && x<nx-1 && mask[xyz-nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny+1], associationWeight(xyz,xyz-nx*ny+1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx*ny+1], associationWeight(xyz,xyz-nx*ny+1), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z<nz-1 && x<nx-1 && mask[xyz+nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny+1], associationWeight(xyz,xyz+nx*ny+1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx*ny+1], associationWeight(xyz,xyz+nx*ny+1), 0.0f, 1.0f);
 						nb++;
 					}
 				}
 				// 26-C
 				if (connect>18) {
 					if (x>0 && y>0 && z>0 && mask[xyz-1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx-nx*ny], associationWeight(xyz,xyz-1-nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1-nx-nx*ny], associationWeight(xyz,xyz-1-nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y>0 && z>0 && mask[xyz+1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx-nx*ny], associationWeight(xyz,xyz+1-nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1-nx-nx*ny], associationWeight(xyz,xyz+1-nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y<ny-1 && z>0 && mask[xyz-1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx-nx*ny], associationWeight(xyz,xyz-1+nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1+nx-nx*ny], associationWeight(xyz,xyz-1+nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y>0 && z<nz-1 && mask[xyz-1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx+nx*ny], associationWeight(xyz,xyz-1-nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1-nx+nx*ny], associationWeight(xyz,xyz-1-nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y<ny-1 && z>0 && mask[xyz+1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx-nx*ny], associationWeight(xyz,xyz+1+nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1+nx-nx*ny], associationWeight(xyz,xyz+1+nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y<ny-1 && z<nz-1 && mask[xyz-1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx+nx*ny], associationWeight(xyz,xyz-1+nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1+nx+nx*ny], associationWeight(xyz,xyz-1+nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y>0 && z<nz-1 && mask[xyz+1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx+nx*ny], associationWeight(xyz,xyz+1-nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1-nx+nx*ny], associationWeight(xyz,xyz+1-nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y<ny-1 && z<nz-1 && mask[xyz+1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx+nx*ny], associationWeight(xyz,xyz+1+nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1+nx+nx*ny], associationWeight(xyz,xyz+1+nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 				}
 				// build the weight array
 
 				// link in 6 directions
-				Triple[] node = new Triple[nb+1];
-				node[0] = new Triple(labeling[xyz], 1.0f);
-				for (int n=0;n<nb;n++) {
-					node[n+1] = trp[n];
-				}
+				int node = labeling[xyz];
+				assoc.setLength(node, nb+1);
+				assoc.set(node, 0, labeling[xyz], 1.0f, 0.0f, 1.0f);
 				// build the degree array
-				float deg = node[0].weight/node[0].size;
+				float deg = assoc.getWeight(node, 0)/assoc.getSize(node, 0);
 				for (int n=0;n<nb;n++) {
-					deg += trp[n].weight/trp[n].size/nb;
+					deg += assoc.getWeight(node, n+1)/assoc.getSize(node, n+1)/nb;
 				}
 				//degree.set(labeling[xyz], new Float(deg));
-				node[0].delta = deg;
-
-				// store the values
-				assoc[labeling[xyz]] = node;
+				assoc.setDelta(node, 0, deg);
 				
 				// store the latest active index for everything
 				latest[labeling[xyz]] = labeling[xyz];
@@ -382,17 +342,17 @@ public class FastAggregativeGraphClustering {
 		self[0] = 0.0f;
 		other[0] = 0.0f;
 		for (int l=1;l<=nlb;l++) {
-			Triple[] node = assoc[l];
-			float di = node[0].delta;
-			for (int n=1;n<node.length;n++) {
+			int node = l;
+			float di = assoc.getDelta(node, 0);
+			for (int n=1;n<assoc.length(node);n++) {
 				//float dj = degree.get(node.get(n).id);
-				float wij = node[n].weight;
-				float wii = node[0].weight;
-				float wjj = assoc[node[n].id][0].weight;
-				float dj = assoc[node[n].id][0].delta;
-				float sij = node[n].size;
-				float si = node[0].size;
-				float sj = assoc[node[n].id][0].size;
+				float wij = assoc.getWeight(node, n);
+				float wii = assoc.getWeight(node, 0);
+				float wjj = assoc.getWeight(assoc.getId(node, n), 0);
+				float dj = assoc.getDelta(assoc.getId(node, n), 0);
+				float sij = assoc.getSize(node, n);
+				float si = assoc.getSize(node, 0);
+				float sj = assoc.getSize(assoc.getId(node, n), 0);
 				//float dval = 2.0f*node.get(n).weight/(di + dj);
 				// use the formula with self-weights?
 				// D = (wii+wjj+2node)/(di+dj) -wii/di -wjj/dj
@@ -402,7 +362,7 @@ public class FastAggregativeGraphClustering {
 				//node.get(n).delta = 2.0f*wij/sij*(di + dj)/(si + sj);
 				
 				// best so far..
-				node[n].delta = wij/sij*(wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij);
+				assoc.setDelta(node, n, wij/sij*(wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij));
 				
 				// use the same score as the stopping criterion? slows down the process
 				//node.get(n).delta = wij/sij*(wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij)
@@ -410,7 +370,7 @@ public class FastAggregativeGraphClustering {
 				
 				//other[0] += wij/sij;
 			}
-			cost[0] += node[0].weight/node[0].size/node[0].delta;
+			cost[0] += assoc.getWeight(node, 0)/assoc.getSize(node, 0)/assoc.getDelta(node, 0);
 			//self[0] += node.get(0).weight/node.get(0).size;
 		}
 	}
@@ -424,150 +384,143 @@ public class FastAggregativeGraphClustering {
 		//degree = new ArrayList(nlb+1);
 		//assoc.add(0, new ArrayList<Triple>(1));
 		
-		assoc = new Triple[2*nlb][];
-		assoc[0] = new Triple[1];
-		assoc[0][0] = new Triple(0);
+		assoc = new AssociationGraph(2*nlb, (connect+1)*(nlb+1));
+		assoc.addNode(0, 1);
+		assoc.set(0, 0, 0, 0.0f, 0.0f, 1.0f);
 		
 		latest = new int[2*nlb];
 		
-		Triple[] trp = new Triple[connect];
-		
 		if (debug) System.out.println("first pass");
 
 		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int nb=0;
+				assoc.addNode(labeling[xyz], connect+1);
 				// 6-C
 				if (x>0 && mask[xyz-1])	{
-					trp[nb] = new Triple(labeling[xyz-1], associationWeight(xyz,xyz-1));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz-1], associationWeight(xyz,xyz-1), 0.0f, 1.0f);
 					nb++;
 				}
 				if (x<nx-1 && mask[xyz+1])	{
-					trp[nb] = new Triple(labeling[xyz+1], associationWeight(xyz,xyz+1));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz+1], associationWeight(xyz,xyz+1), 0.0f, 1.0f);
 					nb++;
 				}
 				if (y>0 && mask[xyz-nx])	{
-					trp[nb] = new Triple(labeling[xyz-nx], associationWeight(xyz,xyz-nx));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz-nx], associationWeight(xyz,xyz-nx), 0.0f, 1.0f);
 					nb++;
 				}
 				if (y<ny-1 && mask[xyz+nx])	{
-					trp[nb] = new Triple(labeling[xyz+nx], associationWeight(xyz,xyz+nx));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz+nx], associationWeight(xyz,xyz+nx), 0.0f, 1.0f);
 					nb++;
 				}
 				if (z>0 && mask[xyz-nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz-nx*ny], associationWeight(xyz,xyz-nx*ny));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz-nx*ny], associationWeight(xyz,xyz-nx*ny), 0.0f, 1.0f);
 					nb++;
 				}
 				if (z<nz-1 && mask[xyz+nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz+nx*ny], associationWeight(xyz,xyz+nx*ny));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz+nx*ny], associationWeight(xyz,xyz+nx*ny), 0.0f, 1.0f);
 					nb++;
 				}
 				// 18-C
 				if (connect>6) {
 					if (x>0 && y>0 && mask[xyz-1-nx])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx], associationWeight(xyz,xyz-1-nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1-nx], associationWeight(xyz,xyz-1-nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y>0 && mask[xyz+1-nx])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx], associationWeight(xyz,xyz+1-nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1-nx], associationWeight(xyz,xyz+1-nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y<ny-1 && mask[xyz-1+nx])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx], associationWeight(xyz,xyz-1+nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1+nx], associationWeight(xyz,xyz-1+nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y<ny-1 && mask[xyz+1+nx])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx], associationWeight(xyz,xyz+1+nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1+nx], associationWeight(xyz,xyz+1+nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y>0 && z>0 && mask[xyz-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx-nx*ny], associationWeight(xyz,xyz-nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx-nx*ny], associationWeight(xyz,xyz-nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y<ny-1 && z>0 && mask[xyz+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx-nx*ny], associationWeight(xyz,xyz+nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx-nx*ny], associationWeight(xyz,xyz+nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y>0 && z<nz-1 && mask[xyz-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx+nx*ny], associationWeight(xyz,xyz-nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx+nx*ny], associationWeight(xyz,xyz-nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y<ny-1 && z<nz-1 && mask[xyz+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx+nx*ny], associationWeight(xyz,xyz+nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx+nx*ny], associationWeight(xyz,xyz+nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z>0 && x>0 && mask[xyz-nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny-1], associationWeight(xyz,xyz-nx*ny-1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx*ny-1], associationWeight(xyz,xyz-nx*ny-1), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z<nz-1 && x>0 && mask[xyz+nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny-1], associationWeight(xyz,xyz+nx*ny-1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx*ny-1], associationWeight(xyz,xyz+nx*ny-1), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z>0 && x<nx-1 && mask[xyz-nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny+1], associationWeight(xyz,xyz-nx*ny+1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx*ny+1], associationWeight(xyz,xyz-nx*ny+1), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z<nz-1 && x<nx-1 && mask[xyz+nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny+1], associationWeight(xyz,xyz+nx*ny+1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx*ny+1], associationWeight(xyz,xyz+nx*ny+1), 0.0f, 1.0f);
 						nb++;
 					}
 				}
 				// 26-C
 				if (connect>18) {
 					if (x>0 && y>0 && z>0 && mask[xyz-1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx-nx*ny], associationWeight(xyz,xyz-1-nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1-nx-nx*ny], associationWeight(xyz,xyz-1-nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y>0 && z>0 && mask[xyz+1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx-nx*ny], associationWeight(xyz,xyz+1-nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1-nx-nx*ny], associationWeight(xyz,xyz+1-nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y<ny-1 && z>0 && mask[xyz-1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx-nx*ny], associationWeight(xyz,xyz-1+nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1+nx-nx*ny], associationWeight(xyz,xyz-1+nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y>0 && z<nz-1 && mask[xyz-1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx+nx*ny], associationWeight(xyz,xyz-1-nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1-nx+nx*ny], associationWeight(xyz,xyz-1-nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y<ny-1 && z>0 && mask[xyz+1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx-nx*ny], associationWeight(xyz,xyz+1+nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1+nx-nx*ny], associationWeight(xyz,xyz+1+nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y<ny-1 && z<nz-1 && mask[xyz-1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx+nx*ny], associationWeight(xyz,xyz-1+nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1+nx+nx*ny], associationWeight(xyz,xyz-1+nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y>0 && z<nz-1 && mask[xyz+1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx+nx*ny], associationWeight(xyz,xyz+1-nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1-nx+nx*ny], associationWeight(xyz,xyz+1-nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y<ny-1 && z<nz-1 && mask[xyz+1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx+nx*ny], associationWeight(xyz,xyz+1+nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1+nx+nx*ny], associationWeight(xyz,xyz+1+nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 				}
 				// build the weight array
 
 				// link in 6 directions
-				Triple[] node = new Triple[nb+1];
-				node[0] = new Triple(labeling[xyz], 0.0f);
-				for (int n=0;n<nb;n++) {
-					node[n+1] = trp[n];
-					//if (trp[n].weight==0) System.out.print("o");
-				}
+				int node = labeling[xyz];
+				assoc.setLength(node, nb+1);
+				assoc.set(node, 0, labeling[xyz], 0.0f, 0.0f, 1.0f);
 				// build the degree array
-				float deg = node[0].weight/node[0].size;
+				float deg = assoc.getWeight(node, 0)/assoc.getSize(node, 0);
 				for (int n=0;n<nb;n++) {
-					deg += trp[n].weight/trp[n].size/nb;
+					deg += assoc.getWeight(node, n+1)/assoc.getSize(node, n+1)/nb;
 				}
 				//degree.set(labeling[xyz], new Float(deg));
-				node[0].delta = deg;
-
-				// store the values
-				assoc[labeling[xyz]] = node;
+				assoc.setDelta(node, 0, deg);
 				
 				// store the latest active index for everything
 				latest[labeling[xyz]] = labeling[xyz];
@@ -584,17 +537,17 @@ public class FastAggregativeGraphClustering {
 		self[0] = 0.0f;
 		other[0] = 0.0f;
 		for (int l=1;l<=nlb;l++) {
-			Triple[] node = assoc[l];
-			float di = node[0].delta;
-			for (int n=1;n<node.length;n++) {
+			int node = l;
+			float di = assoc.getDelta(node, 0);
+			for (int n=1;n<assoc.length(node);n++) {
 				//float dj = degree.get(node.get(n).id);
-				float wij = node[n].weight;
-				float wii = node[0].weight;
-				float wjj = assoc[node[n].id][0].weight;
-				float dj = assoc[node[n].id][0].delta;
-				float sij = node[n].size;
-				float si = node[0].size;
-				float sj = assoc[node[n].id][0].size;
+				float wij = assoc.getWeight(node, n);
+				float wii = assoc.getWeight(node, 0);
+				float wjj = assoc.getWeight(assoc.getId(node, n), 0);
+				float dj = assoc.getDelta(assoc.getId(node, n), 0);
+				float sij = assoc.getSize(node, n);
+				float si = assoc.getSize(node, 0);
+				float sj = assoc.getSize(assoc.getId(node, n), 0);
 				//float dval = 2.0f*node.get(n).weight/(di + dj);
 				// use the formula with self-weights?
 				// D = (wii+wjj+2node)/(di+dj) -wii/di -wjj/dj
@@ -603,7 +556,7 @@ public class FastAggregativeGraphClustering {
 				//node.get(n).delta = (wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij);
 				//node.get(n).delta = 2.0f*wij/sij*(di + dj)/(si + sj);
 				
-				node[n].delta = basis - wij;
+				assoc.setDelta(node, n, basis - wij);
 				
 				// use the same score as the stopping criterion? slows down the process
 				//node.get(n).delta = wij/sij*(wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij)
@@ -611,7 +564,7 @@ public class FastAggregativeGraphClustering {
 				
 				//other[0] += wij/sij;
 			}
-			cost[0] += node[0].weight/node[0].size/node[0].delta;
+			cost[0] += assoc.getWeight(node, 0)/assoc.getSize(node, 0)/assoc.getDelta(node, 0);
 			//self[0] += node.get(0).weight/node.get(0).size;
 		}
 	}
@@ -621,149 +574,143 @@ public class FastAggregativeGraphClustering {
 		
 		if (debug) System.out.println("-- weight initialization --");
 		
-		assoc = new Triple[2*nlb][];
-		assoc[0] = new Triple[1];
-		assoc[0][0] = new Triple(0);
+		assoc = new AssociationGraph(2*nlb, (connect+1)*(nlb+1));
+		assoc.addNode(0, 1);
+		assoc.set(0, 0, 0, 0.0f, 0.0f, 1.0f);
 		
 		latest = new int[2*nlb];
 		
-		Triple[] trp = new Triple[connect];
-		
 		if (debug) System.out.println("first pass");
 
 		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
 				int nb=0;
+				assoc.addNode(labeling[xyz], connect+1);
 				// 6-C
 				if (x>0 && mask[xyz-1])	{
-					trp[nb] = new Triple(labeling[xyz-1], associationWeight(xyz,xyz-1));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz-1], associationWeight(xyz,xyz-1), 0.0f, 1.0f);
 					nb++;
 				}
 				if (x<nx-1 && mask[xyz+1])	{
-					trp[nb] = new Triple(labeling[xyz+1], associationWeight(xyz,xyz+1));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz+1], associationWeight(xyz,xyz+1), 0.0f, 1.0f);
 					nb++;
 				}
 				if (y>0 && mask[xyz-nx])	{
-					trp[nb] = new Triple(labeling[xyz-nx], associationWeight(xyz,xyz-nx));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz-nx], associationWeight(xyz,xyz-nx), 0.0f, 1.0f);
 					nb++;
 				}
 				if (y<ny-1 && mask[xyz+nx])	{
-					trp[nb] = new Triple(labeling[xyz+nx], associationWeight(xyz,xyz+nx));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz+nx], associationWeight(xyz,xyz+nx), 0.0f, 1.0f);
 					nb++;
 				}
 				if (z>0 && mask[xyz-nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz-nx*ny], associationWeight(xyz,xyz-nx*ny));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz-nx*ny], associationWeight(xyz,xyz-nx*ny), 0.0f, 1.0f);
 					nb++;
 				}
 				if (z<nz-1 && mask[xyz+nx*ny])	{
-					trp[nb] = new Triple(labeling[xyz+nx*ny], associationWeight(xyz,xyz+nx*ny));
+					assoc.set(labeling[xyz], nb+1, labeling[xyz+nx*ny], associationWeight(xyz,xyz+nx*ny), 0.0f, 1.0f);
 					nb++;
 				}
 				// 18-C
 				if (connect>6) {
 					if (x>0 && y>0 && mask[xyz-1-nx])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx], associationWeight(xyz,xyz-1-nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1-nx], associationWeight(xyz,xyz-1-nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y>0 && mask[xyz+1-nx])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx], associationWeight(xyz,xyz+1-nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1-nx], associationWeight(xyz,xyz+1-nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y<ny-1 && mask[xyz-1+nx])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx], associationWeight(xyz,xyz-1+nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1+nx], associationWeight(xyz,xyz-1+nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y<ny-1 && mask[xyz+1+nx])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx], associationWeight(xyz,xyz+1+nx));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1+nx], associationWeight(xyz,xyz+1+nx), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y>0 && z>0 && mask[xyz-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx-nx*ny], associationWeight(xyz,xyz-nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx-nx*ny], associationWeight(xyz,xyz-nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y<ny-1 && z>0 && mask[xyz+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx-nx*ny], associationWeight(xyz,xyz+nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx-nx*ny], associationWeight(xyz,xyz+nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y>0 && z<nz-1 && mask[xyz-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-nx+nx*ny], associationWeight(xyz,xyz-nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx+nx*ny], associationWeight(xyz,xyz-nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (y<ny-1 && z<nz-1 && mask[xyz+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+nx+nx*ny], associationWeight(xyz,xyz+nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx+nx*ny], associationWeight(xyz,xyz+nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z>0 && x>0 && mask[xyz-nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny-1], associationWeight(xyz,xyz-nx*ny-1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx*ny-1], associationWeight(xyz,xyz-nx*ny-1), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z<nz-1 && x>0 && mask[xyz+nx*ny-1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny-1], associationWeight(xyz,xyz+nx*ny-1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx*ny-1], associationWeight(xyz,xyz+nx*ny-1), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z>0 && x<nx-1 && mask[xyz-nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz-nx*ny+1], associationWeight(xyz,xyz-nx*ny+1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-nx*ny+1], associationWeight(xyz,xyz-nx*ny+1), 0.0f, 1.0f);
 						nb++;
 					}
 					if (z<nz-1 && x<nx-1 && mask[xyz+nx*ny+1])	{
-						trp[nb] = new Triple(labeling[xyz+nx*ny+1], associationWeight(xyz,xyz+nx*ny+1));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+nx*ny+1], associationWeight(xyz,xyz+nx*ny+1), 0.0f, 1.0f);
 						nb++;
 					}
 				}
 				// 26-C
 				if (connect>18) {
 					if (x>0 && y>0 && z>0 && mask[xyz-1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx-nx*ny], associationWeight(xyz,xyz-1-nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1-nx-nx*ny], associationWeight(xyz,xyz-1-nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y>0 && z>0 && mask[xyz+1-nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx-nx*ny], associationWeight(xyz,xyz+1-nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1-nx-nx*ny], associationWeight(xyz,xyz+1-nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y<ny-1 && z>0 && mask[xyz-1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx-nx*ny], associationWeight(xyz,xyz-1+nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1+nx-nx*ny], associationWeight(xyz,xyz-1+nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y>0 && z<nz-1 && mask[xyz-1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1-nx+nx*ny], associationWeight(xyz,xyz-1-nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1-nx+nx*ny], associationWeight(xyz,xyz-1-nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y<ny-1 && z>0 && mask[xyz+1+nx-nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx-nx*ny], associationWeight(xyz,xyz+1+nx-nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1+nx-nx*ny], associationWeight(xyz,xyz+1+nx-nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x>0 && y<ny-1 && z<nz-1 && mask[xyz-1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz-1+nx+nx*ny], associationWeight(xyz,xyz-1+nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz-1+nx+nx*ny], associationWeight(xyz,xyz-1+nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y>0 && z<nz-1 && mask[xyz+1-nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1-nx+nx*ny], associationWeight(xyz,xyz+1-nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1-nx+nx*ny], associationWeight(xyz,xyz+1-nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 					if (x<nx-1 && y<ny-1 && z<nz-1 && mask[xyz+1+nx+nx*ny])	{
-						trp[nb] = new Triple(labeling[xyz+1+nx+nx*ny], associationWeight(xyz,xyz+1+nx+nx*ny));
+						assoc.set(labeling[xyz], nb+1, labeling[xyz+1+nx+nx*ny], associationWeight(xyz,xyz+1+nx+nx*ny), 0.0f, 1.0f);
 						nb++;
 					}
 				}
 				// build the weight array
 				
 				// link in 6 directions
-				Triple[] node = new Triple[nb+1];
-				node[0] = new Triple(labeling[xyz], 1.0f);
-				for (int n=0;n<nb;n++) {
-					node[n+1] = trp[n];
-				}
+				int node = labeling[xyz];
+				assoc.setLength(node, nb+1);
+				assoc.set(node, 0, labeling[xyz], 1.0f, 0.0f, 1.0f);
 				// build the degree array
-				float deg = node[0].weight/node[0].size;
+				float deg = assoc.getWeight(node, 0)/assoc.getSize(node, 0);
 				for (int n=0;n<nb;n++) {
-					deg += trp[n].weight/trp[n].size/nb;
+					deg += assoc.getWeight(node, n+1)/assoc.getSize(node, n+1)/nb;
 				}
 				//degree.set(labeling[xyz], new Float(deg));
-				node[0].delta = deg;
-
-				// store the values
-				assoc[labeling[xyz]] = node;
+				assoc.setDelta(node, 0, deg);
 				
 				// store the latest active index for everything
 				latest[labeling[xyz]] = labeling[xyz];
@@ -780,25 +727,25 @@ public class FastAggregativeGraphClustering {
 		self[0] = 0.0f;
 		other[0] = 0.0f;
 		for (int l=1;l<=nlb;l++) {
-			Triple[] node = assoc[l];
-			float di = node[0].delta;
-			for (int n=1;n<node.length;n++) {
+			int node = l;
+			float di = assoc.getDelta(node, 0);
+			for (int n=1;n<assoc.length(node);n++) {
 				//float dj = degree.get(node.get(n).id);
-				float wij = node[n].weight;
-				float wii = node[0].weight;
-				float wjj = assoc[node[n].id][0].weight;
-				float dj = assoc[node[n].id][0].delta;
-				float sij = node[n].size;
-				float si = node[0].size;
-				float sj = assoc[node[n].id][0].size;
+				float wij = assoc.getWeight(node, n);
+				float wii = assoc.getWeight(node, 0);
+				float wjj = assoc.getWeight(assoc.getId(node, n), 0);
+				float dj = assoc.getDelta(assoc.getId(node, n), 0);
+				float sij = assoc.getSize(node, n);
+				float si = assoc.getSize(node, 0);
+				float sj = assoc.getSize(assoc.getId(node, n), 0);
 				
 				// best so far..
 				//node[n].delta = wij/sij*(wii+wjj+2.0f*wij)/(si + sj + 2.0f*sij);
 				//node[n].delta = wij*Numerics.min(wii,wjj,wij);
 				//node[n].delta = wij*Numerics.min(wii,wjj,wij) - (1.0f-wij)*(float)Math.sqrt(wii*wjj);
-				node[n].delta = Numerics.square(wij*Numerics.min(wii,wjj,wij)) - Numerics.square(1.0f-wij)*wii*wjj;
+				assoc.setDelta(node, n, Numerics.square(wij*Numerics.min(wii,wjj,wij)) - Numerics.square(1.0f-wij)*wii*wjj);
 			}
-			cost[0] += node[0].weight/node[0].size/node[0].delta;
+			cost[0] += assoc.getWeight(node, 0)/assoc.getSize(node, 0)/assoc.getDelta(node, 0);
 		}
 	}
 	
@@ -916,16 +863,16 @@ public class FastAggregativeGraphClustering {
 
 		for (int lb=1;lb<=nlb;lb++) {
 			//if (debug) System.out.print(".");
-			Triple[] node = assoc[lb];
+			int node = lb;
 			// only store the largest delta (the others will never be selected because it gets relabeled)
-			if (node.length>1) {
+			if (assoc.length(node)>1) {
 				int best=1;
 				//float bestscore = node.get(1).weight/node.get(1).delta/(node.get(0).delta+assoc.get(node.get(1).id).get(0).delta);
-				for (int b=2;b<node.length;b++) {
-					if (node[b].delta>node[best].delta) best = b;
+				for (int b=2;b<assoc.length(node);b++) {
+					if (assoc.getDelta(node, b)>assoc.getDelta(node, best)) best = b;
 				}
 				//if (debug) System.out.print(""+node.get(best).delta+","+l+":"+best);
-				bintree.addValue(node[best].delta, node[0].id, best);
+				bintree.addValue(assoc.getDelta(node, best), assoc.getId(node, 0), best);
 			} else {
 				if (debug) System.out.print("!");	
 			}
@@ -964,8 +911,14 @@ public class FastAggregativeGraphClustering {
 		long widthsearchtime = 0;
 		long looptime = System.currentTimeMillis();
 		
+		int compactsize = 2*nclusters;
 		while (bintree.isNotEmpty() && nclusters>k0 && !stop) {
 			//if (debug) System.out.print(".");
+			// discard the values of merged clusters when they accumulate
+			if (bintree.getCurrentSize()>compactsize) {
+				bintree.removeInvalidId1(active);
+				compactsize = Math.max(2*bintree.getCurrentSize(), 2*nclusters);
+			}
 			
 			// retrive the best delta
 			float 	bcost = bintree.getFirst(); 
@@ -975,14 +928,14 @@ public class FastAggregativeGraphClustering {
 
 			// retrieve corresponding values (if they still exist)
 			if (active.get(lbest)) {
-				Triple[] bNode = assoc[lbest];
-				int	lpair = bNode[nbest].id;
+				int bNode = lbest;
+				int	lpair = assoc.getId(bNode, nbest);
 				
 				//if (debug) System.out.print("|"+lbest+"-"+lpair);
 			
 				// update the link label? no, because the weights are now different
 				if (active.get(lpair)) {
-					Triple[] pNode = assoc[lpair];
+					int pNode = lpair;
 
 					// only count iterations when changing the labels
 					iter++;
@@ -993,31 +946,30 @@ public class FastAggregativeGraphClustering {
 					
 					// new values
 					//ArrayList<Triple> aNode = new ArrayList<Triple>(Numerics.max(bNode.size(),pNode.size())-1);
-					Triple[] aNode = new Triple[bNode.length+pNode.length-3];
+					int aNode = id;
+					assoc.addNode(aNode, assoc.length(bNode)+assoc.length(pNode)-3);
 					// self-weight & degree
 					// d(uv) = d(u) + d(v)
 					// w(uv,uv) = w(u,u) + w(v,v) + 2*w(uv.uv)
-					aNode[0] = new Triple(id, bNode[0].weight + pNode[0].weight + 2.0f*bNode[nbest].weight, 
-												bNode[0].delta + pNode[0].delta,  
-												bNode[0].size + pNode[0].size + 2.0f*bNode[nbest].size );
+					assoc.set(aNode, 0, id, assoc.getWeight(bNode, 0) + assoc.getWeight(pNode, 0) + 2.0f*assoc.getWeight(bNode, nbest), assoc.getDelta(bNode, 0) + assoc.getDelta(pNode, 0), assoc.getSize(bNode, 0) + assoc.getSize(pNode, 0) + 2.0f*assoc.getSize(bNode, nbest));
 					
 					// new mixing weights
 					// w(uv,x) = w(u,x) + w(v,x)
 					// must check if the links still exist, not duplicate
 					
-					newclustertime += bNode.length+pNode.length;
+					newclustertime += assoc.length(bNode)+assoc.length(pNode);
 					
 					// using latest[] allows to preserve the tree structure inside assoc, but skip steps when attributing the labels
-					for (int n=1;n<bNode.length;n++) {
+					for (int n=1;n<assoc.length(bNode);n++) {
 						//int lbn = bNode[n].id;
-						int lbn = latest[bNode[n].id];
+						int lbn = latest[assoc.getId(bNode, n)];
 						if (lbn!=lpair) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -1025,28 +977,28 @@ public class FastAggregativeGraphClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[bNode[n].id] = lbn;
+								latest[assoc.getId(bNode, n)] = lbn;
 								//lbn = latest[lbn];
 							}
 							if (lbn!=lpair) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] += bNode[n].weight;
-								ngbSize[lbn] += bNode[n].size;
+								ngbWeight[lbn] += assoc.getWeight(bNode, n);
+								ngbSize[lbn] += assoc.getSize(bNode, n);
 							}							
 							// no need to check on all already created values!!
 						}
 					}
-					for (int n=1;n<pNode.length;n++) {
+					for (int n=1;n<assoc.length(pNode);n++) {
 						//int lbn = pNode[n].id;
-						int lbn = latest[pNode[n].id];
+						int lbn = latest[assoc.getId(pNode, n)];
 						if (lbn!=lbest) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -1054,14 +1006,14 @@ public class FastAggregativeGraphClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[pNode[n].id] = lbn;
+								latest[assoc.getId(pNode, n)] = lbn;
 								//lbn = latest[lbn];
 							}
 							if (lbn!=lbest) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] += pNode[n].weight;
-								ngbSize[lbn] += pNode[n].size;
+								ngbWeight[lbn] += assoc.getWeight(pNode, n);
+								ngbSize[lbn] += assoc.getSize(pNode, n);
 							}
 							// no need to check on all already created values!!
 						}
@@ -1070,7 +1022,7 @@ public class FastAggregativeGraphClustering {
 					int l=1;
 					for (int lbn = ngbList.nextSetBit(0); lbn >= 0; lbn = ngbList.nextSetBit(lbn+1)) {
 						// create a new one
-						aNode[l] = new Triple(lbn, ngbWeight[lbn], ngbSize[lbn]);
+						assoc.set(aNode, l, lbn, ngbWeight[lbn], 0.0f, ngbSize[lbn]);
 						l++;
 						// reset the values
 						ngbWeight[lbn] = 0.0f;
@@ -1080,11 +1032,7 @@ public class FastAggregativeGraphClustering {
 
 					// make sure we don't have extra empty values
 					//aNode.trimToSize();
-					if (l<aNode.length) {
-						Triple[] tmp = new Triple[l];
-						for (int n=0;n<l;n++) tmp[n] = aNode[n];
-						aNode = tmp;
-					}
+					assoc.setLength(aNode, l);
 					// set the new location parameters
 					ngbcluster.clear();
 					if (lbest>nlb && lpair>nlb && clusterPos[lbest].length>clusterPos[lpair].length) {
@@ -1179,28 +1127,28 @@ public class FastAggregativeGraphClustering {
 					}
 					// new deltas : no need of the u,v values anymore
 					// D(uv,x) = ( w(uv,uv) + w(x,x) + 2w(uv,x) )/( d(uv)+d(x) ) - w(uv,uv)/d(uv) - w(x,x)/d(x)
-					for (int n=1; n<aNode.length; n++) {
-						Triple[] wngb = assoc[aNode[n].id];
+					for (int n=1; n<assoc.length(aNode); n++) {
+						int wngb = assoc.getId(aNode, n);
 						// best method so far
 						// use the same criterion than for stopping? makes sense, but slows down the process
 						// geometric progression:
-						float wsize = 1.0f/(1.0f + Numerics.square( (aNode[0].size+wngb[0].size)/((connect+1.0f)*nlb)) );
+						float wsize = 1.0f/(1.0f + Numerics.square( (assoc.getSize(aNode, 0)+assoc.getSize(wngb, 0))/((connect+1.0f)*nlb)) );
 						//float wsize = 1.0f/(1.0f + Numerics.square( (aNode[0].size+wngb[0].size)/((connect+1.0f))) );
 						//float wsize = 1.0f;
-						aNode[n].delta = wsize*( Numerics.square(aNode[n].weight/aNode[n].size)
-													 *Numerics.square( ( aNode[0].weight + wngb[0].weight + 2.0f*aNode[n].weight )
-																		/( aNode[0].size + wngb[0].size + 2.0f*aNode[n].size ) )
-													 -Numerics.square(1.0f-aNode[n].weight/aNode[n].size)
-													  *aNode[0].weight/aNode[0].size
-													  *wngb[0].weight/wngb[0].size  );
+						assoc.setDelta(aNode, n, wsize*( Numerics.square(assoc.getWeight(aNode, n)/assoc.getSize(aNode, n))
+													 *Numerics.square( ( assoc.getWeight(aNode, 0) + assoc.getWeight(wngb, 0) + 2.0f*assoc.getWeight(aNode, n) )
+																		/( assoc.getSize(aNode, 0) + assoc.getSize(wngb, 0) + 2.0f*assoc.getSize(aNode, n) ) )
+													 -Numerics.square(1.0f-assoc.getWeight(aNode, n)/assoc.getSize(aNode, n))
+													  *assoc.getWeight(aNode, 0)/assoc.getSize(aNode, 0)
+													  *assoc.getWeight(wngb, 0)/assoc.getSize(wngb, 0)  ));
 						
 					}
 					
 					/// probably not needed
 					// recompute the degree? (for averaged links)
-					self[iter] = 	Numerics.square(bNode[nbest].weight/bNode[nbest].size * aNode[0].weight/aNode[0].size);
-					other[iter] = Numerics.square(1.0f-bNode[nbest].weight/bNode[nbest].size) * bNode[0].weight/bNode[0].size
-																							* pNode[0].weight/pNode[0].size;
+					self[iter] = 	Numerics.square(assoc.getWeight(bNode, nbest)/assoc.getSize(bNode, nbest) * assoc.getWeight(aNode, 0)/assoc.getSize(aNode, 0));
+					other[iter] = Numerics.square(1.0f-assoc.getWeight(bNode, nbest)/assoc.getSize(bNode, nbest)) * assoc.getWeight(bNode, 0)/assoc.getSize(bNode, 0)
+																							* assoc.getWeight(pNode, 0)/assoc.getSize(pNode, 0);
 					cost[iter] = bcost;
 
 					if (verbose) if (iter%(nlb/100)==0) {
@@ -1210,7 +1158,7 @@ public class FastAggregativeGraphClustering {
 																	+", s= "+self[iter]
 																	+", o= "+other[iter]
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length
+																	+assoc.length(bNode)+", "+assoc.length(pNode)
 																	+"| n "+newclustertime+", d "+depthsearchtime+", w "+widthsearchtime+")");
 						looptime = newtime;
 						newclustertime = 0;
@@ -1223,35 +1171,34 @@ public class FastAggregativeGraphClustering {
 																	+", s= "+self[iter]
 																	+", o= "+other[iter]
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length+")");	
+																	+assoc.length(bNode)+", "+assoc.length(pNode)+")");	
 					   first=false;
 					   if (firststop) stop = true;
 					}								
 					// add the new values to list, binary tree
-					assoc[id] = aNode;
 					active.set(id, true);
 					
-					if (aNode.length>1) {
+					if (assoc.length(aNode)>1) {
 						int best=1;
-						for (int b=2;b<aNode.length;b++) {
-							if (aNode[b].delta>aNode[best].delta) best = b;
+						for (int b=2;b<assoc.length(aNode);b++) {
+							if (assoc.getDelta(aNode, b)>assoc.getDelta(aNode, best)) best = b;
 						}
-						bintree.addValue(aNode[best].delta, id, best);
+						bintree.addValue(assoc.getDelta(aNode, best), id, best);
 
-						if (debug) if (aNode[best].delta>1) {
+						if (debug) if (assoc.getDelta(aNode, best)>1) {
 							System.out.println(nclusters+": c= "+cost[iter]+" ("
-																	+bNode[0].delta+", "
-																	+bNode[0].weight+", "
-																	+bNode[0].size+" | "
-																	+pNode[0].delta+", "
-																	+pNode[0].weight+", "
-																	+pNode[0].size+" | "
-																	+aNode[0].delta+", "
-																	+aNode[0].weight+", "
-																	+aNode[0].size+")");					   
+																	+assoc.getDelta(bNode, 0)+", "
+																	+assoc.getWeight(bNode, 0)+", "
+																	+assoc.getSize(bNode, 0)+" | "
+																	+assoc.getDelta(pNode, 0)+", "
+																	+assoc.getWeight(pNode, 0)+", "
+																	+assoc.getSize(pNode, 0)+" | "
+																	+assoc.getDelta(aNode, 0)+", "
+																	+assoc.getWeight(aNode, 0)+", "
+																	+assoc.getSize(aNode, 0)+")");					   
 							
-							for (int n=1; n<aNode.length; n++) {
-								System.out.print("<"+aNode[n].delta+", "+aNode[n].weight+", "+aNode[n].size+">");
+							for (int n=1; n<assoc.length(aNode); n++) {
+								System.out.print("<"+assoc.getDelta(aNode, n)+", "+assoc.getWeight(aNode, n)+", "+assoc.getSize(aNode, n)+">");
 							}
 							System.out.print("\n");
 						}
@@ -1259,12 +1206,10 @@ public class FastAggregativeGraphClustering {
 					}
 					
 					// replace the older values with info on what is the new label
-					assoc[lbest] = null;
-					assoc[lpair] = null;
-					assoc[lbest] = new Triple[1];
-					assoc[lpair] = new Triple[1];
-					assoc[lbest][0] = new Triple(id);
-					assoc[lpair][0] = new Triple(id);
+					assoc.setLength(lbest, 1);
+					assoc.setLength(lpair, 1);
+					assoc.set(lbest, 0, id, 0.0f, 0.0f, 1.0f);
+					assoc.set(lpair, 0, id, 0.0f, 0.0f, 1.0f);
 					
 					// de-activate the labels
 					active.set(lbest, false);
@@ -1298,16 +1243,16 @@ public class FastAggregativeGraphClustering {
 
 		for (int lb=1;lb<=nlb;lb++) {
 			//if (debug) System.out.print(".");
-			Triple[] node = assoc[lb];
+			int node = lb;
 			// only store the largest delta (the others will never be selected because it gets relabeled)
-			if (node.length>1) {
+			if (assoc.length(node)>1) {
 				int best=1;
 				//float bestscore = node.get(1).weight/node.get(1).delta/(node.get(0).delta+assoc.get(node.get(1).id).get(0).delta);
-				for (int b=2;b<node.length;b++) {
-					if (node[b].delta>node[best].delta) best = b;
+				for (int b=2;b<assoc.length(node);b++) {
+					if (assoc.getDelta(node, b)>assoc.getDelta(node, best)) best = b;
 				}
 				//if (debug) System.out.print(""+node.get(best).delta+","+l+":"+best);
-				bintree.addValue(node[best].delta, node[0].id, best);
+				bintree.addValue(assoc.getDelta(node, best), assoc.getId(node, 0), best);
 			} else {
 				if (debug) System.out.print("!");	
 			}
@@ -1350,8 +1295,14 @@ public class FastAggregativeGraphClustering {
 		long widthsearchtime = 0;
 		long looptime = System.currentTimeMillis();
 		
+		int compactsize = 2*nclusters;
 		while (bintree.isNotEmpty() && nclusters>k0 && !stop) {
 			//if (debug) System.out.print(".");
+			// discard the values of merged clusters when they accumulate
+			if (bintree.getCurrentSize()>compactsize) {
+				bintree.removeInvalidId1(active);
+				compactsize = Math.max(2*bintree.getCurrentSize(), 2*nclusters);
+			}
 			
 			// retrive the best delta
 			float 	bcost = bintree.getFirst(); 
@@ -1361,14 +1312,14 @@ public class FastAggregativeGraphClustering {
 
 			// retrieve corresponding values (if they still exist)
 			if (active.get(lbest)) {
-				Triple[] bNode = assoc[lbest];
-				int	lpair = bNode[nbest].id;
+				int bNode = lbest;
+				int	lpair = assoc.getId(bNode, nbest);
 				
 				//if (debug) System.out.print("|"+lbest+"-"+lpair);
 			
 				// update the link label? no, because the weights are now different
 				if (active.get(lpair)) {
-					Triple[] pNode = assoc[lpair];
+					int pNode = lpair;
 
 					// only count iterations when changing the labels
 					iter++;
@@ -1379,31 +1330,30 @@ public class FastAggregativeGraphClustering {
 					
 					// new values
 					//ArrayList<Triple> aNode = new ArrayList<Triple>(Numerics.max(bNode.size(),pNode.size())-1);
-					Triple[] aNode = new Triple[bNode.length+pNode.length-3];
+					int aNode = id;
+					assoc.addNode(aNode, assoc.length(bNode)+assoc.length(pNode)-3);
 					// self-weight & degree
 					// d(uv) = d(u) + d(v)
 					// w(uv,uv) = w(u,u) + w(v,v) + 2*w(uv.uv)
-					aNode[0] = new Triple(id, Numerics.min(bNode[0].weight, pNode[0].weight, bNode[nbest].weight), 
-												Numerics.min(bNode[0].delta, pNode[0].delta),  
-												bNode[0].size + pNode[0].size );
+					assoc.set(aNode, 0, id, Numerics.min(assoc.getWeight(bNode, 0), assoc.getWeight(pNode, 0), assoc.getWeight(bNode, nbest)), Numerics.min(assoc.getDelta(bNode, 0), assoc.getDelta(pNode, 0)), assoc.getSize(bNode, 0) + assoc.getSize(pNode, 0));
 					
 					// new mixing weights
 					// w(uv,x) = w(u,x) + w(v,x)
 					// must check if the links still exist, not duplicate
 					
-					newclustertime += bNode.length+pNode.length;
+					newclustertime += assoc.length(bNode)+assoc.length(pNode);
 					
 					// using latest[] allows to preserve the tree structure inside assoc, but skip steps when attributing the labels
-					for (int n=1;n<bNode.length;n++) {
+					for (int n=1;n<assoc.length(bNode);n++) {
 						//int lbn = bNode[n].id;
-						int lbn = latest[bNode[n].id];
+						int lbn = latest[assoc.getId(bNode, n)];
 						if (lbn!=lpair) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -1411,7 +1361,7 @@ public class FastAggregativeGraphClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[bNode[n].id] = lbn;
+								latest[assoc.getId(bNode, n)] = lbn;
 								//bNode[n].id = lbn;
 							}
 							if (lbn!=lpair) {
@@ -1421,22 +1371,22 @@ public class FastAggregativeGraphClustering {
 								// max corresp. to graph-based, not noise prone
 								//ngbWeight[lbn] = Numerics.max(bNode[n].weight, ngbWeight[lbn]);
 								// min corresp. to most conservative
-								ngbWeight[lbn] = Numerics.min(bNode[n].weight, ngbWeight[lbn]);
-								ngbSize[lbn] += bNode[n].size;
+								ngbWeight[lbn] = Numerics.min(assoc.getWeight(bNode, n), ngbWeight[lbn]);
+								ngbSize[lbn] += assoc.getSize(bNode, n);
 							}							
 							// no need to check on all already created values!!
 						}
 					}
-					for (int n=1;n<pNode.length;n++) {
+					for (int n=1;n<assoc.length(pNode);n++) {
 						//int lbn = pNode[n].id;
-						int lbn = latest[pNode[n].id];
+						int lbn = latest[assoc.getId(pNode, n)];
 						if (lbn!=lbest) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -1444,7 +1394,7 @@ public class FastAggregativeGraphClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[pNode[n].id] = lbn;
+								latest[assoc.getId(pNode, n)] = lbn;
 								//pNode[n].id = lbn;
 								
 							}
@@ -1452,8 +1402,8 @@ public class FastAggregativeGraphClustering {
 								// add to the label
 								ngbList.set(lbn, true);
 								//ngbWeight[lbn] = Numerics.max(pNode[n].weight, ngbWeight[lbn]);
-								ngbWeight[lbn] = Numerics.min(pNode[n].weight, ngbWeight[lbn]);
-								ngbSize[lbn] += pNode[n].size;
+								ngbWeight[lbn] = Numerics.min(assoc.getWeight(pNode, n), ngbWeight[lbn]);
+								ngbSize[lbn] += assoc.getSize(pNode, n);
 							}
 							// no need to check on all already created values!!
 						}
@@ -1462,7 +1412,7 @@ public class FastAggregativeGraphClustering {
 					int l=1;
 					for (int lbn = ngbList.nextSetBit(0); lbn >= 0; lbn = ngbList.nextSetBit(lbn+1)) {
 						// create a new one
-						aNode[l] = new Triple(lbn, ngbWeight[lbn], ngbSize[lbn]);
+						assoc.set(aNode, l, lbn, ngbWeight[lbn], 0.0f, ngbSize[lbn]);
 						l++;
 						// reset the values
 						ngbWeight[lbn] = 0.0f;
@@ -1472,11 +1422,7 @@ public class FastAggregativeGraphClustering {
 
 					// make sure we don't have extra empty values
 					//aNode.trimToSize();
-					if (l<aNode.length) {
-						Triple[] tmp = new Triple[l];
-						for (int n=0;n<l;n++) tmp[n] = aNode[n];
-						aNode = tmp;
-					}
+					assoc.setLength(aNode, l);
 					
 					// set the new location parameters
 					ngbcluster.clear();
@@ -1560,22 +1506,22 @@ public class FastAggregativeGraphClustering {
 					}
 					// new deltas : no need of the u,v values anymore
 					// D(uv,x) = ( w(uv,uv) + w(x,x) + 2w(uv,x) )/( d(uv)+d(x) ) - w(uv,uv)/d(uv) - w(x,x)/d(x)
-					for (int n=1; n<aNode.length; n++) {
-						Triple[] wngb = assoc[aNode[n].id];
+					for (int n=1; n<assoc.length(aNode); n++) {
+						int wngb = assoc.getId(aNode, n);
 						// best method so far
 						//aNode[n].delta = aNode[n].weight*Numerics.min(aNode[0].weight, wngb[0].weight, aNode[n].weight);
 												
 						// use the same criterion than for stopping? makes sense, but slows down the process
-						float wsize = 1.0f/(1.0f + Numerics.square( (aNode[0].size+wngb[0].size)/nlb) );
+						float wsize = 1.0f/(1.0f + Numerics.square( (assoc.getSize(aNode, 0)+assoc.getSize(wngb, 0))/nlb) );
 						//float wsize = 1.0f;
-						aNode[n].delta = wsize*( Numerics.square(aNode[n].weight *Numerics.min(aNode[0].weight, wngb[0].weight, aNode[n].weight ))
-											     -Numerics.square(1.0f-aNode[n].weight)*aNode[0].weight*wngb[0].weight );
+						assoc.setDelta(aNode, n, wsize*( Numerics.square(assoc.getWeight(aNode, n) *Numerics.min(assoc.getWeight(aNode, 0), assoc.getWeight(wngb, 0), assoc.getWeight(aNode, n) ))
+											     -Numerics.square(1.0f-assoc.getWeight(aNode, n))*assoc.getWeight(aNode, 0)*assoc.getWeight(wngb, 0) ));
 					}
 					
 					/// probably not needed
 					// recompute the degree? (for averaged links)
-					self[iter] = Numerics.square(bNode[nbest].weight * aNode[0].weight);
-					other[iter] = Numerics.square(1.0f-bNode[nbest].weight) * bNode[0].weight * pNode[0].weight;
+					self[iter] = Numerics.square(assoc.getWeight(bNode, nbest) * assoc.getWeight(aNode, 0));
+					other[iter] = Numerics.square(1.0f-assoc.getWeight(bNode, nbest)) * assoc.getWeight(bNode, 0) * assoc.getWeight(pNode, 0);
 					
 					cost[iter] = bcost;
 
@@ -1586,7 +1532,7 @@ public class FastAggregativeGraphClustering {
 																	+", s= "+self[iter]
 																	+", o= "+other[iter]
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length
+																	+assoc.length(bNode)+", "+assoc.length(pNode)
 																	+"| n "+newclustertime+", d "+depthsearchtime+", w "+widthsearchtime+")");
 						looptime = newtime;
 						newclustertime = 0;
@@ -1600,35 +1546,34 @@ public class FastAggregativeGraphClustering {
 																	+", s= "+self[iter]
 																	+", o= "+other[iter]
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length+")");	
+																	+assoc.length(bNode)+", "+assoc.length(pNode)+")");	
 					   first=false;
 					   if (firststop) stop = true;
 				   	}								
 					// add the new values to list, binary tree
-					assoc[id] = aNode;
 					active.set(id, true);
 					
-					if (aNode.length>1) {
+					if (assoc.length(aNode)>1) {
 						int best=1;
-						for (int b=2;b<aNode.length;b++) {
-							if (aNode[b].delta>aNode[best].delta) best = b;
+						for (int b=2;b<assoc.length(aNode);b++) {
+							if (assoc.getDelta(aNode, b)>assoc.getDelta(aNode, best)) best = b;
 						}
-						bintree.addValue(aNode[best].delta, id, best);
+						bintree.addValue(assoc.getDelta(aNode, best), id, best);
 
-						if (debug) if (aNode[best].delta>1) {
+						if (debug) if (assoc.getDelta(aNode, best)>1) {
 							System.out.println(nclusters+": c= "+cost[iter]+" ("
-																	+bNode[0].delta+", "
-																	+bNode[0].weight+", "
-																	+bNode[0].size+" | "
-																	+pNode[0].delta+", "
-																	+pNode[0].weight+", "
-																	+pNode[0].size+" | "
-																	+aNode[0].delta+", "
-																	+aNode[0].weight+", "
-																	+aNode[0].size+")");					   
+																	+assoc.getDelta(bNode, 0)+", "
+																	+assoc.getWeight(bNode, 0)+", "
+																	+assoc.getSize(bNode, 0)+" | "
+																	+assoc.getDelta(pNode, 0)+", "
+																	+assoc.getWeight(pNode, 0)+", "
+																	+assoc.getSize(pNode, 0)+" | "
+																	+assoc.getDelta(aNode, 0)+", "
+																	+assoc.getWeight(aNode, 0)+", "
+																	+assoc.getSize(aNode, 0)+")");					   
 							
-							for (int n=1; n<aNode.length; n++) {
-								System.out.print("<"+aNode[n].delta+", "+aNode[n].weight+", "+aNode[n].size+">");
+							for (int n=1; n<assoc.length(aNode); n++) {
+								System.out.print("<"+assoc.getDelta(aNode, n)+", "+assoc.getWeight(aNode, n)+", "+assoc.getSize(aNode, n)+">");
 							}
 							System.out.print("\n");
 						}
@@ -1636,12 +1581,10 @@ public class FastAggregativeGraphClustering {
 					}
 					
 					// replace the older values with info on what is the new label
-					assoc[lbest] = null;
-					assoc[lpair] = null;
-					assoc[lbest] = new Triple[1];
-					assoc[lpair] = new Triple[1];
-					assoc[lbest][0] = new Triple(id);
-					assoc[lpair][0] = new Triple(id);
+					assoc.setLength(lbest, 1);
+					assoc.setLength(lpair, 1);
+					assoc.set(lbest, 0, id, 0.0f, 0.0f, 1.0f);
+					assoc.set(lpair, 0, id, 0.0f, 0.0f, 1.0f);
 					
 					// de-activate the labels
 					active.set(lbest, false);
@@ -1675,16 +1618,16 @@ public class FastAggregativeGraphClustering {
 
 		for (int lb=1;lb<=nlb;lb++) {
 			//if (debug) System.out.print(".");
-			Triple[] node = assoc[lb];
+			int node = lb;
 			// only store the largest delta (the others will never be selected because it gets relabeled)
-			if (node.length>1) {
+			if (assoc.length(node)>1) {
 				int best=1;
 				//float bestscore = node.get(1).weight/node.get(1).delta/(node.get(0).delta+assoc.get(node.get(1).id).get(0).delta);
-				for (int b=2;b<node.length;b++) {
-					if (node[b].delta>node[best].delta) best = b;
+				for (int b=2;b<assoc.length(node);b++) {
+					if (assoc.getDelta(node, b)>assoc.getDelta(node, best)) best = b;
 				}
 				//if (debug) System.out.print(""+node.get(best).delta+","+l+":"+best);
-				bintree.addValue(node[best].delta, node[0].id, best);
+				bintree.addValue(assoc.getDelta(node, best), assoc.getId(node, 0), best);
 			} else {
 				if (debug) System.out.print("!");	
 			}
@@ -1724,8 +1667,14 @@ public class FastAggregativeGraphClustering {
 		long widthsearchtime = 0;
 		long looptime = System.currentTimeMillis();
 		
+		int compactsize = 2*nclusters;
 		while (bintree.isNotEmpty() && nclusters>k0 && !stop) {
 			//if (debug) System.out.print(".");
+			// discard the values of merged clusters when they accumulate
+			if (bintree.getCurrentSize()>compactsize) {
+				bintree.removeInvalidId1(active);
+				compactsize = Math.max(2*bintree.getCurrentSize(), 2*nclusters);
+			}
 			
 			// retrive the best delta
 			float 	bcost = bintree.getFirst(); 
@@ -1735,14 +1684,14 @@ public class FastAggregativeGraphClustering {
 
 			// retrieve corresponding values (if they still exist)
 			if (active.get(lbest)) {
-				Triple[] bNode = assoc[lbest];
-				int	lpair = bNode[nbest].id;
+				int bNode = lbest;
+				int	lpair = assoc.getId(bNode, nbest);
 				
 				//if (debug) System.out.print("|"+lbest+"-"+lpair);
 			
 				// update the link label? no, because the weights are now different
 				if (active.get(lpair)) {
-					Triple[] pNode = assoc[lpair];
+					int pNode = lpair;
 
 					// only count iterations when changing the labels
 					iter++;
@@ -1753,31 +1702,30 @@ public class FastAggregativeGraphClustering {
 					
 					// new values
 					//ArrayList<Triple> aNode = new ArrayList<Triple>(Numerics.max(bNode.size(),pNode.size())-1);
-					Triple[] aNode = new Triple[bNode.length+pNode.length-3];
+					int aNode = id;
+					assoc.addNode(aNode, assoc.length(bNode)+assoc.length(pNode)-3);
 					// self-weight & degree
 					// d(uv) = d(u) + d(v)
 					// w(uv,uv) = w(u,u) + w(v,v) + 2*w(uv.uv)
-					aNode[0] = new Triple(id, Numerics.max(bNode[0].weight, pNode[0].weight, bNode[nbest].weight), 
-												Numerics.min(bNode[0].delta, pNode[0].delta),  
-												bNode[0].size + pNode[0].size );
+					assoc.set(aNode, 0, id, Numerics.max(assoc.getWeight(bNode, 0), assoc.getWeight(pNode, 0), assoc.getWeight(bNode, nbest)), Numerics.min(assoc.getDelta(bNode, 0), assoc.getDelta(pNode, 0)), assoc.getSize(bNode, 0) + assoc.getSize(pNode, 0));
 					
 					// new mixing weights
 					// w(uv,x) = w(u,x) + w(v,x)
 					// must check if the links still exist, not duplicate
 					
-					newclustertime += bNode.length+pNode.length;
+					newclustertime += assoc.length(bNode)+assoc.length(pNode);
 					
 					// using latest[] allows to preserve the tree structure inside assoc, but skip steps when attributing the labels
-					for (int n=1;n<bNode.length;n++) {
+					for (int n=1;n<assoc.length(bNode);n++) {
 						//int lbn = bNode[n].id;
-						int lbn = latest[bNode[n].id];
+						int lbn = latest[assoc.getId(bNode, n)];
 						if (lbn!=lpair) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -1785,28 +1733,28 @@ public class FastAggregativeGraphClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[bNode[n].id] = lbn;
+								latest[assoc.getId(bNode, n)] = lbn;
 								//bNode[n].id = lbn;
 							}
 							if (lbn!=lpair) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] = Numerics.min(bNode[n].weight,ngbWeight[lbn]);
-								ngbSize[lbn] += bNode[n].size;
+								ngbWeight[lbn] = Numerics.min(assoc.getWeight(bNode, n),ngbWeight[lbn]);
+								ngbSize[lbn] += assoc.getSize(bNode, n);
 							}							
 							// no need to check on all already created values!!
 						}
 					}
-					for (int n=1;n<pNode.length;n++) {
+					for (int n=1;n<assoc.length(pNode);n++) {
 						//int lbn = pNode[n].id;
-						int lbn = latest[pNode[n].id];
+						int lbn = latest[assoc.getId(pNode, n)];
 						if (lbn!=lbest) {
 							if (!active.get(lbn)) {
 								// make sure it's the most up-to-date version of the label
 								tracks.reset();
 								while (!active.get(lbn)) {
 									tracks.add(lbn);
-									lbn = latest[assoc[lbn][0].id];
+									lbn = latest[assoc.getId(lbn, 0)];
 									//lbn = assoc[lbn][0].id;
 									depthsearchtime++;
 								}
@@ -1814,15 +1762,15 @@ public class FastAggregativeGraphClustering {
 								for (int lb=0;lb<tracks.last;lb++)
 									latest[tracks.val[lb]] = lbn;
 									//assoc[tracks.val[lb]][0].id = lbn;
-								latest[pNode[n].id] = lbn;
+								latest[assoc.getId(pNode, n)] = lbn;
 								//pNode[n].id = lbn;
 								
 							}
 							if (lbn!=lbest) {
 								// add to the label
 								ngbList.set(lbn, true);
-								ngbWeight[lbn] = Numerics.min(pNode[n].weight,ngbWeight[lbn]);
-								ngbSize[lbn] += pNode[n].size;
+								ngbWeight[lbn] = Numerics.min(assoc.getWeight(pNode, n),ngbWeight[lbn]);
+								ngbSize[lbn] += assoc.getSize(pNode, n);
 							}
 							// no need to check on all already created values!!
 						}
@@ -1831,7 +1779,7 @@ public class FastAggregativeGraphClustering {
 					int l=1;
 					for (int lbn = ngbList.nextSetBit(0); lbn >= 0; lbn = ngbList.nextSetBit(lbn+1)) {
 						// create a new one
-						aNode[l] = new Triple(lbn, ngbWeight[lbn], ngbSize[lbn]);
+						assoc.set(aNode, l, lbn, ngbWeight[lbn], 0.0f, ngbSize[lbn]);
 						l++;
 						// reset the values
 						ngbWeight[lbn] = INF;
@@ -1841,11 +1789,7 @@ public class FastAggregativeGraphClustering {
 					
 					// make sure we don't have extra empty values
 					//aNode.trimToSize();
-					if (l<aNode.length) {
-						Triple[] tmp = new Triple[l];
-						for (int n=0;n<l;n++) tmp[n] = aNode[n];
-						aNode = tmp;
-					}
+					assoc.setLength(aNode, l);
 					
 					// set the new location parameters
 					ngbcluster.clear();
@@ -1930,29 +1874,29 @@ public class FastAggregativeGraphClustering {
 
 					// new deltas : no need of the u,v values anymore
 					// D(uv,x) = ( w(uv,uv) + w(x,x) + 2w(uv,x) )/( d(uv)+d(x) ) - w(uv,uv)/d(uv) - w(x,x)/d(x)
-					for (int n=1; n<aNode.length; n++) {
-						Triple[] wngb = assoc[aNode[n].id];
+					for (int n=1; n<assoc.length(aNode); n++) {
+						int wngb = assoc.getId(aNode, n);
 						// score : min joint weight - max( self-weight + k / size, self-weight + k / size)
-						aNode[n].delta = Numerics.min(aNode[0].weight + basis/aNode[0].size, 
-														wngb[0].weight + basis/wngb[0].size) - aNode[n].weight;
+						assoc.setDelta(aNode, n, Numerics.min(assoc.getWeight(aNode, 0) + basis/assoc.getSize(aNode, 0), 
+														assoc.getWeight(wngb, 0) + basis/assoc.getSize(wngb, 0)) - assoc.getWeight(aNode, n));
 					}
 					
 					/// probably not needed
 					// recompute the degree? (for averaged links)
-					other[iter] = bNode[nbest].weight;
-					self[iter] = Numerics.min(bNode[0].weight + basis/bNode[0].size,
-												pNode[0].weight + basis/pNode[0].size);
+					other[iter] = assoc.getWeight(bNode, nbest);
+					self[iter] = Numerics.min(assoc.getWeight(bNode, 0) + basis/assoc.getSize(bNode, 0),
+												assoc.getWeight(pNode, 0) + basis/assoc.getSize(pNode, 0));
 					
 					cost[iter] = bcost;
 
 					if (verbose) if (iter%(nlb/100)==0) {
 						long newtime = System.currentTimeMillis();
 						nstep++;
-						System.out.println("n="+nstep+", t="+(newtime-looptime)+", "+iter+" / "+nclusters+": c= "+bcost+" | "+bNode[nbest].weight
-																	+", s= "+bNode[0].weight
-																	+", o= "+pNode[0].weight
+						System.out.println("n="+nstep+", t="+(newtime-looptime)+", "+iter+" / "+nclusters+": c= "+bcost+" | "+assoc.getWeight(bNode, nbest)
+																	+", s= "+assoc.getWeight(bNode, 0)
+																	+", o= "+assoc.getWeight(pNode, 0)
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length
+																	+assoc.length(bNode)+", "+assoc.length(pNode)
 																	+"| n "+newclustertime+", d "+depthsearchtime+", w "+widthsearchtime+")");
 						looptime = newtime;
 						newclustertime = 0;
@@ -1966,29 +1910,26 @@ public class FastAggregativeGraphClustering {
 																	+", s= "+self[iter]
 																	+", o= "+other[iter]
 																	+" ("+bintree.getCurrentSize()+"|"
-																	+bNode.length+", "+pNode.length+")");	
+																	+assoc.length(bNode)+", "+assoc.length(pNode)+")");	
 					   first=false;
 					   if (firststop) stop = true;
 				   	}								
 					// add the new values to list, binary tree
-					assoc[id] = aNode;
 					active.set(id, true);
 					
-					if (aNode.length>1) {
+					if (assoc.length(aNode)>1) {
 						int best=1;
-						for (int b=2;b<aNode.length;b++) {
-							if (aNode[b].delta>aNode[best].delta) best = b;
+						for (int b=2;b<assoc.length(aNode);b++) {
+							if (assoc.getDelta(aNode, b)>assoc.getDelta(aNode, best)) best = b;
 						}
-						bintree.addValue(aNode[best].delta, id, best);
+						bintree.addValue(assoc.getDelta(aNode, best), id, best);
 					}
 					
 					// replace the older values with info on what is the new label
-					assoc[lbest] = null;
-					assoc[lpair] = null;
-					assoc[lbest] = new Triple[1];
-					assoc[lpair] = new Triple[1];
-					assoc[lbest][0] = new Triple(id);
-					assoc[lpair][0] = new Triple(id);
+					assoc.setLength(lbest, 1);
+					assoc.setLength(lpair, 1);
+					assoc.set(lbest, 0, id, 0.0f, 0.0f, 1.0f);
+					assoc.set(lpair, 0, id, 0.0f, 0.0f, 1.0f);
 					
 					// de-activate the labels
 					active.set(lbest, false);
@@ -2005,12 +1946,12 @@ public class FastAggregativeGraphClustering {
 					// update the neighbors too, but only up to a point 
 					// (-> use both strategies to gain speed in the two extreme worst case scenarios)
 					// (both strategies = this and the track updating)
-					for (int b=1;b<aNode.length && b<maxlength;b++) {
-						if (active.get(aNode[b].id)) {
-							widthsearchtime += assoc[aNode[b].id].length;
-							for (int c=1;c<assoc[aNode[b].id].length && c<maxlength;c++) {
-								if (latest[assoc[aNode[b].id][c].id]==lbest || latest[assoc[aNode[b].id][c].id]==lpair)
-									latest[assoc[aNode[b].id][c].id] = id;
+					for (int b=1;b<assoc.length(aNode) && b<maxlength;b++) {
+						if (active.get(assoc.getId(aNode, b))) {
+							widthsearchtime += assoc.length(assoc.getId(aNode, b));
+							for (int c=1;c<assoc.length(assoc.getId(aNode, b)) && c<maxlength;c++) {
+								if (latest[assoc.getId(assoc.getId(aNode, b), c)]==lbest || latest[assoc.getId(assoc.getId(aNode, b), c)]==lpair)
+									latest[assoc.getId(assoc.getId(aNode, b), c)] = id;
 								//if (assoc[aNode[b].id][c].id==lbest || assoc[aNode[b].id][c].id==lpair)
 								//	assoc[aNode[b].id][c].id = id;
 							}
@@ -2045,7 +1986,7 @@ public class FastAggregativeGraphClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -2063,7 +2004,7 @@ public class FastAggregativeGraphClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -2089,7 +2030,7 @@ public class FastAggregativeGraphClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -2124,7 +2065,7 @@ public class FastAggregativeGraphClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -2216,7 +2157,7 @@ public class FastAggregativeGraphClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -2230,7 +2171,7 @@ public class FastAggregativeGraphClustering {
 		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
 			int xyz = x + nx*y + nx*ny*z;
 			if (mask[xyz]) {
-				tmp[x][y][z][0] = assoc[latest[labeling[xyz]]][0].weight/assoc[latest[labeling[xyz]]][0].size;
+				tmp[x][y][z][0] = assoc.getWeight(latest[labeling[xyz]], 0)/assoc.getSize(latest[labeling[xyz]], 0);
 			}
 		}
 		return tmp;
@@ -2242,7 +2183,7 @@ public class FastAggregativeGraphClustering {
 		for (int n=0;n<2*nlb;n++) latest[n] = 0;
 		
 		for (int n=2*nlb-maxlb-1; n>0; n--) {
-			int lb = assoc[n][0].id;
+			int lb = assoc.getId(n, 0);
 			if (lb==n) latest[n] = lb;
 			else {
 				// recurse up to the top one
@@ -2258,10 +2199,10 @@ public class FastAggregativeGraphClustering {
 			if (mask[xyz]) {
 				double sum = 0.0;
 				double den = 0.0;
-				Triple[] node = assoc[latest[labeling[xyz]]];
-				for (int n=1;n<node.length;n++) {
-					sum += node[n].weight;
-					den += node[n].size;
+				int node = latest[labeling[xyz]];
+				for (int n=1;n<assoc.length(node);n++) {
+					sum += assoc.getWeight(node, n);
+					den += assoc.getSize(node, n);
 				}
 				tmp[x][y][z][0] = (float)(sum/den);
 			}
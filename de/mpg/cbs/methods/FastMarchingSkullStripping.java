@@ -41,7 +41,7 @@ public class FastMarchingSkullStripping {
 	// segmentation parameters
 	private		CriticalPointLUT	lut;				// the LUT for critical points
 	private		boolean				checkComposed;		// check if the objects are well-composed too (different LUTs)
-	private 	BinaryHeap2D		tree;		   		// the binary tree used for the fast marching
+	private 	IndexedHeap		tree;		   		// the indexed tree used for the fast marching
 	private		float[]				score;
 	private		byte[]				segmentation;
 	private		boolean[]			region;
@@ -317,7 +317,7 @@ public class FastMarchingSkullStripping {
 		}
 		
     	// build a binary tree at the boundary
-    	tree = new BinaryHeap2D(nix+niy+niz, BinaryHeap2D.MAXTREE);
+    	tree = new IndexedHeap(nsx*nsy*nsz, nix+niy+niz, IndexedHeap.MAXTREE);
     	float diff, sim;
     	float mindiff,maxdiff;
     	float valf, vali, valt;
@@ -1,5 +1,7 @@
 package de.mpg.cbs.methods;
 
+import java.util.*;
+
 import de.mpg.cbs.utilities.Numerics;
 
 import org.apache.commons.math3.util.FastMath;
@@ -13,20 +15,41 @@ import org.apache.commons.math3.analysis.function.Gaussian;
 
 /**
  * convenience class to compute Jensen-Shannon divergence of Gaussian mixtures quickly.
- * the values are pre-computed and then accessed in the computations.
- * non-covered cases use the regular estimation function instead.
+ * the values are pre-computed and then interpolated in the computations.
+ * differences of means beyond the table range use an asymptotic approximation instead.
+ * tables are immutable: use getTable() to share a single table for given parameters
+ * between instances and threads.
  */
 public class JensenShannonDivTable {
-    private double range;			// max relative distance between means [0, 3]
-    private double resolution;		// discretization step of the parameters (affects matrix size)
-    private double sampling;			// discretization step of the JSD estimator
-    private int maxdiff;
-    private int maxratio;
+    private final double range;			// max relative distance between means [0, 3]
+    private final double resolution;	// discretization step of the parameters (affects matrix size)
+    private final double sampling;		// discretization step of the JSD estimator
+    private final int maxdiff;
+    private final int maxratio;
 
-    private double[][] jsd;
+    private final double[][] jsd;		// values for diff in [0, maxdiff*resolution], ratio in [0, 1]
 
-	private final double	ZERO = 1e-30;
-    private final double	INF = 1e+30;
+	private static final double	ZERO = 1e-30;
+	private static final double	MINSAMPLES = 4.0;	// minimum number of samples per standard deviation
+    private static final double	LN2 = FastMath.log(2.0);
+	
+	// tables already computed, for all parameters
+	private static final HashMap<String,JensenShannonDivTable> tables = new HashMap<String,JensenShannonDivTable>();
+	
+	/**
+	 *	get the table for the given parameters, computed only once
+	 */
+	public static final JensenShannonDivTable getTable(double range_, double resolution_, double sampling_) {
+		String key = range_+"|"+resolution_+"|"+sampling_;
+		synchronized (tables) {
+			JensenShannonDivTable table = tables.get(key);
+			if (table==null) {
+				table = new JensenShannonDivTable(range_, resolution_, sampling_);
+				tables.put(key, table);
+			}
+			return table;
+		}
+	}
 	
     // setting up the table: max range should be 3, with a table size of 1/resolution x 3/resolution
     public JensenShannonDivTable(double range_, double resolution_, double sampling_){
@@ -36,31 +59,45 @@ public class JensenShannonDivTable {
    	   
    	   maxdiff = Numerics.ceil(range/resolution);
    	   maxratio = Numerics.ceil(1.0/resolution);
-   	   jsd = new double[maxdiff][maxratio];
+   	   jsd = new double[maxdiff+1][maxratio+1];
    	   
-   	   for (int d=0;d<maxdiff;d++) for (int r=1;r<maxratio;r++) {
-   	   	   jsd[d][r] = computeJSD(d*resolution, r*resolution);
+   	   for (int d=0;d<=maxdiff;d++) {
+   	   	   // limit case of a vanishing variance: no overlap
+   	   	   jsd[d][0] = LN2;
+   	   	   for (int r=1;r<=maxratio;r++) {
+   	   	   	   jsd[d][r] = computeJSD(d*resolution, Numerics.min(r*resolution, 1.0));
+   	   	   	   if (Double.isNaN(jsd[d][r]) || Double.isInfinite(jsd[d][r]))
+   	   	   	   	   throw new IllegalStateException("invalid Jensen-Shannon divergence table value "+jsd[d][r]
+   	   	   	   	   								  +" for diff "+(d*resolution)+", ratio "+(r*resolution));
+   	   	   }
    	   }
    }
    
    public final double lookup(double mu1, double sq1, double mu2, double sq2) {	
 		// normalize
-		int diff, ratio;
-		if (sq1>sq2) {
-			diff = Numerics.round(Numerics.abs(mu1-mu2)/sq1/resolution);
-			ratio = Numerics.round(sq2/sq1/resolution);
+		double sqmax = Numerics.max(sq1, sq2);
+		double sqmin = Numerics.min(sq1, sq2);
+		if (sqmax<ZERO) return (mu1==mu2) ? 0.0 : LN2;
+		
+		double diff = Numerics.abs(mu1-mu2)/sqmax/resolution;
+		double ratio = sqmin/sqmax/resolution;
+		
+		// bilinear interpolation in the table
+		int r0 = Numerics.min(Numerics.floor(ratio), maxratio-1);
+		double wr = ratio-r0;
+		if (diff<maxdiff) {
+			int d0 = Numerics.floor(diff);
+			double wd = diff-d0;
+			return (1.0-wd)*((1.0-wr)*jsd[d0][r0] + wr*jsd[d0][r0+1])
+					   + wd*((1.0-wr)*jsd[d0+1][r0] + wr*jsd[d0+1][r0+1]);
 		} else {
-			diff = Numerics.round(Numerics.abs(mu1-mu2)/sq2/resolution);
-			ratio = Numerics.round(sq1/sq2/resolution);
+			// beyond the table: the divergence goes to log(2) as the overlap of the distributions,
+			// which decreases like their Bhattacharyya coefficient exp(-diff^2/4(1+ratio^2))
+			double edge = (1.0-wr)*jsd[maxdiff][r0] + wr*jsd[maxdiff][r0+1];
+			double d2 = Numerics.square(diff*resolution) - Numerics.square(maxdiff*resolution);
+			double s2 = 1.0 + Numerics.square(ratio*resolution);
+			return LN2 - (LN2-edge)*FastMath.exp(-0.25*d2/s2);
 		}
-     	if (diff<maxdiff && ratio<maxratio) {
-     		return jsd[diff][ratio];
-     	} else {
-     		// simpler: use worst case scenario
-     		System.out.print(";");
-     		//return computeJSD(diff*resolution, ratio*resolution);
-     		return jsd[maxdiff-1][maxratio-1];
-     	}
    }
 	
    private final double computeJSD(double diff, double ratio) {
@@ -71,11 +108,14 @@ public class JensenShannonDivTable {
 		Gaussian p2 = new Gaussian(diff, ratio);
 		
 		double jsdiv = 0.0;
-		double step = sampling*(xmax-xmin);
+		// the narrow distribution of small ratios needs a finer sampling
+		double step = Numerics.min(sampling*(xmax-xmin), ratio/MINSAMPLES);
 		for (double x=xmin;x<=xmax;x+=step) {
 			double p1x = p1.value(x);
 			double p2x = p2.value(x);
-			jsdiv += p1x*FastMath.log(2.0*p1x/(p1x+p2x)) + p2x*FastMath.log(2.0*p2x/(p1x+p2x));
+			// 0 log 0 = 0 (the densities underflow far from the means)
+			if (p1x>0) jsdiv += p1x*FastMath.log(2.0*p1x/(p1x+p2x));
+			if (p2x>0) jsdiv += p2x*FastMath.log(2.0*p2x/(p1x+p2x));
 		}
 		return jsdiv*step/2.0;
 	}
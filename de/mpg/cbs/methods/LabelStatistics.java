@@ -0,0 +1,515 @@
+package de.mpg.cbs.methods;
+
+import java.util.*;
+
+import de.mpg.cbs.structures.*;
+import de.mpg.cbs.utilities.*;
+import de.mpg.cbs.libraries.*;
+
+/**
+ *
+ *  This algorithm computes overlap and boundary statistics for all the labels
+ *	of a segmentation compared to a reference labeling at once.
+ *	<p>
+ *	The overlaps are derived from a confusion matrix of the labels, built in a single
+ *	pass over the images. The boundary distances use the 6-connected inside boundaries
+ *	of each label, with exact squared distance transforms restricted to the bounding box
+ *	of the boundaries of each label. The results are the same as computing each label
+ *	separately with ObjectStatistics (distances in voxels, image borders excluded).
+ *
+ *	@version    Oct 2016
+ *	@author     Pierre-Louis Bazin
+ *
+ *
+ */
+
+public class LabelStatistics {
+
+	// data buffers
+	private		int[][][]	segmentation;
+	private		int[][][]	reference;			// may be null: only volumes are computed
+	private		int			nx,ny,nz;
+	private		int[]		lbid;				// the requested labels
+
+	// label lookup: labels[slot] for each slot, other labels are mapped to slot nslot
+	private		int[]		labels;
+	private		int			nslot;
+	private		int			lbmin;
+	private		int[]		lbtable = null;		// dense lookup table, for compact label ranges
+
+	// results
+	private		long[][]	confusion = null;	// [segmentation slot][reference slot], with others last
+	private		long[]		dilatedSegOverlap = null;	// |dil(seg) & ref|
+	private		long[]		dilatedRefOverlap = null;	// |seg & dil(ref)|
+	private		float[][]	surface = null;		// [slot][ASD, ASdiff, sum sq, max sq]
+
+	private static final int	MAXTABLE = 1<<20;
+	private static final float	INF = 1e20f;
+
+	private static final boolean	debug = false;
+
+	public LabelStatistics(int[][][] seg_, int[][][] ref_, int[] lbid_, int nx_, int ny_, int nz_) {
+		segmentation = seg_;
+		reference = ref_;
+		lbid = lbid_;
+		nx = nx_;
+		ny = ny_;
+		nz = nz_;
+
+		// sorted unique labels
+		labels = Arrays.copyOf(lbid, lbid.length);
+		Arrays.sort(labels);
+		int nu = 0;
+		for (int n=0;n<labels.length;n++) if (nu==0 || labels[n]!=labels[nu-1]) labels[nu++] = labels[n];
+		labels = Arrays.copyOf(labels, nu);
+		nslot = nu;
+		if (nu>0) {
+			lbmin = labels[0];
+			long range = (long)labels[nu-1]-(long)labels[0]+1L;
+			if (range<=MAXTABLE) {
+				lbtable = new int[(int)range];
+				Arrays.fill(lbtable, nslot);
+				for (int n=0;n<nu;n++) lbtable[labels[n]-lbmin] = n;
+			}
+		}
+	}
+
+	public void finalize() {
+		segmentation = null;
+		reference = null;
+		confusion = null;
+		surface = null;
+	}
+
+	/** slot of a label value, nslot for the labels not requested */
+	private final int slot(int lb) {
+		if (lbtable!=null) {
+			long id = (long)lb-(long)lbmin;
+			if (id<0 || id>=lbtable.length) return nslot;
+			return lbtable[(int)id];
+		}
+		int n = Arrays.binarySearch(labels, lb);
+		return (n>=0) ? n : nslot;
+	}
+
+	private final int slot(int[][][] img, int x, int y, int z) {
+		return slot(img[x][y][z]);
+	}
+
+	/**
+	 *	confusion matrix of all the labels, in one pass over the images
+	 *	(with a null reference, only the segmentation volumes are counted)
+	 */
+	public final void computeOverlaps() {
+		int nchunks = ParallelProcessing.numberOfChunks(nx);
+		final long[][][] partial = new long[nchunks][nslot+1][];
+		ParallelProcessing.forEach(nx, nchunks, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int xmin, int xmax) {
+				long[][] count = partial[chunk];
+				for (int n=0;n<=nslot;n++) count[n] = new long[(reference!=null) ? nslot+1 : 1];
+				for (int x=xmin;x<xmax;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
+					int s = slot(segmentation, x,y,z);
+					int r = (reference!=null) ? slot(reference, x,y,z) : 0;
+					count[s][r]++;
+				}
+			}
+		});
+		confusion = new long[nslot+1][(reference!=null) ? nslot+1 : 1];
+		for (int c=0;c<nchunks;c++) if (partial[c][0]!=null) {
+			for (int s=0;s<=nslot;s++) for (int r=0;r<confusion[s].length;r++) confusion[s][r] += partial[c][s][r];
+		}
+	}
+
+	/** the full confusion matrix [segmentation slot][reference slot], in sorted label order with other labels last */
+	public final long[][] getConfusionMatrix() {
+		if (confusion==null) computeOverlaps();
+		return confusion;
+	}
+
+	/** the unique requested labels, in the order of the confusion matrix */
+	public final int[] getSortedLabels() { return labels; }
+
+	private final long segmentationCount(int s) {
+		long sum = 0;
+		for (int r=0;r<confusion[s].length;r++) sum += confusion[s][r];
+		return sum;
+	}
+
+	private final long referenceCount(int r) {
+		long sum = 0;
+		for (int s=0;s<=nslot;s++) sum += confusion[s][r];
+		return sum;
+	}
+
+	/** volumes (in voxels) of the requested labels in the segmentation */
+	public final float[] segmentationVolumes() {
+		if (confusion==null) computeOverlaps();
+		float[] vol = new float[lbid.length];
+		for (int n=0;n<lbid.length;n++) vol[n] = segmentationCount(slot(lbid[n]));
+		return vol;
+	}
+
+	/** volumes (in voxels) of the requested labels in the reference */
+	public final float[] referenceVolumes() {
+		if (confusion==null) computeOverlaps();
+		float[] vol = new float[lbid.length];
+		for (int n=0;n<lbid.length;n++) vol[n] = referenceCount(slot(lbid[n]));
+		return vol;
+	}
+
+	/** volumes of the segmented labels, reference labels and their intersections */
+	private final float[][] overlapVolumes() {
+		if (confusion==null) computeOverlaps();
+		float[][] vol = new float[3][lbid.length];
+		for (int n=0;n<lbid.length;n++) {
+			int s = slot(lbid[n]);
+			vol[0][n] = segmentationCount(s);
+			vol[1][n] = referenceCount(s);
+			vol[2][n] = confusion[s][s];
+		}
+		return vol;
+	}
+
+	public final float[] diceOverlap() {
+		float[][] vol = overlapVolumes();
+		float[] dice = new float[lbid.length];
+		for (int n=0;n<lbid.length;n++) {
+			float diff = vol[0][n]+vol[1][n]-2.0f*vol[2][n];
+			dice[n] = ((vol[0][n]+vol[1][n]-diff)/(vol[0][n]+vol[1][n]));
+		}
+		return dice;
+	}
+
+	public final float[] jaccardOverlap() {
+		float[][] vol = overlapVolumes();
+		float[] jaccard = new float[lbid.length];
+		for (int n=0;n<lbid.length;n++) {
+			float diff = vol[0][n]+vol[1][n]-2.0f*vol[2][n];
+			jaccard[n] = ((vol[0][n]+vol[1][n]-diff)/(vol[0][n]+vol[1][n]+diff));
+		}
+		return jaccard;
+	}
+
+	public final float[] volumeDifference() {
+		float[][] vol = overlapVolumes();
+		float[] voldiff = new float[lbid.length];
+		for (int n=0;n<lbid.length;n++) voldiff[n] = Numerics.abs(vol[0][n]/vol[1][n]-1.0f);
+		return voldiff;
+	}
+
+	public final float[] falsePositives() {
+		float[][] vol = overlapVolumes();
+		float[] fpos = new float[lbid.length];
+		for (int n=0;n<lbid.length;n++) fpos[n] = (vol[0][n]-vol[2][n])/vol[0][n];
+		return fpos;
+	}
+
+	public final float[] falseNegatives() {
+		float[][] vol = overlapVolumes();
+		float[] fneg = new float[lbid.length];
+		for (int n=0;n<lbid.length;n++) fneg[n] = (vol[1][n]-vol[2][n])/vol[1][n];
+		return fneg;
+	}
+
+	/**
+	 *	overlaps of each label with the other image dilated by a 3x3x3 cube, in one pass
+	 */
+	public final void computeDilatedOverlaps() {
+		int nchunks = ParallelProcessing.numberOfChunks(nx);
+		final long[][] partialSeg = new long[nchunks][];
+		final long[][] partialRef = new long[nchunks][];
+		ParallelProcessing.forEach(nx, nchunks, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int xmin, int xmax) {
+				long[] dilseg = new long[nslot+1];
+				long[] dilref = new long[nslot+1];
+				for (int x=xmin;x<xmax;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
+					int s = slot(segmentation, x,y,z);
+					int r = slot(reference, x,y,z);
+					boolean segfound = (r==nslot || s==r);
+					boolean reffound = (s==nslot || s==r);
+					for (int i=-1;i<=1 && !(segfound && reffound);i++) for (int j=-1;j<=1;j++) for (int k=-1;k<=1;k++) {
+						if (x+i>=0 && x+i<nx && y+j>=0 && y+j<ny && z+k>=0 && z+k<nz) {
+							if (!segfound && slot(segmentation, x+i,y+j,z+k)==r) segfound = true;
+							if (!reffound && slot(reference, x+i,y+j,z+k)==s) reffound = true;
+						}
+					}
+					if (r<nslot && segfound) dilseg[r]++;
+					if (s<nslot && reffound) dilref[s]++;
+				}
+				partialSeg[chunk] = dilseg;
+				partialRef[chunk] = dilref;
+			}
+		});
+		dilatedSegOverlap = new long[nslot+1];
+		dilatedRefOverlap = new long[nslot+1];
+		for (int c=0;c<nchunks;c++) if (partialSeg[c]!=null) {
+			for (int n=0;n<=nslot;n++) {
+				dilatedSegOverlap[n] += partialSeg[c][n];
+				dilatedRefOverlap[n] += partialRef[c][n];
+			}
+		}
+	}
+
+	public final float[] dilatedDiceOverlap() {
+		float[][] vol = overlapVolumes();
+		if (dilatedSegOverlap==null) computeDilatedOverlaps();
+		float[] dice = new float[lbid.length];
+		for (int n=0;n<lbid.length;n++) {
+			int s = slot(lbid[n]);
+			float inter = (float)dilatedSegOverlap[s] + (float)dilatedRefOverlap[s];
+			dice[n] = (inter/(vol[0][n]+vol[1][n]));
+		}
+		return dice;
+	}
+
+	public final float[] dilatedFalsePositives() {
+		float[][] vol = overlapVolumes();
+		if (dilatedSegOverlap==null) computeDilatedOverlaps();
+		float[] fpos = new float[lbid.length];
+		for (int n=0;n<lbid.length;n++) fpos[n] = (vol[0][n]-dilatedRefOverlap[slot(lbid[n])])/vol[0][n];
+		return fpos;
+	}
+
+	public final float[] dilatedFalseNegatives() {
+		float[][] vol = overlapVolumes();
+		if (dilatedSegOverlap==null) computeDilatedOverlaps();
+		float[] fneg = new float[lbid.length];
+		for (int n=0;n<lbid.length;n++) fneg[n] = (vol[1][n]-dilatedSegOverlap[slot(lbid[n])])/vol[1][n];
+		return fneg;
+	}
+
+	/**
+	 *	boundary voxels of all the labels in one pass: the inside 6-connected boundaries
+	 *	of each label, ignoring the outer layer of the image (as when cropping the objects),
+	 *	sorted by label and in x,y,z scanning order for each label.
+	 *	The boundary voxels of label slot s are bound[start[s]] to bound[start[s+1]-1].
+	 */
+	private final int[] labelBoundaries(final int[][][] img, int[] start) {
+		int nchunks = ParallelProcessing.numberOfChunks(nx);
+		final int[][] points = new int[nchunks][];
+		final int[][] slots = new int[nchunks][];
+		final int[] npt = new int[nchunks];
+		ParallelProcessing.forEach(nx, nchunks, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int xmin, int xmax) {
+				int[] pt = new int[64];
+				int[] sl = new int[64];
+				int np = 0;
+				for (int x=Numerics.max(xmin,1);x<Numerics.min(xmax,nx-1);x++) for (int y=1;y<ny-1;y++) for (int z=1;z<nz-1;z++) {
+					int lb = img[x][y][z];
+					int s = slot(lb);
+					if (s==nslot) continue;
+					if (isOutside(img,x+1,y,z,lb) || isOutside(img,x-1,y,z,lb)
+						|| isOutside(img,x,y+1,z,lb) || isOutside(img,x,y-1,z,lb)
+						|| isOutside(img,x,y,z+1,lb) || isOutside(img,x,y,z-1,lb)) {
+						if (np==pt.length) {
+							pt = Arrays.copyOf(pt, 2*np);
+							sl = Arrays.copyOf(sl, 2*np);
+						}
+						pt[np] = z+nz*(y+ny*x);
+						sl[np] = s;
+						np++;
+					}
+				}
+				points[chunk] = pt;
+				slots[chunk] = sl;
+				npt[chunk] = np;
+			}
+		});
+		// stable counting sort by label, keeping the scanning order
+		for (int s=0;s<=nslot;s++) start[s] = 0;
+		for (int c=0;c<nchunks;c++) for (int p=0;p<npt[c];p++) start[slots[c][p]+1]++;
+		for (int s=0;s<nslot;s++) start[s+1] += start[s];
+		int[] bound = new int[start[nslot]];
+		int[] next = Arrays.copyOf(start, nslot);
+		for (int c=0;c<nchunks;c++) for (int p=0;p<npt[c];p++) {
+			bound[next[slots[c][p]]++] = points[c][p];
+		}
+		return bound;
+	}
+
+	/** whether a voxel is outside the label, with the outer layer of the image always outside */
+	private final boolean isOutside(int[][][] img, int x, int y, int z, int lb) {
+		if (x<1 || x>=nx-1 || y<1 || y>=ny-1 || z<1 || z>=nz-1) return true;
+		return (img[x][y][z]!=lb);
+	}
+
+	/**
+	 *	surface distances for all the labels: each label is processed separately (in parallel)
+	 *	with exact distance transforms of the segmentation and reference boundaries,
+	 *	inside the bounding box of both boundaries
+	 */
+	public final void computeSurfaceDistances() {
+		final int[] segstart = new int[nslot+1];
+		final int[] refstart = new int[nslot+1];
+		final int[] segbound = labelBoundaries(segmentation, segstart);
+		final int[] refbound = labelBoundaries(reference, refstart);
+		if (debug) System.out.println("boundary voxels: "+segbound.length+" (segmentation), "+refbound.length+" (reference)");
+
+		surface = new float[nslot][];
+		ParallelProcessing.forEach(nslot, nslot, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int smin, int smax) {
+				for (int s=smin;s<smax;s++) {
+					surface[s] = surfaceDistances(s, segbound, segstart[s], segstart[s+1], refbound, refstart[s], refstart[s+1]);
+				}
+			}
+		});
+	}
+
+	/** average distance, average signed difference, sum of squared distances and maximum squared distance */
+	private final float[] surfaceDistances(int s, int[] seg, int s0, int s1, int[] ref, int r0, int r1) {
+		// check for empty objects
+		if (s0==s1 || r0==r1) return null;
+
+		// bounding box of both boundaries
+		int x0 = nx, y0 = ny, z0 = nz, xN = 0, yN = 0, zN = 0;
+		for (int p=0;p<2;p++) {
+			int[] pts = (p==0) ? seg : ref;
+			int pmin = (p==0) ? s0 : r0;
+			int pmax = (p==0) ? s1 : r1;
+			for (int k=pmin;k<pmax;k++) {
+				int z = pts[k]%nz;
+				int y = (pts[k]/nz)%ny;
+				int x = pts[k]/(nz*ny);
+				if (x<x0) x0 = x;
+				if (x>xN) xN = x;
+				if (y<y0) y0 = y;
+				if (y>yN) yN = y;
+				if (z<z0) z0 = z;
+				if (z>zN) zN = z;
+			}
+		}
+		int mx = xN-x0+1, my = yN-y0+1, mz = zN-z0+1;
+
+		float[] dist1 = new float[mx*my*mz];
+		float[] dist2 = new float[mx*my*mz];
+		squaredDistanceToPoints(seg, s0, s1, dist1, x0,y0,z0, mx,my,mz);
+		squaredDistanceToPoints(ref, r0, r1, dist2, x0,y0,z0, mx,my,mz);
+
+		// find all correspondences, in the same order as when scanning the cropped images
+		float avgdist = 0.0f, avgdiff = 0.0f, avgsq = 0.0f, avgnb = 0.0f;
+		float maxdist = 0.0f;
+		int lb = labels[s];
+		int ks = s0, kr = r0;
+		while (ks<s1 || kr<r1) {
+			if (ks<s1 && (kr>=r1 || seg[ks]<=ref[kr])) {
+				// segmentation boundary
+				int xyz = seg[ks];
+				int z = xyz%nz, y = (xyz/nz)%ny, x = xyz/(nz*ny);
+				float d2 = dist2[z-z0+mz*(y-y0+my*(x-x0))];
+				float d = (float)Math.sqrt(d2);
+				avgdist += d;
+				if (!isOutside(reference,x,y,z,lb)) avgdiff += d;
+				else avgdiff += -d;
+				avgsq += d2;
+				avgnb++;
+				if (d2>maxdist) maxdist = d2;
+				ks++;
+			} else {
+				// reference boundary
+				int xyz = ref[kr];
+				int z = xyz%nz, y = (xyz/nz)%ny, x = xyz/(nz*ny);
+				float d1 = dist1[z-z0+mz*(y-y0+my*(x-x0))];
+				float d = (float)Math.sqrt(d1);
+				avgdist += d;
+				if (!isOutside(segmentation,x,y,z,lb)) avgdiff += -d;
+				else avgdiff += d;
+				avgsq += d1;
+				avgnb++;
+				if (d1>maxdist) maxdist = d1;
+				kr++;
+			}
+		}
+		return new float[]{avgdist/avgnb, avgdiff/avgnb, (float)Math.sqrt(avgsq/avgnb), (float)Math.sqrt(maxdist)};
+	}
+
+	/**
+	 *	exact squared Euclidean distance (in voxels) to a set of points inside a box,
+	 *	with separable lower envelopes of parabolas along each axis
+	 */
+	private final void squaredDistanceToPoints(int[] pts, int pmin, int pmax, float[] dist,
+												int x0, int y0, int z0, int mx, int my, int mz) {
+		Arrays.fill(dist, INF);
+		for (int k=pmin;k<pmax;k++) {
+			int z = pts[k]%nz, y = (pts[k]/nz)%ny, x = pts[k]/(nz*ny);
+			dist[z-z0+mz*(y-y0+my*(x-x0))] = 0.0f;
+		}
+		int mmax = Numerics.max(mx,my,mz);
+		float[] f = new float[mmax];
+		float[] d = new float[mmax];
+		int[] v = new int[mmax];
+		float[] b = new float[mmax+1];
+		// along z, y and x
+		for (int x=0;x<mx;x++) for (int y=0;y<my;y++) {
+			int offset = mz*(y+my*x);
+			for (int z=0;z<mz;z++) f[z] = dist[offset+z];
+			lowerEnvelope(f, d, v, b, mz);
+			for (int z=0;z<mz;z++) dist[offset+z] = d[z];
+		}
+		for (int x=0;x<mx;x++) for (int z=0;z<mz;z++) {
+			int offset = z+mz*my*x;
+			for (int y=0;y<my;y++) f[y] = dist[offset+mz*y];
+			lowerEnvelope(f, d, v, b, my);
+			for (int y=0;y<my;y++) dist[offset+mz*y] = d[y];
+		}
+		for (int y=0;y<my;y++) for (int z=0;z<mz;z++) {
+			int offset = z+mz*y;
+			for (int x=0;x<mx;x++) f[x] = dist[offset+mz*my*x];
+			lowerEnvelope(f, d, v, b, mx);
+			for (int x=0;x<mx;x++) dist[offset+mz*my*x] = d[x];
+		}
+	}
+
+	/** 1D squared distance transform of the sampled function f (lines without finite values are left unchanged) */
+	private static final void lowerEnvelope(float[] f, float[] d, int[] v, float[] b, int n) {
+		int k = -1;
+		for (int q=0;q<n;q++) if (f[q]<INF) {
+			if (k<0) {
+				k = 0;
+				v[0] = q;
+				b[0] = -INF;
+				b[1] = INF;
+				continue;
+			}
+			float s = ((f[q]+q*q)-(f[v[k]]+v[k]*v[k]))/(2.0f*(q-v[k]));
+			while (s<=b[k]) {
+				k--;
+				s = ((f[q]+q*q)-(f[v[k]]+v[k]*v[k]))/(2.0f*(q-v[k]));
+			}
+			k++;
+			v[k] = q;
+			b[k] = s;
+			b[k+1] = INF;
+		}
+		if (k<0) {
+			for (int q=0;q<n;q++) d[q] = f[q];
+			return;
+		}
+		k = 0;
+		for (int q=0;q<n;q++) {
+			while (b[k+1]<q) k++;
+			d[q] = (q-v[k])*(q-v[k]) + f[v[k]];
+		}
+	}
+
+	private final float[] surfaceStatistic(int id) {
+		if (surface==null) computeSurfaceDistances();
+		float[] stat = new float[lbid.length];
+		for (int n=0;n<lbid.length;n++) {
+			float[] val = surface[slot(lbid[n])];
+			stat[n] = (val!=null) ? val[id] : -1.0f;
+		}
+		return stat;
+	}
+
+	/** average surface distance of each label (-1 for empty labels) */
+	public final float[] averageSurfaceDistance() { return surfaceStatistic(0); }
+
+	/** average signed surface difference of each label (-1 for empty labels) */
+	public final float[] averageSurfaceDifference() { return surfaceStatistic(1); }
+
+	/** average squared surface distance of each label (-1 for empty labels) */
+	public final float[] averageSquaredSurfaceDistance() { return surfaceStatistic(2); }
+
+	/** Hausdorff distance of each label (-1 for empty labels) */
+	public final float[] hausdorffDistance() { return surfaceStatistic(3); }
+}
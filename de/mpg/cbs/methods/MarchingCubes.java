@@ -5,9 +5,16 @@ import java.io.*;
 
 import edu.jhu.ece.iacl.jist.structures.geom.EmbeddedSurface;
 
+import de.mpg.cbs.utilities.*;
+
 /**
  * Generates a topologically consistent iso-surface for a level set with a
  * specified digital connectivity rule.
+ * <p>
+ * The cubes can be processed in parallel slabs along z, each with its own
+ * edge table; the vertices shared on the slab boundaries are welded afterwards,
+ * so the mesh is identical to the serial one (same vertex and triangle order).
+ * Vertices and triangles are stored in primitive buffers.
  * 
  * @author Blake Lucas
  * 
@@ -43,9 +50,19 @@ public class MarchingCubes {
 
 	private EdgeIndex[] edgelist;
 
-	private ArrayList<Point3d> verts;
+	// vertex coordinates (x,y,z) and the edge of each vertex (null for cube-centered vertices)
+	private float[] verts;
+	private EdgeIndex[] vertedges;
+	private int nverts;
 
-	private ArrayList<TriangleIndex> trilist;
+	// triangle vertex ids (vid1,vid2,vid3)
+	private int[] tris;
+	private int ntris;
+	
+	// work variables
+	private Point3d vertex = new Point3d();
+	private Point3d endpt1 = new Point3d();
+	private Point3d endpt2 = new Point3d();
 
 	private int digitalConnectivityRule;
 	public static final int CONNECT_6_18 = 1;
@@ -98,51 +115,65 @@ public class MarchingCubes {
 	
 		this.digitalConnectivityRule = conn;
 		this.isoLevel = Lev;
-		verts = new ArrayList<Point3d>();
-		int i, j, k;
-		float tmp;
-		for (i = 0; i < nx; i++) {
-			for (j = 0; j < ny; j++) {
-				for (k = 0; k < nz; k++) {
-					tmp = data[i+nx*j+nx*ny*k] - Lev;
-
-					if (Math.abs(tmp) < perturbation) {
-						if(tmp==0){
-							if (inclusive) {
-								// Points with value exactly = isovalue is
-								// considered as inside
-								data[i+nx*j+nx*ny*k] = perturbation;
+		final float level = Lev;
+		final boolean incl = inclusive;
+		final float pert = perturbation;
+		ParallelProcessing.forEachSlab(nz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int kmin, int kmax) {
+				float tmp;
+				for (int k = kmin; k < kmax; k++) {
+					for (int j = 0; j < ny; j++) {
+						for (int i = 0; i < nx; i++) {
+							tmp = data[i+nx*j+nx*ny*k] - level;
+		
+							if (Math.abs(tmp) < pert) {
+								if(tmp==0){
+									if (incl) {
+										// Points with value exactly = isovalue is
+										// considered as inside
+										data[i+nx*j+nx*ny*k] = pert;
+									} else {
+										// Points with value exactly = isovalue is
+										// considered as outside
+			
+										data[i+nx*j+nx*ny*k] = -pert;
+									}
+								} else {
+									data[i+nx*j+nx*ny*k] = pert*Math.signum(tmp);
+								}
+								        
 							} else {
-								// Points with value exactly = isovalue is
-								// considered as outside
-	
-								data[i+nx*j+nx*ny*k] = -perturbation;
+		
+								data[i+nx*j+nx*ny*k] = tmp;
 							}
-						} else {
-							data[i+nx*j+nx*ny*k] = perturbation*Math.signum(tmp);
 						}
-						        
-					} else {
-
-						data[i+nx*j+nx*ny*k] = tmp;
 					}
-
 				}
 			}
-		}
+		});
 
 		if (debug) System.out.println("cubes");
 	
-		edgelist = new EdgeIndex[2 * HASHSIZE];
-		trilist = new ArrayList<TriangleIndex>();
-		int x, y, z;
-		
-		for (z = 0; z<nz-1; z++) {
-			for (y = 0; y<ny-1; y++) {
-				for (x = 0; x<nx-1; x++) {
-					docube(x, y, z);
+		final int[] slabs = ParallelProcessing.slabs(nz-1);
+		if (slabs.length<=2) {
+			// serial version
+			initMesh();
+			computeCubes(0, nz-1);
+		} else {
+			// parallel slabs, each with its own edge table
+			final MarchingCubes[] slab = new MarchingCubes[slabs.length-1];
+			ParallelProcessing.forEach(slabs, new ParallelProcessing.RangeTask() {
+				public void process(int chunk, int zmin, int zmax) {
+					slab[chunk] = new MarchingCubes(data, nx, ny, nz);
+					slab[chunk].digitalConnectivityRule = digitalConnectivityRule;
+					slab[chunk].isoLevel = isoLevel;
+					slab[chunk].initMesh();
+					slab[chunk].computeCubes(zmin, zmax);
 				}
-			}
+			});
+			if (debug) System.out.println("merge");
+			initMesh();
+			for (MarchingCubes s : slab) if (s!=null) mergeSlab(s);
 		}
 		
 		if (debug) System.out.println("done");
@@ -150,6 +181,73 @@ public class MarchingCubes {
 		return;
 	}
 
+	private void initMesh() {
+		edgelist = new EdgeIndex[2 * HASHSIZE];
+		verts = new float[3*1024];
+		vertedges = new EdgeIndex[1024];
+		nverts = 0;
+		tris = new int[3*1024];
+		ntris = 0;
+	}
+	
+	private void computeCubes(int zmin, int zmax) {
+		for (int z = zmin; z<zmax; z++) {
+			for (int y = 0; y<ny-1; y++) {
+				for (int x = 0; x<nx-1; x++) {
+					docube(x, y, z);
+				}
+			}
+		}
+	}
+	
+	/**
+	 * Append the mesh of the next slab, in cube order: the vertices on edges
+	 * already present in the mesh (on the shared slab face) are welded with
+	 * the existing ones, the others are numbered in creation order.
+	 */
+	private void mergeSlab(MarchingCubes slab) {
+		int[] vid = new int[slab.nverts];
+		for (int v=0;v<slab.nverts;v++) {
+			EdgeIndex e = slab.vertedges[v];
+			int id = -1;
+			if (e!=null) id = getedge(edgelist, e.i1, e.j1, e.k1, e.i2, e.j2, e.k2);
+			if (id==-1) {
+				id = addvertex(slab.verts[3*v], slab.verts[3*v+1], slab.verts[3*v+2]);
+				if (e!=null) vertedges[id] = setedge(edgelist, e.i1, e.j1, e.k1, e.i2, e.j2, e.k2, id);
+			}
+			vid[v] = id;
+		}
+		for (int t=0;t<slab.ntris;t++) {
+			addtriangle(vid[slab.tris[3*t]], vid[slab.tris[3*t+1]], vid[slab.tris[3*t+2]], 0);
+		}
+	}
+	
+	/** number of vertices of the mesh */
+	public int getVertexCount() { return nverts; }
+	
+	/** number of triangles of the mesh */
+	public int getTriangleCount() { return ntris; }
+	
+	/** vertex coordinates, as a [3*nverts] (x,y,z) array */
+	public float[] getVertices() { return Arrays.copyOf(verts, 3*nverts); }
+	
+	/** triangle vertex ids, as a [3*ntris] array (in the exported order) */
+	public int[] getTriangles() {
+		int[] faces = new int[3*ntris];
+		for (int t=0;t<ntris;t++) {
+			if (direction == COUNTER_CLOCKWISE) {
+				faces[3*t] = tris[3*t+2];
+				faces[3*t+1] = tris[3*t+1];
+				faces[3*t+2] = tris[3*t];
+			} else {
+				faces[3*t] = tris[3*t];
+				faces[3*t+1] = tris[3*t+1];
+				faces[3*t+2] = tris[3*t+2];
+			}
+		}
+		return faces;
+	}
+
 
 	private static final int CLOCKWISE = 1;
 	private static final int COUNTER_CLOCKWISE = 2;
@@ -162,10 +260,7 @@ public class MarchingCubes {
 
 	public void exportVtkMesh(String filename, PrintWriter pw) {
 		System.out.println("export to "+filename);
-		if (verts.size() > 0) {
-			Point3d[] points = new Point3d[verts.size()];
-			verts.toArray(points);
-			
+		if (nverts > 0) {
 			// open the file to write
 			try {
 				//File f = new File(filename);
@@ -176,17 +271,17 @@ public class MarchingCubes {
 						+"ASCII\n"
 						+"DATASET POLYDATA\n");
 				
-				pw.write("POINTS "+points.length+" float\n");
-				for(Point3d pt:points){
-					pw.write((float)pt.x+" "+(float)pt.y+" "+(float)pt.z+"\n");
+				pw.write("POINTS "+nverts+" float\n");
+				for (int v=0;v<nverts;v++) {
+					pw.write(verts[3*v]+" "+verts[3*v+1]+" "+verts[3*v+2]+"\n");
 				}
-				pw.write("POLYGONS "+trilist.size()+" "+4*trilist.size()+"\n");
-				for (TriangleIndex tri : trilist) {
+				pw.write("POLYGONS "+ntris+" "+4*ntris+"\n");
+				for (int t=0;t<ntris;t++) {
 					// write the triangles
 					if (direction == COUNTER_CLOCKWISE) {
-						pw.write("3 "+tri.vid3+" "+tri.vid2+" "+tri.vid1+"\n");
+						pw.write("3 "+tris[3*t+2]+" "+tris[3*t+1]+" "+tris[3*t]+"\n");
 					} else {
-						pw.write("3 "+tri.vid1+" "+tri.vid2+" "+tri.vid3+"\n");
+						pw.write("3 "+tris[3*t]+" "+tris[3*t+1]+" "+tris[3*t+2]+"\n");
 					}
 				}
 				// close the file to write
@@ -199,10 +294,11 @@ public class MarchingCubes {
 		}
 				
 		edgelist = null;
-		trilist.clear();
-		trilist = null;
-		verts.clear();
+		tris = null;
+		ntris = 0;
 		verts = null;
+		vertedges = null;
+		nverts = 0;
 		data = null;
 		System.gc();
 
@@ -276,7 +372,7 @@ public class MarchingCubes {
 		public int vid1, vid2, vid3;
 	}
 
-	void setedge(EdgeIndex[] table, int i1, int j1, int k1, int i2, int j2,
+	EdgeIndex setedge(EdgeIndex[] table, int i1, int j1, int k1, int i2, int j2,
 			int k2, int vid)
 	/* Set vertex id for edge */
 	{
@@ -300,6 +396,7 @@ public class MarchingCubes {
 				table[index]);
 		new1.next = table[index];
 		table[index] = new1;
+		return new1;
 	}
 
 	private int getedge(EdgeIndex[] table, int i1, int j1, int k1, int i2,
@@ -343,8 +440,8 @@ public class MarchingCubes {
 	 * different sign return saved index if any; else compute vertex and save
 	 */
 	{
-		Point3d v = new Point3d();
-		Point3d a = new Point3d(), b = new Point3d();
+		Point3d v = vertex;
+		Point3d a = endpt1, b = endpt2;
 		int vid = getedge(edgelist, c1.i, c1.j, c1.k, c2.i, c2.j, c2.k);
 		// System.out.printf("getid %d %d %d %d\n",vid,c1.i,c1.j,c1.k);
 		if (vid != -1) {
@@ -357,12 +454,12 @@ public class MarchingCubes {
 		b.x = c2.i;
 		b.y = c2.j;
 		b.z = c2.k;
+		v.x = v.y = v.z = 0.0;
 		interpolate(a, b, c1.value, c2.value, v); /* position */
 		// System.out.format("(%6.2f,%6.2f,%6.2f) %6.2f (%6.2f,%6.2f,%6.2f) %6.2f (%6.2f,%6.2f,%6.2f)\n",a.x,a.y,a.z,c1.value,b.x,b.y,b.z,c2.value,v.x,v.y,v.z);
 
-		addtovertices(verts, v); /* save vertex */
-		vid = verts.size() - 1;
-		setedge(edgelist, c1.i, c1.j, c1.k, c2.i, c2.j, c2.k, vid);
+		vid = addvertex(v.x, v.y, v.z); /* save vertex */
+		vertedges[vid] = setedge(edgelist, c1.i, c1.j, c1.k, c2.i, c2.j, c2.k, vid);
 		return vid;
 	}
 
@@ -372,8 +469,8 @@ public class MarchingCubes {
 	 * list
 	 */
 	{
-		Point3d v = new Point3d();
-		Point3d a = new Point3d(), b = new Point3d();
+		Point3d v = vertex;
+		Point3d a = endpt1, b = endpt2;
 		int vid;
 		a.x = c1.i;
 		a.y = c1.j;
@@ -381,8 +478,9 @@ public class MarchingCubes {
 		b.x = c2.i;
 		b.y = c2.j;
 		b.z = c2.k;
+		v.x = v.y = v.z = 0.0;
 		interpolate(a, b, c1.value, c2.value, v); /* position */
-		vid = directadd(verts, v); /* save vertex */
+		vid = addvertex(v.x, v.y, v.z); /* save vertex */
 		return vid;
 	}
 
@@ -579,19 +677,19 @@ public class MarchingCubes {
 	 * asymb.y) / 2; v.z = (asyma.z + asymb.z) / 2; } else interpolate(asyma,
 	 * asymb, va, vb, v); return v; }
 	 */
-	void addtovertices(ArrayList<Point3d> vertices, Point3d v)
-	/* Add v to the list of vertices */
+	private int addvertex(double x, double y, double z)
+	/* Add a new vertex to the list of vertices, return its id */
+	/* (the coordinates are rounded to float precision by interpolate) */
 	{
-		// System.out.println("ADD 1 "+v);
-		vertices.add(v);
-	}
-
-	private int directadd(ArrayList<Point3d> vertices, Point3d v)
-	/* Directly add a new vertex to the list of vertices */
-	{
-		// System.out.println("ADD 2 "+v);
-		vertices.add(v);
-		return vertices.size() - 1;
+		if (nverts==vertedges.length) {
+			verts = Arrays.copyOf(verts, 6*nverts);
+			vertedges = Arrays.copyOf(vertedges, 2*nverts);
+		}
+		verts[3*nverts] = (float)x;
+		verts[3*nverts+1] = (float)y;
+		verts[3*nverts+2] = (float)z;
+		nverts++;
+		return nverts - 1;
 	}
 
 	void interpolate(Point3d p1, Point3d p2, double v1, double v2,
@@ -660,20 +758,19 @@ public class MarchingCubes {
 	/* Add new triangle to the list of triangles */
 	/* If rev is TRUE, the order of the three vertices are reversed */
 	{
-		int i;
-		TriangleIndex tri = new TriangleIndex(); /* *triangles; */
+		if (3*ntris==tris.length) tris = Arrays.copyOf(tris, 2*tris.length);
 
 		if (rev == 0) {
-			tri.vid1 = vid1;
-			tri.vid2 = vid2;
-			tri.vid3 = vid3;
+			tris[3*ntris] = vid1;
+			tris[3*ntris+1] = vid2;
+			tris[3*ntris+2] = vid3;
 		} else {
-			tri.vid1 = vid3;
-			tri.vid2 = vid2;
-			tri.vid3 = vid1;
+			tris[3*ntris] = vid3;
+			tris[3*ntris+1] = vid2;
+			tris[3*ntris+2] = vid1;
 		}
 		// System.out.format("ADD TRIANGLE %d %d %d\n",vid1,vid2,vid3);
-		trilist.add(tri);
+		ntris++;
 	}
 
 	int levelindex(int x, int y, int z)
@@ -24,8 +24,7 @@ public class MaxProbaRepresentation {
 	
 	
 	// data and membership buffers
-	private 	float[][] 		maxproba;  	// maximum probabilities
-	private 	byte[][] 		maxlabel;   // corresponding labels
+	private		TopKProbabilities	best;		// maximum probabilities and corresponding labels
 	private static	byte 	  	nmax;					// total number of values to keep
 	private 	byte 			nobj;    	// number of objects
 	private 	int				nx,ny,nz,nxyz;   		// image dimensions
@@ -39,330 +38,111 @@ public class MaxProbaRepresentation {
 		nxyz = nx*ny*nz;
 	}
 	
-	public final void setMaxProba(float[][] mp_, byte[][] ml_) { maxproba = mp_; maxlabel = ml_; }
+	public final void setMaxProba(float[][] mp_, byte[][] ml_) { best = new TopKProbabilities(mp_, ml_); }
 	
-	public final float[][] getMaxProba() { return maxproba; }
-	public final byte[][] getMaxLabel() { return maxlabel; }
+	public final TopKProbabilities getTopProbabilities() { return best; }
+	
+	public final float[][] getMaxProba() { return best.exportProbabilities(); }
+	public final byte[][] getMaxLabel() { return best.exportLabels(); }
+	
+	// the label maps are inserted one at a time in the sparse representation,
+	// keeping track of the sum or maximum over labels when needed for the background
+	private final void addLabelMap(byte n, float[] proba, int offset, float[] sum, float[] max) {
+		best.addLabelMap(n, proba, offset);
+		if (sum!=null) for (int xyz=0;xyz<nxyz;xyz++) sum[xyz] += proba[offset+xyz];
+		if (max!=null) for (int xyz=0;xyz<nxyz;xyz++) max[xyz] = Numerics.max(max[xyz], proba[offset+xyz]);
+	}
+	
+	// voxels with no positive probability are left empty
+	private final void clearZeroProbabilities() {
+		for (int xyz=0;xyz<nxyz;xyz++) {
+			if (best.getProbability(xyz,0)<=0) best.clear(xyz);
+		}
+	}
 	
 	// slightly different if background is included or not, if probabilities are normalized or not
 	public final void buildFromCompleteProbabilities(float[][] proba) {
-	   	maxproba = new float[nmax][nxyz];
-    	maxlabel = new byte[nmax][nxyz];
-		for (int xyz=0;xyz<nxyz;xyz++) {
-    		boolean zero=true;
-    		for (byte n=0;n<nobj && zero;n++) if (proba[n][xyz]>0) zero=false;
-    		if (!zero) {
-				for (byte n=0;n<nmax;n++) {
-					byte nbest=0;
-					
-					for (byte m=1;m<nobj;m++) if (proba[m][xyz]>proba[nbest][xyz]) {
-						nbest = m;
-					}
-					maxlabel[n][xyz] = nbest;
-					maxproba[n][xyz] = proba[nbest][xyz];
-					proba[nbest][xyz] = -1.0f;
-				}
-			} else {
-				for (int n=0;n<nmax;n++) {
-					maxproba[n][xyz] = -1.0f;
-					maxlabel[n][xyz] = -1;
-				}
-			}
-     	}
-		proba = null;
+		best = new TopKProbabilities(nxyz, nmax);
+		for (byte n=0;n<nobj;n++) addLabelMap(n, proba[n], 0, null, null);
+		clearZeroProbabilities();
 	}
 	public final void buildFromCompleteProbabilities(float[] proba) {
-	   	maxproba = new float[nmax][nxyz];
-    		maxlabel = new byte[nmax][nxyz];
-		for (int xyz=0;xyz<nxyz;xyz++) {
-    		boolean zero=true;
-    		for (byte n=0;n<nobj && zero;n++) if (proba[xyz+nxyz*n]>0) zero=false;
-    		if (!zero) {
-				for (byte n=0;n<nmax;n++) {
-					byte nbest=0;
-					
-					for (byte m=1;m<nobj;m++) if (proba[xyz+nxyz*m]>proba[xyz+nxyz*nbest]) {
-						nbest = m;
-					}
-					maxlabel[n][xyz] = nbest;
-					maxproba[n][xyz] = proba[xyz+nxyz*nbest];
-					proba[xyz+nxyz*nbest] = -1.0f;
-				}
-			} else {
-				for (int n=0;n<nmax;n++) {
-					maxproba[n][xyz] = -1.0f;
-					maxlabel[n][xyz] = -1;
-				}
-			}
-     	}
-		proba = null;
+		best = new TopKProbabilities(nxyz, nmax);
+		for (byte n=0;n<nobj;n++) addLabelMap(n, proba, n*nxyz, null, null);
+		clearZeroProbabilities();
 	}
 	public final void buildFromNormalizedProbabilitiesAndBackground(float[][] proba) {
-	   	maxproba = new float[nmax][nx*ny*nz];
-    	maxlabel = new byte[nmax][nx*ny*nz];
-		for (int xyz=0;xyz<nxyz;xyz++) {
-			float sum=0.0f;
-			for (byte n=0;n<nobj;n++) sum += proba[n][xyz];
-			if (sum>0) {
-				for (byte n=0;n<nmax;n++) {
-					byte nbest=0;
-					
-					for (byte m=1;m<nobj;m++) if (proba[m][xyz]>proba[nbest][xyz]) {
-						nbest = m;
-					}
-					maxlabel[n][xyz] = nbest;
-					maxproba[n][xyz] = proba[nbest][xyz];
-					proba[nbest][xyz] = -1.0f;
-				}
-				for (byte n=0; n<nmax; n++) if (maxproba[n][xyz]<1.0f-sum) {
-					for (byte m=(byte)(nmax-1);m>n;m--) {
-						maxproba[m][xyz] = maxproba[m-1][xyz];
-						maxlabel[m][xyz] = maxlabel[m-1][xyz];
-					}
-					maxproba[n][xyz] = 1.0f-sum;
-					maxlabel[n][xyz] = nobj;
-					n=nmax;
-				}
-			} else {
-				// background is first, all others are zero
-				maxproba[0][xyz] = 1.0f;
-				maxlabel[0][xyz] = nobj;
-				for (int n=1;n<nmax;n++) {
-					maxproba[n][xyz] = 0.0f;
-					maxlabel[n][xyz] = -1;
-				}
-			}
-     		}
-		// now the background is its own label
-		nobj++;
-		proba = null;
+		best = new TopKProbabilities(nxyz, nmax);
+		float[] sum = new float[nxyz];
+		for (byte n=0;n<nobj;n++) addLabelMap(n, proba[n], 0, sum, null);
+		insertNormalizedBackground(sum);
 	}
 	public final void buildFromNormalizedProbabilitiesAndBackground(float[] proba) {
-	   	maxproba = new float[nmax][nx*ny*nz];
-		maxlabel = new byte[nmax][nx*ny*nz];
-		for (int xyz=0;xyz<nxyz;xyz++) {
-    		float sum=0.0f;
-    		for (byte n=0;n<nobj;n++) sum += proba[xyz+nxyz*n];
-    		if (sum>0) {
-			for (byte n=0;n<nmax;n++) {
-				byte nbest=0;
-				
-				for (byte m=1;m<nobj;m++) if (proba[xyz+nxyz*m]>proba[xyz+nxyz*nbest]) {
-					nbest = m;
-				}
-				maxlabel[n][xyz] = nbest;
-				maxproba[n][xyz] = proba[xyz+nxyz*nbest];
-				proba[xyz+nxyz*nbest] = -1.0f;
-			}
-			for (byte n=0; n<nmax; n++) if (maxproba[n][xyz]<1.0f-sum) {
-				for (byte m=(byte)(nmax-1);m>n;m--) {
-					maxproba[m][xyz] = maxproba[m-1][xyz];
-					maxlabel[m][xyz] = maxlabel[m-1][xyz];
-				}
-				maxproba[n][xyz] = 1.0f-sum;
-				maxlabel[n][xyz] = nobj;
-				n=nmax;
-			}
-		} else {
-			// background is first, all others are zero
-			maxproba[0][xyz] = 1.0f;
-			maxlabel[0][xyz] = nobj;
-			for (int n=1;n<nmax;n++) {
-				maxproba[n][xyz] = 0.0f;
-				maxlabel[n][xyz] = -1;
-			}
-		}
-	}
-     	// now the background is its own label
-     	nobj++;
-		proba = null;
+		best = new TopKProbabilities(nxyz, nmax);
+		float[] sum = new float[nxyz];
+		for (byte n=0;n<nobj;n++) addLabelMap(n, proba, n*nxyz, sum, null);
+		insertNormalizedBackground(sum);
 	}
-	public final void buildFromCompetingProbabilitiesAndBackground(float[][] proba) {
-	   	maxproba = new float[nmax][nx*ny*nz];
-    		maxlabel = new byte[nmax][nx*ny*nz];
+	private final void insertNormalizedBackground(float[] sum) {
 		for (int xyz=0;xyz<nxyz;xyz++) {
-			float max=0.0f;
-			for (byte n=0;n<nobj;n++) max = Numerics.max(max, proba[n][xyz]);
-			if (max>0) {
-				for (byte n=0;n<nmax;n++) {
-					byte nbest=0;
-					
-					for (byte m=1;m<nobj;m++) if (proba[m][xyz]>proba[nbest][xyz]) {
-						nbest = m;
-					}
-					maxlabel[n][xyz] = nbest;
-					maxproba[n][xyz] = proba[nbest][xyz];
-					proba[nbest][xyz] = -1.0f;
-				}
-				for (byte n=0; n<nmax; n++) if (maxproba[n][xyz]<1.0f-max) {
-					for (byte m=(byte)(nmax-1);m>n;m--) {
-						maxproba[m][xyz] = maxproba[m-1][xyz];
-						maxlabel[m][xyz] = maxlabel[m-1][xyz];
-					}
-					maxproba[n][xyz] = 1.0f-max;
-					maxlabel[n][xyz] = nobj;
-					n=nmax;
-				}
+			if (sum[xyz]>0) {
+				best.insert(xyz, nobj, 1.0f-sum[xyz]);
 			} else {
-				
 				// background is first, all others are zero
-				maxproba[0][xyz] = 1.0f;
-				maxlabel[0][xyz] = nobj;
-				for (byte n=1;n<nmax;n++) {
-					maxproba[n][xyz] = 0.0f;
-					maxlabel[n][xyz] = n;
-				}
-				/*
-				for (int n=0;n<nmax;n++) {
-					maxproba[n][xyz] = -1.0f;
-					maxlabel[n][xyz] = -1;
-				}
-				*/
+				best.set(xyz, 0, nobj, 1.0f);
+				for (int n=1;n<nmax;n++) best.set(xyz, n, TopKProbabilities.EMPTY, 0.0f);
 			}
 		}
 		// now the background is its own label
 		nobj++;
-		proba = null;
+	}
+	public final void buildFromCompetingProbabilitiesAndBackground(float[][] proba) {
+		best = new TopKProbabilities(nxyz, nmax);
+		float[] max = new float[nxyz];
+		for (byte n=0;n<nobj;n++) addLabelMap(n, proba[n], 0, null, max);
+		insertCompetingBackground(max, -1.0f);
 	}
 	public final void buildFromCompetingProbabilitiesAndBackground(float[] proba) {
-	   	maxproba = new float[nmax][nx*ny*nz];
-    		maxlabel = new byte[nmax][nx*ny*nz];
-		for (int xyz=0;xyz<nxyz;xyz++) {
-			float max=0.0f;
-			for (byte n=0;n<nobj;n++) max = Numerics.max(max, proba[xyz+nxyz*n]);
-			if (max>0) {
-				for (byte n=0;n<nmax;n++) {
-					byte nbest=0;
-					
-					for (byte m=1;m<nobj;m++) if (proba[xyz+nxyz*m]>proba[xyz+nxyz*nbest]) {
-						nbest = m;
-					}
-					maxlabel[n][xyz] = nbest;
-					maxproba[n][xyz] = proba[xyz+nxyz*nbest];
-					proba[xyz+nxyz*nbest] = -1.0f;
-				}
-				for (byte n=0; n<nmax; n++) if (maxproba[n][xyz]<1.0f-max) {
-					for (byte m=(byte)(nmax-1);m>n;m--) {
-						maxproba[m][xyz] = maxproba[m-1][xyz];
-						maxlabel[m][xyz] = maxlabel[m-1][xyz];
-					}
-					maxproba[n][xyz] = 1.0f-max;
-					maxlabel[n][xyz] = nobj;
-					n=nmax;
-				}
-			} else {
-				
-				// background is first, all others are zero
-				maxproba[0][xyz] = 1.0f;
-				maxlabel[0][xyz] = nobj;
-				for (byte n=1;n<nmax;n++) {
-					maxproba[n][xyz] = 0.0f;
-					maxlabel[n][xyz] = n;
-				}
-				/*
-				for (int n=0;n<nmax;n++) {
-					maxproba[n][xyz] = -1.0f;
-					maxlabel[n][xyz] = -1;
-				}
-				*/
-			}
-		}
-		// now the background is its own label
-		nobj++;
-		proba = null;
+		best = new TopKProbabilities(nxyz, nmax);
+		float[] max = new float[nxyz];
+		for (byte n=0;n<nobj;n++) addLabelMap(n, proba, n*nxyz, null, max);
+		insertCompetingBackground(max, -1.0f);
 	}
 	public final void buildFromCompetingProbabilitiesAndConstantBackground(float[] proba, float bgproba) {
-	   	maxproba = new float[nmax][nx*ny*nz];
-    		maxlabel = new byte[nmax][nx*ny*nz];
+		best = new TopKProbabilities(nxyz, nmax);
+		float[] max = new float[nxyz];
+		for (byte n=0;n<nobj;n++) addLabelMap(n, proba, n*nxyz, null, max);
+		insertCompetingBackground(max, bgproba);
+	}
+	// background probability is 1-max, unless a constant bgproba>=0 is given
+	private final void insertCompetingBackground(float[] max, float bgproba) {
 		for (int xyz=0;xyz<nxyz;xyz++) {
-			float max=0.0f;
-			for (byte n=0;n<nobj;n++) max = Numerics.max(max, proba[xyz+nxyz*n]);
-			if (max>0) {
-				for (byte n=0;n<nmax;n++) {
-					byte nbest=0;
-					
-					for (byte m=1;m<nobj;m++) if (proba[xyz+nxyz*m]>proba[xyz+nxyz*nbest]) {
-						nbest = m;
-					}
-					maxlabel[n][xyz] = nbest;
-					maxproba[n][xyz] = proba[xyz+nxyz*nbest];
-					proba[xyz+nxyz*nbest] = -1.0f;
-				}
-				for (byte n=0; n<nmax; n++) if (maxproba[n][xyz]<bgproba) {
-					for (byte m=(byte)(nmax-1);m>n;m--) {
-						maxproba[m][xyz] = maxproba[m-1][xyz];
-						maxlabel[m][xyz] = maxlabel[m-1][xyz];
-					}
-					maxproba[n][xyz] = bgproba;
-					maxlabel[n][xyz] = nobj;
-					n=nmax;
-				}
+			if (max[xyz]>0) {
+				if (bgproba>=0) best.insert(xyz, nobj, bgproba);
+				else best.insert(xyz, nobj, 1.0f-max[xyz]);
 			} else {
-				
 				// background is first, all others are zero
-				maxproba[0][xyz] = bgproba;
-				maxlabel[0][xyz] = nobj;
-				for (byte n=1;n<nmax;n++) {
-					maxproba[n][xyz] = 0.0f;
-					maxlabel[n][xyz] = n;
-				}
-				/*
-				for (int n=0;n<nmax;n++) {
-					maxproba[n][xyz] = -1.0f;
-					maxlabel[n][xyz] = -1;
-				}
-				*/
+				if (bgproba>=0) best.set(xyz, 0, nobj, bgproba);
+				else best.set(xyz, 0, nobj, 1.0f);
+				for (byte n=1;n<nmax;n++) best.set(xyz, n, n, 0.0f);
 			}
 		}
 		// now the background is its own label
 		nobj++;
-		proba = null;
 	}
 	
 	public final void insertNewLabel(int xyz, float val, byte lb) {
-		if (val<maxproba[nmax-1][xyz]) return;
-		
-		for (byte n=0; n<nmax; n++) if (maxproba[n][xyz]<val) {
-			for (byte m=(byte)(nmax-1);m>n;m--) {
-				maxproba[m][xyz] = maxproba[m-1][xyz];
-				maxlabel[m][xyz] = maxlabel[m-1][xyz];
-			}
-			maxproba[n][xyz] = val;
-			maxlabel[n][xyz] = lb;
-			n=nmax;
-		}
+		best.insert(xyz, lb, val);
 	}
 	
 	public final void updateLabel(int xyz, float val, byte lb) {
-		if (val<maxproba[nmax-1][xyz]) return;
-		
-		for (byte n=0; n<nmax; n++) if (maxlabel[n][xyz]==lb) {
-			if (val>maxproba[n][xyz]) {
-				maxproba[n][xyz] = val;
-				for (byte d=0;d<n;d++) if (maxproba[d][xyz]<val) {
-					for (byte m=d;m<n;m++) {
-						maxproba[m+1][xyz] = maxproba[m][xyz];
-						maxlabel[m+1][xyz] = maxlabel[m][xyz];
-					}
-					maxproba[d][xyz] = val;
-					maxlabel[d][xyz] = lb;
-					return;
-				}
-			} else if (val<maxproba[n][xyz]) {
-				maxproba[n][xyz] = val;
-				for (byte d=(byte)(nmax-1);d>n;d++) if (maxproba[d][xyz]>val) {
-					for (byte m=d;m>n;m--) {
-						maxproba[m-1][xyz] = maxproba[m][xyz];
-						maxlabel[m-1][xyz] = maxlabel[m][xyz];
-					}
-					maxproba[d][xyz] = val;
-					maxlabel[d][xyz] = lb;
-					return;
-				}
-			} 
+		int n = best.depthOf(xyz, lb);
+		if (n>-1) {
+			best.setProbability(xyz, n, val);
+			best.sort(xyz);
+		} else {
+			best.insert(xyz, lb, val);
 		}
-		insertNewLabel(xyz, val, lb);
 		return;
 	}
 }
-
@@ -77,18 +77,18 @@ public class MgdmFastSegmentation2 {
 	private	float		extraDist = narrowBandDist+1.0f;
 	private	short		maxcount = 5;
 	
+	// state of the first label in the narrow band evolution
+	private static final	byte	FROZEN = 0;
+	private static final	byte	STABLE = 1;
+	private static final	byte	FLIPPED = 2;
+	private static final	byte	UNLABELED = 3;
+	
 	// computation variables to avoid re-allocating
 	
 	// for levesetForces
 	double[] phi;
 	double[] Dmx, Dmy, Dmz, Dpx, Dpy, Dpz;
-	double D0x,D0y,D0z;
-	double SD0x, SD0y, SD0z, GPhi;
-	double Dxx, Dyy, Dzz, Dxy, Dyz, Dzx;
-	double K, G, tmp;
-	double Div;
-	byte bestlb, gainlb;
-	double bestval, gainval;
+	double tmp;
 	float[] smoothfactor;
 	boolean done;
 	double[] distval;
@@ -1387,11 +1387,15 @@ public class MgdmFastSegmentation2 {
 		}
 		int[] nswap = new int[nmgdm];
 			
-		double[] forces = new double[nmgdm+1];
-		int newlb;
+		ForceBuffers buffers = new ForceBuffers(nmgdm);
+		byte[] bandstate = new byte[narrowband.capacity];
 		boolean reinitLM, reinitOL;
 		int ncounted;
 		
+		// parallel evolution: the narrow band is ordered by voxel index, so contiguous chunks are spatial slabs
+		// (the result is the same as with the serial evolution)
+		boolean parallel = ParallelProcessing.isParallel();
+		
 		// evolve until a landmine is closer than minDist of the boundaries
 		float diff = 1.0f;
 		for (int t=0;t<iter && (t<5 || diff>mindiff);t++) {
@@ -1405,69 +1409,67 @@ public class MgdmFastSegmentation2 {
 			
 			ncounted = 0;
 			
+			if (bandstate.length<narrowband.capacity) bandstate = new byte[narrowband.capacity];
+			
+			if (parallel) {
+				// first pass in parallel: forces and label updates which do not depend on the other points
+				// (only for points not frozen at the start of the iteration)
+				final NarrowBand band = narrowband;
+				final byte[] state = bandstate;
+				final int[] bounds = ParallelProcessing.ranges(narrowband.currentsize);
+				final int[][] chunkswap = new int[bounds.length-1][nmgdm];
+				ParallelProcessing.forEach(bounds, new ParallelProcessing.RangeTask() {
+					public void process(int c, int start, int end) {
+						ForceBuffers chunkbuffers = new ForceBuffers(nmgdm);
+						for (int n=start;n<end;n++) {
+							if (counter[band.id[n]]<maxcount) state[n] = evolveNarrowBandPoint(band, n, chunkswap[c], chunkbuffers);
+							else state[n] = FROZEN;
+						}
+					}
+				});
+				for (int c=0;c<chunkswap.length;c++) for (int lb=0;lb<nmgdm;lb++) nswap[lb] += chunkswap[c][lb];
+			}
+			
+			// second pass, in the narrow band order: topology-checked changes of the first label and frozen points
+			// (the counters of neighbors may unfreeze points, which are evolved here)
 			for (int n=0; n<narrowband.currentsize;n++) {
 				int xyz = narrowband.id[n];
-				//if (debug) System.out.print(".");
 				// skip points that have seen little change
 				if (counter[xyz]<maxcount) {
-					// evolve the MGDM functions
+					if (!parallel || bandstate[n]==FROZEN) bandstate[n] = evolveNarrowBandPoint(narrowband, n, nswap, buffers);
 					
-					// compute the forces from current levelset values, update the narrow band from it
-					levelsetForces(xyz, forces);
-					//if (debug) System.out.print(":");
-				
-					for (int lb=nmgdm-1;lb>=0;lb--) if (mgdmlabels[lb][xyz]!=EMPTY) {
-						
-						// update the narrow band values, not the original data
-						narrowband.functions[lb][n] += Numerics.bounded(forces[lb] - forces[lb+1], -0.9f, 0.9f);
+					if (bandstate[n]==FLIPPED) {
+						// try all possible labels
+						byte newlb = EMPTY;
+						if (mgdmlabels[1][xyz]!=EMPTY && homeomorphicLabeling(xyz, mgdmlabels[1][xyz]))
+							newlb = 1;
 						
-						// change of sign ?
-						if (narrowband.functions[lb][n]<0) {
-							//if (debug) System.out.print(""+lb);
-							
-							// try all possible labels
-							newlb = EMPTY;
-							if (mgdmlabels[lb+1][xyz]!=EMPTY && (lb>0 || homeomorphicLabeling(xyz, mgdmlabels[lb+1][xyz])))
-								newlb = lb+1;
-							
-							if (newlb!=EMPTY) {
-								// for all levels
-								nswap[lb]++;
-								narrowband.labels[lb][n] = mgdmlabels[newlb][xyz];
-								narrowband.functions[lb][n] = -narrowband.functions[lb][n];
-								// never switch the last label
-								if (newlb<nmgdm) narrowband.labels[newlb][n] = mgdmlabels[lb][xyz];
-								// update the segmentation with first label
-								if (lb==0) {
-									segmentation[xyz] = mgdmlabels[newlb][xyz];
-									segobjlabels[xyz] = objLabel[mgdmlabels[newlb][xyz]];
-									// check for boundary changes in the landmines : force reinitialization
-									if (landmines.get(xyz)) reinitLM = true;
-									// check for far labels getting mixed in: time to re-initialize
-									if (narrowband.labels[0][n]==mgdmlabels[nmgdm][xyz]) reinitOL = true;
-								}
-							} else {
-								// reset to low value?
-								narrowband.functions[lb][n] = lowlevel;
-								// or to original value ?
-								//narrowband.functions[lb][n] -= Numerics.bounded(forces[lb] - forces[lb+1], -0.9f, 0.9f);
-							}
-							// reset the counter; also reset all the neighbors
-							if (lb==0) {
-								counter[xyz]=0;
-								for (int b=0;b<NGB;b++) {
-									int xyzn = xyz + ngbx[b] + ngby[b]*nix + ngbz[b]*nix*niy;
-									// reset all to zero?
-									counter[xyzn] = 0;
-									/*
-									if (counter[xyzn]>maxcount) counter[xyzn] = (short)(maxcount-1);
-									else if (counter[xyzn]>0) counter[xyzn]--;
-									*/
-								}
-							}
+						if (newlb!=EMPTY) {
+							nswap[0]++;
+							narrowband.labels[0][n] = mgdmlabels[newlb][xyz];
+							narrowband.functions[0][n] = -narrowband.functions[0][n];
+							// never switch the last label
+							if (newlb<nmgdm) narrowband.labels[newlb][n] = mgdmlabels[0][xyz];
+							// update the segmentation with first label
+							segmentation[xyz] = mgdmlabels[newlb][xyz];
+							segobjlabels[xyz] = objLabel[mgdmlabels[newlb][xyz]];
+							// check for boundary changes in the landmines : force reinitialization
+							if (landmines.get(xyz)) reinitLM = true;
+							// check for far labels getting mixed in: time to re-initialize
+							if (narrowband.labels[0][n]==mgdmlabels[nmgdm][xyz]) reinitOL = true;
 						} else {
-							if (lb==0) counter[xyz]++;
+							// reset to low value?
+							narrowband.functions[0][n] = lowlevel;
+						}
+						// reset the counter; also reset all the neighbors
+						counter[xyz]=0;
+						for (int b=0;b<NGB;b++) {
+							int xyzn = xyz + ngbx[b] + ngby[b]*nix + ngbz[b]*nix*niy;
+							// reset all to zero?
+							counter[xyzn] = 0;
 						}
+					} else if (bandstate[n]==STABLE) {
+						counter[xyz]++;
 					}
 				} else {
 					counter[xyz]++;
@@ -1481,15 +1483,12 @@ public class MgdmFastSegmentation2 {
 											+"(frozen points: "+(ncounted/(float)narrowband.currentsize*100.0f)+" % of narrow band)\n");
 			
 			// once all the new values are computed, copy into original MGDM functions
-			for (int n=0; n<narrowband.currentsize;n++) {
-				int xyz = narrowband.id[n];
-				if (counter[xyz]<maxcount) {
-					for (int lb=0;lb<nmgdm;lb++) {
-						mgdmlabels[lb][xyz] = narrowband.labels[lb][n];
-						mgdmfunctions[lb][xyz] = narrowband.functions[lb][n];
-					}
+			final NarrowBand band = narrowband;
+			ParallelProcessing.forEach(narrowband.currentsize, new ParallelProcessing.RangeTask() {
+				public void process(int c, int start, int end) {
+					copyNarrowBand(band, start, end);
 				}
-			}
+			});
 			// important to check for changes in labels (can get stuck otherwise)
 			if (t<iter-1 && (t<5 || diff>mindiff) && (reinitLM || reinitOL) ) {
 			//if (t<iter-1 && reinitLM) {
@@ -1527,9 +1526,102 @@ public class MgdmFastSegmentation2 {
         return;
     }
     
+    /** 
+    *  	Narrow band update of a single point, except for the topology-checked change of the first label
+    *	(returns the state of the first label: FLIPPED if it changed sign, STABLE if not, UNLABELED if empty)
+    */
+    private final byte evolveNarrowBandPoint(NarrowBand narrowband, int n, int[] nswap, ForceBuffers buf) {
+		int xyz = narrowband.id[n];
+		double[] forces = buf.forces;
+		
+		// evolve the MGDM functions
+					
+		// compute the forces from current levelset values, update the narrow band from it
+		levelsetForces(xyz, forces, buf.phi, buf.Dmx, buf.Dmy, buf.Dmz, buf.Dpx, buf.Dpy, buf.Dpz, buf.distval);
+	
+		for (int lb=nmgdm-1;lb>0;lb--) if (mgdmlabels[lb][xyz]!=EMPTY) {
+			
+			// update the narrow band values, not the original data
+			narrowband.functions[lb][n] += Numerics.bounded(forces[lb] - forces[lb+1], -0.9f, 0.9f);
+			
+			// change of sign ?
+			if (narrowband.functions[lb][n]<0) {
+				// try all possible labels (no topology check beyond the first label)
+				if (mgdmlabels[lb+1][xyz]!=EMPTY) {
+					// for all levels
+					nswap[lb]++;
+					narrowband.labels[lb][n] = mgdmlabels[lb+1][xyz];
+					narrowband.functions[lb][n] = -narrowband.functions[lb][n];
+					// never switch the last label
+					if (lb+1<nmgdm) narrowband.labels[lb+1][n] = mgdmlabels[lb][xyz];
+				} else {
+					// reset to low value?
+					narrowband.functions[lb][n] = lowlevel;
+				}
+			}
+		}
+		// first label: only the sign change here, the label change is checked for topology afterwards
+		if (mgdmlabels[0][xyz]==EMPTY) return UNLABELED;
+		
+		narrowband.functions[0][n] += Numerics.bounded(forces[0] - forces[1], -0.9f, 0.9f);
+		
+		if (narrowband.functions[0][n]<0) return FLIPPED;
+		else return STABLE;
+	}
+	
+    /** 
+    *  	copy the narrow band values from start to end into the MGDM functions (except for frozen points)
+    */
+    private final void copyNarrowBand(NarrowBand narrowband, int start, int end) {
+		for (int n=start; n<end;n++) {
+			int xyz = narrowband.id[n];
+			if (counter[xyz]<maxcount) {
+				for (int lb=0;lb<nmgdm;lb++) {
+					mgdmlabels[lb][xyz] = narrowband.labels[lb][n];
+					mgdmfunctions[lb][xyz] = narrowband.functions[lb][n];
+				}
+			}
+		}
+	}
+	
+	/** computation buffers for the level set forces (one per thread) */
+	private static class ForceBuffers {
+		public double[] forces;
+		public double[] phi;
+		public double[] Dmx, Dmy, Dmz, Dpx, Dpy, Dpz;
+		public double[] distval;
+		
+		public ForceBuffers(int nlb) {
+			forces = new double[nlb+1];
+			phi = new double[27];
+			Dmx = new double[nlb+1];
+			Dmy = new double[nlb+1];
+			Dmz = new double[nlb+1];
+			Dpx = new double[nlb+1];
+			Dpy = new double[nlb+1];
+			Dpz = new double[nlb+1];
+			distval = new double[nlb+1];
+		}
+	}
+    
   	/** specific forces applied to the level sets (application dependent) */
  	private final void levelsetForces(int xyz, double[] forces) {
+ 		levelsetForces(xyz, forces, phi, Dmx, Dmy, Dmz, Dpx, Dpy, Dpz, distval);
+ 	}
+ 	
+  	/** specific forces applied to the level sets, with explicit computation buffers (for the parallel evolution) */
+ 	private final void levelsetForces(int xyz, double[] forces, double[] phi, 
+ 										double[] Dmx, double[] Dmy, double[] Dmz, 
+ 										double[] Dpx, double[] Dpy, double[] Dpz, double[] distval) {
     	
+		double D0x,D0y,D0z;
+		double SD0x, SD0y, SD0z, GPhi;
+		double Dxx, Dyy, Dzz, Dxy, Dyz, Dzx;
+		double K, G, tmp;
+		byte bestlb, gainlb;
+		double bestval, gainval;
+		boolean done;
+		
 		// simple option: rebuild each level set locally
 		// note: we go back to the convention of usual level sets with negative value inside, positive value outside
 		
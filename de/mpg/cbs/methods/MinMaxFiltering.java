@@ -60,8 +60,9 @@ public class MinMaxFiltering {
 		Imin = new float[nc];
 		Imax = new float[nc];
 		for (int c=0;c<nc;c++) {
-			Imin[c] = ImageStatistics.robustMinimum(images[c], 0.01f, 2, nix, niy, niz, 4);
-			Imax[c] = ImageStatistics.robustMaximum(images[c], 0.01f, 2, nix, niy, niz, 4);
+			float[] range = ImageStatistics.robustRange(images[c], 0.01f, 2, nix, niy, niz, 4);
+			Imin[c] = range[0];
+			Imax[c] = range[1];
 		}
 		if (debug) System.out.println("image: ["+Imin+", "+Imax+"]");
 	}
@@ -83,8 +84,9 @@ public class MinMaxFiltering {
 		
 		Imin = new float[nc];
 		Imax = new float[nc];
-		Imin[0] = ImageStatistics.robustMinimum(images[0], 0.001f, 4, nix, niy, niz, 4);
-		Imax[0] = ImageStatistics.robustMaximum(images[0], 0.001f, 4, nix, niy, niz, 4);
+		float[] range = ImageStatistics.robustRange(images[0], 0.001f, 4, nix, niy, niz, 4);
+		Imin[0] = range[0];
+		Imax[0] = range[1];
 		if (debug) System.out.println("image: ["+Imin[0]+", "+Imax[0]+"]");
 	}
 
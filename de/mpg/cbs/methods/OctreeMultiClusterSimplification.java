@@ -81,7 +81,7 @@ public class OctreeMultiClusterSimplification {
 		else if (metrictype.equals("exact Jensen-Shannon")) metric = JSDIV_EXACT;
 		else if (metrictype.equals("table Jensen-Shannon")) metric = JSDIV_TABLE;
 		
-		if (metric==JSDIV_TABLE) jsdtable = new JensenShannonDivTable(6.0, 0.01, 0.01);
+		if (metric==JSDIV_TABLE) jsdtable = JensenShannonDivTable.getTable(6.0, 0.01, 0.01);
 		
 		if (varup.equals("Maximum")) varupdate = VARMAX;
 		else if (varup.equals("Linear")) varupdate = VARLIN;
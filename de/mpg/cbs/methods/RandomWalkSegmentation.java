@@ -74,8 +74,9 @@ public class RandomWalkSegmentation {
 		
 		scale = scale_;
 		
-		Imin = ImageStatistics.robustMinimum(image, 0.01f, 2, nx, ny, nz, 4);
-		Imax = ImageStatistics.robustMaximum(image, 0.01f, 2, nx, ny, nz, 4);
+		float[] range = ImageStatistics.robustRange(image, 0.01f, 2, nx, ny, nz, 4);
+		Imin = range[0];
+		Imax = range[1];
 
 		if (debug) System.out.println("image: ["+Imin+", "+Imax+"]");
 	}
@@ -250,6 +251,214 @@ public class RandomWalkSegmentation {
 		return p;
 	}
 	
+	/**
+	 *	exact random walker probabilities for all labels: the probabilities of the unlabeled voxels solve
+	 *	the Dirichlet problems L_u x_k = -B m_k for the graph Laplacian of the edge weights, with the labeled
+	 *	voxels as fixed boundary values. All the labels share the same operator, so they are solved together
+	 *	with a Jacobi-preconditioned conjugate gradient, applying the Laplacian directly from the edge weights.
+	 *	Each label stops when its residual is below tolerance times the norm of its right-hand side,
+	 *	or after maxiter iterations. The edge weights must be computed first (2D or 3D).
+	 *
+	 *	@return 	the probabilities [label-1][xyz] of the labels 1 to nlb
+	 */
+	public final float[][] computeRandomWalkerProbabilities(int maxiter, float tolerance) {
+		final int nxyz = nx*ny*nz;
+		final int[] slabs = ParallelProcessing.slabs(nz);
+		final int nslabs = slabs.length-1;
+		
+		// labeled voxels (seed index), degree and right-hand side of the unlabeled voxels
+		final byte[] seed = new byte[nxyz];
+		for (int xyz=0;xyz<nxyz;xyz++) {
+			if (labels[xyz]>0 && labels[xyz]<=nlb) seed[xyz] = (byte)(labels[xyz]-1);
+			else seed[xyz] = -1;
+		}
+		final float[] degree = new float[nxyz];
+		final float[] invdeg = new float[nxyz];
+		final float[][] prob = new float[nlb][nxyz];
+		final float[][] res = new float[nlb][nxyz];
+		final float[][] dir = new float[nlb][nxyz];
+		final float[][] apdir = new float[nlb][nxyz];
+		final double[][] partial = new double[nslabs][2*nlb];
+		
+		ParallelProcessing.forEach(slabs, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				double[] sum = partial[chunk];
+				for (int z=start;z<end;z++) for (int y=0;y<ny;y++) for (int x=0;x<nx;x++) {
+					int xyz = x+nx*y+nx*ny*z;
+					if (seed[xyz]>-1) continue;
+					double deg = 0.0;
+					for (byte d=0;d<6;d++) {
+						float w = edgeWeight(xyz, x, y, z, d);
+						if (w>0) {
+							deg += w;
+							int ngb = xyz+neighborOffset(d);
+							if (seed[ngb]>-1) res[seed[ngb]][xyz] += w;
+						}
+					}
+					degree[xyz] = (float)deg;
+					if (deg>0) invdeg[xyz] = (float)(1.0/deg);
+					// initial residual b and preconditioned direction M^-1 b
+					for (int k=0;k<nlb;k++) {
+						dir[k][xyz] = invdeg[xyz]*res[k][xyz];
+						sum[k] += res[k][xyz]*res[k][xyz];
+						sum[nlb+k] += res[k][xyz]*dir[k][xyz];
+					}
+				}
+			}
+		});
+		final double[] bnorm = new double[nlb];
+		final double[] rz = new double[nlb];
+		for (int n=0;n<nslabs;n++) for (int k=0;k<nlb;k++) {
+			bnorm[k] += partial[n][k];
+			rz[k] += partial[n][nlb+k];
+		}
+		final boolean[] active = new boolean[nlb];
+		int nactive = 0;
+		for (int k=0;k<nlb;k++) {
+			bnorm[k] = Math.sqrt(bnorm[k]);
+			active[k] = (bnorm[k]>0 && rz[k]>0);
+			if (active[k]) nactive++;
+		}
+		
+		final double[] alpha = new double[nlb];
+		final double[] beta = new double[nlb];
+		int t;
+		for (t=0;t<maxiter && nactive>0;t++) {
+			// apply the Laplacian to the search directions, with the curvatures dir.L dir
+			// (the directions are zero on the labeled voxels, so only the image boundary needs checking)
+			for (int n=0;n<nslabs;n++) for (int k=0;k<2*nlb;k++) partial[n][k] = 0.0;
+			ParallelProcessing.forEach(slabs, new ParallelProcessing.RangeTask() {
+				public void process(int chunk, int start, int end) {
+					double[] sum = partial[chunk];
+					int nxy = nx*ny;
+					for (int z=start;z<end;z++) for (int y=0;y<ny;y++) for (int x=0;x<nx;x++) {
+						int xyz = x+nx*y+nxy*z;
+						if (seed[xyz]>-1) continue;
+						float wpx = (x<nx-1) ? weight[pX][xyz] : 0.0f;
+						float wmx = (x>0) ? weight[pX][xyz-1] : 0.0f;
+						float wpy = (y<ny-1) ? weight[pY][xyz] : 0.0f;
+						float wmy = (y>0) ? weight[pY][xyz-nx] : 0.0f;
+						float wpz = (z<nz-1) ? weight[pZ][xyz] : 0.0f;
+						float wmz = (z>0) ? weight[pZ][xyz-nxy] : 0.0f;
+						for (int k=0;k<nlb;k++) if (active[k]) {
+							float[] p = dir[k];
+							double lap = degree[xyz]*p[xyz];
+							if (wpx>0) lap -= wpx*p[xyz+1];
+							if (wmx>0) lap -= wmx*p[xyz-1];
+							if (wpy>0) lap -= wpy*p[xyz+nx];
+							if (wmy>0) lap -= wmy*p[xyz-nx];
+							if (wpz>0) lap -= wpz*p[xyz+nxy];
+							if (wmz>0) lap -= wmz*p[xyz-nxy];
+							apdir[k][xyz] = (float)lap;
+							sum[k] += p[xyz]*lap;
+						}
+					}
+				}
+			});
+			for (int k=0;k<nlb;k++) if (active[k]) {
+				double curv = 0.0;
+				for (int n=0;n<nslabs;n++) curv += partial[n][k];
+				if (curv>0) alpha[k] = rz[k]/curv;
+				else alpha[k] = 0.0;
+			}
+			// update the solutions and residuals
+			for (int n=0;n<nslabs;n++) for (int k=0;k<2*nlb;k++) partial[n][k] = 0.0;
+			ParallelProcessing.forEach(slabs, new ParallelProcessing.RangeTask() {
+				public void process(int chunk, int start, int end) {
+					double[] sum = partial[chunk];
+					for (int xyz=start*nx*ny;xyz<end*nx*ny;xyz++) if (seed[xyz]==-1) {
+						for (int k=0;k<nlb;k++) if (active[k]) {
+							prob[k][xyz] += (float)(alpha[k]*dir[k][xyz]);
+							res[k][xyz] -= (float)(alpha[k]*apdir[k][xyz]);
+							sum[k] += res[k][xyz]*res[k][xyz];
+							sum[nlb+k] += invdeg[xyz]*res[k][xyz]*res[k][xyz];
+						}
+					}
+				}
+			});
+			double maxres = 0.0;
+			for (int k=0;k<nlb;k++) if (active[k]) {
+				double rnorm = 0.0;
+				double rznew = 0.0;
+				for (int n=0;n<nslabs;n++) {
+					rnorm += partial[n][k];
+					rznew += partial[n][nlb+k];
+				}
+				rnorm = Math.sqrt(rnorm)/bnorm[k];
+				if (rnorm>maxres) maxres = rnorm;
+				if (rnorm<tolerance || alpha[k]==0.0) {
+					active[k] = false;
+					nactive--;
+				} else {
+					beta[k] = rznew/rz[k];
+					rz[k] = rznew;
+				}
+			}
+			if (verbose && t%10==0) System.out.println("iteration "+t+": max residual "+maxres+" ("+nactive+" labels left)");
+			
+			// new search directions
+			if (nactive>0) {
+				ParallelProcessing.forEach(slabs, new ParallelProcessing.RangeTask() {
+					public void process(int chunk, int start, int end) {
+						for (int xyz=start*nx*ny;xyz<end*nx*ny;xyz++) if (seed[xyz]==-1) {
+							for (int k=0;k<nlb;k++) if (active[k]) {
+								dir[k][xyz] = (float)(invdeg[xyz]*res[k][xyz] + beta[k]*dir[k][xyz]);
+							}
+						}
+					}
+				});
+			}
+		}
+		if (debug) System.out.println("random walker: "+t+" iterations");
+		
+		// labeled voxels, and normalization (voxels not connected to any label get equal probabilities)
+		ParallelProcessing.forEach(nxyz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int xyz=start;xyz<end;xyz++) {
+					if (seed[xyz]>-1) {
+						for (int k=0;k<nlb;k++) prob[k][xyz] = 0.0f;
+						prob[seed[xyz]][xyz] = 1.0f;
+					} else {
+						float sum = 0.0f;
+						for (int k=0;k<nlb;k++) {
+							prob[k][xyz] = Numerics.bounded(prob[k][xyz], 0.0f, 1.0f);
+							sum += prob[k][xyz];
+						}
+						for (int k=0;k<nlb;k++) {
+							if (sum>ZERO) prob[k][xyz] /= sum;
+							else prob[k][xyz] = 1.0f/nlb;
+						}
+					}
+				}
+			}
+		});
+		return prob;
+	}
+	
+	/**
+	 *	weight of the edge from xyz in direction d, taken from the weight of the lower voxel so the
+	 *	Laplacian is symmetric (zero outside the image)
+	 */
+	private final float edgeWeight(int xyz, int x, int y, int z, byte d) {
+		if (d==pX) return (x<nx-1) ? weight[pX][xyz] : 0.0f;
+		else if (d==pY) return (y<ny-1) ? weight[pY][xyz] : 0.0f;
+		else if (d==pZ) return (z<nz-1) ? weight[pZ][xyz] : 0.0f;
+		else if (d==mX) return (x>0) ? weight[pX][xyz-1] : 0.0f;
+		else if (d==mY) return (y>0) ? weight[pY][xyz-nx] : 0.0f;
+		else if (d==mZ) return (z>0) ? weight[pZ][xyz-nx*ny] : 0.0f;
+		else return 0.0f;
+	}
+	
+	private final int neighborOffset(byte d) {
+		if (d==pX) return 1;
+		else if (d==pY) return nx;
+		else if (d==pZ) return nx*ny;
+		else if (d==mX) return -1;
+		else if (d==mY) return -nx;
+		else if (d==mZ) return -nx*ny;
+		else return 0;
+	}
+	
 	public final float[] compute2DLabelProbability(int lb, int iter) {
 		
 		float[] p = new float[nx*ny*nz];
@@ -570,7 +779,7 @@ public class RandomWalkSegmentation {
 			else p[xyz] = 0.0f;
 		}
 		
-		BinaryHeap2D heap = new BinaryHeap2D(Numerics.ceil(1.25f*nx*ny), Numerics.ceil(0.1f*nx*ny), BinaryHeap2D.MAXTREE);
+		IndexedHeap heap = new IndexedHeap(nx*ny*nz, Numerics.ceil(1.25f*nx*ny), IndexedHeap.MAXTREE);
     	 
 		heap.reset();
 		float speed, dist;
@@ -682,7 +891,7 @@ public class RandomWalkSegmentation {
 			else p[xyz] = 0.0f;
 		}
 		
-		BinaryHeap2D heap = new BinaryHeap2D(Numerics.ceil(1.25f*nx*ny), Numerics.ceil(0.1f*nx*ny), BinaryHeap2D.MAXTREE);
+		IndexedHeap heap = new IndexedHeap(nx*ny*nz, Numerics.ceil(1.25f*nx*ny), IndexedHeap.MAXTREE);
     	 
 		heap.reset();
 		float speed, dist;
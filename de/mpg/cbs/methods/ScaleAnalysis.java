@@ -62,10 +62,9 @@ public class ScaleAnalysis {
 		min = new float[nsx*nsy*nsz];
 		max = new float[nsx*nsy*nsz];
 					
-		float Imin = ImageStatistics.robustMinimum(image, 0.01f, 2, nix, niy, niz, 4);
-		float Imax = ImageStatistics.robustMaximum(image, 0.01f, 2, nix, niy, niz, 4);
+		float[] bounds = ImageStatistics.robustRange(image, 0.01f, 2, nix, niy, niz, 4);
 
-		range = Imax-Imin;
+		range = bounds[1]-bounds[0];
 	}
 
 	final public void finalize() {
@@ -2,6 +2,9 @@ package de.mpg.cbs.methods;
 
 import java.io.*;
 import java.util.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.lang.ref.SoftReference;
 //import gov.nih.mipav.view.*;
 //import gov.nih.mipav.model.file.FileInfoBase;
 
@@ -47,6 +50,8 @@ public class SimpleShapeAtlas2 {
 	// shape maps
 	private		float[][]			shape;				// the shape images
 	private		String[]			shapeFile;			// the shape fileobjNames
+	private		boolean[]			sharedShape;		// whether the shape image is shared with other atlases (read-only)
+	private		AtlasImages			images = null;		// the cached atlas images, decoded on demand
 	private		int					nax,nay,naz;		// the shape dimensions 
 	private 	float				rax,ray,raz; 		// the shape resolutions
 	private		float				x0a,y0a,z0a;		// the center of the shape image
@@ -149,6 +154,7 @@ public class SimpleShapeAtlas2 {
 		objType = new String[nobj];
 			
 		shape = new float[nobj][];
+		sharedShape = new boolean[nobj];
 		minx = new int[nobj];
 		miny = new int[nobj];
 		minz = new int[nobj];
@@ -181,8 +187,18 @@ public class SimpleShapeAtlas2 {
 	final public byte[] 	getTemplate() { return template; }
 	final public void 	setTemplate(byte[] tpl) { template = tpl; }
 	
-	final public float[] 	getShape(int n) { return shape[n]; }
-	final public float[][] 	getShapes() { return shape; }
+	final public float[] 	getShape(int n) { 
+		if (shape[n]==null && shapeFile!=null && shapeFile[n]!=null) {
+			// decode the shared prior on first use
+			shape[n] = images.getShape(shapeFile[n], nax*nay*naz);
+			sharedShape[n] = true;
+		}
+		return shape[n]; 
+	}
+	final public float[][] 	getShapes() { 
+		for (int n=0;n<nobj;n++) getShape(n);
+		return shape; 
+	}
 	
 	final public float[] 		getTransform() { 		
 		return transform; 
@@ -254,7 +270,7 @@ public class SimpleShapeAtlas2 {
 		return ori;
 	}
 	final public boolean hasTopology() { return template!=null; }
-	final public boolean hasShape(int id) { return shape[id]!=null; }
+	final public boolean hasShape(int id) { return getShape(id)!=null; }
 	
 	final public float[][] 	getIntensityPriors(String[] modality, int nc) {
 		float[][]	prior = new float[nc][nobj];
@@ -334,7 +350,7 @@ public class SimpleShapeAtlas2 {
 		for (int xyz=0;xyz<nax*nay*naz;xyz++) {
 			boolean isMasked = true;
 			for (int n=1;n<nobj;n++) {
-				if (shape[n][xyz]>shape[0][xyz]) isMasked = false;
+				if (getShape(n)[xyz]>getShape(0)[xyz]) isMasked = false;
 			}
 			if (!isMasked) atlasvol++;
 		}
@@ -367,7 +383,7 @@ public class SimpleShapeAtlas2 {
 			// compute each class probability : attribute the highest
 			max = 0; best = -1;
 			for (byte k=0;k<nobj;k++) {
-				val = ImageInterpolation.linearInterpolation(shape[k],0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
+				val = ImageInterpolation.linearInterpolation(getShape(k),0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
 				if (val>max) {
 					best = k;
 					max = val;
@@ -393,7 +409,7 @@ public class SimpleShapeAtlas2 {
 			// compute each class probability : attribute the highest
 			max = 0; best = -1;
 			for (int k=0;k<nobj;k++) {
-				val = ImageInterpolation.linearInterpolation(shape[k],0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
+				val = ImageInterpolation.linearInterpolation(getShape(k),0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
 				if (val>max) {
 					best = k;
 					max = val;
@@ -420,7 +436,7 @@ public class SimpleShapeAtlas2 {
 			// compute each class probability : attribute the highest
 			max = 0; best = -1;
 			for (int k=0;k<nobj;k++) {
-				val = ImageInterpolation.linearInterpolation(shape[k],0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
+				val = ImageInterpolation.linearInterpolation(getShape(k),0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
 				if (val>max) {
 					best = k;
 					max = val;
@@ -443,7 +459,7 @@ public class SimpleShapeAtlas2 {
 			imageToShapeCoordinates(XP, x,y,z);
 			
 			for (int k=0;k<nobj;k++) {	
-				img[k][x+y*nix+z*nix*niy] = ImageInterpolation.linearInterpolation(shape[k],0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
+				img[k][x+y*nix+z*nix*niy] = ImageInterpolation.linearInterpolation(getShape(k),0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
 			}
 		}
 		return img;
@@ -459,7 +475,7 @@ public class SimpleShapeAtlas2 {
 		for (int x=0;x<nix;x++) for (int y=0;y<niy;y++) for (int z=0;z<niz;z++) {
 			imageToShapeCoordinates(XP, x,y,z);
 			
-			img[x+y*nix+z*nix*niy] = ImageInterpolation.linearInterpolation(shape[k],0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
+			img[x+y*nix+z*nix*niy] = ImageInterpolation.linearInterpolation(getShape(k),0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
 		}
 		return img;
 	}
@@ -498,7 +514,7 @@ public class SimpleShapeAtlas2 {
 			xyz = x+y*nix+z*nix*niy;
 			img[xyz] = 0.0f;
 			for (int k=0;k<nobj;k++) if (iswm[k]) {	
-				img[xyz] = Numerics.max(img[xyz],ImageInterpolation.linearInterpolation(shape[k],0.0f,XP[0],XP[1],XP[2],nax,nay,naz));	
+				img[xyz] = Numerics.max(img[xyz],ImageInterpolation.linearInterpolation(getShape(k),0.0f,XP[0],XP[1],XP[2],nax,nay,naz));	
 			}
 		}
 		return img;
@@ -596,21 +612,36 @@ public class SimpleShapeAtlas2 {
 		
 		return output;	
 	}
+	/**
+	 *	map a raw image file in memory (little endian), or return null if the file is too short
+	 */
+	private static final ByteBuffer mapImageFile(String fileobjName, long size) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(fileobjName, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			if (channel.size()<size) {
+				System.out.println("i/o pb: "+fileobjName+" is too short ("+channel.size()+" bytes instead of "+size+")");
+				return null;
+			}
+			// the mapping remains valid after the file is closed
+			return channel.map(FileChannel.MapMode.READ_ONLY, 0, size).order(ByteOrder.LITTLE_ENDIAN);
+		} finally {
+			raf.close();
+		}
+	}
+	
 	/**
 	 *	read template image (the image must be in bytes)
 	 */
-	private byte[] loadTemplateImage(String fileobjName, int Nx, int Ny, int Nz) {
+	private static final byte[] loadTemplateImage(String fileobjName, int Nx, int Ny, int Nz) {
 		// read the raw data
 		byte[] buffer = null;
 		try {
-          File f = new File( fileobjName );
-		  //System.out.println("exists ? "+f.exists());
-          //System.out.println("can read ? "+f.canRead());
-          FileInputStream fis = new FileInputStream( f );
-            
-		   buffer = new byte[Nx*Ny*Nz];
-		   fis.read(buffer);
-           fis.close();
+			ByteBuffer mapped = mapImageFile(fileobjName, (long)Nx*Ny*Nz);
+			if (mapped!=null) {
+				buffer = new byte[Nx*Ny*Nz];
+				mapped.get(buffer);
+			}
 		} catch (IOException io) {
            System.out.println("i/o pb: "+io.getMessage());
 		}
@@ -620,81 +651,115 @@ public class SimpleShapeAtlas2 {
 	/**
 	 *	read shape image (the image must be in float, little endian)
 	 */
-	private final float[] loadShapeImage(String fileobjName, int Nx, int Ny, int Nz) {
+	private static final float[] loadShapeImage(String fileobjName, int Nx, int Ny, int Nz) {
 		// read the raw data
-		byte[] buffer = null;
+		float[] img = null;
 		try {
-           File f = new File( fileobjName );
-           FileInputStream fis = new FileInputStream( f );
-            
-		   buffer = new byte[4*Nx*Ny*Nz];
-		   fis.read(buffer);
-           fis.close();
+			ByteBuffer mapped = mapImageFile(fileobjName, 4L*Nx*Ny*Nz);
+			if (mapped!=null) {
+				img = new float[Nx*Ny*Nz];
+				mapped.asFloatBuffer().get(img);
+			}
 		} catch (IOException io) {
            System.out.println("i/o pb: "+io.getMessage());
 		}
-		// convert to the image format
-		float [] img  = new float[Nx*Ny*Nz];
-
-		for (int xyz=0;xyz<Nx*Ny*Nz;xyz++) {
-			int b1 = buffer[4*(xyz)+0] & 0xff;
-			int b2 = buffer[4*(xyz)+1] & 0xff;
-			int b3 = buffer[4*(xyz)+2] & 0xff;
-			int b4 = buffer[4*(xyz)+3] & 0xff;
-			// big endian
-			//int tmpInt = ((b1 << 24) | (b2 << 16) | (b3 << 8) | b4);
-			// little endian
-			int tmpInt = ((b4 << 24) | (b3 << 16) | (b2 << 8) | b1);
-
-			img[xyz] = Float.intBitsToFloat(tmpInt);
-		}
-        buffer = null;
-		
 		return img;
 	}
 	
 	/**
 	 *	read shape image (the image must be in float, little endian)
 	 */
-	private final float[][] loadDirectionImage(String fileobjName, int Nx, int Ny, int Nz) {
+	private static final float[][] loadDirectionImage(String fileobjName, int Nx, int Ny, int Nz) {
 		// read the raw data
-		byte[] buffer = null;
+		float[][] img = null;
 		try {
-           File f = new File( fileobjName );
-           FileInputStream fis = new FileInputStream( f );
-            
-		   buffer = new byte[12*Nx*Ny*Nz];
-		   fis.read(buffer);
-           fis.close();
+			ByteBuffer mapped = mapImageFile(fileobjName, 12L*Nx*Ny*Nz);
+			if (mapped!=null) {
+				img = new float[3][Nx*Ny*Nz];
+				FloatBuffer values = mapped.asFloatBuffer();
+				for (int d=0;d<3;d++) values.get(img[d]);
+			}
 		} catch (IOException io) {
            System.out.println("i/o pb: "+io.getMessage());
 		}
-		// convert to the image format
-		float[][] img  = new float[3][Nx*Ny*Nz];
-
-		for (int xyz=0;xyz<Nx*Ny*Nz;xyz++) for (int d=0;d<3;d++) {
-			int b1 = buffer[4*(xyz+Nx*Ny*Nz*d)+0] & 0xff;
-			int b2 = buffer[4*(xyz+Nx*Ny*Nz*d)+1] & 0xff;
-			int b3 = buffer[4*(xyz+Nx*Ny*Nz*d)+2] & 0xff;
-			int b4 = buffer[4*(xyz+Nx*Ny*Nz*d)+3] & 0xff;
-			// big endian
-			//int tmpInt = ((b1 << 24) | (b2 << 16) | (b3 << 8) | b4);
-			// little endian
-			int tmpInt = ((b4 << 24) | (b3 << 16) | (b2 << 8) | b1);
-
-			img[d][xyz] = Float.intBitsToFloat(tmpInt);
+		return img;
+	}
+	
+	/**
+	 *	process-wide cache of the atlas images, shared by all the atlases loaded from the same file.
+	 *	<p>
+	 *	The images are read-only: they are decoded from the mapped files on first use and kept
+	 *	as long as memory allows. The cache is rebuilt if the atlas file has been modified.
+	 */
+	private static final class AtlasImages {
+		private static final Map<String,AtlasImages> cache = new HashMap<String,AtlasImages>();
+		
+		private final long	modified;
+		private final Map<String,SoftReference<float[]>> shapes = new HashMap<String,SoftReference<float[]>>();
+		private final Map<String,SoftReference<byte[]>> templates = new HashMap<String,SoftReference<byte[]>>();
+		
+		private AtlasImages(long modified) {
+			this.modified = modified;
 		}
-        buffer = null;
 		
-		return img;
+		/** the images associated with a given atlas file */
+		public static final synchronized AtlasImages forAtlas(String fileobjName) {
+			File f = new File(fileobjName);
+			String key;
+			try {
+				key = f.getCanonicalPath();
+			} catch (IOException e) {
+				key = f.getAbsolutePath();
+			}
+			AtlasImages images = cache.get(key);
+			if (images==null || images.modified!=f.lastModified()) {
+				images = new AtlasImages(f.lastModified());
+				cache.put(key, images);
+			}
+			return images;
+		}
+		
+		/** remove all the cached images */
+		public static final synchronized void clear() {
+			cache.clear();
+		}
+		
+		public final synchronized float[] getShape(String fileobjName, int size) {
+			SoftReference<float[]> ref = shapes.get(fileobjName);
+			float[] img = (ref!=null) ? ref.get() : null;
+			if (img==null || img.length!=size) {
+				img = loadShapeImage(fileobjName, size, 1, 1);
+				if (img!=null) shapes.put(fileobjName, new SoftReference<float[]>(img));
+			}
+			return img;
+		}
+		
+		public final synchronized byte[] getTemplate(String fileobjName, int size) {
+			SoftReference<byte[]> ref = templates.get(fileobjName);
+			byte[] img = (ref!=null) ? ref.get() : null;
+			if (img==null || img.length!=size) {
+				img = loadTemplateImage(fileobjName, size, 1, 1);
+				if (img!=null) templates.put(fileobjName, new SoftReference<byte[]>(img));
+			}
+			return img;
+		}
+	}
+	
+	/** 
+	 *	release the atlas images shared between atlases (they are re-loaded when needed)
+	 */
+	public static final void clearAtlasCache() {
+		AtlasImages.clear();
 	}
 	
 	/** 
 	 *	load the atlas data from a file. 
-	 *  All associated images are loaded at this time
+	 *  All associated images are mapped from the (shared) atlas cache
+	 *  and decoded on first use
 	 */
 	final public void loadAtlas(String fileobjName) {
 		if (verbose) System.out.println("loading atlas file: "+fileobjName);
+		images = AtlasImages.forAtlas(fileobjName);
 		try {
             File f = new File(fileobjName);
 			String dir = f.getParent();
@@ -731,6 +796,7 @@ public class SimpleShapeAtlas2 {
 					}
 					// allocate other quantities
 					shape = new float[nobj][];
+					sharedShape = new boolean[nobj];
 					minx = new int[nobj];
 					miny = new int[nobj];
 					minz = new int[nobj];
@@ -774,7 +840,7 @@ public class SimpleShapeAtlas2 {
 					rty = BasicInfo.getFloat(st);
 					rtz = BasicInfo.getFloat(st);
 					if (debug) System.out.print("res: "+rtx+"x"+rty+"x"+rtz+"\n");
-					template = loadTemplateImage(imageFile, ntx, nty, ntz);
+					template = images.getTemplate(imageFile, ntx*nty*ntz);
 					templateFile = imageFile;
 				} else
 				if (line.startsWith("Shape Atlas")) {
@@ -825,7 +891,8 @@ public class SimpleShapeAtlas2 {
 							minx[id] = 0; miny[id] = 0; minz[id] = 0;
 							maxx[id] = nax; maxy[id] = nay; maxz[id] = naz;
 			
-							shape[id] = loadShapeImage(imageFile, nax, nay, naz);
+							// the shape image is decoded on first use
+							shape[id] = null;
 							shapeFile[id] = imageFile;
 						}
 						line = br.readLine();
@@ -1036,7 +1103,7 @@ public class SimpleShapeAtlas2 {
     		pobj = 0.0f;
     		for (int n=0;n<nobj;n++) 
     			if (isobj[n]) 
-    				pobj = Numerics.max(pobj,shape[n][xyz]);
+    				pobj = Numerics.max(pobj,getShape(n)[xyz]);
     			
     		xs += pobj*x;
     		ys += pobj*y;
@@ -1071,7 +1138,7 @@ public class SimpleShapeAtlas2 {
     		xyz = x+nax*y+nax*nay*z;
     		img[xyz] = 0.0f;
     		for (int n=0;n<nobj;n++) if (isobj[n])
-    			img[xyz] = Numerics.max(img[xyz],shape[n][xyz]);    			
+    			img[xyz] = Numerics.max(img[xyz],getShape(n)[xyz]);    			
     	}
     	return img;
     }
@@ -1089,8 +1156,8 @@ public class SimpleShapeAtlas2 {
     		in = 0.0f;
     		out = 0.0f;
     		for (int n=0;n<nobj;n++) {
-    			if (isobj[n]) in = Numerics.max(in,shape[n][xyz]);  
-				else out = Numerics.max(out,shape[n][xyz]);  
+    			if (isobj[n]) in = Numerics.max(in,getShape(n)[xyz]);  
+				else out = Numerics.max(out,getShape(n)[xyz]);  
 			}
 			if (in>out) img[xyz] = 1.0f;
 			else img[xyz] = 0.0f;
@@ -1115,9 +1182,9 @@ public class SimpleShapeAtlas2 {
     		neg = 0.0f;
     		out = 0.0f;
     		for (int n=0;n<nobj;n++) {
-    			if (ispobj[n]) pos = Numerics.max(pos,shape[n][xyz]);  
-				else if (isnobj[n]) neg = Numerics.max(neg,shape[n][xyz]);  
-				else out = Numerics.max(out,shape[n][xyz]);  
+    			if (ispobj[n]) pos = Numerics.max(pos,getShape(n)[xyz]);  
+				else if (isnobj[n]) neg = Numerics.max(neg,getShape(n)[xyz]);  
+				else out = Numerics.max(out,getShape(n)[xyz]);  
 			}
 			if (pos>out && pos>neg) img[xyz] = 1.0f;
 			else if (neg>out && neg>pos) img[xyz] = 2.0f;
@@ -1143,9 +1210,9 @@ public class SimpleShapeAtlas2 {
     		neg = 0.0f;
     		out = 0.0f;
     		for (int n=0;n<nobj;n++) {
-    			if (ispobj[n]) pos = Numerics.max(pos,shape[n][xyz]);  
-				else if (isnobj[n]) neg = Numerics.max(neg,shape[n][xyz]);  
-				else out = Numerics.max(out,shape[n][xyz]);  
+    			if (ispobj[n]) pos = Numerics.max(pos,getShape(n)[xyz]);  
+				else if (isnobj[n]) neg = Numerics.max(neg,getShape(n)[xyz]);  
+				else out = Numerics.max(out,getShape(n)[xyz]);  
 			}
 			if (pos>out && pos>neg) img[xyz] = 2.0f;
 			else if (neg>out && neg>pos) img[xyz] = 0.0f;
@@ -1168,7 +1235,7 @@ public class SimpleShapeAtlas2 {
 			// compute each class probability : attribute the highest
 			max = 0; best = -1;
 			for (byte k=0;k<nobj;k++) {
-				val = ImageInterpolation.linearInterpolation(shape[k],0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
+				val = ImageInterpolation.linearInterpolation(getShape(k),0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
 				if (val>max) {
 					best = k;
 					max = val;
@@ -1202,10 +1269,10 @@ public class SimpleShapeAtlas2 {
     		val3 = 0.0f;
     		out = 0.0f;
     		for (int n=0;n<nobj;n++) {
-    				 if (isobj1[n]) val1 = Numerics.max(val1,shape[n][xyz]);  
-				else if (isobj2[n]) val2 = Numerics.max(val2,shape[n][xyz]);  
-				else if (isobj3[n]) val3 = Numerics.max(val3,shape[n][xyz]);  
-				else out = Numerics.max(out,shape[n][xyz]);  
+    				 if (isobj1[n]) val1 = Numerics.max(val1,getShape(n)[xyz]);  
+				else if (isobj2[n]) val2 = Numerics.max(val2,getShape(n)[xyz]);  
+				else if (isobj3[n]) val3 = Numerics.max(val3,getShape(n)[xyz]);  
+				else out = Numerics.max(out,getShape(n)[xyz]);  
 			}
 				 if (val1>val2 && val1>val3 && val1>out) img[xyz] = 1.0f;
 			else if (val2>val1 && val2>val3 && val2>out) img[xyz] = 2.0f;
@@ -1302,11 +1369,12 @@ public class SimpleShapeAtlas2 {
 			xyz = x+nax*y+nax*nay*z;
     		warp.getCurrentMapping(XP, x,y,z);
 			for (int k=0;k<nobj;k++) {
-				deformed[k][xyz] = ImageInterpolation.linearInterpolation(shape[k],0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
+				deformed[k][xyz] = ImageInterpolation.linearInterpolation(getShape(k),0.0f,XP[0],XP[1],XP[2],nax,nay,naz);	
 			}
 		}
-		for (xyz=0;xyz<nax*nay*naz;xyz++) for (int k=0;k<nobj;k++) {
-			shape[k][xyz] = deformed[k][xyz];
+		for (int k=0;k<nobj;k++) {
+			shape[k] = deformed[k];
+			sharedShape[k] = false;
 		}
 		deformed = null;
 	}
@@ -1326,6 +1394,11 @@ public class SimpleShapeAtlas2 {
 	 *	normalizes the priors into memberships
 	 */
 	public final void normalizeShapePriors() {
+		// the shared priors are copied before modification
+		for (int k=0;k<nobj;k++) if (getShape(k)!=null && sharedShape[k]) {
+			shape[k] = shape[k].clone();
+			sharedShape[k] = false;
+		}
 		for (int x=0;x<nax;x++) for (int y=0;y<nay;y++) for (int z=0;z<naz;z++) {
             float sum=0.0f;
 			for (int k=0;k<nobj;k++) {
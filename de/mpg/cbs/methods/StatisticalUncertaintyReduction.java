@@ -39,8 +39,7 @@ public class StatisticalUncertaintyReduction {
 	// labeling parameters
 	private 	int 			nobj;    			// number of shapes
 	private 	int[]			objlabel;			// label values in the original image
-	private		float[][]		bestproba;			// best probability function
-	private		byte[][]		bestlabel;			// corresponding labels
+	private		TopKProbabilities	best;			// best probability functions and corresponding labels
 	private static	byte 	  	nbest;				// total number of probability functions
 	//private 	byte[] 			segmentation;   	// MGDM's segmentation (object indices 1 to N)
 	private		boolean[]		mask;				// masking regions not used in computations
@@ -106,15 +105,21 @@ public class StatisticalUncertaintyReduction {
 	}
 	
 	public final void setBestProbabilities(float[][] bestpb, byte[][] bestlb, int[] objlb) {
-		bestproba = bestpb;
-		bestlabel = bestlb;
-		nbest = Numerics.min(nbest, (byte)bestproba.length);
+		nbest = Numerics.min(nbest, (byte)bestpb.length);
+		best = new TopKProbabilities(Arrays.copyOf(bestpb,nbest), Arrays.copyOf(bestlb,nbest));
+		objlabel = objlb;
+		nobj = objlabel.length;
+	}
+	
+	public final void setBestProbabilities(TopKProbabilities bestpb, int[] objlb) {
+		best = bestpb;
+		nbest = best.getDepth();
 		objlabel = objlb;
 		nobj = objlabel.length;
 	}
 	
 	public final void initBestProbaFromSegmentation(int[] seg, int nlb, float dist) {
-		bestlabel = new byte[nbest][nxyzi];
+		best = new TopKProbabilities(nxyzi, nbest);
 		nobj = nlb;
 		objlabel = new int[nobj];
 		
@@ -128,16 +133,18 @@ public class StatisticalUncertaintyReduction {
 				objlabel[nset] = seg[xyzi];
 				nset++;
 			}
-			bestlabel[0][xyzi] = lb;
+			best.set(xyzi, 0, lb, 0.0f);
 		}
 		
 		// propagate the distances MGDM-style
 		// ...
 	}
 	
-	public final float[][] getProbabilities() { return bestproba; }
+	public final TopKProbabilities getTopProbabilities() { return best; }
+	
+	public final float[][] getProbabilities() { return best.exportProbabilities(); }
 	
-	public final byte[][] getLabels() { return bestlabel; }
+	public final byte[][] getLabels() { return best.exportLabels(); }
 	
 	//public final byte[] getSegmentation() { return segmentation; }
     
@@ -277,21 +284,18 @@ public class StatisticalUncertaintyReduction {
 		float[] certainty = new float[nix*niy*niz];   	
 		
 		for (int xyzi=0;xyzi<nix*niy*niz;xyzi++) if (mask[xyzi]) {
-			certainty[xyzi] = certaintyFunction(bestproba[0][xyzi]-bestproba[1][xyzi],factor);
+			certainty[xyzi] = certaintyFunction(best.getProbability(xyzi,0)-best.getProbability(xyzi,1),factor);
 		}
 		return certainty;	
 	}
 	
-    public final void diffuseCertainty(int iter, float scale, float factor, int ngbsize, float mincertainty, boolean computeDistribution, float diffratio) {
+    public final void diffuseCertainty(int iter, final float scale, float factor, final int ngbsize, float mincertainty, final boolean computeDistribution, float diffratio) {
     	
 		//mix with the neighbors?
-		float[] certainty = new float[nix*niy*niz];   	
-		float[][] newproba = new float[nbest][nix*niy*niz];
-		byte[][] newlabel = new byte[nbest][nix*niy*niz];
-		float[] ngbweight = new float[26];
-		float[][] imgweight = new float[nix*niy*niz][26];   	
+		final float[] certainty = new float[nix*niy*niz];   	
+		final TopKProbabilities next = new TopKProbabilities(nix*niy*niz, nbest);
 		//byte[][] mapdepth = new byte[nobj][nix*niy*niz];	
-		byte[] mapdepth = new byte[nix*niy*niz];	
+		final byte[] mapdepth = new byte[nix*niy*niz];	
 		
 		float[][] objmean = new float[nobj][nc];
 		float[][] objvar = new float[nobj][nc];
@@ -299,28 +303,24 @@ public class StatisticalUncertaintyReduction {
 		
 		// SOR-scheme?
 		//float sorfactor = 1.95f;
-		float sorfactor = 1.0f;
+		final float sorfactor = 1.0f;
 		
 		// compute the functional factor
 		//float certaintyfactor = (float)(FastMath.log(0.5)/FastMath.log(factor));
-		float certaintyfactor = factor;
+		final float certaintyfactor = factor;
 		BasicInfo.displayMessage("certainty exponent "+certaintyfactor+"\n");
 		
 		// rescale the certainty threshold so that it maps to the computed certainty values
 		mincertainty = certaintyFunction(mincertainty,certaintyfactor);
 		BasicInfo.displayMessage("minimum certainty threshold"+mincertainty+"\n");
 		
-		for (int x=1;x<nix-1;x++) for (int y=1;y<niy-1;y++) for (int z=1;z<niz-1;z++) {
-			int xyzi = x+nix*y+nix*niy*z;
-			for (byte j=0;j<26;j++) {
-				int xyzj = Ngb.neighborIndex(j, xyzi, nix, niy, niz);
-				imgweight[xyzi][j] = sorfactor*diffusionImageWeightFunction(xyzi,xyzj,scale)/ngbsize;
-			}
-		}
-		for (int m=0;m<nbest;m++) for (int xyzi=0;xyzi<nix*niy*niz;xyzi++) {
-			newproba[m][xyzi] = bestproba[m][xyzi];
-			newlabel[m][xyzi] = bestlabel[m][xyzi];
-		}
+		// the image weights are recomputed when needed rather than stored (26 values per voxel)
+		final float cmin = mincertainty;
+		
+		// statistics of the changes for each slab: sum and max of differences, number of changes, flips, processed voxels
+		final int[] slabs = ParallelProcessing.slabs(niz);
+		final double[][] changes = new double[slabs.length-1][5];
+		
 		/* redo every time?? 
 		for (int xyzi=0;xyzi<nix*niy*niz;xyzi++) {
 			for (byte n=0;n<nobj;n++) {
@@ -345,6 +345,9 @@ public class StatisticalUncertaintyReduction {
 			float ndiff = 0.0f;
 			float nflip = 0.0f;
 			float nproc = 0.0f;
+			
+			// start from the sorted probabilities of the previous iteration
+			next.copy(best);
 			/*
 			// re-compute depth
 			for (int xyzi=0;xyzi<nix*niy*niz;xyzi++) {
@@ -445,67 +448,75 @@ public class StatisticalUncertaintyReduction {
 			// main loop: label-per-label
 			for (byte n=0;n<nobj;n++) {
 				
+				final byte lb = n;
+				
 				// re-compute depth
 				// mapdepth only needed for obj n: single map, recomputed every time?
-				for (int xyzi=0;xyzi<nix*niy*niz;xyzi++) {
-					mapdepth[xyzi] = nbest;
-					for (byte m=0;m<nbest;m++) {
-						if (bestlabel[m][xyzi]==n) {
-							mapdepth[xyzi] = m;
+				// get the gain ; normalize
+				ParallelProcessing.forEach(nix*niy*niz, new ParallelProcessing.RangeTask() {
+					public void process(int chunk, int start, int end) {
+						for (int xyzi=start;xyzi<end;xyzi++) {
+							int m = best.depthOf(xyzi, lb);
+							if (m>-1) mapdepth[xyzi] = (byte)m;
+							else mapdepth[xyzi] = nbest;
+							
+							if (mask[xyzi]) {
+								if (mapdepth[xyzi]<nbest) {
+									if (mapdepth[xyzi]==0) certainty[xyzi] = certaintyFunction(best.getProbability(xyzi,0)-best.getProbability(xyzi,1),certaintyfactor);
+									else certainty[xyzi] = certaintyFunction(best.getProbability(xyzi,0)-best.getProbability(xyzi,mapdepth[xyzi]),certaintyfactor);
+								} else {
+									certainty[xyzi] = certaintyFunction(best.getProbability(xyzi,0)-best.getProbability(xyzi,nbest-1),certaintyfactor);
+								}
+							}
 						}
 					}
-				}
+				});
 				
 				//BasicInfo.displayMessage("propagate gain for label "+n+"\n");
 				BasicInfo.displayMessage(".");
 
-				// get the gain ; normalize
-				for (int xyzi=0;xyzi<nix*niy*niz;xyzi++) if (mask[xyzi]) {
-					if (mapdepth[xyzi]<nbest) {
-						if (mapdepth[xyzi]==0) certainty[xyzi] = certaintyFunction(bestproba[0][xyzi]-bestproba[1][xyzi],certaintyfactor);
-						else certainty[xyzi] = certaintyFunction(bestproba[0][xyzi]-bestproba[mapdepth[xyzi]][xyzi],certaintyfactor);
-					} else {
-						certainty[xyzi] = certaintyFunction(bestproba[0][xyzi]-bestproba[nbest-1][xyzi],certaintyfactor);
-					}
-				}
 				// propagate the values : diffusion
-				for (int xyzi=0;xyzi<nix*niy*niz;xyzi++) if (mask[xyzi]) {
-				//for (int x=1;x<nix-1;x++) for (int y=1;y<niy-1;y++) for (int z=1;z<niz-1;z++) {
-					//int xyzi = x+nix*y+nix*niy*z;
-					if (mapdepth[xyzi]<nbest && certainty[xyzi]<=mincertainty) {
-						nproc++;
-						
-						float den = certainty[xyzi];
-						float num = den*bestproba[mapdepth[xyzi]][xyzi];
-						float prev = bestproba[mapdepth[xyzi]][xyzi];
-					
-						for (byte j=0;j<26;j++) {
-							int xyzj = Ngb.neighborIndex(j, xyzi, nix, niy, niz);
-							ngbweight[j] = certainty[xyzj]*imgweight[xyzi][j];
-						}
-						byte[] rank = Numerics.argmax(ngbweight, ngbsize);
-						for (int l=0;l<ngbsize;l++) {
-							int xyzl = Ngb.neighborIndex(rank[l], xyzi, nix, niy, niz);
-							if (mapdepth[xyzl]<nbest) num += ngbweight[rank[l]]*bestproba[mapdepth[xyzl]][xyzl];
-							else num += ngbweight[rank[l]]*bestproba[nbest-1][xyzl];
-							den += ngbweight[rank[l]];
-						}
-						// other forms of regularization??
-						if (computeDistribution) {
-							//num /= 0.5f*(1.0f+0.5f*1.95f); // about 1.0
-						} else {
-							if (den>1e-9f) num /= den;
+				// (all updates go into the next iteration, so the slabs are independent)
+				ParallelProcessing.forEach(slabs, new ParallelProcessing.RangeTask() {
+					public void process(int chunk, int zmin, int zmax) {
+						float[] ngbweight = new float[26];
+						double[] change = changes[chunk];
+						for (int xyzi=zmin*nix*niy;xyzi<zmax*nix*niy;xyzi++) if (mask[xyzi]) {
+							if (mapdepth[xyzi]<nbest && certainty[xyzi]<=cmin) {
+								change[4]++;
+								
+								float den = certainty[xyzi];
+								float prev = best.getProbability(xyzi,mapdepth[xyzi]);
+								float num = den*prev;
+							
+								for (byte j=0;j<26;j++) {
+									int xyzj = Ngb.neighborIndex(j, xyzi, nix, niy, niz);
+									ngbweight[j] = certainty[xyzj]*(sorfactor*diffusionImageWeightFunction(xyzi,xyzj,scale)/ngbsize);
+								}
+								byte[] rank = Numerics.argmax(ngbweight, ngbsize);
+								for (int l=0;l<ngbsize;l++) {
+									int xyzl = Ngb.neighborIndex(rank[l], xyzi, nix, niy, niz);
+									if (mapdepth[xyzl]<nbest) num += ngbweight[rank[l]]*best.getProbability(xyzl,mapdepth[xyzl]);
+									else num += ngbweight[rank[l]]*best.getProbability(xyzl,nbest-1);
+									den += ngbweight[rank[l]];
+								}
+								// other forms of regularization??
+								if (computeDistribution) {
+									//num /= 0.5f*(1.0f+0.5f*1.95f); // about 1.0
+								} else {
+									if (den>1e-9f) num /= den;
+								}
+								next.set(xyzi, mapdepth[xyzi], lb, num);
+								
+								change[0] += Numerics.abs(num-prev);
+								change[1] = Numerics.max(change[1], Numerics.abs(num-prev));
+								change[2]++;
+								if (prev<0.5f && num>0.5f) change[3]++;
+								if (prev>0.5f && num<0.5f) change[3]++;
+							}
 						}
-						newproba[mapdepth[xyzi]][xyzi] = num;
-						newlabel[mapdepth[xyzi]][xyzi] = n;
-						
-						meandiff += Numerics.abs(num-prev);
-						ndiff++;
-						maxdiff = Numerics.max(maxdiff, Numerics.abs(num-prev));
-						if (prev<0.5f && num>0.5f) nflip++;
-						if (prev>0.5f && num<0.5f) nflip++;
 					}
-				}
+				});
 				// maybe not really useful..
 				/*
 				if (computeDistribution) {
@@ -527,44 +538,30 @@ public class StatisticalUncertaintyReduction {
 				}
 				*/
 			}
+			for (int c=0;c<changes.length;c++) {
+				meandiff += changes[c][0];
+				maxdiff = Numerics.max(maxdiff, (float)changes[c][1]);
+				ndiff += changes[c][2];
+				nflip += changes[c][3];
+				nproc += changes[c][4];
+				for (int k=0;k<5;k++) changes[c][k] = 0.0;
+			}
 			if (ndiff>0) meandiff /= ndiff;
 			if (t==0) t0diff = meandiff;
 			
 			// make a hard copy
-			for (int m=0;m<nbest;m++) for (int xyzi=0;xyzi<nix*niy*niz;xyzi++) {
-				bestproba[m][xyzi] = newproba[m][xyzi];
-				bestlabel[m][xyzi] = newlabel[m][xyzi];
-			}
-			float nresort=0.0f;
+			best.copy(next);
 			float nreseg=0.0f;
 			// re-sort the gain functions
 			for (int xyzi=0;xyzi<nix*niy*niz;xyzi++) {
-				for (int m=0;m<nbest-1;m++) {
-					boolean stop=true;
-					for (int l=nbest-1;l>m;l--) {
-						if (bestproba[l][xyzi]>bestproba[l-1][xyzi]) {
-							float swap = bestproba[l-1][xyzi];
-							bestproba[l-1][xyzi] = bestproba[l][xyzi];
-							bestproba[l][xyzi] = swap;
-							byte swaplb = bestlabel[l-1][xyzi];
-							bestlabel[l-1][xyzi] = bestlabel[l][xyzi];
-							bestlabel[l][xyzi] = swaplb;
-							stop=false;
-							nresort++;
-							if (l==1) nreseg++;
-						}
-					}
-					//if (stop) m=nbest;
-				}
+				byte prevlb = best.getLabel(xyzi,0);
+				best.sort(xyzi);
+				if (best.getLabel(xyzi,0)!=prevlb) nreseg++;
 			}
 			BasicInfo.displayMessage("mean diff. "+meandiff+", max diff. "+maxdiff+", changed. "+nreseg+"\n");
 			//BasicInfo.displayMessage("n processed "+nproc+", n flipped "+nflip+"\n");
 			
-			//BasicInfo.displayMessage("n resorted"+nresort+"\n");
-			
 		}
-		newproba = null;
-		newlabel = null;
 		/* every time?
 		// re-sort the gain functions
 		for (int xyzi=0;xyzi<nix*niy*niz;xyzi++) {
@@ -6,105 +6,90 @@ import org.apache.commons.math3.util.FastMath;
 /**
  *
  *  This algorithm computes basic total variation minimizers
- *  from Chambolle's algorithm
+ *  from Chambolle's algorithm, or with the accelerated primal-dual
+ *	algorithm of Chambolle and Pock
+ *	<p>
+ *	All images are stored in contiguous arrays (index x + nx*y + nx*ny*z). Each iteration
+ *	is a single pass over the image, in parallel over z slabs: the divergence field is only
+ *	kept for the two planes around the current one, and the planes shared by two slabs
+ *	are computed in separate steps, so the results do not depend on the number of threads.
  *
  *	@version    July 2014
  *	@author     Pierre-Louis Bazin
- *		
+ *
  *
  */
- 
+
 public class TotalVariation {
-		
+
 	// numerical quantities
 	private static final	float   INF=1e30f;
 	private static final	float   ZERO=1e-30f;
-	
+
 	// data buffers
-	private 	float[][][]			image;  			// original image
-	private 	float[][][][]		proj;				// tv-projection function
-	private 	boolean[][][]		mask;   			// image mask: true for data points
+	private 	float[]				image;  			// original image
+	private 	float[][]			proj;				// tv-projection function
+	private 	boolean[]			mask;   			// image mask: true for data points
 	private		static	int			nx,ny,nz;   		// image dimensions
 	private		float 				Imin, Imax;
 	private		float				Isize;				// non-masked region size
-	
+
 	// parameters
 	private 	float 		lambdaScale = 0.05f;		// scaling parameter
 	private 	float 		tauStep = 0.125f;		// internal step parameter (default 1/4)
 	private 	float 		maxdist = 0.0001f;		// maximum error for stopping
 	private 	int 		maxiter = 100;		// maximum number of iterations
-			
-	// computation variables
-	private 	float[][][]			field;  // image difference field
-	
+	private		boolean		primalDual = false;		// use the accelerated primal-dual algorithm
+
+	// computation variables for the primal-dual algorithm
+	private 	float[]			denoised;  		// current denoised image
+	private 	float[]			extrapolated;  	// extrapolated denoised image
+	private		float			tauPD, sigmaPD;	// primal and dual steps
+
 	private static final byte X = 0;
 	private static final byte Y = 1;
 	private static final byte Z = 2;
-	
+
 	// for debug
 	static final boolean		debug=true;
 	static final boolean		verbose=true;
-	
+
+	/**
+	 *  constructor
+	 *	note: the images are copied into contiguous arrays
+	 */
+
+	public TotalVariation(float[][][] image_, boolean [][][] mask_,
+					int nx_, int ny_, int nz_) {
+		this(flatten(image_, nx_, ny_, nz_), flatten(mask_, nx_, ny_, nz_), nx_, ny_, nz_);
+	}
+
+	public TotalVariation(float[][][] image_, boolean [][][] mask_,
+					int nx_, int ny_, int nz_,
+					float scale_, float step_, float dist_, int iter_) {
+		this(flatten(image_, nx_, ny_, nz_), flatten(mask_, nx_, ny_, nz_), nx_, ny_, nz_, scale_, step_, dist_, iter_);
+	}
+
 	/**
 	 *  constructor
 	 *	note: all images passed to the algorithm are just linked, not copied
 	 */
-	 
-	public TotalVariation(float[][][] image_, boolean [][][] mask_, 
+	public TotalVariation(float[] image_, boolean[] mask_,
 					int nx_, int ny_, int nz_) {
-		
-		image = image_;
-		mask = mask_;
-		
-		nx = nx_;
-		ny = ny_;
-		nz = nz_;
-		
-		// init all the new arrays
-		try {
-			proj = new float[3][nx][ny][nz];
-			field = new float[nx][ny][nz];
-		} catch (OutOfMemoryError e){
-			finalize();
-			System.out.println(e.getMessage());
-			return;
-		}
-		
-		// init values
-		Imin = INF;
-		Imax = -INF;
-		Isize = 0.0f;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			if (image[x][y][z]<Imin) Imin = image[x][y][z];
-			if (image[x][y][z]>Imax) Imax = image[x][y][z];
-
-			proj[X][x][y][z] = 0.0f;
-			proj[Y][x][y][z] = 0.0f;
-			proj[Z][x][y][z] = 0.0f;
-			
-			if (mask[x][y][z]) Isize++;
-		}
-		// rescale intensities in [0,1]
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			image[x][y][z] = (image[x][y][z]-Imin)/(Imax-Imin);
-		}
-		// scale parameter: invariant by intensity scaling
-		//lambdaScale *= (Imax-Imin)*(Imax-Imin);
-		
-		if (debug) BasicInfo.displayMessage("TV:initialisation\n");
+		this(image_, mask_, nx_, ny_, nz_, 0.05f, 0.125f, 0.0001f, 100);
 	}
 
-	public TotalVariation(float[][][] image_, boolean [][][] mask_, 
+	public TotalVariation(float[] image_, boolean[] mask_,
 					int nx_, int ny_, int nz_,
 					float scale_, float step_, float dist_, int iter_) {
-		
+
 		image = image_;
 		mask = mask_;
-		
+
 		nx = nx_;
 		ny = ny_;
 		nz = nz_;
-		
+
 		lambdaScale = scale_;
 		tauStep = step_;
 		maxdist = dist_;
@@ -112,101 +97,298 @@ public class TotalVariation {
 
 		// init all the new arrays
 		try {
-			proj = new float[3][nx][ny][nz];
-			field = new float[nx][ny][nz];
+			proj = new float[3][nx*ny*nz];
 		} catch (OutOfMemoryError e){
 			finalize();
 			System.out.println(e.getMessage());
 			return;
 		}
-		
+
 		// init values
 		Imin = INF;
 		Imax = -INF;
 		Isize = 0.0f;
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			if (image[x][y][z]<Imin) Imin = image[x][y][z];
-			if (image[x][y][z]>Imax) Imax = image[x][y][z];
-
-			proj[X][x][y][z] = 0.0f;
-			proj[Y][x][y][z] = 0.0f;
-			proj[Z][x][y][z] = 0.0f;
-			
-			if (mask[x][y][z]) Isize++;
+		for (int xyz=0;xyz<nx*ny*nz;xyz++) {
+			if (image[xyz]<Imin) Imin = image[xyz];
+			if (image[xyz]>Imax) Imax = image[xyz];
+
+			if (mask[xyz]) Isize++;
 		}
 		// rescale intensities in [0,1]
-		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
-			image[x][y][z] = (image[x][y][z]-Imin)/(Imax-Imin);
+		for (int xyz=0;xyz<nx*ny*nz;xyz++) {
+			image[xyz] = (image[xyz]-Imin)/(Imax-Imin);
 		}
 		//lambdaScale *= (Imax-Imin)*(Imax-Imin);
-		
+
 		if (debug) BasicInfo.displayMessage("TV:initialisation\n");
 	}
 
 	/** clean-up: destroy membership and centroid arrays */
 	public final void finalize() {
 		proj = null;
-		field = null;
+		denoised = null;
+		extrapolated = null;
 		System.gc();
 	}
-	
-    /** accessor for computed data */ 
-    public final float[][][][] getProjection() { return proj; }
-    
-    /** 
+
+	private static final float[] flatten(float[][][] img, int nx, int ny, int nz) {
+		float[] flat = new float[nx*ny*nz];
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) flat[x+nx*y+nx*ny*z] = img[x][y][z];
+		return flat;
+	}
+
+	private static final boolean[] flatten(boolean[][][] img, int nx, int ny, int nz) {
+		boolean[] flat = new boolean[nx*ny*nz];
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) flat[x+nx*y+nx*ny*z] = img[x][y][z];
+		return flat;
+	}
+
+    /** accessor for computed data */
+    public final float[][] getProjection() { return proj; }
+
+	/**
+	 *	use the accelerated primal-dual algorithm of Chambolle and Pock (2011)
+	 *	instead of Chambolle's projection algorithm (2004)
+	 */
+	public final void setPrimalDual(boolean val) { primalDual = val; }
+
+    /**
 	 *  compute the new TV projection function
 	 */
     final public float computeProjection() {
-        float distance, dist;
-        int x,y,z;
-        float norm, divp;
-        float[] grad = new float[3];
-        float[] prev = new float[3];
-        
-		distance = 0.0f;
-		// we ignore the image boundary for convenience
-		for (x=1;x<nx-1;x++) for (y=1;y<ny-1;y++) for (z=1;z<nz-1;z++) if (mask[x][y][z]) {
-			
-			// first compute the intermediate field
-			divp = (proj[X][x][y][z]-proj[X][x-1][y][z]) 
-				 + (proj[Y][x][y][z]-proj[Y][x][y-1][z]) 
-				 + (proj[Z][x][y][z]-proj[Z][x][y][z-1]);
-			
-			field[x][y][z] = divp - image[x][y][z]/lambdaScale;
+    	return computeProjection(null);
+    }
+
+    /**
+	 *  compute the new TV projection function, and the squared divergence of the new projection
+	 *	on each plane if residual is not null
+	 */
+    private final float computeProjection(final double[] residual) {
+		final int nxy = nx*ny;
+		final int[] slabs = ParallelProcessing.slabs(nz);
+		final int nslabs = slabs.length-1;
+
+		// first compute the intermediate field on the first plane of each slab (needed by the previous slab)
+		final float[][] firstField = new float[nslabs][nxy];
+		ParallelProcessing.forEach(slabs, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				intermediateField(start, firstField[chunk]);
+			}
+		});
+
+		// second compute the projection update, plane by plane
+		final float[] distances = new float[nslabs];
+		ParallelProcessing.forEach(slabs, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				float[][] buffer = new float[2][nxy];
+				float[] field = firstField[chunk];
+				float[] next = null;
+				float[] grad = new float[3];
+				float[] prev = new float[3];
+				float distance = 0.0f;
+				for (int z=start;z<end;z++) {
+					if (z+1<end) {
+						next = buffer[z%2];
+						intermediateField(z+1, next);
+					} else if (chunk+1<nslabs) {
+						next = firstField[chunk+1];
+					} else {
+						next = buffer[z%2];
+						intermediateField(z+1, next);
+					}
+					// we ignore the image boundary for convenience
+					if (z>0 && z<nz-1) for (int y=1;y<ny-1;y++) for (int x=1;x<nx-1;x++) {
+						int xy = x + nx*y;
+						int xyz = xy + nxy*z;
+						if (mask[xyz]) {
+							prev[X] = proj[X][xyz];
+							prev[Y] = proj[Y][xyz];
+							prev[Z] = proj[Z][xyz];
+
+							grad[X] = field[xy+1]-field[xy];
+							grad[Y] = field[xy+nx]-field[xy];
+							grad[Z] = next[xy]-field[xy];
+							float norm = (float)(1.0 + tauStep*FastMath.sqrt(grad[X]*grad[X]+grad[Y]*grad[Y]+grad[Z]*grad[Z]));
+
+							proj[X][xyz] = (prev[X] + tauStep*grad[X])/norm;
+							proj[Y][xyz] = (prev[Y] + tauStep*grad[Y])/norm;
+							proj[Z][xyz] = (prev[Z] + tauStep*grad[Z])/norm;
+
+							float dist = (proj[X][xyz]-prev[X])*(proj[X][xyz]-prev[X])
+										+(proj[Y][xyz]-prev[Y])*(proj[Y][xyz]-prev[Y])
+										+(proj[Z][xyz]-prev[Z])*(proj[Z][xyz]-prev[Z]);
+
+							if (dist>distance) distance = dist;
+						}
+					}
+					// divergence of the new projection on the previous plane (the first plane needs the previous slab)
+					if (residual!=null && z>start) residual[z-1] = squaredDivergence(z-1);
+					field = next;
+				}
+				if (residual!=null && end-1>start) residual[end-1] = squaredDivergence(end-1);
+				distances[chunk] = distance;
+			}
+		});
+		if (residual!=null) {
+			ParallelProcessing.forEach(slabs, new ParallelProcessing.RangeTask() {
+				public void process(int chunk, int start, int end) {
+					residual[start] = squaredDivergence(start);
+				}
+			});
+		}
+		float distance = 0.0f;
+		for (int n=0;n<nslabs;n++) if (distances[n]>distance) distance = distances[n];
+
+        return distance;
+    } // computeProjection
+
+    /** the intermediate field div p - f/lambda on plane z (zero outside the mask and on the image boundary) */
+    private final void intermediateField(int z, float[] field) {
+		int nxy = nx*ny;
+		for (int y=0;y<ny;y++) for (int x=0;x<nx;x++) {
+			int xy = x + nx*y;
+			int xyz = xy + nxy*z;
+			if (x>0 && x<nx-1 && y>0 && y<ny-1 && z>0 && z<nz-1 && mask[xyz]) {
+				float divp = (proj[X][xyz]-proj[X][xyz-1])
+							+ (proj[Y][xyz]-proj[Y][xyz-nx])
+							+ (proj[Z][xyz]-proj[Z][xyz-nxy]);
+
+				field[xy] = divp - image[xyz]/lambdaScale;
+			} else {
+				field[xy] = 0.0f;
+			}
+		}
+	}
+
+	/** sum of the squared divergence of the projection on plane z (inside the mask, ignoring the boundary) */
+    private final double squaredDivergence(int z) {
+		if (z<1 || z>=nz-1) return 0.0;
+		int nxy = nx*ny;
+		double sum = 0.0;
+		for (int y=1;y<ny-1;y++) for (int x=1;x<nx-1;x++) {
+			int xyz = x + nx*y + nxy*z;
+			if (mask[xyz]) {
+				float divp = (proj[X][xyz]-proj[X][xyz-1])
+							+ (proj[Y][xyz]-proj[Y][xyz-nx])
+							+ (proj[Z][xyz]-proj[Z][xyz-nxy]);
+				sum += divp*divp;
+			}
 		}
-		for (x=1;x<nx-1;x++) for (y=1;y<ny-1;y++) for (z=1;z<nz-1;z++) if (mask[x][y][z]) {
-			// second compute the projection update
-			prev[X] = proj[X][x][y][z];
-			prev[Y] = proj[Y][x][y][z];
-			prev[Z] = proj[Z][x][y][z];
-			
-			grad[X] = field[x+1][y][z]-field[x][y][z];
-			grad[Y] = field[x][y+1][z]-field[x][y][z];
-			grad[Z] = field[x][y][z+1]-field[x][y][z];
-			norm = (float)(1.0 + tauStep*FastMath.sqrt(grad[X]*grad[X]+grad[Y]*grad[Y]+grad[Z]*grad[Z]));
-			
-			proj[X][x][y][z] = (prev[X] + tauStep*grad[X])/norm;
-			proj[Y][x][y][z] = (prev[Y] + tauStep*grad[Y])/norm;
-			proj[Z][x][y][z] = (prev[Z] + tauStep*grad[Z])/norm;
-			
-			dist = 	 (proj[X][x][y][z]-prev[X])*(proj[X][x][y][z]-prev[X])
-					+(proj[Y][x][y][z]-prev[Y])*(proj[Y][x][y][z]-prev[Y])
-					+(proj[Z][x][y][z]-prev[Z])*(proj[Z][x][y][z]-prev[Z]);
-					
-			if (dist>distance) distance = dist;
+		return sum;
+	}
+
+    /**
+	 *  one step of the accelerated primal-dual algorithm: dual ascent on the projection,
+	 *	then primal descent and extrapolation of the denoised image; the squared residuals f-u
+	 *	are computed on each plane if residual is not null
+	 */
+    private final float computePrimalDual(final double[] residual) {
+		final int nxy = nx*ny;
+		final int[] slabs = ParallelProcessing.slabs(nz);
+		final int nslabs = slabs.length-1;
+
+		if (denoised==null) {
+			// start from the original image, with step sizes tau sigma |grad|^2 <= 1 (|grad|^2 <= 12 in 3D)
+			denoised = new float[nx*ny*nz];
+			extrapolated = new float[nx*ny*nz];
+			for (int xyz=0;xyz<nx*ny*nz;xyz++) {
+				denoised[xyz] = image[xyz];
+				extrapolated[xyz] = image[xyz];
+			}
+			tauPD = (float)(1.0/FastMath.sqrt(12.0));
+			sigmaPD = (float)(1.0/FastMath.sqrt(12.0));
 		}
+		// acceleration for the 1/lambda strongly convex data term
+		final float tau = tauPD;
+		final float sigma = sigmaPD;
+		final float theta = (float)(1.0/FastMath.sqrt(1.0 + 2.0*tau/lambdaScale));
+
+		// the dual step on plane z needs the extrapolated image on plane z+1 before its primal step,
+		// and the primal step on plane z needs the dual step on plane z-1: the first plane of each slab is done last
+		final float[] distances = new float[nslabs];
+		ParallelProcessing.forEach(slabs, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				float distance = 0.0f;
+				for (int z=start;z<end;z++) {
+					distance = Numerics.max(distance, dualStep(z, sigma));
+					if (z>start) {
+						double res = primalStep(z, tau, theta);
+						if (residual!=null) residual[z] = res;
+					}
+				}
+				distances[chunk] = distance;
+			}
+		});
+		ParallelProcessing.forEach(slabs, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				double res = primalStep(start, tau, theta);
+				if (residual!=null) residual[start] = res;
+			}
+		});
+		tauPD = theta*tau;
+		sigmaPD = sigma/theta;
+
+		float distance = 0.0f;
+		for (int n=0;n<nslabs;n++) if (distances[n]>distance) distance = distances[n];
 
         return distance;
-    } // computeMemberships
-    
+	}
+
+	/** dual ascent on plane z: p = proj_{|p|<=1}(p + sigma grad ubar), returns the maximum squared change */
+	private final float dualStep(int z, float sigma) {
+		if (z<1 || z>=nz-1) return 0.0f;
+		int nxy = nx*ny;
+		float distance = 0.0f;
+		for (int y=1;y<ny-1;y++) for (int x=1;x<nx-1;x++) {
+			int xyz = x + nx*y + nxy*z;
+			if (mask[xyz]) {
+				float px = proj[X][xyz] + sigma*(extrapolated[xyz+1]-extrapolated[xyz]);
+				float py = proj[Y][xyz] + sigma*(extrapolated[xyz+nx]-extrapolated[xyz]);
+				float pz = proj[Z][xyz] + sigma*(extrapolated[xyz+nxy]-extrapolated[xyz]);
+				float norm = Numerics.max(1.0f, (float)FastMath.sqrt(px*px+py*py+pz*pz));
+				px /= norm;
+				py /= norm;
+				pz /= norm;
+
+				float dist = (px-proj[X][xyz])*(px-proj[X][xyz])
+							+(py-proj[Y][xyz])*(py-proj[Y][xyz])
+							+(pz-proj[Z][xyz])*(pz-proj[Z][xyz]);
+				if (dist>distance) distance = dist;
+
+				proj[X][xyz] = px;
+				proj[Y][xyz] = py;
+				proj[Z][xyz] = pz;
+			}
+		}
+		return distance;
+	}
+
+	/** primal descent on plane z: u = (u + tau div p + tau/lambda f)/(1 + tau/lambda), returns the squared residuals */
+	private final double primalStep(int z, float tau, float theta) {
+		if (z<1 || z>=nz-1) return 0.0;
+		int nxy = nx*ny;
+		float ratio = tau/lambdaScale;
+		double sum = 0.0;
+		for (int y=1;y<ny-1;y++) for (int x=1;x<nx-1;x++) {
+			int xyz = x + nx*y + nxy*z;
+			if (mask[xyz]) {
+				float divp = (proj[X][xyz]-proj[X][xyz-1])
+							+ (proj[Y][xyz]-proj[Y][xyz-nx])
+							+ (proj[Z][xyz]-proj[Z][xyz-nxy]);
+				float prev = denoised[xyz];
+				denoised[xyz] = (prev + tau*divp + ratio*image[xyz])/(1.0f + ratio);
+				extrapolated[xyz] = denoised[xyz] + theta*(denoised[xyz]-prev);
+
+				sum += (image[xyz]-denoised[xyz])*(image[xyz]-denoised[xyz]);
+			}
+		}
+		return sum;
+	}
+
     /**
 	 * denoising algorithm
 	 */
     final public void solve() {
-    	double fn;
-    	double size = nx*ny*nz;
-    	float ratio = 1.0f;
-    	
     	// loop until distance is minimized
     	float distance = 1e10f;
     	int t=0;
@@ -214,42 +396,41 @@ public class TotalVariation {
     		t++;
     		if (verbose) System.out.print("iter "+t);
 			// get the new projection
-			distance = computeProjection();
-			
+			if (primalDual) distance = computePrimalDual(null);
+			else distance = computeProjection(null);
+
 			if (verbose) System.out.println(": d="+distance);
         }
         return;
     }
-        
+
     /**
 	 * denoising algorithm
 	 */
     final public void denoiseImage(float stdev, boolean adaptive) {
     	double fn;
     	float ratio = 1.0f;
-    	
+
     	// loop until distance is minimized
     	float distance = 1e10f;
     	int t=0;
     	double sqdist = FastMath.sqrt(maxdist);
+    	double[] residual = new double[nz];
     	while ((distance>maxdist || t<0) && t<maxiter) {
     		t++;
     		if (verbose) System.out.print("iter "+t);
-			// get the new projection
-			distance = computeProjection();
-			
+			// get the new projection, and the residual norm
+			if (primalDual) distance = computePrimalDual(residual);
+			else distance = computeProjection(residual);
+
 			// get the scaling factor
 			fn = 0.0;
-			for (int x=1;x<nx-1;x++) for (int y=1;y<ny-1;y++) for (int z=1;z<nz-1;z++) if (mask[x][y][z]) {
-				float divp = (proj[X][x][y][z]-proj[X][x-1][y][z]) 
-							+ (proj[Y][x][y][z]-proj[Y][x][y-1][z]) 
-							+ (proj[Z][x][y][z]-proj[Z][x][y][z-1]);
-				fn += divp*divp;
-			}
-			fn = FastMath.sqrt(fn/Isize)*lambdaScale;
+			for (int z=0;z<nz;z++) fn += residual[z];
+			if (primalDual) fn = FastMath.sqrt(fn/Isize);
+			else fn = FastMath.sqrt(fn/Isize)*lambdaScale;
 			//fn *= lambdaScale/Isize;
 			ratio = (float)(stdev/fn);
-	
+
 			// change scaling only after some level of convergence
 			if (adaptive && distance<sqdist) {
 				// update the lambda
@@ -259,21 +440,41 @@ public class TotalVariation {
         }
         return;
     }
-        
-	/** 
-	 *	export membership functions 
+
+	/**
+	 *	export the denoised image
+	 */
+	public final float[] exportDenoisedImage() {
+		final float[] res = new float[nx*ny*nz];
+		final int nxy = nx*ny;
+
+		if (primalDual && denoised!=null) {
+			for (int xyz=0;xyz<nx*ny*nz;xyz++) res[xyz] = denoised[xyz];
+			return res;
+		}
+		ParallelProcessing.forEachSlab(nz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int z=Numerics.max(start,1);z<end;z++) for (int y=1;y<ny;y++) for (int x=1;x<nx;x++) {
+					int xyz = x + nx*y + nxy*z;
+					float divp = (proj[X][xyz]-proj[X][xyz-1])
+								+ (proj[Y][xyz]-proj[Y][xyz-nx])
+								+ (proj[Z][xyz]-proj[Z][xyz-nxy]);
+
+					res[xyz] = image[xyz] - lambdaScale*divp;
+				}
+			}
+		});
+		return res;
+	}
+
+	/**
+	 *	export the denoised image as a 3D array
 	 */
 	public final float[][][] exportResult() {
-		int 	x,y,z,k;
+		float[] flat = exportDenoisedImage();
 		float[][][]	res = new float[nx][ny][nz];
-		float divp;
-       
-		for (x=1;x<nx;x++) for (y=1;y<ny;y++) for (z=1;z<nz;z++) {
-			divp = (proj[X][x][y][z]-proj[X][x-1][y][z]) 
-				 + (proj[Y][x][y][z]-proj[Y][x][y-1][z]) 
-				 + (proj[Z][x][y][z]-proj[Z][x][y][z-1]);
-				 
-			res[x][y][z] = image[x][y][z] - lambdaScale*divp;
+		for (int x=0;x<nx;x++) for (int y=0;y<ny;y++) for (int z=0;z<nz;z++) {
+			res[x][y][z] = flat[x+nx*y+nx*ny*z];
 		}
 		return res;
 	} // exportMemberships
@@ -0,0 +1,158 @@
+package de.mpg.cbs.structures;
+
+import java.util.*;
+
+/**
+ *
+ *  This class stores the association lists of agglomerative clustering methods
+ *	in compressed rows of primitive arrays, rather than as one object per edge.
+ *	<p>
+ *	Each node (initial voxel or merged cluster) has a row of entries with an id, a weight,
+ *	a delta and a size; the meaning of the entries is left to the clustering method
+ *	(usually the first entry of a row describes the node itself, and the others its neighbors).
+ *	Rows are appended at the end of a shared buffer: the row of a new cluster is written
+ *	in place and shrunk to its final length, and merged clusters keep only the first entry of their row.
+ *	The space left by shrunk or removed rows is reclaimed when the buffer is full, by copying
+ *	the remaining rows into a new buffer.
+ *
+ *	@version    Oct 2016
+ *	@author     Pierre-Louis Bazin
+ *
+ *
+ */
+
+public class AssociationGraph {
+
+	private		int[]		start;		// the first entry of each node
+	private		int[]		length;		// the number of entries of each node (zero if none)
+
+	private		int[]		id;
+	private		float[]		weight;
+	private		float[]		delta;
+	private		float[]		size;
+
+	private		int			used;		// entries used in the buffer, including the unused space
+	private		int			entries;	// entries currently in rows
+
+	/**
+	 *	create a graph for nodes in [0,nnodes), with an initial buffer of nentries
+	 */
+	public AssociationGraph(int nnodes, int nentries) {
+		start = new int[nnodes];
+		length = new int[nnodes];
+		nentries = Math.max(nentries, 16);
+		id = new int[nentries];
+		weight = new float[nentries];
+		delta = new float[nentries];
+		size = new float[nentries];
+		used = 0;
+		entries = 0;
+	}
+
+	public void finalize() {
+		start = null;
+		length = null;
+		id = null;
+		weight = null;
+		delta = null;
+		size = null;
+	}
+
+	/** number of entries in the row of the node (zero if none) */
+	public final int length(int node) { return length[node]; }
+
+	/** entries currently stored, and the size of the buffer */
+	public final int getEntries() { return entries; }
+	public final int getCapacity() { return id.length; }
+
+	/** accessors for the n-th entry of a node */
+	public final int 	getId(int node, int n) { return id[start[node]+n]; }
+	public final float 	getWeight(int node, int n) { return weight[start[node]+n]; }
+	public final float 	getDelta(int node, int n) { return delta[start[node]+n]; }
+	public final float 	getSize(int node, int n) { return size[start[node]+n]; }
+
+	public final void 	setId(int node, int n, int val) { id[start[node]+n] = val; }
+	public final void 	setWeight(int node, int n, float val) { weight[start[node]+n] = val; }
+	public final void 	setDelta(int node, int n, float val) { delta[start[node]+n] = val; }
+	public final void 	setSize(int node, int n, float val) { size[start[node]+n] = val; }
+
+	public final void set(int node, int n, int id_, float weight_, float delta_, float size_) {
+		int k = start[node]+n;
+		id[k] = id_;
+		weight[k] = weight_;
+		delta[k] = delta_;
+		size[k] = size_;
+	}
+
+	/**
+	 *	create a new row of len entries for the node, replacing any previous row
+	 *	(the entries are not initialized)
+	 */
+	public final void addNode(int node, int len) {
+		removeNode(node);
+		if (used+len>id.length) compact(len);
+		start[node] = used;
+		length[node] = len;
+		used += len;
+		entries += len;
+	}
+
+	/**
+	 *	shrink the row of the node to its first len entries
+	 */
+	public final void setLength(int node, int len) {
+		if (len>=length[node]) return;
+		// space at the end of the buffer can be reused directly
+		if (start[node]+length[node]==used) used -= length[node]-len;
+		entries -= length[node]-len;
+		length[node] = len;
+	}
+
+	/**
+	 *	remove the row of the node
+	 */
+	public final void removeNode(int node) {
+		setLength(node, 0);
+	}
+
+	/**
+	 *	copy all the rows into a new buffer, with room for at least nextra more entries
+	 */
+	private final void compact(int nextra) {
+		int capacity = id.length;
+		// grow the buffer if it would be more than half full
+		if (2*(entries+nextra)>capacity) capacity = Math.max(2*capacity, entries+nextra);
+
+		int[] newid = new int[capacity];
+		float[] newweight = new float[capacity];
+		float[] newdelta = new float[capacity];
+		float[] newsize = new float[capacity];
+
+		// keep the rows in the same order in the buffer
+		int nnodes = 0;
+		for (int node=0;node<start.length;node++) if (length[node]>0) nnodes++;
+		long[] order = new long[nnodes];
+		nnodes = 0;
+		for (int node=0;node<start.length;node++) if (length[node]>0) {
+			order[nnodes] = ((long)start[node]<<32) | node;
+			nnodes++;
+		}
+		Arrays.sort(order);
+
+		int k = 0;
+		for (int n=0;n<nnodes;n++) {
+			int node = (int)(order[n] & 0xffffffffL);
+			System.arraycopy(id, start[node], newid, k, length[node]);
+			System.arraycopy(weight, start[node], newweight, k, length[node]);
+			System.arraycopy(delta, start[node], newdelta, k, length[node]);
+			System.arraycopy(size, start[node], newsize, k, length[node]);
+			start[node] = k;
+			k += length[node];
+		}
+		id = newid;
+		weight = newweight;
+		delta = newdelta;
+		size = newsize;
+		used = k;
+	}
+}
@@ -182,6 +182,48 @@ public class BinaryHeapPair {
 		return;
 	}// removeFirstValue
 
+	/**
+	 *  remove all the values whose first id is not valid anymore, and rebuild the tree
+	 *	(values removed lazily can thus be discarded in a single pass when they accumulate)
+	 */
+	public final void removeInvalidId1(BitSet valid) {
+		int size = 0;
+		for (int n=1;n<=currentSize;n++) {
+			if (valid.get(id1[n])) {
+				size++;
+				val[size] = val[n];
+				id1[size] = id1[n];
+				id2[size] = id2[n];
+			}
+		}
+		currentSize = size;
+		// move down all the parent nodes, from the last one
+		for (int hole=currentSize/2;hole>0;hole--) {
+			float tmp = val[hole];
+			int tmpId1 = id1[hole];
+			int tmpId2 = id2[hole];
+			int node = hole;
+			int child;
+			for ( ; node*2 <= currentSize; node = child ) {
+				child = node*2;
+				if (minormax==MINTREE) {
+					if (child != currentSize && val[child+1]<val[child]) child++;
+					if ( val[child]>=tmp ) break;
+				} else {
+					if (child != currentSize && val[child+1]>val[child]) child++;
+					if ( val[child]<=tmp ) break;
+				}
+				val[ node ] = val[ child ];
+				id1[ node ] = id1[ child ];
+				id2[ node ] = id2[ child ];
+			}
+			val[ node ] = tmp;
+			id1[ node ] = tmpId1;
+			id2[ node ] = tmpId2;
+		}
+		return;
+	}
+
 	/**
 	 * return the first value and its coordinates
 	 */
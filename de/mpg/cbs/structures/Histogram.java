@@ -161,16 +161,40 @@ public class Histogram {
 			if (data[s] < min) min = (float)data[s];
 		}
 		
-		for (int s=0;s<size;s++) {
-			// compute histogram within min, max (rest is ignored)
-			if (  (data[s] >= min )
-					&& (data[s] <= min + 1.0f/(double)bins*(max-min) ) ) hist[0]++;
-			
-			for (int n=1;n<bins;n++) {
-				if (  (data[s] >  min + (double)n/(double)bins*(max-min) )
-					&& (data[s] <= min + (double)(n+1)/(double)bins*(max-min) ) ) hist[n]++;	
-			}
-		}
+		for (int s=0;s<size;s++) addValue(data[s]);
+	}
+
+	/**
+     *    1D histogram building, with values added one at a time within [min, max]
+     */
+    public Histogram(float min, float max, int bins) {
+    	this.bins = bins;
+    	this.min = min;
+    	this.max = max;
+    	
+		hist = new double[bins];
+		
+		for (int n=0;n<bins;n++) hist[n] = 0;			
+	}
+
+	/**
+     *    add a value to the histogram (values outside [min, max] are ignored):
+     *	  the bin is found directly, with the same bin boundaries as a full search
+     */
+    public final void addValue(double val) {
+    	if (!(val >= min && val <= binBoundary(bins))) return;
+    	
+		int n = (int)((val-min)/(max-min)*bins);
+		if (!(n>=0)) n = 0;
+		if (n>bins-1) n = bins-1;
+		while (n>0 && val <= binBoundary(n)) n--;
+		while (n<bins-1 && val > binBoundary(n+1)) n++;
+		
+		hist[n]++;
+	}
+	
+	private final double binBoundary(int n) {
+		return min + (double)n/(double)bins*(max-min);
 	}
 
 	/**
@@ -0,0 +1,194 @@
+package de.mpg.cbs.structures;
+
+import java.util.*;
+
+/**
+ *
+ *  Indexed sorting trees, either min-trees or max-trees, for fast marching methods.
+ *	<p>
+ *  Values are sorted in a 4-ary tree where each parent node is lower (resp. higher) than its children,
+ *	and each voxel index is stored at most once: the position of every voxel in the tree is tracked,
+ *	so that adding a voxel already in the tree only updates its value (and state) if the new value
+ *	comes first (decrease-key for min-trees, increase-key for max-trees). The tree thus never holds
+ *	more entries than voxels, and stale duplicates do not need to be filtered when removing values.
+ *	<p>
+ *	Resetting the tree only clears the voxels still in the tree, so the same tree can be reused
+ *	for many fast marching operations without reallocation.
+ *
+ *	@version    Oct 2016
+ *	@author     Pierre-Louis Bazin
+ *
+ *
+ */
+
+public class IndexedHeap {
+
+	private static final int	D = 4;		// the tree arity
+
+	private float[] 	val;		// values (negated in max-trees, so the root is always the lowest)
+	private int[] 		id;
+	private byte[] 		state;
+	private int[]		position;	// the position of each voxel in the tree, plus one (zero if not in the tree)
+
+	private int 		currentSize;
+	private int 		minormax;
+
+	public static final	int MINTREE = -1;
+	public static final	int MAXTREE = 1;
+
+	/**
+	 *	create a tree for voxel indices in [0,Nid), with an initial capacity of Nsize values
+	 */
+	public IndexedHeap(int Nid, int Nsize, int type) {
+		currentSize = 0;
+		minormax = type;
+		Nsize = Math.max(Nsize, 16);
+		val = new float[Nsize];
+		id = new int[Nsize];
+		state = new byte[Nsize];
+		position = new int[Nid];
+	}
+
+	public IndexedHeap(int Nid, int type) {
+		this(Nid, Nid/16, type);
+	}
+
+	public void finalize() {
+		val = null;
+		id = null;
+		state = null;
+		position = null;
+	}
+
+	/**
+	 *  to reset the tree (only the voxels still in the tree are cleared)
+	 */
+	public final void reset() {
+		for (int n=0;n<currentSize;n++) position[id[n]] = 0;
+		currentSize = 0;
+	}
+
+	/**
+	 *  add a new value into the tree, or update the value of a voxel already in the tree
+	 *	if the new value comes first (the state is updated with the value)
+	 */
+	public final void addValue(float val_, int id_, byte state_) {
+		float key = (minormax==MAXTREE) ? -val_ : val_;
+
+		int hole = position[id_]-1;
+		if (hole>=0) {
+			// already in the tree: keep the first value only
+			if (key>=val[hole]) return;
+		} else {
+			// check for size
+			if (currentSize==val.length) {
+				int size = 2*currentSize;
+				val = Arrays.copyOf(val, size);
+				id = Arrays.copyOf(id, size);
+				state = Arrays.copyOf(state, size);
+			}
+			hole = currentSize++;
+		}
+		// move the point up to its proper location
+		while (hole>0) {
+			int parent = (hole-1)/D;
+			if (key<val[parent]) {
+				val[hole] = val[parent];
+				id[hole] = id[parent];
+				state[hole] = state[parent];
+				position[id[hole]] = hole+1;
+				hole = parent;
+			} else break;
+		}
+		val[hole] = key;
+		id[hole] = id_;
+		state[hole] = state_;
+		position[id_] = hole+1;
+
+		return;
+	}//addValue
+
+	/**
+	 *  remove the first value from the tree
+	 */
+	public final void removeFirst() {
+		position[id[0]] = 0;
+		currentSize--;
+		if (currentSize==0) return;
+
+		float tmp = val[currentSize];
+		int tmpId = id[currentSize];
+		byte tmpState = state[currentSize];
+
+		// move the last point down from the root
+		int hole = 0;
+		for (int child=D*hole+1; child<currentSize; child=D*hole+1) {
+			int best = child;
+			int last = Math.min(child+D, currentSize);
+			for (int c=child+1;c<last;c++) if (val[c]<val[best]) best = c;
+
+			if (val[best]<tmp) {
+				val[hole] = val[best];
+				id[hole] = id[best];
+				state[hole] = state[best];
+				position[id[hole]] = hole+1;
+				hole = best;
+			} else break;
+		}
+		val[hole] = tmp;
+		id[hole] = tmpId;
+		state[hole] = tmpState;
+		position[tmpId] = hole+1;
+
+		return;
+	}// removeFirstValue
+
+	/**
+	 * return the first value and its coordinates
+	 */
+	public final float getFirst() {
+		return (minormax==MAXTREE) ? -val[0] : val[0];
+	}
+	public final int getFirstId() {
+		return id[0];
+	}
+	public final byte getFirstState() {
+		return state[0];
+	}
+
+	/**
+	 *  whether a voxel is in the tree, and its current value
+	 */
+	public final boolean contains(int id_) {
+		return (position[id_]>0);
+	}
+	public final float getValue(int id_) {
+		float key = val[position[id_]-1];
+		return (minormax==MAXTREE) ? -key : key;
+	}
+
+	/**
+	 *  check the tree size
+	 */
+	public final boolean isNotEmpty() {
+		return (currentSize > 0);
+	}
+
+	public final int getCurrentSize() {
+		return currentSize;
+	}
+
+	/**
+	 *  check the tree property and the voxel positions
+	 */
+	public final boolean isHeapTree() {
+		for (int i=1;i<currentSize;i++) {
+			if (val[(i-1)/D]>val[i]) return false;
+		}
+		for (int i=0;i<currentSize;i++) {
+			if (position[id[i]]!=i+1) return false;
+		}
+		return true;
+	}//isHeapTree
+
+}
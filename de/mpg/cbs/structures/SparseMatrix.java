@@ -0,0 +1,99 @@
+package de.mpg.cbs.structures;
+
+import de.mpg.cbs.utilities.*;
+
+/**
+ *
+ *  This class stores sparse matrices in compressed sparse row (CSR) format:
+ *	the non-zero entries of row i are value[k] in column index[k], for start[i] &lt;= k &lt; start[i+1].
+ *	<p>
+ *	The columns of each row are expected in increasing order. Matrix-vector products
+ *	are computed in parallel over rows, with the same result for any number of threads.
+ *
+ *	@version    Oct 2016
+ *	@author     Pierre-Louis Bazin
+ *
+ *
+ */
+
+public class SparseMatrix {
+
+	private		int			nrows, ncols;
+	private		int[]		start;		// the first entry of each row (nrows+1)
+	private		int[]		index;		// the column of each entry
+	private		double[]	value;		// the value of each entry
+
+	/**
+	 *	create a matrix from its CSR arrays (the arrays are not copied)
+	 */
+	public SparseMatrix(int nrows, int ncols, int[] start, int[] index, double[] value) {
+		this.nrows = nrows;
+		this.ncols = ncols;
+		this.start = start;
+		this.index = index;
+		this.value = value;
+	}
+
+	final public int 		getRows() { return nrows; }
+	final public int 		getColumns() { return ncols; }
+	final public int 		getNonZeros() { return start[nrows]; }
+
+	final public int[] 		getRowStart() { return start; }
+	final public int[] 		getColumnIndex() { return index; }
+	final public double[] 	getValues() { return value; }
+
+	/** value of the entry (i,j), zero if not stored */
+	final public double get(int i, int j) {
+		for (int k=start[i];k<start[i+1];k++) if (index[k]==j) return value[k];
+		return 0.0;
+	}
+
+	/** the diagonal entries */
+	final public double[] getDiagonal() {
+		double[] diag = new double[Numerics.min(nrows,ncols)];
+		for (int i=0;i<diag.length;i++) diag[i] = get(i,i);
+		return diag;
+	}
+
+	/**
+	 *	matrix-vector product: out = M in
+	 */
+	final public void multiply(final double[] in, final double[] out) {
+		ParallelProcessing.forEach(nrows, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int rmin, int rmax) {
+				for (int i=rmin;i<rmax;i++) {
+					double sum = 0.0;
+					for (int k=start[i];k<start[i+1];k++) sum += value[k]*in[index[k]];
+					out[i] = sum;
+				}
+			}
+		});
+	}
+
+	/**
+	 *	matrix product for several channels at once: out[i][c] = sum_j M(i,j) in[j][c]
+	 */
+	final public void multiply(final double[][] in, final double[][] out) {
+		ParallelProcessing.forEach(nrows, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int rmin, int rmax) {
+				for (int i=rmin;i<rmax;i++) {
+					double[] res = out[i];
+					for (int c=0;c<res.length;c++) res[c] = 0.0;
+					for (int k=start[i];k<start[i+1];k++) {
+						double[] val = in[index[k]];
+						for (int c=0;c<res.length;c++) res[c] += value[k]*val[c];
+					}
+				}
+			}
+		});
+	}
+
+	/**
+	 *	dense version of the matrix (only for small matrices)
+	 */
+	final public double[][] toArray() {
+		double[][] dense = new double[nrows][ncols];
+		for (int i=0;i<nrows;i++) for (int k=start[i];k<start[i+1];k++) dense[i][index[k]] = value[k];
+		return dense;
+	}
+}
@@ -0,0 +1,179 @@
+package de.mpg.cbs.structures;
+
+import de.mpg.cbs.utilities.*;
+
+/**
+ *
+ *  This class stores the K highest probabilities of each voxel with their labels,
+ *	as bytes for the labels and 16-bit fixed point values in [-1,1] for the probabilities
+ *	(values outside are clamped, the precision is about 3e-5).
+ *	<p>
+ *	The K entries of a voxel are contiguous and kept in decreasing order by insert();
+ *	label maps can be added one at a time, so the complete stack of probabilities
+ *	never needs to be stored. Empty entries have label EMPTY and probability -1.
+ *	The same representation is used for MGDM-style gain functions in [-1,1].
+ *
+ *	@version    Oct 2016
+ *	@author     Pierre-Louis Bazin
+ *
+ *
+ */
+
+public class TopKProbabilities {
+
+	public static final	byte	EMPTY = -1;
+	private static final	float	SCALE = 32767.0f;
+
+	private		int			nxyz;		// number of voxels
+	private		byte		nbest;		// number of entries per voxel
+	private		short[]		proba;		// fixed point probabilities [xyz*nbest+n]
+	private		byte[]		label;		// corresponding labels
+
+	/**
+	 *	create an empty store for nxyz voxels with nbest entries each
+	 */
+	public TopKProbabilities(int nxyz, byte nbest) {
+		this.nxyz = nxyz;
+		this.nbest = nbest;
+		proba = new short[nxyz*nbest];
+		label = new byte[nxyz*nbest];
+		for (int i=0;i<nxyz*nbest;i++) {
+			proba[i] = (short)(-SCALE);
+			label[i] = EMPTY;
+		}
+	}
+
+	/**
+	 *	create a store from the usual [nbest][nxyz] probability and label arrays
+	 */
+	public TopKProbabilities(float[][] bestproba, byte[][] bestlabel) {
+		nbest = (byte)bestproba.length;
+		nxyz = bestproba[0].length;
+		proba = new short[nxyz*nbest];
+		label = new byte[nxyz*nbest];
+		for (int n=0;n<nbest;n++) for (int xyz=0;xyz<nxyz;xyz++) {
+			proba[xyz*nbest+n] = quantize(bestproba[n][xyz]);
+			label[xyz*nbest+n] = bestlabel[n][xyz];
+		}
+	}
+
+	final public int 		getVoxels() { return nxyz; }
+	final public byte 		getDepth() { return nbest; }
+
+	private static final short quantize(float val) {
+		return (short)Math.round(Numerics.bounded(val, -1.0f, 1.0f)*SCALE);
+	}
+
+	/** probability of entry n at voxel xyz */
+	final public float getProbability(int xyz, int n) { return proba[xyz*nbest+n]/SCALE; }
+
+	/** label of entry n at voxel xyz */
+	final public byte getLabel(int xyz, int n) { return label[xyz*nbest+n]; }
+
+	/** set the entry n at voxel xyz (the entries are not re-sorted) */
+	final public void set(int xyz, int n, byte lb, float val) {
+		proba[xyz*nbest+n] = quantize(val);
+		label[xyz*nbest+n] = lb;
+	}
+
+	/** set the probability of entry n at voxel xyz (the entries are not re-sorted) */
+	final public void setProbability(int xyz, int n, float val) {
+		proba[xyz*nbest+n] = quantize(val);
+	}
+
+	/** remove all entries of voxel xyz */
+	final public void clear(int xyz) {
+		for (int i=xyz*nbest;i<(xyz+1)*nbest;i++) {
+			proba[i] = (short)(-SCALE);
+			label[i] = EMPTY;
+		}
+	}
+
+	/** entry of label lb at voxel xyz, or -1 if the label is not stored */
+	final public int depthOf(int xyz, byte lb) {
+		for (int n=0;n<nbest;n++) if (label[xyz*nbest+n]==lb) return n;
+		return -1;
+	}
+
+	/**
+	 *	insert a new label in the sorted entries of voxel xyz if its probability is among the highest,
+	 *	after any existing entry of equal probability. Returns false if the value is not kept.
+	 */
+	final public boolean insert(int xyz, byte lb, float val) {
+		short pb = quantize(val);
+		int first = xyz*nbest;
+		int last = first+nbest-1;
+		if (pb<=proba[last]) return false;
+
+		int i = last;
+		while (i>first && proba[i-1]<pb) {
+			proba[i] = proba[i-1];
+			label[i] = label[i-1];
+			i--;
+		}
+		proba[i] = pb;
+		label[i] = lb;
+		return true;
+	}
+
+	/**
+	 *	re-sort the entries of voxel xyz in decreasing order (stable insertion sort,
+	 *	cheap when the entries are nearly sorted)
+	 */
+	final public void sort(int xyz) {
+		int first = xyz*nbest;
+		for (int n=first+1;n<first+nbest;n++) {
+			short pb = proba[n];
+			byte lb = label[n];
+			int i = n;
+			while (i>first && proba[i-1]<pb) {
+				proba[i] = proba[i-1];
+				label[i] = label[i-1];
+				i--;
+			}
+			proba[i] = pb;
+			label[i] = lb;
+		}
+	}
+
+	/** re-sort the entries of all voxels, in parallel */
+	final public void sort() {
+		ParallelProcessing.forEach(nxyz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int xyz=start;xyz<end;xyz++) sort(xyz);
+			}
+		});
+	}
+
+	/**
+	 *	insert the probability map of label lb for all voxels, read from map[offset+xyz]
+	 *	(so that label maps can be taken one at a time from a 4D image)
+	 */
+	final public void addLabelMap(final byte lb, final float[] map, final int offset) {
+		ParallelProcessing.forEach(nxyz, new ParallelProcessing.RangeTask() {
+			public void process(int chunk, int start, int end) {
+				for (int xyz=start;xyz<end;xyz++) insert(xyz, lb, map[offset+xyz]);
+			}
+		});
+	}
+
+	/** copy all the entries from another store of the same size */
+	final public void copy(TopKProbabilities other) {
+		System.arraycopy(other.proba, 0, proba, 0, proba.length);
+		System.arraycopy(other.label, 0, label, 0, label.length);
+	}
+
+	/** probabilities in the usual [nbest][nxyz] arrays */
+	final public float[][] exportProbabilities() {
+		float[][] res = new float[nbest][nxyz];
+		for (int xyz=0;xyz<nxyz;xyz++) for (int n=0;n<nbest;n++) res[n][xyz] = proba[xyz*nbest+n]/SCALE;
+		return res;
+	}
+
+	/** labels in the usual [nbest][nxyz] arrays */
+	final public byte[][] exportLabels() {
+		byte[][] res = new byte[nbest][nxyz];
+		for (int xyz=0;xyz<nxyz;xyz++) for (int n=0;n<nbest;n++) res[n][xyz] = label[xyz*nbest+n];
+		return res;
+	}
+}
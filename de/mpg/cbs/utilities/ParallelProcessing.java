@@ -0,0 +1,235 @@
+package de.mpg.cbs.utilities;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.*;
+
+
+/**
+ *
+ *  This class provides the shared parallel execution runtime of the CBS Tools.
+ *	<p>
+ *	A single worker pool is shared by all the modules. The number of threads is set for the
+ *	computations started from the calling thread only (by default the number of available
+ *	processors, or the value of the system property cbstools.threads), so modules running
+ *	side by side in the same JVM do not change each other's setting. Each call uses at most
+ *	that many threads, the calling thread included. The pool grows as needed and its idle
+ *	workers are reclaimed, so it is never shut down or replaced while in use.
+ *	<p>
+ *	Voxel ranges and image slabs are split into contiguous chunks and processed by the workers.
+ *	With one thread, all the computations run in the calling thread. Tasks started from a worker
+ *	thread are also run in that thread, so parallel routines can safely call each other.
+ *
+ *	@version    Oct 2016
+ *	@author     Pierre-Louis Bazin
+ */
+
+public class ParallelProcessing {
+
+	/** a computation over the contiguous range [start,end) of voxels, slabs or items, as part number chunk */
+	public static interface RangeTask {
+		public void process(int chunk, int start, int end);
+	}
+
+	/** number of chunks per thread when splitting voxel ranges (for load balancing) */
+	public static final int	CHUNKS_PER_THREAD = 4;
+
+	private static final int						defaultThreads = defaultNumberOfThreads();
+	private static final ThreadLocal<Integer>		nthreads = new ThreadLocal<Integer>();
+	private static ExecutorService					pool = null;
+
+	private static final boolean	debug = false;
+
+	/** worker threads of the shared pool */
+	private static class WorkerThread extends Thread {
+		public WorkerThread(Runnable task, int id) {
+			super(task, "cbstools-worker-"+id);
+			setDaemon(true);
+		}
+	}
+
+	private static final int defaultNumberOfThreads() {
+		int nproc = Runtime.getRuntime().availableProcessors();
+		String prop = System.getProperty("cbstools.threads");
+		if (prop!=null) {
+			try {
+				int val = Integer.parseInt(prop.trim());
+				if (val>0) return val;
+			} catch (NumberFormatException e) {
+				System.err.println("invalid number of threads: "+prop+" (using "+nproc+")");
+			}
+		}
+		return nproc;
+	}
+
+	/**
+	 *	set the number of threads for the computations started from the calling thread
+	 *	(values lower than 1 restore the default)
+	 */
+	public static final void setNumberOfThreads(int val) {
+		if (val<1) nthreads.remove();
+		else nthreads.set(val);
+		if (debug) System.out.print("parallel processing: "+getNumberOfThreads()+" threads\n");
+	}
+
+	/** number of threads for the computations started from the calling thread */
+	public static final int getNumberOfThreads() {
+		Integer val = nthreads.get();
+		if (val==null) return defaultThreads;
+		else return val.intValue();
+	}
+
+	/** whether the computations can run in parallel from the calling thread */
+	public static final boolean isParallel() {
+		return getNumberOfThreads()>1 && !(Thread.currentThread() instanceof WorkerThread);
+	}
+
+	/** the shared pool: workers are created on demand and stop after a minute without work */
+	private static final synchronized ExecutorService getPool() {
+		if (pool==null) {
+			pool = Executors.newCachedThreadPool(new ThreadFactory() {
+				private int count = 0;
+				public synchronized Thread newThread(Runnable task) {
+					count++;
+					return new WorkerThread(task, count);
+				}
+			});
+		}
+		return pool;
+	}
+
+	/**
+	 *	default number of chunks for a range of given size: several per thread
+	 *	(one if the computations cannot run in parallel)
+	 */
+	public static final int numberOfChunks(int size) {
+		if (!isParallel()) return Numerics.min(1, size);
+		return Numerics.min(CHUNKS_PER_THREAD*getNumberOfThreads(), size);
+	}
+
+	/**
+	 *	number of slabs for a volume of depth nz: one per thread,
+	 *	so each slab is as thick as possible
+	 */
+	public static final int numberOfSlabs(int nz) {
+		if (!isParallel()) return Numerics.min(1, nz);
+		return Numerics.min(getNumberOfThreads(), nz);
+	}
+
+	/**
+	 *	split the range [0,size) into nchunks contiguous parts of (almost) equal size:
+	 *	part n is [bounds[n],bounds[n+1])
+	 */
+	public static final int[] ranges(int size, int nchunks) {
+		nchunks = Numerics.max(1, nchunks);
+		int[] bounds = new int[nchunks+1];
+		for (int n=0;n<=nchunks;n++) bounds[n] = (int)((long)n*size/nchunks);
+		return bounds;
+	}
+
+	/** split the range [0,size) into the default number of chunks */
+	public static final int[] ranges(int size) { return ranges(size, numberOfChunks(size)); }
+
+	/** split the z dimension [0,nz) into slabs */
+	public static final int[] slabs(int nz) { return ranges(nz, numberOfSlabs(nz)); }
+
+	/** process the range [0,size) in parallel, with the default chunks */
+	public static final void forEach(int size, RangeTask task) {
+		forEach(ranges(size), task);
+	}
+
+	/** process the range [0,size) in parallel, with nchunks chunks */
+	public static final void forEach(int size, int nchunks, RangeTask task) {
+		forEach(ranges(size, nchunks), task);
+	}
+
+	/** process the z range [0,nz) in parallel, one slab per thread */
+	public static final void forEachSlab(int nz, RangeTask task) {
+		forEach(slabs(nz), task);
+	}
+
+	/**
+	 *	process the chunks [bounds[n],bounds[n+1]) in parallel and wait for all of them
+	 *	(exceptions in the tasks are rethrown in the calling thread)
+	 */
+	public static final void forEach(final int[] bounds, final RangeTask task) {
+		int nchunks = bounds.length-1;
+		if (nchunks<1) return;
+		if (nchunks==1 || !isParallel()) {
+			for (int n=0;n<nchunks;n++) if (bounds[n+1]>bounds[n]) task.process(n, bounds[n], bounds[n+1]);
+			return;
+		}
+		List<Callable<Object>> tasks = new ArrayList<Callable<Object>>(nchunks);
+		for (int n=0;n<nchunks;n++) if (bounds[n+1]>bounds[n]) {
+			final int chunk = n;
+			tasks.add(new Callable<Object>() {
+				public Object call() {
+					task.process(chunk, bounds[chunk], bounds[chunk+1]);
+					return null;
+				}
+			});
+		}
+		invokeAll(tasks);
+	}
+
+	/**
+	 *	run all the tasks in parallel and return their results, in the same order
+	 *	(exceptions in the tasks are rethrown in the calling thread). The calling thread
+	 *	and at most getNumberOfThreads()-1 workers take the tasks in order from a shared counter.
+	 */
+	public static final <T> List<T> invokeAll(final List<? extends Callable<T>> tasks) {
+		final int ntasks = tasks.size();
+		List<T> values = new ArrayList<T>(ntasks);
+		if (ntasks<2 || !isParallel()) {
+			try {
+				for (Callable<T> task : tasks) values.add(task.call());
+			} catch (RuntimeException e) {
+				throw e;
+			} catch (Exception e) {
+				throw new RuntimeException(e);
+			}
+			return values;
+		}
+		final Object[] results = new Object[ntasks];
+		final AtomicInteger next = new AtomicInteger(0);
+		final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		Runnable runner = new Runnable() {
+			public void run() {
+				int n;
+				while (failure.get()==null && (n=next.getAndIncrement())<ntasks) {
+					try {
+						results[n] = tasks.get(n).call();
+					} catch (Throwable e) {
+						failure.compareAndSet(null, e);
+					}
+				}
+			}
+		};
+		int nworkers = Numerics.min(getNumberOfThreads(), ntasks)-1;
+		List<Future<?>> workers = new ArrayList<Future<?>>(nworkers);
+		for (int w=0;w<nworkers;w++) workers.add(getPool().submit(runner));
+		runner.run();
+		try {
+			for (Future<?> worker : workers) worker.get();
+		} catch (InterruptedException e) {
+			// the remaining tasks are not started
+			next.set(ntasks);
+			Thread.currentThread().interrupt();
+			throw new RuntimeException("parallel processing interrupted", e);
+		} catch (ExecutionException e) {
+			failure.compareAndSet(null, e.getCause());
+		}
+		Throwable cause = failure.get();
+		if (cause!=null) {
+			if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+			if (cause instanceof Error) throw (Error)cause;
+			throw new RuntimeException(cause);
+		}
+		for (int n=0;n<ntasks;n++) {
+			@SuppressWarnings("unchecked")
+			T value = (T)results[n];
+			values.add(value);
+		}
+		return values;
+	}
+}
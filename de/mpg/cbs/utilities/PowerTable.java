@@ -9,7 +9,7 @@ package de.mpg.cbs.utilities;
 
 /**
  * convenience class to compute p^q quickly with p and q within certain bounds.
- * the values are pre-computed and then accessed in the computations.
+ * the values are pre-computed for one or several exponents q, and linearly interpolated in the computations.
  * non-covered cases use the regular power function instead.
  */
 public class PowerTable{
@@ -20,9 +20,10 @@ public class PowerTable{
     private double prangesteps;
     private int intPrangesteps;
 
-    private double qCached;
+    private double[] qCached;
 
-    private double[] cache;
+    private double[][] cache;
+    private double[] maxError;
 
 	private final double	ZERO = 1e-30;
     private final double	INF = 1e+30;
@@ -32,51 +33,104 @@ public class PowerTable{
      public double lookup(double p, double q)
     {
         double result = 0.0;
+        int n = indexOf(q);
         if((p<pmin)||(p>pmax)){
         	if (debug) System.err.println(p+" out of range: valid range is " + pmax + " >= p >= " + pmin + " with a precision of " + pstep);
 		result = Math.pow(p, q);
 
-	  } else if(q != qCached){
-        	if (debug) System.err.println(q+" value not cached: cached q value is " + qCached );
+	  } else if(n<0){
+        	if (debug) System.err.println(q+" value not cached");
 		result = Math.pow(p, q);
 	  } else {
-		result = intLookup(p);
+		result = intLookup(p, n);
 	  }
 	  return(result);
     }
 	
-	/** look-up of value with no check */
+	/** look-up of value with no check (first cached exponent) */
     public double lookup(double p) {
-		return intLookup(p);
+		return intLookup(p, 0);
 	}
 	
+	/** look-up of value with no check, for the n-th cached exponent (@see indexOf) */
+    public double lookupIndexed(double p, int n) {
+		return intLookup(p, n);
+	}
+	
+	/** index of the cached exponent q, or -1 if not cached */
+    public int indexOf(double q) {
+    	for (int n=0;n<qCached.length;n++) if (qCached[n]==q) return n;
+    	return -1;
+    }
+	
+	/** 
+	 *	upper bound on the absolute interpolation error for the cached exponent q,
+	 *	over the whole table (or -1 if not cached)
+	 */
+    public double getMaxError(double q) {
+    	int n = indexOf(q);
+    	if (n<0) return -1.0;
+    	return maxError[n];
+    }
+	
      /** Creates a new instance of powertable*/
    public PowerTable(double inPmin, double inPmax, double inPstep, double inQcached){
+   	   this(inPmin, inPmax, inPstep, new double[]{inQcached});
+   }
+   
+     /** Creates a new instance of powertable with several cached exponents */
+   public PowerTable(double inPmin, double inPmax, double inPstep, double[] inQcached){
 		pmin = inPmin;
   		pmax = inPmax;
 		pstep = inPstep;
 		prange = pmax - pmin;
-		qCached = inQcached;
+		qCached = new double[inQcached.length];
+		for (int n=0;n<inQcached.length;n++) qCached[n] = inQcached[n];
 		prangesteps = prange / pstep;
 		intPrangesteps = (int) Math.ceil(prangesteps);
-		intPrangesteps++;
+		// one extra point for interpolating up to pmax
+		intPrangesteps+=2;
 		int count;
-		cache = new double[intPrangesteps];
-		for (count = 0; count <intPrangesteps; count ++){
-			double tempP = pmin + (count * pstep);
-			if (qCached<0) {
-				if (tempP<ZERO) cache[count] = INF;
-				else cache[count] = Math.pow(tempP, qCached);
-			} else cache[count] = Math.pow(tempP, qCached);
-		}	
+		cache = new double[qCached.length][intPrangesteps];
+		maxError = new double[qCached.length];
+		for (int n=0;n<qCached.length;n++) {
+			double q = qCached[n];
+			for (count = 0; count <intPrangesteps; count ++){
+				double tempP = pmin + (count * pstep);
+				if (q<0) {
+					if (tempP<ZERO) cache[n][count] = INF;
+					else cache[n][count] = Math.pow(tempP, q);
+				} else cache[n][count] = Math.pow(tempP, q);
+			}
+			// error bound on each interval [a,b]: p^q is monotonous, so the error is below |b^q-a^q|,
+			// and |q(q-1)p^(q-2)| is monotonous as well, so it is also below step^2/8 max(|f''(a)|,|f''(b)|)
+			// (intervals starting at the INF placeholder are not interpolated, see intLookup)
+			maxError[n] = 0.0;
+			for (count = 0; count <intPrangesteps-1; count ++){
+				if (cache[n][count]==INF) continue;
+				double a = pmin + (count * pstep);
+				double b = a + pstep;
+				double err = Math.abs(cache[n][count+1]-cache[n][count]);
+				if (a>ZERO) {
+					double d2 = Math.max(Math.abs(q*(q-1.0)*Math.pow(a, q-2.0)), Math.abs(q*(q-1.0)*Math.pow(b, q-2.0)));
+					err = Math.min(err, pstep*pstep/8.0*d2);
+				}
+				if (err>maxError[n]) maxError[n] = err;
+			}
+		}
 	}    
 
-   private double intLookup(double p){
+   private double intLookup(double p, int n){
          double tempP = p - pmin;
 	 tempP = tempP / pstep;
-	 //int tempIntValue = (int) Math.round(tempP);
-	 int tempIntValue = (int) (tempP + 0.5);
-	 double result = cache[tempIntValue];
+	 int tempIntValue = (int) tempP;
+	 // no interpolation from the INF placeholder of negative exponents at p=0
+	 if (cache[n][tempIntValue]==INF) {
+	 	if (p<ZERO) return INF;
+	 	else return Math.pow(p, qCached[n]);
+	 }
+	 double w = tempP - tempIntValue;
+	 double result = cache[n][tempIntValue] + w*(cache[n][tempIntValue+1]-cache[n][tempIntValue]);
          return(result);
    }
       
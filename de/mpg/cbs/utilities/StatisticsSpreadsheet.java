@@ -0,0 +1,73 @@
+package de.mpg.cbs.utilities;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.Charset;
+import java.util.*;
+
+
+/**
+ *
+ *  This class writes the statistics spreadsheet files shared by many processing jobs.
+ *	<p>
+ *	The results of each job are appended as a single block (label line, statistics rows
+ *	and a blank separator line) under an exclusive file lock, so concurrent jobs writing
+ *	to the same spreadsheet never lose rows, and the previous rows are never read back.
+ *
+ *	@version    Oct 2016
+ *	@author     Pierre-Louis Bazin
+ */
+
+public class StatisticsSpreadsheet {
+
+	private static final Charset	CHARSET = Charset.forName("UTF-8");
+
+	/**
+	 *	append the rows of one job to the spreadsheet file, creating it with the header line if needed
+	 *	(the label line is skipped if empty; all lines are expected to end with a new line)
+	 */
+	public static final synchronized void appendStatistics(String name, String header, String lbline, List<String> rows) {
+		StringBuilder block = new StringBuilder();
+		if (lbline!=null && lbline.length()>0) block.append(lbline);
+		for (int n=0;n<rows.size();n++) block.append(rows.get(n));
+		block.append(" \n");
+
+		FileOutputStream fos = null;
+		try {
+			System.out.println("appending to statistic file: "+name);
+			fos = new FileOutputStream(name, true);
+			FileChannel channel = fos.getChannel();
+			FileLock lock = null;
+			try {
+				lock = channel.lock();
+			} catch (IOException e) {
+				// some network file systems do not support locking
+				System.out.println("file locking not available ("+e.getMessage()+"): appending without lock");
+			}
+			try {
+				if (channel.size()==0) write(channel, header+"\n");
+				write(channel, block.toString());
+				channel.force(false);
+			} finally {
+				if (lock!=null) lock.release();
+			}
+		}
+		catch (FileNotFoundException e) {
+			System.out.println(e.getMessage());
+		}
+		catch (IOException e) {
+			System.out.println(e.getMessage());
+		}
+		finally {
+			if (fos!=null) {
+				try { fos.close(); } catch (IOException e) { System.out.println(e.getMessage()); }
+			}
+		}
+	}
+
+	private static final void write(FileChannel channel, String text) throws IOException {
+		ByteBuffer buffer = ByteBuffer.wrap(text.getBytes(CHARSET));
+		while (buffer.hasRemaining()) channel.write(buffer);
+	}
+}
@@ -75,7 +75,7 @@ def flip_affine_data_orientation(d,a,flipLR = False,flipAP = False, flipIS = Fal
     return d,a
 
 def MGDMBrainSegmentation(input_filename_type_list, output_dir = None, num_steps = 5, atlas_file=None,
-                          topology_lut_dir = None):
+                          topology_lut_dir = None, num_threads = None):
     """
     Perform MGDM segmentation
     :param input_filename_type_list: list of [[fname1,type1],[fname2,type2],...] - for a maximum of 4 inputs
@@ -83,6 +83,7 @@ def MGDMBrainSegmentation(input_filename_type_list, output_dir = None, num_steps
     :param num_steps: number of steps for (default 5, set to 0 for testing)
     :param atlas_file: full path to the atlas file, default set in defaults.py
     :param topology_lut_dir: full path to the directory with the topology files, default set in defaults.py
+    :param num_threads: number of threads used by the java code (default: all processors)
     :return:
     """
 
@@ -125,6 +126,8 @@ def MGDMBrainSegmentation(input_filename_type_list, output_dir = None, num_steps
     mgdm.setDiffuseProbabilities(False)
     mgdm.setSteps(num_steps)
     mgdm.setTopology('wcs')  # {'wcs','no'} no=off for testing, wcs=default
+    if num_threads is not None:
+        mgdm.setNumberOfThreads(num_threads)
     for idx,con in enumerate(input_filename_type_list):
         print("Input files and filetypes:")
         print("  " + str(idx+1) + " "),
@@ -245,7 +248,7 @@ def MGDMBrainSegmentation_v2(con1_files, con1_type, con2_files=None, con2_type=N
                              con3_files=None, con3_type=None, con4_files=None, con4_type=None,
                              output_dir = None, num_steps = 5, topology = 'wcs', atlas_file=None,
                              topology_lut_dir = None, adjust_intensity_priors = False, compute_posterior = False,
-                             diffuse_probabilities = False, file_suffix = None):
+                             diffuse_probabilities = False, file_suffix = None, num_threads = None):
     """
     Perform MGDM segmentation
     simplified inputs
@@ -268,6 +271,7 @@ def MGDMBrainSegmentation_v2(con1_files, con1_type, con2_files=None, con2_type=N
     :param compute_posterior:       Copmute posterior: True/False
     :param diffuse_probabilities:   Compute diffuse probabilities: True/False
     :param file_suffix:             Distinguishing text to add to the end of the filename
+    :param num_threads:             Number of threads used by the java code, default = all processors
     :return:
     """
 
@@ -322,6 +326,8 @@ def MGDMBrainSegmentation_v2(con1_files, con1_type, con2_files=None, con2_type=N
     mgdm.setDiffuseProbabilities(diffuse_probabilities)
     mgdm.setSteps(num_steps)
     mgdm.setTopology(topology)  # {'wcs','no'} no=off for testing, wcs=default
+    if num_threads is not None:
+        mgdm.setNumberOfThreads(num_threads)
 
     for idx,con1 in enumerate(con1_files):
         print("Input files and filetypes:")